@@ -0,0 +1,935 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.physics.bullet.DebugDrawer;
+import com.badlogic.gdx.physics.bullet.collision.*;
+import com.badlogic.gdx.physics.bullet.linearmath.btScalarArray;
+import com.badlogic.gdx.physics.bullet.linearmath.btVector3Array;
+import com.henrik.gdxFramework.entities.GameObject;
+import com.henrik.gdxFramework.entities.components.PhysicsComponent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Collision world backed by Bullet. Besides the shared queries, it reports contacts through a Bullet {@link ContactListener} unless
+ * contacts are buffered, and supports sweeps of any Bullet convex shape.
+ */
+public class BulletCollisionWorld implements CollisionWorld {
+
+    public static final float DEFAULT_STATIC_CHUNK_SIZE = 32f;
+
+    // Largest distance between two objects at which buffered contacts still count them as touching
+    public static final float CONTACT_DISTANCE_THRESHOLD = 0.01f;
+
+    protected btCollisionWorld collisionWorld;
+    protected btCollisionConfiguration collisionConfiguration;
+    protected btBroadphaseInterface broadPhaseInterface;
+    protected btDispatcher dispatcher;
+    protected ContactListener contactListener;
+    protected DebugDrawer debugDraw; // Created on first use, as it needs GL
+
+    protected boolean debugActive;
+
+    protected CollisionLayers layers;
+
+    // Static geometry merged by chunk, streamed in and out around a center
+    private final StaticCollisionChunks staticChunks;
+    private final Vector3 streamingCenter = new Vector3();
+    private float streamingRadius;
+
+    // Registered objects by handle
+    private final CollisionHandles handles;
+
+    // Registered components and their objects, packed so that moved transforms are pushed in one pass before collision detection
+    private PhysicsComponent[] syncComponents = new PhysicsComponent[64];
+    private GameObject[] syncObjects = new GameObject[64];
+    private int syncComponentCount;
+    private final HashMap<PhysicsComponent, Integer> syncIndices;
+    private int syncedObjectCount;
+
+    // Contacts gathered from the dispatcher's manifolds after each pass instead of reported through the contact listener
+    private boolean bufferedContacts;
+    private final ContactEventBuffer contactEvents;
+    private final ArrayList<ContactEventListener> contactEventListeners;
+    private final Vector3 contactNormal = new Vector3();
+
+    // Ray test callbacks and results, reused by every ray test. Created on first use.
+    private ClosestRayResultCallback closestRayCallback;
+    private AllHitsRayResultCallback allHitsRayCallback;
+    // The all hits callback's result arrays, as each getter call makes a new wrapper
+    private btCollisionObjectConstArray allHitsObjects;
+    private btScalarArray allHitsFractions;
+    private btVector3Array allHitsPoints;
+    private btVector3Array allHitsNormals;
+    private int allHitsCount; // Hits of the last all hits ray, so arrays only need clearing after a hit
+    private int[] sortedHitIndices = new int[16];
+    private int[] sortedHitHandles = new int[16];
+    private float[] sortedHitFractions = new float[16];
+    private final Vector3 rayStart = new Vector3();
+    private final Vector3 rayEnd = new Vector3();
+    private final Vector3 rayHit = new Vector3();
+
+    // Sweep and overlap query callbacks and shapes, reused by every query. Created on first use.
+    private ClosestConvexResultCallback sweepCallback;
+    private float sweepFraction;
+    private btSphereShape querySphere;
+    private btBoxShape queryBox;
+    private btCapsuleShape queryCapsule;
+    private float queryCapsuleRadius, queryCapsuleHalfHeight;
+    private btCollisionObject queryObject;
+    private OverlapCallback overlapCallback;
+    private final Matrix4 sweepFrom = new Matrix4();
+    private final Matrix4 sweepTo = new Matrix4();
+    private final Vector3 queryScale = new Vector3();
+
+    /**
+     * Collects the objects overlapping the query object.
+     */
+    private class OverlapCallback extends ContactResultCallback {
+        ArrayList<CollisionObject> out;
+
+        @Override
+        public float addSingleResult(btManifoldPoint cp, btCollisionObjectWrapper colObj0Wrap, int partId0, int index0,
+                                     btCollisionObjectWrapper colObj1Wrap, int partId1, int index1) {
+            btCollisionObject object = colObj0Wrap.getCollisionObject();
+            int childIndex = index0;
+            if(object == queryObject) {
+                object = colObj1Wrap.getCollisionObject();
+                childIndex = index1;
+            }
+
+            // Objects report a result per contact point, so only add each once
+            CollisionObject hit = getCollisionObject(object, childIndex);
+            if(hit != null && !out.contains(hit))
+                out.add(hit);
+            return 0;
+        }
+    }
+
+    public BulletCollisionWorld() {
+        collisionConfiguration = new btDefaultCollisionConfiguration();
+        dispatcher = new btCollisionDispatcher(collisionConfiguration);
+        contactListener = new ContactListener();
+        createBulletWorld();
+        debugActive = false;
+
+        handles = new CollisionHandles();
+        layers = new CollisionLayers();
+        staticChunks = new StaticCollisionChunks(DEFAULT_STATIC_CHUNK_SIZE);
+        streamingRadius = Float.POSITIVE_INFINITY;
+        syncIndices = new HashMap<PhysicsComponent, Integer>();
+        contactEvents = new ContactEventBuffer();
+        contactEventListeners = new ArrayList<ContactEventListener>();
+        bufferedContacts = false;
+    }
+
+    private void createBulletWorld() {
+        broadPhaseInterface = new btDbvtBroadphase();
+        collisionWorld = new btCollisionWorld(dispatcher, broadPhaseInterface, collisionConfiguration);
+        // Only refresh the bounds of awake objects, which is all but idle static geometry, see PhysicsComponent.syncTransform
+        collisionWorld.setForceUpdateAllAabbs(false);
+        if(debugDraw != null)
+            collisionWorld.setDebugDrawer(debugDraw);
+    }
+
+    private DebugDrawer getDebugDrawer() {
+        if(debugDraw == null) {
+            debugDraw = new DebugDrawer();
+            collisionWorld.setDebugDrawer(debugDraw);
+        }
+        return debugDraw;
+    }
+
+    public void setContactListener(ContactListener contactListener) {
+        if(this.contactListener != null) {
+            this.contactListener.disable();
+            this.contactListener.dispose();
+        }
+
+        this.contactListener = contactListener;
+        if(!bufferedContacts)
+            contactListener.enable();
+    }
+
+    /**
+     * Sets whether or not contacts are buffered. When buffered, the contact listener is disabled, and after each collision detection
+     * pass the dispatcher's contact manifolds are read into a {@link ContactEventBuffer} of begin, stay and end events for each pair
+     * of objects, which is passed to every {@link ContactEventListener} at once. This avoids a call from native code for every contact
+     * point, and reports each pair once per pass.
+     */
+    public void setBufferedContacts(boolean buffered) {
+        if(buffered == bufferedContacts)
+            return;
+
+        bufferedContacts = buffered;
+        contactEvents.clear();
+        if(contactListener != null) {
+            if(buffered)
+                contactListener.disable();
+            else
+                contactListener.enable();
+        }
+    }
+
+    public boolean isBufferedContacts() { return bufferedContacts; }
+
+    public void addContactEventListener(ContactEventListener listener) {
+        contactEventListeners.add(listener);
+    }
+
+    public void removeContactEventListener(ContactEventListener listener) {
+        contactEventListeners.remove(listener);
+    }
+
+    /**
+     * Returns the contact events of the last collision detection pass, if contacts are buffered.
+     */
+    public ContactEventBuffer getContactEvents() { return contactEvents; }
+
+    public CollisionObject getCollisionObject(int handle) {
+        return handles.get(handle);
+    }
+
+    /**
+     * Returns the registered object a Bullet collision object stands for, or null if none. Chunked static geometry is one Bullet
+     * object per chunk, so hits on it are resolved to the member at the compound child index reported with the contact point
+     * (index0 for body 0, index1 for body 1). Custom contact listeners should resolve their objects here rather than reading the
+     * user data directly.
+     */
+    public CollisionObject getCollisionObject(btCollisionObject object, int childIndex) {
+        if(object.userData instanceof StaticCollisionChunks.Chunk)
+            return ((StaticCollisionChunks.Chunk)object.userData).getMember(childIndex);
+        return object.userData instanceof CollisionObject ? (CollisionObject)object.userData : null;
+    }
+
+    /**
+     * Returns the registered object hit at a point, for hits that come without a compound child index.
+     */
+    private CollisionObject getCollisionObject(btCollisionObject object, Vector3 hitPoint) {
+        if(object.userData instanceof StaticCollisionChunks.Chunk)
+            return ((StaticCollisionChunks.Chunk)object.userData).getMemberAt(hitPoint);
+        return (CollisionObject)object.userData;
+    }
+
+    /**
+     * Returns the registered object of the closest ray hit, reading the hit point only for chunks.
+     */
+    private CollisionObject getClosestHit(ClosestRayResultCallback callback) {
+        btCollisionObject object = callback.getCollisionObject();
+        if(object.userData instanceof StaticCollisionChunks.Chunk) {
+            callback.getHitPointWorld(rayHit);
+            return getCollisionObject(object, rayHit);
+        }
+        return (CollisionObject)object.userData;
+    }
+
+    /**
+     * Returns the registered object of a hit of the last all hits ray, reading the hit point only for chunks.
+     */
+    private CollisionObject getAllHitsObject(btCollisionObject object, int hit) {
+        if(object.userData instanceof StaticCollisionChunks.Chunk)
+            return getCollisionObject(object, allHitsPoints.at(hit));
+        return (CollisionObject)object.userData;
+    }
+
+    public void setDebugDrawMode(int mode) {
+       getDebugDrawer().setDebugMode(mode);
+    }
+
+    public void enableDebug() {
+        debugActive = true;
+    }
+
+    public void disableDebug() {
+        debugActive = false;
+    }
+
+    public boolean isDebugActive() { return debugActive; }
+
+    public void enableContactListener() {
+        if(this.contactListener != null && !bufferedContacts)
+            this.contactListener.enable();
+    }
+
+    public void disableContactListener() {
+        if(this.contactListener != null)
+            this.contactListener.disable();
+    }
+
+    public void update(Camera camera) {
+        performCollisionDetection();
+
+        if(debugActive)
+            debugDraw(camera);
+    }
+
+    /**
+     * Runs collision detection without drawing debug information. Makes no GL calls.
+     */
+    public void performCollisionDetection() {
+        syncTransforms();
+        updateStaticChunks();
+        collisionWorld.performDiscreteCollisionDetection();
+
+        if(layers.isPairStatistics())
+            countPairs();
+
+        if(bufferedContacts) {
+            gatherContacts();
+            for(int i = 0; i < contactEventListeners.size(); i++) {
+                contactEventListeners.get(i).onContactEvents(contactEvents, this);
+            }
+        }
+
+        // End events have been reported, so retired handles can be reused
+        handles.recycle();
+    }
+
+    /**
+     * Pushes the transforms of the registered objects that moved to Bullet. Done in one pass over the packed components rather than
+     * from each component's update, so that entity updates make no native calls and may run in parallel.
+     */
+    private void syncTransforms() {
+        int synced = 0;
+        for(int i = 0; i < syncComponentCount; i++) {
+            if(syncComponents[i].syncTransform(syncObjects[i]))
+                synced++;
+        }
+        syncedObjectCount = synced;
+    }
+
+    public int getSyncedObjectCount() { return syncedObjectCount; }
+
+    /**
+     * Counts the broadphase's overlapping pairs by layer pair.
+     */
+    private void countPairs() {
+        layers.resetPairCounts();
+
+        btBroadphasePairArray pairs = broadPhaseInterface.getOverlappingPairCache().getOverlappingPairArray();
+        int pairCount = pairs.size();
+        for(int i = 0; i < pairCount; i++) {
+            btBroadphasePair pair = pairs.at(i);
+            layers.countPair(pair.getPProxy0().getCollisionFilterGroup(), pair.getPProxy1().getCollisionFilterGroup());
+        }
+    }
+
+    /**
+     * Adds the static chunks coming in range, removes those going out of range, and rebuilds loaded chunks whose members changed.
+     */
+    private void updateStaticChunks() {
+        boolean emptied = false;
+        for(int i = 0; i < staticChunks.size(); i++) {
+            StaticCollisionChunks.Chunk chunk = staticChunks.get(i);
+            boolean inRange = !chunk.components.isEmpty() && staticChunks.inRange(chunk, streamingCenter, streamingRadius, chunk.loaded);
+
+            if(chunk.loaded && (!inRange || chunk.dirty))
+                unloadChunk(chunk);
+
+            if(!chunk.loaded && inRange) {
+                if(chunk.dirty || chunk.collisionObject == null)
+                    chunk.build();
+                loadChunk(chunk);
+            }
+
+            if(chunk.components.isEmpty())
+                emptied = true;
+        }
+
+        if(emptied)
+            staticChunks.removeEmpty();
+    }
+
+    private void loadChunk(StaticCollisionChunks.Chunk chunk) {
+        // Members get handles of their own, the chunk object has none
+        for(int i = 0; i < chunk.members.length; i++) {
+            handles.assign(chunk.members[i]);
+        }
+        chunk.collisionObject.setUserValue(-1);
+        collisionWorld.addCollisionObject(chunk.collisionObject, CollisionLayers.getGroup(chunk.layer), layers.getMask(chunk.layer));
+        chunk.loaded = true;
+    }
+
+    private void unloadChunk(StaticCollisionChunks.Chunk chunk) {
+        for(int i = 0; i < chunk.members.length; i++) {
+            handles.retire(chunk.members[i]);
+        }
+        collisionWorld.removeCollisionObject(chunk.collisionObject);
+        chunk.loaded = false;
+    }
+
+    public void setCollisionLayers(CollisionLayers layers) {
+        this.layers = layers;
+    }
+
+    public CollisionLayers getCollisionLayers() { return layers; }
+
+    /**
+     * Adds a component's collision object on its tag's layer, or the given layer if its tag has none.
+     */
+    private void addCollisionObject(PhysicsComponent component, int defaultLayer) {
+        int layer = layers.getLayer(component.getCollisionTag(), defaultLayer);
+        collisionWorld.addCollisionObject(component.getCollisionObject(), CollisionLayers.getGroup(layer), layers.getMask(layer));
+    }
+
+    private void addSync(PhysicsComponent component, GameObject object) {
+        if(syncComponentCount == syncComponents.length) {
+            syncComponents = Arrays.copyOf(syncComponents, syncComponentCount * 2);
+            syncObjects = Arrays.copyOf(syncObjects, syncComponentCount * 2);
+        }
+
+        syncIndices.put(component, syncComponentCount);
+        syncComponents[syncComponentCount] = component;
+        syncObjects[syncComponentCount] = object;
+        syncComponentCount++;
+    }
+
+    private void removeSync(PhysicsComponent component) {
+        Integer index = syncIndices.remove(component);
+        if(index == null)
+            return;
+
+        // Move the last component into the freed slot
+        int last = --syncComponentCount;
+        if(index != last) {
+            syncComponents[index] = syncComponents[last];
+            syncObjects[index] = syncObjects[last];
+            syncIndices.put(syncComponents[index], index);
+        }
+        syncComponents[last] = null;
+        syncObjects[last] = null;
+    }
+
+    /**
+     * Reads the deepest point of every contact manifold into the contact event buffer. Points up to
+     * {@link #CONTACT_DISTANCE_THRESHOLD} apart count as touching, so resting contacts, which Bullet keeps hovering around a distance
+     * of zero, don't flip between ending and beginning.
+     */
+    private void gatherContacts() {
+        contactEvents.begin();
+
+        int manifoldCount = dispatcher.getNumManifolds();
+        for(int i = 0; i < manifoldCount; i++) {
+            btPersistentManifold manifold = dispatcher.getManifoldByIndexInternal(i);
+            int contactCount = manifold.getNumContacts();
+            if(contactCount == 0)
+                continue;
+
+            float distance = CONTACT_DISTANCE_THRESHOLD;
+            boolean touching = false;
+            int index0 = -1, index1 = -1; // Compound child indices, to tell the members of static chunks apart
+            for(int j = 0; j < contactCount; j++) {
+                btManifoldPoint point = manifold.getContactPoint(j);
+                if(point.getDistance() <= distance) {
+                    distance = point.getDistance();
+                    // The normal points from body 1 towards body 0
+                    point.getNormalWorldOnB(contactNormal);
+                    index0 = point.getIndex0();
+                    index1 = point.getIndex1();
+                    touching = true;
+                }
+            }
+
+            if(!touching)
+                continue;
+
+            CollisionObject object0 = getCollisionObject(manifold.getBody0(), index0);
+            CollisionObject object1 = getCollisionObject(manifold.getBody1(), index1);
+            if(object0 == null || object1 == null)
+                continue;
+
+            contactEvents.addContact(object0.handle, object1.handle,
+                    object0.getCollisionTag().getID(), object1.getCollisionTag().getID(),
+                    contactNormal.x, contactNormal.y, contactNormal.z, Math.max(0f, -distance));
+        }
+
+        contactEvents.end();
+    }
+
+    /**
+     * Gives the component's collision object a handle, stored as its user value.
+     */
+    private void assignHandle(PhysicsComponent component) {
+        component.getCollisionObject().setUserValue(handles.assign(component.getUserData()));
+    }
+
+    private void retireHandle(PhysicsComponent component) {
+        handles.retire(component.getUserData());
+    }
+
+    /**
+     * Draws debug information for the collision world. Must be called on the GL thread, and not while collision detection is running.
+     */
+    public void debugDraw(Camera camera) {
+        getDebugDrawer().begin(camera);
+        collisionWorld.debugDrawWorld();
+        debugDraw.end();
+    }
+
+    /**
+     * Register an object as a dynamic entity in the world. Dynamic entities can collide with static entities, and other dynamic entities.
+     * @param component The physics component of the entity to add.
+     * @param object The game object being registered, for use in callbacks (collision response).
+     */
+    public void registerDynamicEntity(PhysicsComponent component, GameObject object) {
+        component.setUserData(object);
+        assignHandle(component);
+        component.stayAwake();
+        component.syncTransform(object);
+        addSync(component, object);
+        addCollisionObject(component, CollisionLayers.DYNAMIC);
+    }
+
+    /**
+     * Register an object as static geometry in the world. Static geometry cannot collide with one another, but will collide with dynamic entities.
+     * It is put to sleep, so its bounds are only refreshed if it moves.
+     * @param component The physics component of the entity to add.
+     * @param object The game object being registered, for use in callbacks (collision response).
+     */
+    public void registerStaticGeometry(PhysicsComponent component, GameObject object) {
+        component.setUserData(object);
+        assignHandle(component);
+        component.syncTransform(object);
+        addSync(component, object);
+        component.getCollisionObject().setCollisionFlags(component.getCollisionObject().getCollisionFlags() | btCollisionObject.CollisionFlags.CF_STATIC_OBJECT);
+        component.sleep();
+        addCollisionObject(component, CollisionLayers.STATIC);
+    }
+
+    public void registerTriggerEntity(PhysicsComponent component, GameObject object) {
+        component.setUserData(object);
+        assignHandle(component);
+        component.stayAwake();
+        component.syncTransform(object);
+        addSync(component, object);
+        addCollisionObject(component, CollisionLayers.TRIGGER);
+    }
+
+    /**
+     * Register an object as static geometry merged with the other static geometry of its spatial chunk and collision tag. The
+     * chunk's compound shape is built from the objects' current world transforms when it is next added to the world.
+     */
+    public void registerStaticChunkGeometry(PhysicsComponent component, GameObject object) {
+        component.setUserData(object);
+        staticChunks.add(component, object, layers.getLayer(component.getCollisionTag(), CollisionLayers.STATIC));
+    }
+
+    public void setStaticChunkStreaming(Vector3 center, float radius) {
+        streamingCenter.set(center);
+        streamingRadius = radius;
+    }
+
+    public void unregister(PhysicsComponent component) {
+        // Chunked geometry leaves the world with its chunk's next rebuild
+        if(staticChunks.remove(component) != null)
+            return;
+
+        retireHandle(component);
+        removeSync(component);
+        collisionWorld.removeCollisionObject(component.getCollisionObject());
+    }
+
+    /**
+     * Removes every registered object. Rather than removing objects one at a time, the Bullet world and broadphase are replaced with
+     * fresh ones, the old world freeing the broadphase entries of its objects in a single native call. Static chunks are disposed.
+     */
+    public void clear() {
+        collisionWorld.dispose();
+        broadPhaseInterface.dispose();
+        createBulletWorld();
+        staticChunks.clear();
+
+        // Nothing is registered anymore, so every handle is free and no end events are reported
+        handles.clear();
+        Arrays.fill(syncComponents, 0, syncComponentCount, null);
+        Arrays.fill(syncObjects, 0, syncComponentCount, null);
+        syncComponentCount = 0;
+        syncIndices.clear();
+        contactEvents.clear();
+    }
+
+    public void dispose() {
+        collisionWorld.dispose();
+        broadPhaseInterface.dispose();
+        staticChunks.clear();
+        dispatcher.dispose();
+        collisionConfiguration.dispose();
+        contactListener.dispose();
+
+        if(closestRayCallback != null)
+            closestRayCallback.dispose();
+        if(allHitsRayCallback != null)
+            allHitsRayCallback.dispose();
+        if(sweepCallback != null)
+            sweepCallback.dispose();
+        if(overlapCallback != null)
+            overlapCallback.dispose();
+        if(queryObject != null)
+            queryObject.dispose();
+        if(querySphere != null)
+            querySphere.dispose();
+        if(queryBox != null)
+            queryBox.dispose();
+        if(queryCapsule != null)
+            queryCapsule.dispose();
+    }
+
+    /**
+     * Ray test for the first object hit with the given filter mask.
+     * @param start Start of the ray.
+     * @param end End of the ray.
+     * @return The first object colliding with the ray, or null if none.
+     */
+    public CollisionObject rayTestFirst(Vector3 start, Vector3 end, short group, short mask) {
+        ClosestRayResultCallback callback = closestRay(start, end, group, mask);
+
+        if(callback.hasHit())
+            return getClosestHit(callback);
+
+        return null;
+    }
+
+    /**
+     * Ray test for all objects hit with the given filter mask.
+     * @param start The start of the ray.
+     * @param end The end of the ray.
+     * @param group The filter group the ray belongs to.
+     * @param mask The filter mask the ray can collide with.
+     * @return All objects colliding witht the ray, or null if there are none.
+     */
+    public CollisionObject[] rayTestAll(Vector3 start, Vector3 end, CollisionFilter group, CollisionFilter mask) {
+        allHitsRay(start, end, group.getValue(), mask.getValue());
+
+        if(allHitsCount > 0) {
+            CollisionObject[] hitObjects = new CollisionObject[allHitsCount];
+
+            for(int i = 0; i < allHitsCount; i++) {
+                hitObjects[i] = getAllHitsObject(allHitsObjects.at(i), i);
+            }
+
+            return hitObjects;
+        }
+
+        return null;
+    }
+
+    /**
+     * Ray test for all objects hit with the given filter mask, nearest first, without allocating.
+     * @param out Cleared, then filled with the objects hit.
+     * @return The number of objects hit.
+     */
+    public int rayTestAll(Vector3 start, Vector3 end, short group, short mask, ArrayList<CollisionObject> out) {
+        out.clear();
+        allHitsRay(start, end, group, mask);
+        int count = sortHits();
+        for(int i = 0; i < count; i++) {
+            out.add(handles.get(sortedHitHandles[i]));
+        }
+        return count;
+    }
+
+    /**
+     * Tests several rays for the first object each hits. Ray i goes from (starts[i * 3], starts[i * 3 + 1], starts[i * 3 + 2]) to
+     * the same position in ends. Results are written to the caller's arrays at the ray's index, three floats per ray for points and
+     * normals, which are left unchanged for rays that hit nothing. Any of the arrays may be null if not needed.
+     * @param hitHandles The handle of the object hit by each ray, see {@link #getCollisionObject(int)}, or -1 if none.
+     * @param hitFractions How far along each ray the hit is, from 0 at the start to 1 at the end, or 1 if none.
+     * @return The number of rays that hit an object.
+     */
+    public int rayTestFirst(float[] starts, float[] ends, int rayCount, short group, short mask,
+                            int[] hitHandles, float[] hitFractions, float[] hitPoints, float[] hitNormals) {
+        int hits = 0;
+        for(int i = 0; i < rayCount; i++) {
+            int r = i * 3;
+            rayStart.set(starts[r], starts[r + 1], starts[r + 2]);
+            rayEnd.set(ends[r], ends[r + 1], ends[r + 2]);
+            ClosestRayResultCallback callback = closestRay(rayStart, rayEnd, group, mask);
+
+            boolean hit = callback.hasHit();
+            if(hit)
+                hits++;
+
+            if(hitHandles != null)
+                hitHandles[i] = hit ? getClosestHit(callback).handle : -1;
+            if(hitFractions != null)
+                hitFractions[i] = hit ? callback.getClosestHitFraction() : 1f;
+            if(hit && hitPoints != null) {
+                callback.getHitPointWorld(rayHit);
+                hitPoints[r] = rayHit.x;
+                hitPoints[r + 1] = rayHit.y;
+                hitPoints[r + 2] = rayHit.z;
+            }
+            if(hit && hitNormals != null) {
+                callback.getHitNormalWorld(rayHit);
+                hitNormals[r] = rayHit.x;
+                hitNormals[r + 1] = rayHit.y;
+                hitNormals[r + 2] = rayHit.z;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Ray test for all objects hit, nearest first, writing the results to the caller's arrays. Points and normals take three floats
+     * per hit, and may be null if not needed.
+     * @param maxHits The most hits written; the arrays must hold at least this many.
+     * @return The number of hits written.
+     */
+    public int rayTestAll(Vector3 start, Vector3 end, short group, short mask,
+                          int[] hitHandles, float[] hitFractions, float[] hitPoints, float[] hitNormals, int maxHits) {
+        allHitsRay(start, end, group, mask);
+        int count = Math.min(sortHits(), maxHits);
+
+        for(int i = 0; i < count; i++) {
+            int hit = sortedHitIndices[i];
+            if(hitHandles != null)
+                hitHandles[i] = sortedHitHandles[i];
+            if(hitFractions != null)
+                hitFractions[i] = sortedHitFractions[i];
+            if(hitPoints != null) {
+                Vector3 point = allHitsPoints.at(hit);
+                hitPoints[i * 3] = point.x;
+                hitPoints[i * 3 + 1] = point.y;
+                hitPoints[i * 3 + 2] = point.z;
+            }
+            if(hitNormals != null) {
+                Vector3 normal = allHitsNormals.at(hit);
+                hitNormals[i * 3] = normal.x;
+                hitNormals[i * 3 + 1] = normal.y;
+                hitNormals[i * 3 + 2] = normal.z;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Resets the shared closest hit callback and casts it.
+     */
+    private ClosestRayResultCallback closestRay(Vector3 start, Vector3 end, short group, short mask) {
+        if(closestRayCallback == null)
+            closestRayCallback = new ClosestRayResultCallback(start, end);
+
+        closestRayCallback.setCollisionObject(null);
+        closestRayCallback.setClosestHitFraction(1f);
+        closestRayCallback.setRayFromWorld(start);
+        closestRayCallback.setRayToWorld(end);
+        closestRayCallback.setCollisionFilterGroup(group);
+        closestRayCallback.setCollisionFilterMask(mask);
+        collisionWorld.rayTest(start, end, closestRayCallback);
+        return closestRayCallback;
+    }
+
+    /**
+     * Resets the shared all hits callback and casts it, counting its hits.
+     */
+    private void allHitsRay(Vector3 start, Vector3 end, short group, short mask) {
+        if(allHitsRayCallback == null) {
+            allHitsRayCallback = new AllHitsRayResultCallback(start, end);
+            allHitsObjects = allHitsRayCallback.getCollisionObjects();
+            allHitsFractions = allHitsRayCallback.getHitFractions();
+            allHitsPoints = allHitsRayCallback.getHitPointWorld();
+            allHitsNormals = allHitsRayCallback.getHitNormalWorld();
+        }
+
+        if(allHitsCount > 0) {
+            allHitsObjects.clear();
+            allHitsFractions.clear();
+            allHitsPoints.clear();
+            allHitsNormals.clear();
+        }
+        allHitsRayCallback.setCollisionObject(null);
+        allHitsRayCallback.setClosestHitFraction(1f);
+        allHitsRayCallback.setRayFromWorld(start);
+        allHitsRayCallback.setRayToWorld(end);
+        allHitsRayCallback.setCollisionFilterGroup(group);
+        allHitsRayCallback.setCollisionFilterMask(mask);
+        collisionWorld.rayTest(start, end, allHitsRayCallback);
+        allHitsCount = allHitsObjects.size();
+    }
+
+    /**
+     * Sweeps a convex shape from one transform to another, finding the first object it hits with the given filter mask. One sweep
+     * replaces several rays when testing whether a volume fits along a path.
+     * @param hitPoint Set to the point of the hit, if any. May be null.
+     * @param hitNormal Set to the normal of the hit, if any. May be null.
+     * @return The first object hit, or null if none. See {@link #getSweepFraction()} for how far along the sweep it was hit.
+     */
+    public CollisionObject sweepTest(btConvexShape shape, Matrix4 from, Matrix4 to, short group, short mask, Vector3 hitPoint, Vector3 hitNormal) {
+        from.getTranslation(rayStart);
+        to.getTranslation(rayEnd);
+        if(sweepCallback == null)
+            sweepCallback = new ClosestConvexResultCallback(rayStart, rayEnd);
+
+        sweepCallback.setHitCollisionObject(null);
+        sweepCallback.setClosestHitFraction(1f);
+        // Only the end has a Vector3 setter
+        sweepCallback.getConvexFromWorld().setValue(rayStart.x, rayStart.y, rayStart.z);
+        sweepCallback.setConvexToWorld(rayEnd);
+        sweepCallback.setCollisionFilterGroup(group);
+        sweepCallback.setCollisionFilterMask(mask);
+        collisionWorld.convexSweepTest(shape, from, to, sweepCallback);
+
+        sweepFraction = sweepCallback.getClosestHitFraction();
+        if(!sweepCallback.hasHit())
+            return null;
+
+        sweepCallback.getHitPointWorld(rayHit);
+        if(hitPoint != null)
+            hitPoint.set(rayHit);
+        if(hitNormal != null)
+            sweepCallback.getHitNormalWorld(hitNormal);
+        return getCollisionObject(sweepCallback.getHitCollisionObject(), rayHit);
+    }
+
+    /**
+     * Sweeps a sphere from one position to another, see {@link #sweepTest(btConvexShape, Matrix4, Matrix4, short, short, Vector3, Vector3)}.
+     */
+    public CollisionObject sweepSphere(Vector3 start, Vector3 end, float radius, short group, short mask, Vector3 hitPoint, Vector3 hitNormal) {
+        if(querySphere == null)
+            querySphere = new btSphereShape(radius);
+        querySphere.setUnscaledRadius(radius);
+
+        sweepFrom.setToTranslation(start);
+        sweepTo.setToTranslation(end);
+        return sweepTest(querySphere, sweepFrom, sweepTo, group, mask, hitPoint, hitNormal);
+    }
+
+    /**
+     * Sweeps a shape from one position to another with the cached query shape of its type, see
+     * {@link #sweepTest(btConvexShape, Matrix4, Matrix4, short, short, Vector3, Vector3)}.
+     */
+    public CollisionObject sweepTest(CollisionShape shape, Vector3 start, Vector3 end, short group, short mask, Vector3 hitPoint, Vector3 hitNormal) {
+        btConvexShape query;
+        switch(shape.getType()) {
+            case SPHERE:
+                if(querySphere == null)
+                    querySphere = new btSphereShape(shape.getRadius());
+                querySphere.setUnscaledRadius(shape.getRadius());
+                query = querySphere;
+                break;
+            case CAPSULE:
+                // Capsules can't be resized, so one is only made again when the size changes
+                if(queryCapsule == null || queryCapsuleRadius != shape.getRadius() || queryCapsuleHalfHeight != shape.getHalfHeight()) {
+                    if(queryCapsule != null)
+                        queryCapsule.dispose();
+                    queryCapsule = new btCapsuleShape(shape.getRadius(), shape.getHalfHeight() * 2);
+                    queryCapsuleRadius = shape.getRadius();
+                    queryCapsuleHalfHeight = shape.getHalfHeight();
+                }
+                query = queryCapsule;
+                break;
+            default:
+                if(queryBox == null)
+                    queryBox = new btBoxShape(queryScale.set(1, 1, 1));
+                queryBox.setLocalScaling(shape.getHalfExtents());
+                query = queryBox;
+                break;
+        }
+
+        Vector3 offset = shape.getOffset();
+        sweepFrom.setToTranslation(start.x + offset.x, start.y + offset.y, start.z + offset.z);
+        sweepTo.setToTranslation(end.x + offset.x, end.y + offset.y, end.z + offset.z);
+        return sweepTest(query, sweepFrom, sweepTo, group, mask, hitPoint, hitNormal);
+    }
+
+    /**
+     * Returns how far along the last sweep its hit was, from 0 at the start to 1 at the end, or 1 if it hit nothing.
+     */
+    public float getSweepFraction() { return sweepFraction; }
+
+    /**
+     * Finds the objects overlapping a sphere with the given filter mask.
+     * @param out Cleared, then filled with the overlapping objects.
+     * @return The number of overlapping objects.
+     */
+    public int overlapSphere(Vector3 center, float radius, short group, short mask, ArrayList<CollisionObject> out) {
+        if(querySphere == null)
+            querySphere = new btSphereShape(radius);
+        querySphere.setUnscaledRadius(radius);
+
+        return overlap(querySphere, sweepFrom.setToTranslation(center), group, mask, out);
+    }
+
+    /**
+     * Finds the objects overlapping an axis aligned box with the given filter mask.
+     * @param out Cleared, then filled with the overlapping objects.
+     * @return The number of overlapping objects.
+     */
+    public int overlapBox(Vector3 center, Vector3 halfExtents, short group, short mask, ArrayList<CollisionObject> out) {
+        // A unit box scaled to the extents, as box shapes can't be resized
+        if(queryBox == null)
+            queryBox = new btBoxShape(queryScale.set(1, 1, 1));
+        queryBox.setLocalScaling(halfExtents);
+
+        return overlap(queryBox, sweepFrom.setToTranslation(center), group, mask, out);
+    }
+
+    private int overlap(btCollisionShape shape, Matrix4 transform, short group, short mask, ArrayList<CollisionObject> out) {
+        if(queryObject == null) {
+            queryObject = new btCollisionObject();
+            overlapCallback = new OverlapCallback();
+        }
+
+        out.clear();
+        queryObject.setCollisionShape(shape);
+        queryObject.setWorldTransform(transform);
+        overlapCallback.out = out;
+        overlapCallback.setCollisionFilterGroup(group);
+        overlapCallback.setCollisionFilterMask(mask);
+        collisionWorld.contactTest(queryObject, overlapCallback);
+        overlapCallback.out = null;
+        return out.size();
+    }
+
+    /**
+     * Sorts the hits of the all hits callback by fraction into the sorted hit arrays.
+     * @return The number of hits.
+     */
+    private int sortHits() {
+        int count = allHitsCount;
+
+        if(sortedHitIndices.length < count) {
+            sortedHitIndices = new int[count * 2];
+            sortedHitHandles = new int[count * 2];
+            sortedHitFractions = new float[count * 2];
+        }
+
+        // Insertion sort, as rays rarely hit more than a few objects
+        for(int i = 0; i < count; i++) {
+            float fraction = allHitsFractions.at(i);
+            int handle = getAllHitsObject(allHitsObjects.at(i), i).handle;
+            int j = i;
+            while(j > 0 && sortedHitFractions[j - 1] > fraction) {
+                sortedHitIndices[j] = sortedHitIndices[j - 1];
+                sortedHitHandles[j] = sortedHitHandles[j - 1];
+                sortedHitFractions[j] = sortedHitFractions[j - 1];
+                j--;
+            }
+            sortedHitIndices[j] = i;
+            sortedHitHandles[j] = handle;
+            sortedHitFractions[j] = fraction;
+        }
+        return count;
+    }
+
+    public ArrayList<CollisionObject> getRegisteredCollisionObjects() {
+        btCollisionObjectArray objs = collisionWorld.getCollisionObjectArray();
+
+        ArrayList<CollisionObject> objArray = new ArrayList<CollisionObject>();
+
+        for(int i = 0; i < objs.size(); i++) {
+            Object userData = objs.at(i).userData;
+            if(userData instanceof StaticCollisionChunks.Chunk)
+                objArray.addAll(Arrays.asList(((StaticCollisionChunks.Chunk)userData).members));
+            else
+                objArray.add((CollisionObject)userData);
+        }
+
+        return objArray;
+    }
+}
@@ -0,0 +1,85 @@
+package com.henrik.gdxFramework.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Integer handles for the objects registered with a collision world. Handles of unregistered objects are retired until the next
+ * collision detection pass has reported its contact events, so that end events can still be resolved, and reused afterwards.
+ */
+class CollisionHandles {
+
+    private final ArrayList<CollisionObject> objects;
+    private int[] free;
+    private int freeCount;
+    private int[] retired;
+    private int retiredCount;
+
+    CollisionHandles() {
+        objects = new ArrayList<CollisionObject>();
+        free = new int[64];
+        retired = new int[64];
+    }
+
+    /**
+     * Gives an object a handle.
+     */
+    int assign(CollisionObject object) {
+        int handle;
+        if(freeCount > 0) {
+            handle = free[--freeCount];
+            objects.set(handle, object);
+        } else {
+            handle = objects.size();
+            objects.add(object);
+        }
+
+        object.handle = handle;
+        return handle;
+    }
+
+    /**
+     * Takes an object's handle away, keeping it resolvable until {@link #recycle()}.
+     */
+    void retire(CollisionObject object) {
+        if(object == null || object.handle < 0)
+            return;
+
+        if(retiredCount == retired.length)
+            retired = Arrays.copyOf(retired, retiredCount * 2);
+        retired[retiredCount++] = object.handle;
+        object.handle = -1;
+    }
+
+    /**
+     * Frees retired handles for reuse. Called once a collision detection pass has reported its events.
+     */
+    void recycle() {
+        for(int i = 0; i < retiredCount; i++) {
+            int handle = retired[i];
+            objects.set(handle, null);
+            if(freeCount == free.length)
+                free = Arrays.copyOf(free, freeCount * 2);
+            free[freeCount++] = handle;
+        }
+        retiredCount = 0;
+    }
+
+    CollisionObject get(int handle) {
+        return objects.get(handle);
+    }
+
+    /**
+     * Frees every handle, for when every object was removed at once.
+     */
+    void clear() {
+        for(int i = 0; i < objects.size(); i++) {
+            CollisionObject object = objects.get(i);
+            if(object != null)
+                object.handle = -1;
+        }
+        objects.clear();
+        freeCount = 0;
+        retiredCount = 0;
+    }
+}
@@ -0,0 +1,131 @@
+package com.henrik.gdxFramework.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Collision layers decide which registered objects can collide. Each object is on one of up to 16 layers, chosen by its
+ * {@link CollisionTag}, and a symmetric matrix says which layers collide with which. When an object is registered, its layer is
+ * compiled into a filter group with the layer's bit, and a mask with the bits of every layer it collides with, so pairs that can't
+ * collide are never made by the broadphase.
+ *
+ * Three layers are built in, with the bits of {@link CollisionWorld.CollisionFilter}: objects registered as static geometry,
+ * dynamic entities and triggers go on them unless their tag is given a layer. By default, dynamic entities collide with each other
+ * and with the other two, as before layers existed. Queries filter with the same bits, see {@link #getGroup(int)}.
+ */
+public class CollisionLayers {
+
+    public static final int MAX_LAYERS = 16;
+
+    // Built in layers, matching the bits of CollisionWorld.CollisionFilter
+    public static final int TRIGGER = 7;
+    public static final int DYNAMIC = 8;
+    public static final int STATIC = 9;
+
+    private final short[] masks;
+    private final HashMap<Integer, Integer> tagLayers; // Layer of each tag ID given one
+
+    private boolean pairStatistics;
+    private final int[] pairCounts; // Broadphase pairs of the last pass by layer pair, lower layer first
+
+    public CollisionLayers() {
+        masks = new short[MAX_LAYERS];
+        tagLayers = new HashMap<Integer, Integer>();
+        pairCounts = new int[MAX_LAYERS * MAX_LAYERS];
+        pairStatistics = false;
+
+        setCollides(DYNAMIC, STATIC, true);
+        setCollides(DYNAMIC, DYNAMIC, true);
+        setCollides(DYNAMIC, TRIGGER, true);
+    }
+
+    /**
+     * Puts objects with the given tag on a layer, whichever way they are registered. Only affects objects registered afterwards.
+     */
+    public void setLayer(CollisionTag tag, int layer) {
+        checkLayer(layer);
+        tagLayers.put(tag.getID(), layer);
+    }
+
+    /**
+     * Returns the layer of objects with the given tag, or the default layer if the tag wasn't given one.
+     */
+    public int getLayer(CollisionTag tag, int defaultLayer) {
+        Integer layer = tagLayers.get(tag.getID());
+        return layer != null ? layer : defaultLayer;
+    }
+
+    /**
+     * Sets whether or not objects on two layers collide. Only affects objects registered afterwards.
+     */
+    public void setCollides(int layerA, int layerB, boolean collides) {
+        checkLayer(layerA);
+        checkLayer(layerB);
+
+        if(collides) {
+            masks[layerA] |= getGroup(layerB);
+            masks[layerB] |= getGroup(layerA);
+        } else {
+            masks[layerA] &= ~getGroup(layerB);
+            masks[layerB] &= ~getGroup(layerA);
+        }
+    }
+
+    public boolean collides(int layerA, int layerB) {
+        return (masks[layerA] & getGroup(layerB)) != 0;
+    }
+
+    /**
+     * Returns the filter group of objects on a layer, which is also the bit to use in query masks for the layer.
+     */
+    public static short getGroup(int layer) {
+        return (short)(1 << layer);
+    }
+
+    /**
+     * Returns the filter mask of objects on a layer, with the bits of every layer it collides with.
+     */
+    public short getMask(int layer) {
+        return masks[layer];
+    }
+
+    private static void checkLayer(int layer) {
+        if(layer < 0 || layer >= MAX_LAYERS)
+            throw new IllegalArgumentException("Collision layers range from 0 to " + (MAX_LAYERS - 1) + ", got " + layer);
+    }
+
+    /**
+     * Sets whether or not the collision world counts the broadphase pairs made for each pair of layers after each pass. Counting walks
+     * every pair, so only enable this while profiling.
+     */
+    public void setPairStatistics(boolean enabled) {
+        pairStatistics = enabled;
+        if(!enabled)
+            Arrays.fill(pairCounts, 0);
+    }
+
+    public boolean isPairStatistics() { return pairStatistics; }
+
+    /**
+     * Returns the number of broadphase pairs made between objects on two layers in the last pass, if statistics are enabled.
+     */
+    public int getPairCount(int layerA, int layerB) {
+        return pairCounts[Math.min(layerA, layerB) * MAX_LAYERS + Math.max(layerA, layerB)];
+    }
+
+    void resetPairCounts() {
+        Arrays.fill(pairCounts, 0);
+    }
+
+    /**
+     * Counts a broadphase pair between objects with the given filter groups.
+     */
+    void countPair(short groupA, short groupB) {
+        int layerA = Integer.numberOfTrailingZeros(groupA & 0xffff);
+        int layerB = Integer.numberOfTrailingZeros(groupB & 0xffff);
+        if(layerA >= MAX_LAYERS || layerB >= MAX_LAYERS)
+            return;
+
+        pairCounts[Math.min(layerA, layerB) * MAX_LAYERS + Math.max(layerA, layerB)]++;
+    }
+}
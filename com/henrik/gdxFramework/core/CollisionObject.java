@@ -8,10 +8,19 @@ import com.henrik.gdxFramework.entities.GameObject;
 public class CollisionObject {
     private CollisionTag tag;
     private GameObject object;
+    int handle; // Assigned by the collision world while registered, -1 otherwise
 
     public CollisionObject(CollisionTag tag, GameObject object) {
         this.object = object;
         this.tag = tag;
+        handle = -1;
+    }
+
+    /**
+     * Returns the handle of this object in its collision world, as used by {@link ContactEventBuffer}, or -1 if not registered.
+     */
+    public int getHandle() {
+        return handle;
     }
 
     /**
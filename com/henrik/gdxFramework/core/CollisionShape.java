@@ -0,0 +1,98 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.physics.bullet.collision.btBoxShape;
+import com.badlogic.gdx.physics.bullet.collision.btCapsuleShape;
+import com.badlogic.gdx.physics.bullet.collision.btCollisionShape;
+import com.badlogic.gdx.physics.bullet.collision.btConvexShape;
+import com.badlogic.gdx.physics.bullet.collision.btSphereShape;
+
+/**
+ * Describes a simple collision shape without creating any native object, so that it can be used by either collision world backend.
+ * Shapes are centered on their object's position plus an offset. Boxes stay axis aligned, and capsules run along the y axis.
+ */
+public class CollisionShape {
+
+    public enum Type {
+        BOX,
+        SPHERE,
+        CAPSULE
+    }
+
+    private final Type type;
+    private final Vector3 halfExtents; // Of the box, or of the bounds of the sphere or capsule
+    private final float radius;
+    private final float halfHeight; // Half the distance between the centers of a capsule's end spheres
+    private final Vector3 offset;
+
+    private CollisionShape(Type type, float halfX, float halfY, float halfZ, float radius, float halfHeight) {
+        this.type = type;
+        this.halfExtents = new Vector3(halfX, halfY, halfZ);
+        this.radius = radius;
+        this.halfHeight = halfHeight;
+        this.offset = new Vector3();
+    }
+
+    public static CollisionShape box(Vector3 halfExtents) {
+        return new CollisionShape(Type.BOX, halfExtents.x, halfExtents.y, halfExtents.z, 0, 0);
+    }
+
+    public static CollisionShape sphere(float radius) {
+        return new CollisionShape(Type.SPHERE, radius, radius, radius, radius, 0);
+    }
+
+    /**
+     * @param height The distance between the centers of the end spheres, as for Bullet capsules.
+     */
+    public static CollisionShape capsule(float radius, float height) {
+        return new CollisionShape(Type.CAPSULE, radius, height * 0.5f + radius, radius, radius, height * 0.5f);
+    }
+
+    /**
+     * Sets the offset of the shape from its object's position.
+     */
+    public CollisionShape setOffset(float x, float y, float z) {
+        offset.set(x, y, z);
+        return this;
+    }
+
+    public Type getType() { return type; }
+
+    public Vector3 getHalfExtents() { return halfExtents; }
+
+    public float getRadius() { return radius; }
+
+    public float getHalfHeight() { return halfHeight; }
+
+    public Vector3 getOffset() { return offset; }
+
+    /**
+     * Creates the equivalent Bullet shape, without the offset.
+     */
+    public btCollisionShape createBulletShape() {
+        switch(type) {
+            case SPHERE:
+                return new btSphereShape(radius);
+            case CAPSULE:
+                return new btCapsuleShape(radius, halfHeight * 2);
+            default:
+                return new btBoxShape(halfExtents);
+        }
+    }
+
+    /**
+     * Describes a Bullet sphere, box or capsule along the y axis. Boxes keep their margin.
+     * @throws IllegalArgumentException If the shape is of another kind.
+     */
+    public static CollisionShape describe(btConvexShape shape) {
+        if(shape instanceof btSphereShape)
+            return sphere(((btSphereShape)shape).getRadius());
+        if(shape instanceof btBoxShape)
+            return box(((btBoxShape)shape).getHalfExtentsWithMargin());
+        if(shape instanceof btCapsuleShape && ((btCapsuleShape)shape).getUpAxis() == 1) {
+            btCapsuleShape capsule = (btCapsuleShape)shape;
+            return capsule(capsule.getRadius(), capsule.getHalfHeight() * 2);
+        }
+        throw new IllegalArgumentException("Only spheres, boxes and capsules along the y axis can be described, got " + shape.getClass().getSimpleName());
+    }
+}
@@ -1,30 +1,20 @@
 package com.henrik.gdxFramework.core;
 
-import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Camera;
 import com.badlogic.gdx.math.Vector3;
-import com.badlogic.gdx.physics.bullet.DebugDrawer;
-import com.badlogic.gdx.physics.bullet.collision.*;
 import com.henrik.gdxFramework.entities.GameObject;
 import com.henrik.gdxFramework.entities.components.PhysicsComponent;
 
 import java.util.ArrayList;
 
 /**
- * Created by Henri on 17/11/2014.
+ * A collision world detects contacts between registered physics components and answers ray, sweep and overlap queries. Two backends
+ * exist: {@link BulletCollisionWorld}, and {@link JavaCollisionWorld} for worlds made of boxes, spheres and capsules that don't need
+ * Bullet. Both filter pairs the same way: two objects collide when the group of each is in the mask of the other.
  */
-public class CollisionWorld {
+public interface CollisionWorld {
 
-    protected btCollisionWorld collisionWorld;
-    protected btCollisionConfiguration collisionConfiguration;
-    protected btBroadphaseInterface broadPhaseInterface;
-    protected btDispatcher dispatcher;
-    protected ContactListener contactListener;
-    protected DebugDrawer debugDraw;
-
-    protected boolean debugActive;
-
-    // Collision filter groups
+    // Collision filter groups, the bits of the built in collision layers
     public enum CollisionFilter {
         STATIC((short)(1<<9)),
         DYNAMIC((short)(1<<8)),
@@ -42,112 +32,104 @@ public class CollisionWorld {
         }
     }
 
-    public CollisionWorld() {
-        collisionConfiguration = new btDefaultCollisionConfiguration();
-        dispatcher = new btCollisionDispatcher(collisionConfiguration);
-        broadPhaseInterface = new btDbvtBroadphase();
-        collisionWorld = new btCollisionWorld(dispatcher, broadPhaseInterface, collisionConfiguration);
-        contactListener = new ContactListener();
-        debugDraw = new DebugDrawer();
-
-        collisionWorld.setDebugDrawer(debugDraw);
-        debugActive = false;
-    }
-
-    public void setContactListener(ContactListener contactListener) {
-        if(this.contactListener != null) {
-            this.contactListener.disable();
-            this.contactListener.dispose();
-        }
+    /**
+     * Runs collision detection, then draws debug information if enabled.
+     */
+    public void update(Camera camera);
 
-        this.contactListener = contactListener;
-        contactListener.enable();
-    }
+    /**
+     * Runs collision detection without drawing debug information. Makes no GL calls.
+     */
+    public void performCollisionDetection();
 
-    public void setDebugDrawMode(int mode) {
-       debugDraw.setDebugMode(mode);
-    }
+    /**
+     * Draws debug information for the collision world. Must be called on the GL thread, and not while collision detection is running.
+     */
+    public void debugDraw(Camera camera);
 
-    public void enableDebug() {
-        debugActive = true;
-    }
+    /**
+     * Returns the number of objects whose transforms changed and were brought up to date in the last collision detection pass.
+     */
+    public int getSyncedObjectCount();
 
-    public void disableDebug() {
-        debugActive = false;
-    }
+    public void setDebugDrawMode(int mode);
 
-    public boolean isDebugActive() { return debugActive; }
+    public void enableDebug();
 
-    public void enableContactListener() {
-        if(this.contactListener != null)
-            this.contactListener.enable();
-    }
+    public void disableDebug();
 
-    public void disableContactListener() {
-        if(this.contactListener != null)
-            this.contactListener.disable();
-    }
-
-    public void update(Camera camera) {
-        collisionWorld.performDiscreteCollisionDetection();
-
-        if(debugActive) {
-            debugDraw.begin(camera);
-            collisionWorld.debugDrawWorld();
-            debugDraw.end();
-        }
-    }
+    public boolean isDebugActive();
 
     /**
      * Register an object as a dynamic entity in the world. Dynamic entities can collide with static entities, and other dynamic entities.
      * @param component The physics component of the entity to add.
      * @param object The game object being registered, for use in callbacks (collision response).
      */
-    public void registerDynamicEntity(PhysicsComponent component, GameObject object) {
-        component.setUserData(object);
-        collisionWorld.addCollisionObject(component.getCollisionObject(), CollisionFilter.DYNAMIC.getValue(), (short)(CollisionFilter.STATIC.getValue() | CollisionFilter.DYNAMIC.getValue() | CollisionFilter.TRIGGER.getValue()));
-    }
+    public void registerDynamicEntity(PhysicsComponent component, GameObject object);
 
     /**
      * Register an object as static geometry in the world. Static geometry cannot collide with one another, but will collide with dynamic entities.
      * @param component The physics component of the entity to add.
      * @param object The game object being registered, for use in callbacks (collision response).
      */
-    public void registerStaticGeometry(PhysicsComponent component, GameObject object) {
-        component.setUserData(object);
-        component.getCollisionObject().setCollisionFlags(component.getCollisionObject().getCollisionFlags() | btCollisionObject.CollisionFlags.CF_STATIC_OBJECT);
-        collisionWorld.addCollisionObject(component.getCollisionObject(), CollisionFilter.STATIC.getValue(), CollisionFilter.DYNAMIC.getValue());
-    }
+    public void registerStaticGeometry(PhysicsComponent component, GameObject object);
 
-    public void registerTriggerEntity(PhysicsComponent component, GameObject object) {
-        component.setUserData(object);
-        collisionWorld.addCollisionObject(component.getCollisionObject(), CollisionFilter.TRIGGER.getValue(), CollisionFilter.DYNAMIC.getValue());
-    }
+    public void registerTriggerEntity(PhysicsComponent component, GameObject object);
 
-    public void unregister(PhysicsComponent component) {
-        collisionWorld.removeCollisionObject(component.getCollisionObject());
-    }
+    /**
+     * Register an object as static geometry merged with the other static geometry of its spatial chunk and collision tag, so that
+     * chunks are added and removed as units. Contacts and queries still report the object hit within a chunk. Backends that merge
+     * shapes may reject objects whose world transform is scaled with an IllegalArgumentException.
+     */
+    public void registerStaticChunkGeometry(PhysicsComponent component, GameObject object);
 
-    public void clear() {
+    /**
+     * Only keeps the static chunks within a radius of a center in the world, applied on the next pass. An infinite radius, the
+     * default, keeps every chunk.
+     */
+    public void setStaticChunkStreaming(Vector3 center, float radius);
 
-        int size = collisionWorld.getCollisionObjectArray().size();
-        for(int i = 0; i < size; i++) {
-            btCollisionObject obj = collisionWorld.getCollisionObjectArray().at(0);
-            collisionWorld.removeCollisionObject(obj);
-        }
+    public void unregister(PhysicsComponent component);
 
-        int s = collisionWorld.getCollisionObjectArray().size();
+    /**
+     * Sets the layers deciding which objects collide. They are compiled into each object's filter group and mask when it is
+     * registered, so objects already registered keep colliding as before.
+     */
+    public void setCollisionLayers(CollisionLayers layers);
 
-        collisionWorld.setDebugDrawer(debugDraw);
-    }
+    public CollisionLayers getCollisionLayers();
 
-    public void dispose() {
-        collisionWorld.dispose();
-        broadPhaseInterface.dispose();
-        dispatcher.dispose();
-        collisionConfiguration.dispose();
-        contactListener.dispose();
-    }
+    /**
+     * Removes every registered object.
+     */
+    public void clear();
+
+    public void dispose();
+
+    /**
+     * Sets whether or not contacts are reported as buffered events, passed to every {@link ContactEventListener} once per collision
+     * detection pass.
+     */
+    public void setBufferedContacts(boolean buffered);
+
+    public boolean isBufferedContacts();
+
+    public void addContactEventListener(ContactEventListener listener);
+
+    public void removeContactEventListener(ContactEventListener listener);
+
+    /**
+     * Returns the contact events of the last collision detection pass, if contacts are buffered.
+     */
+    public ContactEventBuffer getContactEvents();
+
+    /**
+     * Returns the collision object registered with a handle, see {@link CollisionObject#getHandle()}. Objects unregistered since the
+     * last collision detection pass can still be resolved.
+     */
+    public CollisionObject getCollisionObject(int handle);
+
+    public ArrayList<CollisionObject> getRegisteredCollisionObjects();
 
     /**
      * Ray test for the first object hit with the given filter mask.
@@ -155,57 +137,74 @@ public class CollisionWorld {
      * @param end End of the ray.
      * @return The first object colliding with the ray, or null if none.
      */
-    public CollisionObject rayTestFirst(Vector3 start, Vector3 end, short group, short mask) {
-        ClosestRayResultCallback callback = new ClosestRayResultCallback(start, end);
-        callback.setCollisionFilterGroup(group);
-        callback.setCollisionFilterMask(mask);
-        collisionWorld.rayTest(start, end, callback);
-
-        if(callback.hasHit()) {
-            return (CollisionObject)callback.getCollisionObject().userData;
-        }
-
-        return null;
-    }
+    public CollisionObject rayTestFirst(Vector3 start, Vector3 end, short group, short mask);
 
     /**
      * Ray test for all objects hit with the given filter mask.
-     * @param start The start of the ray.
-     * @param end The end of the ray.
-     * @param group The filter group the ray belongs to.
-     * @param mask The filter mask the ray can collide with.
-     * @return All objects colliding witht the ray, or null if there are none.
+     * @return All objects colliding with the ray, or null if there are none.
      */
-    public CollisionObject[] rayTestAll(Vector3 start, Vector3 end, CollisionFilter group, CollisionFilter mask) {
-        AllHitsRayResultCallback callback = new AllHitsRayResultCallback(start, end);
-        callback.setCollisionFilterGroup(group.getValue());
-        callback.setCollisionFilterMask(mask.getValue());
-        collisionWorld.rayTest(start, end, callback);
+    public CollisionObject[] rayTestAll(Vector3 start, Vector3 end, CollisionFilter group, CollisionFilter mask);
 
-        if(callback.hasHit()) {
-            btCollisionObjectConstArray hits = callback.getCollisionObjects();
-
-            CollisionObject[] hitObjects = new CollisionObject[hits.size()];
+    /**
+     * Ray test for all objects hit with the given filter mask, nearest first, without allocating.
+     * @param out Cleared, then filled with the objects hit.
+     * @return The number of objects hit.
+     */
+    public int rayTestAll(Vector3 start, Vector3 end, short group, short mask, ArrayList<CollisionObject> out);
 
-            for(int i = 0; i < hits.size(); i++) {
-                hitObjects[i] = (CollisionObject)hits.at(i).userData;
-            }
+    /**
+     * Tests several rays for the first object each hits. Ray i goes from (starts[i * 3], starts[i * 3 + 1], starts[i * 3 + 2]) to
+     * the same position in ends. Results are written to the caller's arrays at the ray's index, three floats per ray for points and
+     * normals, which are left unchanged for rays that hit nothing. Any of the arrays may be null if not needed.
+     * @param hitHandles The handle of the object hit by each ray, see {@link #getCollisionObject(int)}, or -1 if none.
+     * @param hitFractions How far along each ray the hit is, from 0 at the start to 1 at the end, or 1 if none.
+     * @return The number of rays that hit an object.
+     */
+    public int rayTestFirst(float[] starts, float[] ends, int rayCount, short group, short mask,
+                            int[] hitHandles, float[] hitFractions, float[] hitPoints, float[] hitNormals);
 
-            return hitObjects;
-        }
+    /**
+     * Ray test for all objects hit, nearest first, writing the results to the caller's arrays. Points and normals take three floats
+     * per hit, and may be null if not needed.
+     * @param maxHits The most hits written; the arrays must hold at least this many.
+     * @return The number of hits written.
+     */
+    public int rayTestAll(Vector3 start, Vector3 end, short group, short mask,
+                          int[] hitHandles, float[] hitFractions, float[] hitPoints, float[] hitNormals, int maxHits);
 
-        return null;
-    }
+    /**
+     * Sweeps a sphere from one position to another, finding the first object it hits with the given filter mask.
+     * @param hitPoint Set to the point of the hit, if any. May be null.
+     * @param hitNormal Set to the normal of the hit, if any. May be null.
+     * @return The first object hit, or null if none. See {@link #getSweepFraction()} for how far along the sweep it was hit.
+     */
+    public CollisionObject sweepSphere(Vector3 start, Vector3 end, float radius, short group, short mask, Vector3 hitPoint, Vector3 hitNormal);
 
-    public ArrayList<CollisionObject> getRegisteredCollisionObjects() {
-        btCollisionObjectArray objs = collisionWorld.getCollisionObjectArray();
+    /**
+     * Sweeps a shape from one position to another, finding the first object it hits with the given filter mask. The shape is placed
+     * as on an object at each position, so its offset applies, and it isn't rotated.
+     * @param hitPoint Set to the point of the hit, if any. May be null.
+     * @param hitNormal Set to the normal of the hit, if any. May be null.
+     * @return The first object hit, or null if none. See {@link #getSweepFraction()} for how far along the sweep it was hit.
+     */
+    public CollisionObject sweepTest(CollisionShape shape, Vector3 start, Vector3 end, short group, short mask, Vector3 hitPoint, Vector3 hitNormal);
 
-        ArrayList<CollisionObject> objArray = new ArrayList<CollisionObject>();
+    /**
+     * Returns how far along the last sweep its hit was, from 0 at the start to 1 at the end, or 1 if it hit nothing.
+     */
+    public float getSweepFraction();
 
-        for(int i = 0; i < objs.size(); i++) {
-            objArray.add((CollisionObject)objs.at(i).userData);
-        }
+    /**
+     * Finds the objects overlapping a sphere with the given filter mask.
+     * @param out Cleared, then filled with the overlapping objects.
+     * @return The number of overlapping objects.
+     */
+    public int overlapSphere(Vector3 center, float radius, short group, short mask, ArrayList<CollisionObject> out);
 
-        return objArray;
-    }
+    /**
+     * Finds the objects overlapping an axis aligned box with the given filter mask.
+     * @param out Cleared, then filled with the overlapping objects.
+     * @return The number of overlapping objects.
+     */
+    public int overlapBox(Vector3 center, Vector3 halfExtents, short group, short mask, ArrayList<CollisionObject> out);
 }
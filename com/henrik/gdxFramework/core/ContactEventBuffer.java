@@ -0,0 +1,241 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.math.Vector3;
+
+import java.util.Arrays;
+
+/**
+ * Contact events of one collision detection pass, kept in reusable primitive arrays. Contacts are recorded per pair of collision
+ * object handles between {@link #begin()} and {@link #end()}, keeping the deepest contact of each pair, and compared to the pairs of
+ * the previous pass to produce begin, stay and end events. Events are sorted by pair, with the lower handle as object A.
+ *
+ * Normals point from object B towards object A. Depths are positive when the objects overlap.
+ */
+public class ContactEventBuffer {
+
+    public static final int BEGIN = 0;
+    public static final int STAY = 1;
+    public static final int END = 2;
+
+    // Events of the last pass
+    private int[] types;
+    private int[] handlesA, handlesB;
+    private int[] tagsA, tagsB;
+    private float[] normals; // x, y, z
+    private float[] depths;
+    private int count;
+
+    // Contacts recorded during the current pass, possibly several per pair
+    private long[] contactKeys;
+    private int[] contactTagsA, contactTagsB;
+    private float[] contactNormals;
+    private float[] contactDepths;
+    private int contactCount;
+
+    // Distinct pairs in contact, sorted by key, for the current and previous pass
+    private long[] pairs, previousPairs;
+    private int[] pairTagsA, pairTagsB, previousPairTagsA, previousPairTagsB;
+    private int[] pairContacts; // Deepest contact of each pair
+    private int pairCount, previousPairCount;
+
+    public ContactEventBuffer() {
+        this(64);
+    }
+
+    public ContactEventBuffer(int capacity) {
+        types = new int[capacity];
+        handlesA = new int[capacity];
+        handlesB = new int[capacity];
+        tagsA = new int[capacity];
+        tagsB = new int[capacity];
+        normals = new float[capacity * 3];
+        depths = new float[capacity];
+
+        contactKeys = new long[capacity];
+        contactTagsA = new int[capacity];
+        contactTagsB = new int[capacity];
+        contactNormals = new float[capacity * 3];
+        contactDepths = new float[capacity];
+
+        pairs = new long[capacity];
+        previousPairs = new long[capacity];
+        pairTagsA = new int[capacity];
+        pairTagsB = new int[capacity];
+        previousPairTagsA = new int[capacity];
+        previousPairTagsB = new int[capacity];
+        pairContacts = new int[capacity];
+    }
+
+    /**
+     * Starts recording the contacts of a pass.
+     */
+    public void begin() {
+        contactCount = 0;
+    }
+
+    /**
+     * Records a contact between two objects. Several contacts may be recorded for the same pair, of which the deepest is kept.
+     * @param normalX The contact normal, pointing from object B towards object A.
+     */
+    public void addContact(int handleA, int handleB, int tagA, int tagB, float normalX, float normalY, float normalZ, float depth) {
+        if(contactCount == contactKeys.length) {
+            int capacity = contactKeys.length * 2;
+            contactKeys = Arrays.copyOf(contactKeys, capacity);
+            contactTagsA = Arrays.copyOf(contactTagsA, capacity);
+            contactTagsB = Arrays.copyOf(contactTagsB, capacity);
+            contactNormals = Arrays.copyOf(contactNormals, capacity * 3);
+            contactDepths = Arrays.copyOf(contactDepths, capacity);
+        }
+
+        // Order the pair so that each pair has one key
+        if(handleA > handleB) {
+            int handle = handleA; handleA = handleB; handleB = handle;
+            int tag = tagA; tagA = tagB; tagB = tag;
+            normalX = -normalX; normalY = -normalY; normalZ = -normalZ;
+        }
+
+        int i = contactCount++;
+        contactKeys[i] = ((long)handleA << 32) | (handleB & 0xffffffffL);
+        contactTagsA[i] = tagA;
+        contactTagsB[i] = tagB;
+        contactNormals[i * 3] = normalX;
+        contactNormals[i * 3 + 1] = normalY;
+        contactNormals[i * 3 + 2] = normalZ;
+        contactDepths[i] = depth;
+    }
+
+    /**
+     * Finishes recording the contacts of a pass, and produces its events.
+     */
+    public void end() {
+        // The pairs of this pass become the previous pairs
+        long[] keys = previousPairs; previousPairs = pairs; pairs = keys;
+        int[] tags = previousPairTagsA; previousPairTagsA = pairTagsA; pairTagsA = tags;
+        tags = previousPairTagsB; previousPairTagsB = pairTagsB; pairTagsB = tags;
+        previousPairCount = pairCount;
+
+        ensurePairCapacity(contactCount);
+
+        // Sorted distinct pairs
+        System.arraycopy(contactKeys, 0, pairs, 0, contactCount);
+        Arrays.sort(pairs, 0, contactCount);
+        pairCount = 0;
+        for(int i = 0; i < contactCount; i++) {
+            if(pairCount == 0 || pairs[pairCount - 1] != pairs[i])
+                pairs[pairCount++] = pairs[i];
+        }
+
+        // Deepest contact of each pair
+        Arrays.fill(pairContacts, 0, pairCount, -1);
+        for(int i = 0; i < contactCount; i++) {
+            int pair = Arrays.binarySearch(pairs, 0, pairCount, contactKeys[i]);
+            int deepest = pairContacts[pair];
+            if(deepest < 0 || contactDepths[i] > contactDepths[deepest]) {
+                pairContacts[pair] = i;
+                pairTagsA[pair] = contactTagsA[i];
+                pairTagsB[pair] = contactTagsB[i];
+            }
+        }
+
+        // Merge with the previous pairs: pairs only in this pass begin, pairs in both stay, and pairs only in the previous one end
+        count = 0;
+        int p = 0, q = 0;
+        while(p < pairCount || q < previousPairCount) {
+            if(q == previousPairCount || (p < pairCount && pairs[p] < previousPairs[q])) {
+                addPairEvent(BEGIN, p++);
+            } else if(p == pairCount || previousPairs[q] < pairs[p]) {
+                addEvent(END, previousPairs[q], previousPairTagsA[q], previousPairTagsB[q], 0, 0, 0, 0);
+                q++;
+            } else {
+                addPairEvent(STAY, p++);
+                q++;
+            }
+        }
+    }
+
+    private void addPairEvent(int type, int pair) {
+        int contact = pairContacts[pair];
+        addEvent(type, pairs[pair], pairTagsA[pair], pairTagsB[pair],
+                contactNormals[contact * 3], contactNormals[contact * 3 + 1], contactNormals[contact * 3 + 2], contactDepths[contact]);
+    }
+
+    private void addEvent(int type, long pair, int tagA, int tagB, float normalX, float normalY, float normalZ, float depth) {
+        if(count == types.length) {
+            int capacity = types.length * 2;
+            types = Arrays.copyOf(types, capacity);
+            handlesA = Arrays.copyOf(handlesA, capacity);
+            handlesB = Arrays.copyOf(handlesB, capacity);
+            tagsA = Arrays.copyOf(tagsA, capacity);
+            tagsB = Arrays.copyOf(tagsB, capacity);
+            normals = Arrays.copyOf(normals, capacity * 3);
+            depths = Arrays.copyOf(depths, capacity);
+        }
+
+        int i = count++;
+        types[i] = type;
+        handlesA[i] = (int)(pair >>> 32);
+        handlesB[i] = (int)pair;
+        tagsA[i] = tagA;
+        tagsB[i] = tagB;
+        normals[i * 3] = normalX;
+        normals[i * 3 + 1] = normalY;
+        normals[i * 3 + 2] = normalZ;
+        depths[i] = depth;
+    }
+
+    private void ensurePairCapacity(int capacity) {
+        if(pairs.length < capacity) {
+            int length = Math.max(capacity, pairs.length * 2);
+            pairs = new long[length];
+            pairTagsA = new int[length];
+            pairTagsB = new int[length];
+        }
+
+        // Not swapped with the previous pairs, so sized separately
+        if(pairContacts.length < capacity)
+            pairContacts = new int[Math.max(capacity, pairContacts.length * 2)];
+    }
+
+    /**
+     * Returns the number of events of the last pass.
+     */
+    public int size() { return count; }
+
+    /**
+     * Returns the type of an event, {@link #BEGIN}, {@link #STAY} or {@link #END}.
+     */
+    public int getType(int event) { return types[event]; }
+
+    public int getHandleA(int event) { return handlesA[event]; }
+
+    public int getHandleB(int event) { return handlesB[event]; }
+
+    /**
+     * Returns the {@link CollisionTag#getID()} of object A of an event.
+     */
+    public int getTagA(int event) { return tagsA[event]; }
+
+    public int getTagB(int event) { return tagsB[event]; }
+
+    /**
+     * Writes the normal of an event's deepest contact to out. Zero for end events.
+     */
+    public Vector3 getNormal(int event, Vector3 out) {
+        return out.set(normals[event * 3], normals[event * 3 + 1], normals[event * 3 + 2]);
+    }
+
+    /**
+     * Returns the depth of an event's deepest contact. Zero for end events.
+     */
+    public float getDepth(int event) { return depths[event]; }
+
+    /**
+     * Forgets every pair in contact, so that no end events are produced for them.
+     */
+    public void clear() {
+        count = 0;
+        contactCount = 0;
+        pairCount = 0;
+        previousPairCount = 0;
+    }
+}
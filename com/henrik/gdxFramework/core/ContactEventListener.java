@@ -0,0 +1,12 @@
+package com.henrik.gdxFramework.core;
+
+/**
+ * Receives the buffered contact events of a collision world, see {@link CollisionWorld#setBufferedContacts(boolean)}.
+ */
+public interface ContactEventListener {
+    /**
+     * Called once per collision detection pass with every event of the pass. Handles can be resolved with
+     * {@link CollisionWorld#getCollisionObject(int)}.
+     */
+    public void onContactEvents(ContactEventBuffer events, CollisionWorld world);
+}
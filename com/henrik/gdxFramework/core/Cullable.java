@@ -0,0 +1,22 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.henrik.gdxFramework.entities.GameObject;
+
+/**
+ * Something drawn by a world that can be frustum culled by its {@link CullingTree}. See {@link World#registerCullable(Cullable, GameObject)}.
+ */
+public interface Cullable {
+
+    /**
+     * Writes the world space bounds of this cullable, as drawn for the given object, to out.
+     */
+    void getWorldBounds(GameObject object, BoundingBox out);
+
+    /**
+     * Sets the proxy holding the visibility of this cullable, or null when it is no longer culled by a world.
+     */
+    void setCullingProxy(CullingProxy proxy);
+
+    CullingProxy getCullingProxy();
+}
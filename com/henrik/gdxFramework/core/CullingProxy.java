@@ -0,0 +1,38 @@
+package com.henrik.gdxFramework.core;
+
+import com.henrik.gdxFramework.entities.GameObject;
+
+/**
+ * The entry of a {@link Cullable} in a {@link CullingTree} or {@link DecalCuller}. Holds whether or not it was visible in the last cull.
+ */
+public class CullingProxy {
+    private final Cullable cullable;
+    private final GameObject object;
+
+    CullingTree tree;
+    int node; // Node in the culling tree, or index in the decal culler
+    boolean visible;
+    int transformVersion; // Version of the object's transform the bounds were last computed for
+
+    public CullingProxy(Cullable cullable, GameObject object) {
+        this.cullable = cullable;
+        this.object = object;
+        node = -1;
+        visible = false;
+    }
+
+    public Cullable getCullable() {
+        return cullable;
+    }
+
+    public GameObject getObject() {
+        return object;
+    }
+
+    /**
+     * Returns whether or not this proxy was within the camera's frustum in the last cull.
+     */
+    public boolean isVisible() {
+        return visible;
+    }
+}
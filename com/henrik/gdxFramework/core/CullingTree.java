@@ -0,0 +1,568 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.math.collision.BoundingBox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A dynamic bounding volume hierarchy of {@link CullingProxy}s, used to frustum cull everything a world draws in one query. Leaves
+ * hold bounds enlarged by a margin, so objects only need to be reinserted once they move out of them. The tree is kept balanced
+ * with rotations as leaves are inserted and removed. Nodes are stored as parallel arrays indexed by node id.
+ */
+public class CullingTree {
+
+    private static final int NULL = -1;
+
+    // Node bounds
+    private float[] minX, minY, minZ;
+    private float[] maxX, maxY, maxZ;
+
+    // Node links. Free nodes are linked through parent.
+    private int[] parent;
+    private int[] child1;
+    private int[] child2;
+    private int[] height; // 0 for leaves, -1 for free nodes
+    private int[] failedPlane; // Plane that rejected the node in the last cull, or -1
+    private CullingProxy[] proxies;
+
+    private int root;
+    private int freeList;
+    private int nodeCapacity;
+
+    private float margin;
+
+    private final ArrayList<CullingProxy> proxyList;
+    private final ArrayList<CullingProxy> visible;
+    private int frame;
+
+    // Whether or not leaves were added, removed or reinserted since the last cull, and the camera it was done with
+    private boolean changed;
+    private Camera culledCamera;
+    private int culledCameraVersion;
+
+    // Scratch
+    private int[] stack = new int[64];
+    private int[] subtreeStack = new int[64];
+    private final float[] planes = new float[24];
+    private final BoundingBox bounds = new BoundingBox();
+
+    /**
+     * @param margin The distance leaf bounds are enlarged by on each side.
+     */
+    public CullingTree(float margin) {
+        this.margin = margin;
+        root = NULL;
+        proxyList = new ArrayList<CullingProxy>();
+        visible = new ArrayList<CullingProxy>();
+        frame = 0;
+        allocate(16);
+    }
+
+    private void allocate(int capacity) {
+        int oldCapacity = nodeCapacity;
+        if(oldCapacity == 0) {
+            minX = new float[capacity]; minY = new float[capacity]; minZ = new float[capacity];
+            maxX = new float[capacity]; maxY = new float[capacity]; maxZ = new float[capacity];
+            parent = new int[capacity];
+            child1 = new int[capacity];
+            child2 = new int[capacity];
+            height = new int[capacity];
+            failedPlane = new int[capacity];
+            proxies = new CullingProxy[capacity];
+        } else {
+            minX = Arrays.copyOf(minX, capacity); minY = Arrays.copyOf(minY, capacity); minZ = Arrays.copyOf(minZ, capacity);
+            maxX = Arrays.copyOf(maxX, capacity); maxY = Arrays.copyOf(maxY, capacity); maxZ = Arrays.copyOf(maxZ, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            child1 = Arrays.copyOf(child1, capacity);
+            child2 = Arrays.copyOf(child2, capacity);
+            height = Arrays.copyOf(height, capacity);
+            failedPlane = Arrays.copyOf(failedPlane, capacity);
+            proxies = Arrays.copyOf(proxies, capacity);
+        }
+
+        // Link the new nodes into the free list
+        for(int i = oldCapacity; i < capacity - 1; i++) {
+            parent[i] = i + 1;
+            height[i] = -1;
+        }
+        parent[capacity - 1] = NULL;
+        height[capacity - 1] = -1;
+
+        freeList = oldCapacity;
+        nodeCapacity = capacity;
+    }
+
+    private int allocateNode() {
+        if(freeList == NULL)
+            allocate(nodeCapacity * 2);
+
+        int node = freeList;
+        freeList = parent[node];
+        parent[node] = NULL;
+        child1[node] = NULL;
+        child2[node] = NULL;
+        height[node] = 0;
+        failedPlane[node] = -1;
+        proxies[node] = null;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        parent[node] = freeList;
+        height[node] = -1;
+        proxies[node] = null;
+        freeList = node;
+    }
+
+    /**
+     * Adds a proxy to the tree, computing its bounds from its cullable.
+     */
+    public void add(CullingProxy proxy) {
+        if(proxy.tree != null)
+            throw new IllegalArgumentException("Proxy is already in a culling tree");
+
+        proxy.getCullable().getWorldBounds(proxy.getObject(), bounds);
+        proxy.transformVersion = proxy.getObject().getWorldTransformVersion();
+
+        int node = allocateNode();
+        setFatBounds(node, bounds);
+        proxies[node] = proxy;
+        insertLeaf(node);
+
+        proxy.tree = this;
+        proxy.node = node;
+        proxyList.add(proxy);
+        changed = true;
+    }
+
+    public void remove(CullingProxy proxy) {
+        if(proxy.tree != this)
+            return;
+
+        removeLeaf(proxy.node);
+        freeNode(proxy.node);
+        changed = true;
+
+        proxy.tree = null;
+        proxy.node = NULL;
+        proxyList.remove(proxy);
+        if(proxy.visible) {
+            proxy.visible = false;
+            visible.remove(proxy);
+        }
+    }
+
+    /**
+     * Updates the bounds of a proxy. The proxy is only reinserted if its bounds left its enlarged leaf bounds.
+     * @return Whether or not the proxy was reinserted.
+     */
+    public boolean move(CullingProxy proxy, BoundingBox worldBounds) {
+        int node = proxy.node;
+        if(minX[node] <= worldBounds.min.x && minY[node] <= worldBounds.min.y && minZ[node] <= worldBounds.min.z &&
+                maxX[node] >= worldBounds.max.x && maxY[node] >= worldBounds.max.y && maxZ[node] >= worldBounds.max.z)
+            return false;
+
+        removeLeaf(node);
+        setFatBounds(node, worldBounds);
+        insertLeaf(node);
+        changed = true;
+        return true;
+    }
+
+    /**
+     * Recomputes the bounds of every proxy whose object's transform changed, reinserting those that moved out of their leaf bounds.
+     */
+    public void update() {
+        for(int i = 0; i < proxyList.size(); i++) {
+            CullingProxy proxy = proxyList.get(i);
+            int version = proxy.getObject().getWorldTransformVersion();
+            if(version == proxy.transformVersion)
+                continue;
+
+            proxy.getCullable().getWorldBounds(proxy.getObject(), bounds);
+            proxy.transformVersion = version;
+            move(proxy, bounds);
+        }
+    }
+
+    /**
+     * Culls the tree unless neither the tree nor the camera changed since the last cull, in which case the last result is kept.
+     * @param cameraVersion A number that changes whenever the camera's view changes, see {@link World#getCameraVersion()}.
+     */
+    public ArrayList<CullingProxy> cull(Camera camera, int cameraVersion) {
+        if(!changed && camera == culledCamera && cameraVersion == culledCameraVersion)
+            return visible;
+
+        cull(camera);
+        culledCameraVersion = cameraVersion;
+        return visible;
+    }
+
+    /**
+     * Finds every proxy within the camera's frustum. Subtrees outside the frustum are skipped, and subtrees entirely inside it are
+     * added without testing their nodes.
+     * @return The visible proxies, valid until the next cull.
+     */
+    public ArrayList<CullingProxy> cull(Camera camera) {
+        frame++;
+        changed = false;
+        culledCamera = camera;
+        culledCameraVersion = -1;
+
+        // Only proxies visible last cull need to be reset
+        for(int i = 0; i < visible.size(); i++) {
+            visible.get(i).visible = false;
+        }
+        visible.clear();
+        if(root == NULL)
+            return visible;
+
+        FrustumPlanes.copy(camera.frustum, planes);
+
+        int top = 0;
+        stack[top++] = root;
+        while(top > 0) {
+            int node = stack[--top];
+
+            int side = classify(node);
+            if(side < 0)
+                continue;
+
+            if(side > 0 || height[node] == 0) {
+                addSubtree(node);
+                continue;
+            }
+
+            if(top + 2 > stack.length)
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            stack[top++] = child1[node];
+            stack[top++] = child2[node];
+        }
+
+        return visible;
+    }
+
+    /**
+     * Classifies the bounds of a node against the frustum planes, testing the plane that rejected it last time first.
+     * @return -1 if outside, 0 if intersecting and 1 if inside.
+     */
+    private int classify(int node) {
+        float cx = (minX[node] + maxX[node]) * 0.5f;
+        float cy = (minY[node] + maxY[node]) * 0.5f;
+        float cz = (minZ[node] + maxZ[node]) * 0.5f;
+        float ex = (maxX[node] - minX[node]) * 0.5f;
+        float ey = (maxY[node] - minY[node]) * 0.5f;
+        float ez = (maxZ[node] - minZ[node]) * 0.5f;
+
+        int first = failedPlane[node];
+        if(first >= 0 && FrustumPlanes.isOutside(planes, first, cx, cy, cz, ex, ey, ez))
+            return -1;
+
+        int side = 1;
+        for(int p = 0; p < 24; p += 4) {
+            float nx = planes[p], ny = planes[p + 1], nz = planes[p + 2];
+            float distance = nx * cx + ny * cy + nz * cz + planes[p + 3];
+            float radius = Math.abs(nx) * ex + Math.abs(ny) * ey + Math.abs(nz) * ez;
+
+            if(distance + radius < 0) {
+                failedPlane[node] = p / 4;
+                return -1;
+            }
+            if(distance - radius < 0)
+                side = 0;
+        }
+        failedPlane[node] = -1;
+        return side;
+    }
+
+    /**
+     * Adds every leaf under the given node to the visible set.
+     */
+    private void addSubtree(int subtree) {
+        if(height[subtree] == 0) {
+            markVisible(subtree);
+            return;
+        }
+
+        if(subtreeStack.length < height[subtree] + 2)
+            subtreeStack = new int[height[subtree] + 2];
+
+        int top = 0;
+        subtreeStack[top++] = subtree;
+        while(top > 0) {
+            int node = subtreeStack[--top];
+            if(height[node] == 0) {
+                markVisible(node);
+            } else {
+                subtreeStack[top++] = child1[node];
+                subtreeStack[top++] = child2[node];
+            }
+        }
+    }
+
+    private void markVisible(int leaf) {
+        CullingProxy proxy = proxies[leaf];
+        proxy.visible = true;
+        visible.add(proxy);
+    }
+
+    /**
+     * Returns the proxies found visible by the last cull.
+     */
+    public ArrayList<CullingProxy> getVisible() {
+        return visible;
+    }
+
+    /**
+     * Returns a counter incremented on every cull.
+     */
+    public int getFrame() {
+        return frame;
+    }
+
+    public int getProxyCount() {
+        return proxyList.size();
+    }
+
+    /**
+     * Returns the height of the tree, 0 if it is empty or holds a single proxy.
+     */
+    public int getHeight() {
+        return root == NULL ? 0 : height[root];
+    }
+
+    public void clear() {
+        for(int i = 0; i < proxyList.size(); i++) {
+            CullingProxy proxy = proxyList.get(i);
+            proxy.tree = null;
+            proxy.node = NULL;
+            proxy.visible = false;
+        }
+        proxyList.clear();
+        visible.clear();
+
+        root = NULL;
+        nodeCapacity = 0;
+        allocate(16);
+        changed = true;
+    }
+
+    private void setFatBounds(int node, BoundingBox worldBounds) {
+        minX[node] = worldBounds.min.x - margin;
+        minY[node] = worldBounds.min.y - margin;
+        minZ[node] = worldBounds.min.z - margin;
+        maxX[node] = worldBounds.max.x + margin;
+        maxY[node] = worldBounds.max.y + margin;
+        maxZ[node] = worldBounds.max.z + margin;
+    }
+
+    private static float area(float dx, float dy, float dz) {
+        return dx * dy + dy * dz + dz * dx;
+    }
+
+    private float area(int node) {
+        return area(maxX[node] - minX[node], maxY[node] - minY[node], maxZ[node] - minZ[node]);
+    }
+
+    private float unionArea(int a, int b) {
+        return area(Math.max(maxX[a], maxX[b]) - Math.min(minX[a], minX[b]),
+                Math.max(maxY[a], maxY[b]) - Math.min(minY[a], minY[b]),
+                Math.max(maxZ[a], maxZ[b]) - Math.min(minZ[a], minZ[b]));
+    }
+
+    private void setUnion(int node, int a, int b) {
+        minX[node] = Math.min(minX[a], minX[b]);
+        minY[node] = Math.min(minY[a], minY[b]);
+        minZ[node] = Math.min(minZ[a], minZ[b]);
+        maxX[node] = Math.max(maxX[a], maxX[b]);
+        maxY[node] = Math.max(maxY[a], maxY[b]);
+        maxZ[node] = Math.max(maxZ[a], maxZ[b]);
+    }
+
+    private void insertLeaf(int leaf) {
+        if(root == NULL) {
+            root = leaf;
+            parent[root] = NULL;
+            return;
+        }
+
+        // Find the sibling that increases the total surface area of the tree the least
+        int index = root;
+        while(height[index] > 0) {
+            int c1 = child1[index];
+            int c2 = child2[index];
+
+            float area = area(index);
+            float combinedArea = unionArea(index, leaf);
+
+            // Cost of making a new parent for this node and the leaf
+            float cost = 2 * combinedArea;
+
+            // Minimum cost of pushing the leaf further down the tree
+            float inheritanceCost = 2 * (combinedArea - area);
+
+            float cost1 = unionArea(leaf, c1) + inheritanceCost;
+            if(height[c1] > 0)
+                cost1 -= area(c1);
+            float cost2 = unionArea(leaf, c2) + inheritanceCost;
+            if(height[c2] > 0)
+                cost2 -= area(c2);
+
+            if(cost < cost1 && cost < cost2)
+                break;
+
+            index = cost1 < cost2 ? c1 : c2;
+        }
+
+        int sibling = index;
+        int oldParent = parent[sibling];
+        int newParent = allocateNode();
+        parent[newParent] = oldParent;
+        setUnion(newParent, leaf, sibling);
+        height[newParent] = height[sibling] + 1;
+
+        if(oldParent != NULL) {
+            if(child1[oldParent] == sibling)
+                child1[oldParent] = newParent;
+            else
+                child2[oldParent] = newParent;
+        } else {
+            root = newParent;
+        }
+        child1[newParent] = sibling;
+        child2[newParent] = leaf;
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+
+        refit(parent[leaf]);
+    }
+
+    private void removeLeaf(int leaf) {
+        if(leaf == root) {
+            root = NULL;
+            return;
+        }
+
+        int leafParent = parent[leaf];
+        int grandParent = parent[leafParent];
+        int sibling = child1[leafParent] == leaf ? child2[leafParent] : child1[leafParent];
+
+        if(grandParent != NULL) {
+            if(child1[grandParent] == leafParent)
+                child1[grandParent] = sibling;
+            else
+                child2[grandParent] = sibling;
+            parent[sibling] = grandParent;
+            freeNode(leafParent);
+
+            refit(grandParent);
+        } else {
+            root = sibling;
+            parent[sibling] = NULL;
+            freeNode(leafParent);
+        }
+    }
+
+    /**
+     * Balances and recomputes the bounds and heights of every node from the given one up to the root.
+     */
+    private void refit(int index) {
+        while(index != NULL) {
+            index = balance(index);
+
+            int c1 = child1[index];
+            int c2 = child2[index];
+            height[index] = 1 + Math.max(height[c1], height[c2]);
+            setUnion(index, c1, c2);
+
+            index = parent[index];
+        }
+    }
+
+    /**
+     * Rotates the taller child of a node up if the heights of its children differ by more than one.
+     * @return The node now at the position of the given node.
+     */
+    private int balance(int a) {
+        if(height[a] < 2)
+            return a;
+
+        int b = child1[a];
+        int c = child2[a];
+        int difference = height[c] - height[b];
+
+        if(difference > 1) {
+            int f = child1[c];
+            int g = child2[c];
+
+            // Swap a and c
+            child1[c] = a;
+            parent[c] = parent[a];
+            parent[a] = c;
+            replaceChild(parent[c], a, c);
+
+            if(height[f] > height[g]) {
+                child2[c] = f;
+                child2[a] = g;
+                parent[g] = a;
+                setUnion(a, b, g);
+                setUnion(c, a, f);
+                height[a] = 1 + Math.max(height[b], height[g]);
+                height[c] = 1 + Math.max(height[a], height[f]);
+            } else {
+                child2[c] = g;
+                child2[a] = f;
+                parent[f] = a;
+                setUnion(a, b, f);
+                setUnion(c, a, g);
+                height[a] = 1 + Math.max(height[b], height[f]);
+                height[c] = 1 + Math.max(height[a], height[g]);
+            }
+            return c;
+        }
+
+        if(difference < -1) {
+            int d = child1[b];
+            int e = child2[b];
+
+            // Swap a and b
+            child1[b] = a;
+            parent[b] = parent[a];
+            parent[a] = b;
+            replaceChild(parent[b], a, b);
+
+            if(height[d] > height[e]) {
+                child2[b] = d;
+                child1[a] = e;
+                parent[e] = a;
+                setUnion(a, c, e);
+                setUnion(b, a, d);
+                height[a] = 1 + Math.max(height[c], height[e]);
+                height[b] = 1 + Math.max(height[a], height[d]);
+            } else {
+                child2[b] = e;
+                child1[a] = d;
+                parent[d] = a;
+                setUnion(a, c, d);
+                setUnion(b, a, e);
+                height[a] = 1 + Math.max(height[c], height[d]);
+                height[b] = 1 + Math.max(height[a], height[e]);
+            }
+            return b;
+        }
+
+        return a;
+    }
+
+    private void replaceChild(int node, int oldChild, int newChild) {
+        if(node == NULL) {
+            root = newChild;
+        } else if(child1[node] == oldChild) {
+            child1[node] = newChild;
+        } else {
+            child2[node] = newChild;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.henrik.gdxFramework.entities.GameObject;
+
+import java.util.Arrays;
+
+/**
+ * Frustum culls decals in a single pass over flat arrays. Decals are typically many small, constantly moving billboards, for which
+ * the reinsertions of a {@link CullingTree} cost more than testing each one. The bounds of every decal are kept as centers and
+ * half extents relative to their object, moved to the object's position and tested against the six frustum planes in one loop
+ * without allocating. Results are kept for decals that didn't move while the camera stays still.
+ */
+public class DecalCuller {
+
+    private CullingProxy[] proxies;
+    private int count;
+
+    // Bounds relative to the object's position
+    private float[] offsetX, offsetY, offsetZ;
+    private float[] extentX, extentY, extentZ;
+
+    private boolean[] visible;
+    private int visibleCount;
+
+    // Transform version each decal's bounds were last tested at, and the plane that rejected it, or -1
+    private int[] versions;
+    private int[] failedPlane;
+
+    private Camera culledCamera;
+    private int culledCameraVersion;
+
+    private final float[] planes = new float[24];
+    private final BoundingBox bounds = new BoundingBox();
+
+    public DecalCuller() {
+        proxies = new CullingProxy[0];
+        offsetX = new float[0]; offsetY = new float[0]; offsetZ = new float[0];
+        extentX = new float[0]; extentY = new float[0]; extentZ = new float[0];
+        visible = new boolean[0];
+        versions = new int[0];
+        failedPlane = new int[0];
+        count = 0;
+        ensureCapacity(64);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if(proxies.length >= capacity)
+            return;
+
+        capacity = Math.max(capacity, proxies.length * 2);
+        proxies = Arrays.copyOf(proxies, capacity);
+        offsetX = Arrays.copyOf(offsetX, capacity);
+        offsetY = Arrays.copyOf(offsetY, capacity);
+        offsetZ = Arrays.copyOf(offsetZ, capacity);
+        extentX = Arrays.copyOf(extentX, capacity);
+        extentY = Arrays.copyOf(extentY, capacity);
+        extentZ = Arrays.copyOf(extentZ, capacity);
+        visible = Arrays.copyOf(visible, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+        failedPlane = Arrays.copyOf(failedPlane, capacity);
+    }
+
+    /**
+     * Adds a proxy, capturing the bounds of its cullable relative to its object's current position. The bounds are assumed not to
+     * change relative to the object afterwards.
+     */
+    public void add(CullingProxy proxy) {
+        ensureCapacity(count + 1);
+
+        GameObject object = proxy.getObject();
+        proxy.getCullable().getWorldBounds(object, bounds);
+
+        float[] transform = object.getWorldTransform().val;
+        int i = count++;
+        proxies[i] = proxy;
+        offsetX[i] = (bounds.min.x + bounds.max.x) * 0.5f - transform[12];
+        offsetY[i] = (bounds.min.y + bounds.max.y) * 0.5f - transform[13];
+        offsetZ[i] = (bounds.min.z + bounds.max.z) * 0.5f - transform[14];
+        extentX[i] = (bounds.max.x - bounds.min.x) * 0.5f;
+        extentY[i] = (bounds.max.y - bounds.min.y) * 0.5f;
+        extentZ[i] = (bounds.max.z - bounds.min.z) * 0.5f;
+        visible[i] = false;
+        versions[i] = object.getWorldTransformVersion() - 1; // Tested on the next cull
+        failedPlane[i] = -1;
+
+        proxy.node = i;
+        proxy.visible = false;
+    }
+
+    /**
+     * Removes a proxy, moving the last proxy into its place.
+     */
+    public void remove(CullingProxy proxy) {
+        int i = proxy.node;
+        if(i < 0 || i >= count || proxies[i] != proxy)
+            return;
+
+        int last = --count;
+        if(visible[i])
+            visibleCount--;
+
+        proxies[i] = proxies[last];
+        offsetX[i] = offsetX[last];
+        offsetY[i] = offsetY[last];
+        offsetZ[i] = offsetZ[last];
+        extentX[i] = extentX[last];
+        extentY[i] = extentY[last];
+        extentZ[i] = extentZ[last];
+        visible[i] = visible[last];
+        versions[i] = versions[last];
+        failedPlane[i] = failedPlane[last];
+        proxies[i].node = i;
+        proxies[last] = null;
+
+        proxy.node = -1;
+        proxy.visible = false;
+    }
+
+    /**
+     * Tests decals against the camera's frustum and writes the result to their proxies. Decals whose object didn't move keep their
+     * last result unless the camera changed, and each decal tests the plane that rejected it last time first.
+     * @param cameraVersion A number that changes whenever the camera's view changes, see {@link World#getCameraVersion()}.
+     */
+    public void cull(Camera camera, int cameraVersion) {
+        boolean cameraChanged = camera != culledCamera || cameraVersion != culledCameraVersion;
+        if(cameraChanged)
+            FrustumPlanes.copy(camera.frustum, planes);
+        culledCamera = camera;
+        culledCameraVersion = cameraVersion;
+
+        // Retest the bounds of objects that moved, or all of them if the camera changed. A box is outside if it is entirely behind
+        // any plane.
+        for(int i = 0; i < count; i++) {
+            GameObject object = proxies[i].getObject();
+            int version = object.getWorldTransformVersion();
+            if(version == versions[i] && !cameraChanged)
+                continue;
+
+            float[] transform = object.getWorldTransform().val;
+            versions[i] = version;
+            int plane = FrustumPlanes.findOutsidePlane(planes, transform[12] + offsetX[i], transform[13] + offsetY[i], transform[14] + offsetZ[i],
+                    extentX[i], extentY[i], extentZ[i], failedPlane[i]);
+            failedPlane[i] = plane;
+
+            boolean inside = plane < 0;
+            if(inside != visible[i]) {
+                visibleCount += inside ? 1 : -1;
+                visible[i] = inside;
+                proxies[i].visible = inside;
+            }
+        }
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of decals found visible by the last cull.
+     */
+    public int getVisibleCount() {
+        return visibleCount;
+    }
+
+    public void clear() {
+        for(int i = 0; i < count; i++) {
+            proxies[i].node = -1;
+            proxies[i].visible = false;
+            proxies[i] = null;
+        }
+        count = 0;
+        visibleCount = 0;
+    }
+}
@@ -0,0 +1,188 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.g3d.decals.Decal;
+import com.badlogic.gdx.graphics.g3d.decals.GroupStrategy;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+/**
+ * Group strategy for decals. Opaque decals are drawn first, unsorted and writing depth. Blended decals are drawn after them back to
+ * front, sorted with a radix sort on their view depth quantized to 16 bits. The strategy is created once and given a new camera
+ * with {@link #setCamera(Camera)}.
+ */
+public class DecalGroupStrategy implements GroupStrategy, Disposable {
+
+    private static final int GROUP_OPAQUE = 0;
+    private static final int GROUP_BLEND = 1;
+
+    private static final String VERTEX_SHADER =
+            "attribute vec4 " + ShaderProgram.POSITION_ATTRIBUTE + ";\n" +
+            "attribute vec4 " + ShaderProgram.COLOR_ATTRIBUTE + ";\n" +
+            "attribute vec2 " + ShaderProgram.TEXCOORD_ATTRIBUTE + "0;\n" +
+            "uniform mat4 u_projectionViewMatrix;\n" +
+            "varying vec4 v_color;\n" +
+            "varying vec2 v_texCoords;\n" +
+            "void main() {\n" +
+            "    v_color = " + ShaderProgram.COLOR_ATTRIBUTE + ";\n" +
+            "    v_color.a = v_color.a * (255.0/254.0);\n" +
+            "    v_texCoords = " + ShaderProgram.TEXCOORD_ATTRIBUTE + "0;\n" +
+            "    gl_Position = u_projectionViewMatrix * " + ShaderProgram.POSITION_ATTRIBUTE + ";\n" +
+            "}\n";
+
+    private static final String FRAGMENT_SHADER =
+            "#ifdef GL_ES\n" +
+            "precision mediump float;\n" +
+            "#endif\n" +
+            "varying vec4 v_color;\n" +
+            "varying vec2 v_texCoords;\n" +
+            "uniform sampler2D u_texture;\n" +
+            "void main() {\n" +
+            "    gl_FragColor = v_color * texture2D(u_texture, v_texCoords);\n" +
+            "}\n";
+
+    private Camera camera;
+    private final ShaderProgram shader;
+
+    // Radix sort scratch, grown as needed
+    private int[] keys = new int[0];
+    private int[] tmpKeys = new int[0];
+    private Decal[] sorted = new Decal[0];
+    private Decal[] tmpSorted = new Decal[0];
+    private final int[] histogram = new int[256];
+
+    private final Vector3 tmp = new Vector3();
+
+    public DecalGroupStrategy(Camera camera) {
+        this.camera = camera;
+
+        shader = new ShaderProgram(VERTEX_SHADER, FRAGMENT_SHADER);
+        if(!shader.isCompiled())
+            throw new GdxRuntimeException("Could not compile decal shader: " + shader.getLog());
+    }
+
+    public void setCamera(Camera camera) {
+        this.camera = camera;
+    }
+
+    public Camera getCamera() {
+        return camera;
+    }
+
+    @Override
+    public int decideGroup(Decal decal) {
+        return decal.getMaterial().isOpaque() ? GROUP_OPAQUE : GROUP_BLEND;
+    }
+
+    @Override
+    public void beforeGroup(int group, Array<Decal> contents) {
+        if(group == GROUP_BLEND) {
+            Gdx.gl.glEnable(GL20.GL_BLEND);
+            Gdx.gl.glDepthMask(false);
+            sortBackToFront(contents);
+        } else {
+            Gdx.gl.glDisable(GL20.GL_BLEND);
+            Gdx.gl.glDepthMask(true);
+        }
+    }
+
+    @Override
+    public void afterGroup(int group) {
+        if(group == GROUP_BLEND) {
+            Gdx.gl.glDisable(GL20.GL_BLEND);
+            Gdx.gl.glDepthMask(true);
+        }
+    }
+
+    @Override
+    public void beforeGroups() {
+        Gdx.gl.glEnable(GL20.GL_DEPTH_TEST);
+        shader.begin();
+        shader.setUniformMatrix("u_projectionViewMatrix", camera.combined);
+        shader.setUniformi("u_texture", 0);
+    }
+
+    @Override
+    public void afterGroups() {
+        shader.end();
+        Gdx.gl.glDisable(GL20.GL_DEPTH_TEST);
+    }
+
+    @Override
+    public ShaderProgram getGroupShader(int group) {
+        return shader;
+    }
+
+    /**
+     * Sorts the decals back to front by their depth along the camera direction, quantized between the near and far planes.
+     */
+    private void sortBackToFront(Array<Decal> contents) {
+        int count = contents.size;
+        if(count < 2)
+            return;
+
+        if(keys.length < count) {
+            int capacity = Math.max(count, keys.length * 2);
+            keys = new int[capacity];
+            tmpKeys = new int[capacity];
+            sorted = new Decal[capacity];
+            tmpSorted = new Decal[capacity];
+        }
+
+        float near = camera.near;
+        float range = camera.far - camera.near;
+        for(int i = 0; i < count; i++) {
+            Decal decal = contents.get(i);
+            float depth = (tmp.set(decal.getPosition()).sub(camera.position).dot(camera.direction) - near) / range;
+            if(depth < 0)
+                depth = 0;
+            else if(depth > 1)
+                depth = 1;
+
+            // Farthest first
+            keys[i] = 0xFFFF - (int)(depth * 0xFFFF);
+            sorted[i] = decal;
+        }
+
+        radixPass(keys, sorted, tmpKeys, tmpSorted, count, 0);
+        radixPass(tmpKeys, tmpSorted, keys, sorted, count, 8);
+
+        for(int i = 0; i < count; i++) {
+            contents.set(i, sorted[i]);
+            sorted[i] = null;
+            tmpSorted[i] = null;
+        }
+    }
+
+    private void radixPass(int[] srcKeys, Decal[] src, int[] dstKeys, Decal[] dst, int count, int shift) {
+        for(int b = 0; b < 256; b++) {
+            histogram[b] = 0;
+        }
+        for(int i = 0; i < count; i++) {
+            histogram[(srcKeys[i] >>> shift) & 0xFF]++;
+        }
+
+        int total = 0;
+        for(int b = 0; b < 256; b++) {
+            int bucketSize = histogram[b];
+            histogram[b] = total;
+            total += bucketSize;
+        }
+
+        for(int i = 0; i < count; i++) {
+            int index = histogram[(srcKeys[i] >>> shift) & 0xFF]++;
+            dstKeys[index] = srcKeys[i];
+            dst[index] = src[i];
+        }
+    }
+
+    @Override
+    public void dispose() {
+        shader.dispose();
+    }
+}
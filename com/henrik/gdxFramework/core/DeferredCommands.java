@@ -0,0 +1,125 @@
+package com.henrik.gdxFramework.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Per-thread buffers of changes that must not be made while objects are updated in parallel, such as changes to the collision world
+ * or renderer. While active, changes are appended to a buffer owned by the calling thread: render commands to a
+ * {@link RenderCommandList} of its own, and other changes as an operation code with up to three arguments. Buffers are kept from one
+ * parallel section to the next, so deferring a change allocates nothing once they have grown. They are played back on the thread
+ * ending the parallel section, one thread's buffer after another. Changes from one thread keep the order they were made in, but
+ * buffers of different threads are played back in no particular order relative to each other.
+ */
+public class DeferredCommands {
+
+    /**
+     * Plays back deferred changes when the parallel section ends.
+     */
+    public interface Handler {
+        /**
+         * Performs a change deferred with {@link DeferredCommands#defer(int, Object, Object, Object)}.
+         */
+        void execute(int operation, Object a, Object b, Object c);
+
+        /**
+         * Records the render commands one thread added. The list is cleared afterwards.
+         */
+        void record(RenderCommandList commands);
+    }
+
+    private static final int ARGUMENTS_PER_OPERATION = 3;
+
+    private static class Buffer {
+        final RenderCommandList renderCommands = new RenderCommandList();
+        int[] operations = new int[16];
+        Object[] arguments = new Object[16 * ARGUMENTS_PER_OPERATION];
+        int operationCount;
+    }
+
+    private final ThreadLocal<Buffer> buffers;
+    private final ArrayList<Buffer> allBuffers;
+    private volatile boolean active;
+
+    public DeferredCommands() {
+        allBuffers = new ArrayList<Buffer>();
+        buffers = new ThreadLocal<Buffer>() {
+            @Override
+            protected Buffer initialValue() {
+                Buffer buffer = new Buffer();
+                synchronized(allBuffers) {
+                    allBuffers.add(buffer);
+                }
+                return buffer;
+            }
+        };
+        active = false;
+    }
+
+    /**
+     * Starts deferring changes.
+     */
+    public void begin() {
+        active = true;
+    }
+
+    /**
+     * Defers a change if changes are being deferred. What the operation and its arguments mean is up to the handler passed to
+     * {@link #end(Handler)}.
+     * @return Whether or not the change was deferred. If not, the caller should make it immediately.
+     */
+    public boolean defer(int operation, Object a, Object b, Object c) {
+        if(!active)
+            return false;
+
+        Buffer buffer = buffers.get();
+        int index = buffer.operationCount;
+        if(index == buffer.operations.length) {
+            buffer.operations = Arrays.copyOf(buffer.operations, index * 2);
+            buffer.arguments = Arrays.copyOf(buffer.arguments, index * 2 * ARGUMENTS_PER_OPERATION);
+        }
+
+        buffer.operations[index] = operation;
+        buffer.arguments[index * ARGUMENTS_PER_OPERATION] = a;
+        buffer.arguments[index * ARGUMENTS_PER_OPERATION + 1] = b;
+        buffer.arguments[index * ARGUMENTS_PER_OPERATION + 2] = c;
+        buffer.operationCount++;
+        return true;
+    }
+
+    /**
+     * Returns the render commands of the calling thread to add to while changes are being deferred, or null if they aren't.
+     */
+    public RenderCommandList getRenderCommands() {
+        if(!active)
+            return null;
+        return buffers.get().renderCommands;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Stops deferring changes and plays back every deferred change through the given handler. Must be called once every thread that
+     * may have deferred changes is done.
+     */
+    public void end(Handler handler) {
+        active = false;
+
+        synchronized(allBuffers) {
+            for(int b = 0; b < allBuffers.size(); b++) {
+                Buffer buffer = allBuffers.get(b);
+                for(int i = 0; i < buffer.operationCount; i++) {
+                    int a = i * ARGUMENTS_PER_OPERATION;
+                    handler.execute(buffer.operations[i], buffer.arguments[a], buffer.arguments[a + 1], buffer.arguments[a + 2]);
+                }
+                Arrays.fill(buffer.arguments, 0, buffer.operationCount * ARGUMENTS_PER_OPERATION, null);
+                buffer.operationCount = 0;
+
+                handler.record(buffer.renderCommands);
+                buffer.renderCommands.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.Plane;
+
+/**
+ * Frustum plane tests against boxes given as center and half extents, on planes copied into a flat array of normal x, y, z and
+ * distance for each plane.
+ */
+public final class FrustumPlanes {
+
+    public static final int PLANE_COUNT = 6;
+
+    private FrustumPlanes() { }
+
+    /**
+     * Copies the planes of a frustum into out, which must hold at least 24 floats.
+     */
+    public static void copy(Frustum frustum, float[] out) {
+        Plane[] planes = frustum.planes;
+        for(int p = 0; p < PLANE_COUNT; p++) {
+            out[p * 4] = planes[p].normal.x;
+            out[p * 4 + 1] = planes[p].normal.y;
+            out[p * 4 + 2] = planes[p].normal.z;
+            out[p * 4 + 3] = planes[p].d;
+        }
+    }
+
+    /**
+     * Finds a plane the box is entirely behind, testing the given plane first. Passing the plane returned for the same box last frame
+     * usually rejects it with a single test.
+     * @return The index of the plane, or -1 if the box is at least partly within the frustum.
+     */
+    public static int findOutsidePlane(float[] planes, float cx, float cy, float cz, float ex, float ey, float ez, int firstPlane) {
+        if(firstPlane >= 0 && isOutside(planes, firstPlane, cx, cy, cz, ex, ey, ez))
+            return firstPlane;
+
+        for(int p = 0; p < PLANE_COUNT; p++) {
+            if(p != firstPlane && isOutside(planes, p, cx, cy, cz, ex, ey, ez))
+                return p;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns whether or not the box is entirely behind the given plane.
+     */
+    public static boolean isOutside(float[] planes, int plane, float cx, float cy, float cz, float ex, float ey, float ez) {
+        int offset = plane * 4;
+        float nx = planes[offset], ny = planes[offset + 1], nz = planes[offset + 2];
+        float distance = nx * cx + ny * cy + nz * cz + planes[offset + 3];
+        float radius = Math.abs(nx) * ex + Math.abs(ny) * ey + Math.abs(nz) * ez;
+        return distance + radius < 0;
+    }
+}
@@ -20,7 +20,13 @@ import com.badlogic.gdx.utils.GdxRuntimeException;
 import com.henrik.advergame.Game;
 import com.henrik.advergame.State;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * The base game class from which the main game inherits.
@@ -46,6 +52,21 @@ public class GameBase {
 
     private int fpsCap;
 
+    // Threaded updates: states update and record frame N+1 on a worker while the worlds of frame N are drawn on the GL thread
+    private boolean threadedUpdate;
+    private ExecutorService updateExecutor;
+    private Future<?> pendingUpdate;
+    private Thread glThread;
+    private boolean worldsDeferred;
+    private Game.State pendingState;
+    private ArrayList<World> worlds;
+    private final Runnable updateTask = new Runnable() {
+        @Override
+        public void run() {
+            states.updateLoaded();
+        }
+    };
+
     // Game Fonts
     protected static HashMap<String,BitmapFont> fonts;
 
@@ -82,6 +103,10 @@ public class GameBase {
 
         resized = false;
 
+        worlds = new ArrayList<World>();
+        glThread = Thread.currentThread();
+        threadedUpdate = false;
+
         addInputProcessor(hud);
     }
 
@@ -93,8 +118,18 @@ public class GameBase {
         Gdx.gl.glClear(GL30.GL_COLOR_BUFFER_BIT | GL30.GL_DEPTH_BUFFER_BIT);
         Gdx.gl.glViewport(0, 0, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
 
+        // Apply any state switch the update thread asked for last frame
+        applyPendingState();
+
         // Update all current states
-        states.update();
+        if(threadedUpdate && !states.isLoading()) {
+            updateThreaded();
+        } else {
+            // Any frame recorded by the update thread is dropped
+            if(worldsDeferred)
+                setWorldsDeferred(false);
+            states.update();
+        }
 
         // Update the profiler
         profiler.update();
@@ -108,6 +143,100 @@ public class GameBase {
             resized = false;
     }
 
+    /**
+     * Updates the states on the worker thread while drawing the previous frame. All GL calls stay on this thread: worlds are switched
+     * to deferred rendering, so state updates and world rendering only record commands, which are submitted here a frame later.
+     * The worker only overlaps the submission of recorded commands: it is waited for before the HUD is drawn, so the HUD stage,
+     * the resized flag and input handlers are never touched by both threads at once.
+     */
+    private void updateThreaded() {
+        if(!worldsDeferred) {
+            // Nothing has been recorded yet, so record this frame before handing over to the worker
+            setWorldsDeferred(true);
+            states.updateLoaded();
+        }
+
+        for(int i = 0; i < worlds.size(); i++) {
+            worlds.get(i).swapRenderCommands();
+        }
+
+        pendingUpdate = updateExecutor.submit(updateTask);
+
+        for(int i = 0; i < worlds.size(); i++) {
+            worlds.get(i).submitRenderCommands();
+        }
+
+        finishUpdate();
+    }
+
+    /**
+     * Waits for the update running on the worker thread, if any.
+     */
+    private void finishUpdate() {
+        if(pendingUpdate == null)
+            return;
+
+        try {
+            pendingUpdate.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch(ExecutionException e) {
+            throw new GdxRuntimeException("State update failed on the update thread", e.getCause());
+        } finally {
+            pendingUpdate = null;
+        }
+    }
+
+    private void setWorldsDeferred(boolean deferred) {
+        worldsDeferred = deferred;
+        for(int i = 0; i < worlds.size(); i++) {
+            worlds.get(i).setDeferredRendering(deferred);
+        }
+    }
+
+    private void applyPendingState() {
+        if(pendingState != null) {
+            Game.State state = pendingState;
+            pendingState = null;
+            enableState(state);
+        }
+    }
+
+    /**
+     * Sets whether or not states are updated on a worker thread, ahead of rendering. While enabled, {@link GameState#update()} and
+     * {@link GameState#render()} of loaded states run on the worker and must not make GL calls themselves: anything drawn must go
+     * through a {@link World}'s renderer, which records it to be drawn on the GL thread a frame later. States that are loading are
+     * always updated on the GL thread.
+     */
+    public void setThreadedUpdate(boolean enabled) {
+        if(enabled && updateExecutor == null) {
+            updateExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "gdxFramework-update");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        threadedUpdate = enabled;
+    }
+
+    public boolean isThreadedUpdate() {
+        return threadedUpdate;
+    }
+
+    void addWorld(World world) {
+        worlds.add(world);
+        if(worldsDeferred)
+            world.setDeferredRendering(true);
+    }
+
+    void removeWorld(World world) {
+        worlds.remove(world);
+    }
+
     public void enableProfiling() {
         profiler.enable();
     }
@@ -143,6 +272,17 @@ public class GameBase {
     public void addInputProcessor(InputProcessor processor) { inputProcessor.addProcessor(processor); }
 
     public void enableState(Game.State state) {
+        if(threadedUpdate && Thread.currentThread() != glThread) {
+            // Called from the update thread, switch once the update has finished
+            pendingState = state;
+            return;
+        }
+
+        // The worker must not be updating states while they are switched
+        finishUpdate();
+        if(worldsDeferred)
+            setWorldsDeferred(false);
+
         hud.clear(); // Clear the HUD for this state
         states.enable(state); // Enable the new state, disabling all other states
     }
@@ -163,6 +303,10 @@ public class GameBase {
 
     }
     public void dispose () {
+        finishUpdate();
+        if(updateExecutor != null)
+            updateExecutor.shutdown();
+
         states.dispose();
         fontManager.dispose();
     }
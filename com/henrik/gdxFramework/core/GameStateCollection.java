@@ -58,6 +58,34 @@ public class GameStateCollection {
         }
     }
 
+    /**
+     * Updates and renders every state that has finished loading. States that are still loading are skipped, as loading must happen on
+     * the GL thread.
+     */
+    public void updateLoaded() {
+        for(GameState state : states.values()) {
+            if(state.isLoading())
+                continue;
+            if(state.isUpdating()) {
+                state.update();
+            }
+            if(state.isRendering()) {
+                state.render();
+            }
+        }
+    }
+
+    /**
+     * Returns whether or not any updating state is still loading.
+     */
+    public boolean isLoading() {
+        for(GameState state : states.values()) {
+            if(state.isUpdating() && state.isLoading())
+                return true;
+        }
+        return false;
+    }
+
     public GameState get(Game.State state) {
         return states.get(state);
     }
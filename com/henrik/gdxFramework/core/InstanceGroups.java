@@ -0,0 +1,262 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.graphics.g3d.Material;
+import com.badlogic.gdx.graphics.g3d.Model;
+import com.badlogic.gdx.graphics.g3d.ModelInstance;
+import com.badlogic.gdx.graphics.g3d.attributes.BlendingAttribute;
+import com.badlogic.gdx.graphics.g3d.model.Node;
+import com.badlogic.gdx.graphics.g3d.model.NodePart;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+
+import java.util.Arrays;
+
+/**
+ * Groups model instances by the model they were created from and the materials of their parts, and packs the world transforms of
+ * each group into a flat float array for instanced drawing. This is plain CPU code, the GL side lives in {@link InstancedModelRenderer}.
+ * The transform of each instance is copied when it is added, so the same instance may be added several times with different transforms.
+ */
+public class InstanceGroups {
+
+    public static final int FLOATS_PER_INSTANCE = 16;
+
+    /**
+     * Identifies a group: a model, and the materials of an instance's parts in node order. Instances copy their model's materials,
+     * so instances whose materials were changed get a group of their own.
+     */
+    private static class GroupKey {
+        Model model;
+        final Array<Material> materials = new Array<Material>();
+        int hash;
+
+        void set(ModelInstance instance) {
+            model = instance.model;
+            materials.clear();
+            collectMaterials(instance.nodes, materials);
+
+            hash = model.hashCode();
+            for(int i = 0; i < materials.size; i++) {
+                hash = 31 * hash + materials.get(i).hashCode();
+            }
+        }
+
+        /**
+         * Returns a copy whose materials don't change along with the instance's.
+         */
+        GroupKey copy() {
+            GroupKey key = new GroupKey();
+            key.model = model;
+            for(int i = 0; i < materials.size; i++) {
+                key.materials.add(new Material(materials.get(i)));
+            }
+            key.hash = hash;
+            return key;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if(!(other instanceof GroupKey))
+                return false;
+            GroupKey key = (GroupKey)other;
+            if(key.model != model || key.materials.size != materials.size)
+                return false;
+            for(int i = 0; i < materials.size; i++) {
+                if(!materials.get(i).equals(key.materials.get(i)))
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * All instances of a single model with the same materials submitted this frame.
+     */
+    public static class Group {
+        private Model model;
+        private final Array<ModelInstance> instances;
+        private float[] transforms; // The transform of each instance when it was added, in column major order
+        private final Array<NodePart> parts; // The parts of the first instance, in node order, whose materials all instances share
+        private boolean instanceable;
+
+        Group() {
+            instances = new Array<ModelInstance>();
+            transforms = new float[FLOATS_PER_INSTANCE * 4];
+            parts = new Array<NodePart>();
+        }
+
+        public Model getModel() { return model; }
+
+        public Array<ModelInstance> getInstances() { return instances; }
+
+        /**
+         * Sets out to the transform the instance at the given index was added with.
+         * @return out, for chaining.
+         */
+        public Matrix4 getInstanceTransform(int index, Matrix4 out) {
+            System.arraycopy(transforms, index * FLOATS_PER_INSTANCE, out.val, 0, FLOATS_PER_INSTANCE);
+            return out;
+        }
+
+        public Array<NodePart> getParts() { return parts; }
+
+        /**
+         * Returns whether or not every part of the model can be drawn instanced. Blended and skinned parts cannot.
+         */
+        public boolean isInstanceable() { return instanceable; }
+    }
+
+    private final ObjectMap<GroupKey, Group> groups;
+    private final Array<Group> activeGroups;
+    private final GroupKey lookupKey;
+
+    private final Matrix4 tmpInstanceTransform;
+    private final Matrix4 tmpTransform;
+    private int partCounter;
+
+    public InstanceGroups() {
+        groups = new ObjectMap<GroupKey, Group>();
+        activeGroups = new Array<Group>();
+        lookupKey = new GroupKey();
+        tmpInstanceTransform = new Matrix4();
+        tmpTransform = new Matrix4();
+    }
+
+    /**
+     * Adds an instance at its current transform.
+     */
+    public void add(ModelInstance instance) {
+        add(instance, instance.transform);
+    }
+
+    /**
+     * Adds an instance to be drawn at the given transform, which is copied.
+     */
+    public void add(ModelInstance instance, Matrix4 transform) {
+        lookupKey.set(instance);
+        Group group = groups.get(lookupKey);
+        if(group == null) {
+            group = new Group();
+            group.model = instance.model;
+            groups.put(lookupKey.copy(), group);
+        }
+
+        // Parts are taken from the first instance each frame, as an instance drawn before may have had its materials changed since
+        if(group.instances.size == 0) {
+            group.parts.clear();
+            collectParts(instance.nodes, group.parts);
+            group.instanceable = isInstanceable(group.parts);
+            activeGroups.add(group);
+        }
+
+        int offset = group.instances.size * FLOATS_PER_INSTANCE;
+        if(group.transforms.length < offset + FLOATS_PER_INSTANCE)
+            group.transforms = Arrays.copyOf(group.transforms, group.transforms.length * 2);
+        System.arraycopy(transform.val, 0, group.transforms, offset, FLOATS_PER_INSTANCE);
+        group.instances.add(instance);
+    }
+
+    /**
+     * Clears all submitted instances. Groups for models that were not submitted since the last clear are released.
+     */
+    public void clear() {
+        for(ObjectMap.Values<Group> values = groups.values(); values.hasNext();) {
+            Group group = values.next();
+            if(group.instances.size == 0)
+                values.remove();
+            else
+                group.instances.clear();
+        }
+        activeGroups.clear();
+    }
+
+    public int getGroupCount() {
+        return activeGroups.size;
+    }
+
+    public Group getGroup(int index) {
+        return activeGroups.get(index);
+    }
+
+    /**
+     * Packs the world transforms of every part of every instance in the group into the given array, growing it if needed. Transforms
+     * are stored part by part, so the transforms of part p start at p * instances * {@link #FLOATS_PER_INSTANCE}. Each transform is
+     * the transform the instance was added with multiplied by the global transform of the node holding the part, in column major
+     * order.
+     * @return The array holding the packed transforms, which is the given array unless it had to grow.
+     */
+    public float[] pack(Group group, float[] out) {
+        int instanceCount = group.instances.size;
+        int required = group.parts.size * instanceCount * FLOATS_PER_INSTANCE;
+        if(out == null || out.length < required)
+            out = out == null ? new float[required] : Arrays.copyOf(out, Math.max(required, out.length * 2));
+
+        for(int i = 0; i < instanceCount; i++) {
+            ModelInstance instance = group.instances.get(i);
+            group.getInstanceTransform(i, tmpInstanceTransform);
+            partCounter = 0;
+            for(int n = 0; n < instance.nodes.size; n++) {
+                packNode(tmpInstanceTransform, instance.nodes.get(n), instanceCount, i, out);
+            }
+        }
+
+        return out;
+    }
+
+    private void packNode(Matrix4 instanceTransform, Node node, int instanceCount, int instance, float[] out) {
+        for(int p = 0; p < node.parts.size; p++) {
+            tmpTransform.set(instanceTransform).mul(node.globalTransform);
+            int offset = (partCounter * instanceCount + instance) * FLOATS_PER_INSTANCE;
+            System.arraycopy(tmpTransform.val, 0, out, offset, FLOATS_PER_INSTANCE);
+            partCounter++;
+        }
+        for(int c = 0; c < node.getChildCount(); c++) {
+            packNode(instanceTransform, node.getChild(c), instanceCount, instance, out);
+        }
+    }
+
+    private static void collectParts(Array<Node> nodes, Array<NodePart> parts) {
+        for(int n = 0; n < nodes.size; n++) {
+            collectParts(nodes.get(n), parts);
+        }
+    }
+
+    private static void collectParts(Node node, Array<NodePart> parts) {
+        parts.addAll(node.parts);
+        for(int c = 0; c < node.getChildCount(); c++) {
+            collectParts(node.getChild(c), parts);
+        }
+    }
+
+    private static void collectMaterials(Array<Node> nodes, Array<Material> materials) {
+        for(int n = 0; n < nodes.size; n++) {
+            collectMaterials(nodes.get(n), materials);
+        }
+    }
+
+    private static void collectMaterials(Node node, Array<Material> materials) {
+        for(int p = 0; p < node.parts.size; p++) {
+            materials.add(node.parts.get(p).material);
+        }
+        for(int c = 0; c < node.getChildCount(); c++) {
+            collectMaterials(node.getChild(c), materials);
+        }
+    }
+
+    private static boolean isInstanceable(Array<NodePart> parts) {
+        for(int i = 0; i < parts.size; i++) {
+            NodePart part = parts.get(i);
+            if(part.bones != null)
+                return false;
+
+            if(part.material.has(BlendingAttribute.Type) && ((BlendingAttribute)part.material.get(BlendingAttribute.Type)).blended)
+                return false;
+        }
+        return true;
+    }
+}
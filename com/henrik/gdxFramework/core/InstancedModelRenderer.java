@@ -0,0 +1,297 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.g3d.Environment;
+import com.badlogic.gdx.graphics.g3d.Material;
+import com.badlogic.gdx.graphics.g3d.attributes.ColorAttribute;
+import com.badlogic.gdx.graphics.g3d.attributes.TextureAttribute;
+import com.badlogic.gdx.graphics.g3d.environment.DirectionalLight;
+import com.badlogic.gdx.graphics.g3d.model.MeshPart;
+import com.badlogic.gdx.graphics.g3d.model.NodePart;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.BufferUtils;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Draws groups of model instances with one instanced draw call per model part. Instance transforms are written into a per-frame
+ * vertex buffer and read by the shader through a divisor of one. Requires GL30, see {@link #isSupported()}.
+ *
+ * The default shader draws the diffuse color and texture of each material, lit per vertex by the environment's ambient light and up
+ * to {@link #MAX_DIRECTIONAL_LIGHTS} directional lights. Normals are transformed without the inverse transpose, so instances should
+ * be scaled uniformly. Environments using anything else can't be drawn instanced, see {@link #supports(Environment)}.
+ * Use {@link #setShader(ShaderProgram)} for anything more involved; the shader must declare the i_worldTrans0 to i_worldTrans3
+ * attributes (the columns of the world transform) and use the u_projViewTrans, u_diffuseColor, u_diffuseTexture and
+ * u_hasDiffuseTexture uniforms. The lighting uniforms are optional.
+ */
+public class InstancedModelRenderer {
+
+    public static final int MAX_DIRECTIONAL_LIGHTS = 2;
+
+    private static final String WORLD_TRANS_ATTRIBUTE = "i_worldTrans";
+
+    private static final String VERTEX_SHADER =
+            "attribute vec3 " + ShaderProgram.POSITION_ATTRIBUTE + ";\n" +
+            "attribute vec3 " + ShaderProgram.NORMAL_ATTRIBUTE + ";\n" +
+            "attribute vec2 " + ShaderProgram.TEXCOORD_ATTRIBUTE + "0;\n" +
+            "attribute vec4 i_worldTrans0;\n" +
+            "attribute vec4 i_worldTrans1;\n" +
+            "attribute vec4 i_worldTrans2;\n" +
+            "attribute vec4 i_worldTrans3;\n" +
+            "uniform mat4 u_projViewTrans;\n" +
+            "uniform float u_lit;\n" +
+            "uniform vec3 u_ambientLight;\n" +
+            "uniform vec3 u_dirLightDir[" + MAX_DIRECTIONAL_LIGHTS + "];\n" +
+            "uniform vec3 u_dirLightColor[" + MAX_DIRECTIONAL_LIGHTS + "];\n" +
+            "varying vec2 v_texCoord0;\n" +
+            "varying vec3 v_light;\n" +
+            "void main() {\n" +
+            "    mat4 worldTrans = mat4(i_worldTrans0, i_worldTrans1, i_worldTrans2, i_worldTrans3);\n" +
+            "    v_texCoord0 = " + ShaderProgram.TEXCOORD_ATTRIBUTE + "0;\n" +
+            "    v_light = vec3(1.0);\n" +
+            "    if(u_lit > 0.5) {\n" +
+            "        vec3 normal = normalize(mat3(worldTrans) * " + ShaderProgram.NORMAL_ATTRIBUTE + ");\n" +
+            "        v_light = u_ambientLight;\n" +
+            "        for(int i = 0; i < " + MAX_DIRECTIONAL_LIGHTS + "; i++)\n" +
+            "            v_light += u_dirLightColor[i] * max(dot(normal, -u_dirLightDir[i]), 0.0);\n" +
+            "    }\n" +
+            "    gl_Position = u_projViewTrans * worldTrans * vec4(" + ShaderProgram.POSITION_ATTRIBUTE + ", 1.0);\n" +
+            "}\n";
+
+    private static final String FRAGMENT_SHADER =
+            "#ifdef GL_ES\n" +
+            "precision mediump float;\n" +
+            "#endif\n" +
+            "uniform vec4 u_diffuseColor;\n" +
+            "uniform sampler2D u_diffuseTexture;\n" +
+            "uniform float u_hasDiffuseTexture;\n" +
+            "varying vec2 v_texCoord0;\n" +
+            "varying vec3 v_light;\n" +
+            "void main() {\n" +
+            "    vec4 color = u_diffuseColor;\n" +
+            "    if(u_hasDiffuseTexture > 0.5)\n" +
+            "        color *= texture2D(u_diffuseTexture, v_texCoord0);\n" +
+            "    gl_FragColor = vec4(color.rgb * v_light, color.a);\n" +
+            "}\n";
+
+    private ShaderProgram shader;
+    private boolean ownsShader;
+    private final int[] worldTransLocations;
+
+    // Lighting uniform locations, -1 if the shader doesn't use them
+    private int litLocation, ambientLightLocation, dirLightDirLocation, dirLightColorLocation;
+    private boolean lit; // Whether or not the environment being drawn has lights
+    private final float[] dirLightDirs = new float[MAX_DIRECTIONAL_LIGHTS * 3];
+    private final float[] dirLightColors = new float[MAX_DIRECTIONAL_LIGHTS * 3];
+
+    private int instanceBuffer;
+    private FloatBuffer instanceData;
+    private float[] packedTransforms;
+
+    private int drawCalls;
+
+    public InstancedModelRenderer() {
+        worldTransLocations = new int[4];
+        instanceBuffer = Gdx.gl.glGenBuffer();
+        instanceData = BufferUtils.newFloatBuffer(InstanceGroups.FLOATS_PER_INSTANCE * 64);
+        packedTransforms = new float[InstanceGroups.FLOATS_PER_INSTANCE * 64];
+
+        ShaderProgram defaultShader = new ShaderProgram(VERTEX_SHADER, FRAGMENT_SHADER);
+        if(!defaultShader.isCompiled())
+            throw new GdxRuntimeException("Could not compile instanced model shader: " + defaultShader.getLog());
+        setShader(defaultShader);
+        ownsShader = true;
+    }
+
+    /**
+     * Returns whether or not instanced drawing is available on this device.
+     */
+    public static boolean isSupported() {
+        return Gdx.gl30 != null;
+    }
+
+    /**
+     * Returns whether or not models can be drawn instanced in an environment: it may only use an ambient light color and up to
+     * {@link #MAX_DIRECTIONAL_LIGHTS} directional lights. Models in other environments should be drawn by a model batch.
+     */
+    public static boolean supports(Environment environment) {
+        if(environment == null)
+            return true;
+
+        return environment.shadowMap == null && environment.pointLights.size == 0 && environment.spotLights.size == 0
+                && environment.directionalLights.size <= MAX_DIRECTIONAL_LIGHTS && !environment.has(ColorAttribute.Fog);
+    }
+
+    /**
+     * Sets the shader used for instanced drawing. The caller keeps ownership of the shader.
+     */
+    public void setShader(ShaderProgram shader) {
+        if(ownsShader && this.shader != null)
+            this.shader.dispose();
+
+        this.shader = shader;
+        ownsShader = false;
+        for(int i = 0; i < worldTransLocations.length; i++) {
+            worldTransLocations[i] = shader.getAttributeLocation(WORLD_TRANS_ATTRIBUTE + i);
+        }
+
+        litLocation = shader.fetchUniformLocation("u_lit", false);
+        ambientLightLocation = shader.fetchUniformLocation("u_ambientLight", false);
+        dirLightDirLocation = shader.fetchUniformLocation("u_dirLightDir", false);
+        dirLightColorLocation = shader.fetchUniformLocation("u_dirLightColor", false);
+    }
+
+    /**
+     * Draws every instanceable group with at least minInstances instances, lit by the given environment, which may be null for no
+     * lighting. The environment must be supported, see {@link #supports(Environment)}.
+     * @return The number of instances drawn.
+     */
+    public int render(Camera camera, Environment environment, InstanceGroups groups, int minInstances) {
+        drawCalls = 0;
+        int instancesDrawn = 0;
+
+        Gdx.gl.glEnable(GL20.GL_DEPTH_TEST);
+        Gdx.gl.glDepthFunc(GL20.GL_LEQUAL);
+        Gdx.gl.glEnable(GL20.GL_CULL_FACE);
+        Gdx.gl.glCullFace(GL20.GL_BACK);
+
+        shader.begin();
+        shader.setUniformMatrix("u_projViewTrans", camera.combined);
+        shader.setUniformi("u_diffuseTexture", 0);
+        bindEnvironment(environment);
+
+        for(int g = 0; g < groups.getGroupCount(); g++) {
+            InstanceGroups.Group group = groups.getGroup(g);
+            int instanceCount = group.getInstances().size;
+            if(!group.isInstanceable() || instanceCount < minInstances)
+                continue;
+
+            packedTransforms = groups.pack(group, packedTransforms);
+
+            for(int p = 0; p < group.getParts().size; p++) {
+                drawPart(group.getParts().get(p), p * instanceCount * InstanceGroups.FLOATS_PER_INSTANCE, instanceCount);
+            }
+
+            instancesDrawn += instanceCount;
+        }
+
+        shader.end();
+
+        Gdx.gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, 0);
+        Gdx.gl.glDisable(GL20.GL_CULL_FACE);
+        Gdx.gl.glDisable(GL20.GL_DEPTH_TEST);
+
+        return instancesDrawn;
+    }
+
+    /**
+     * Sets the lighting uniforms from the environment. Unused light slots are left black.
+     */
+    private void bindEnvironment(Environment environment) {
+        lit = environment != null;
+        if(!lit)
+            return;
+
+        if(ambientLightLocation >= 0) {
+            ColorAttribute ambient = (ColorAttribute)environment.get(ColorAttribute.AmbientLight);
+            if(ambient != null)
+                shader.setUniformf(ambientLightLocation, ambient.color.r, ambient.color.g, ambient.color.b);
+            else
+                shader.setUniformf(ambientLightLocation, 0f, 0f, 0f);
+        }
+
+        for(int i = 0; i < MAX_DIRECTIONAL_LIGHTS; i++) {
+            DirectionalLight light = i < environment.directionalLights.size ? environment.directionalLights.get(i) : null;
+            dirLightDirs[i * 3] = light != null ? light.direction.x : 0f;
+            dirLightDirs[i * 3 + 1] = light != null ? light.direction.y : -1f;
+            dirLightDirs[i * 3 + 2] = light != null ? light.direction.z : 0f;
+            dirLightColors[i * 3] = light != null ? light.color.r : 0f;
+            dirLightColors[i * 3 + 1] = light != null ? light.color.g : 0f;
+            dirLightColors[i * 3 + 2] = light != null ? light.color.b : 0f;
+        }
+        if(dirLightDirLocation >= 0)
+            shader.setUniform3fv(dirLightDirLocation, dirLightDirs, 0, dirLightDirs.length);
+        if(dirLightColorLocation >= 0)
+            shader.setUniform3fv(dirLightColorLocation, dirLightColors, 0, dirLightColors.length);
+    }
+
+    private void drawPart(NodePart part, int transformOffset, int instanceCount) {
+        bindMaterial(part.material);
+
+        MeshPart meshPart = part.meshPart;
+        Mesh mesh = meshPart.mesh;
+        mesh.bind(shader);
+
+        // Meshes without normals are drawn unlit, as by the default model batch shader
+        if(litLocation >= 0)
+            shader.setUniformf(litLocation, lit && mesh.getVertexAttribute(VertexAttributes.Usage.Normal) != null ? 1f : 0f);
+
+        // Upload this part's transforms and point the per-instance attributes at them
+        int floatCount = instanceCount * InstanceGroups.FLOATS_PER_INSTANCE;
+        if(instanceData.capacity() < floatCount)
+            instanceData = BufferUtils.newFloatBuffer(Math.max(floatCount, instanceData.capacity() * 2));
+        instanceData.clear();
+        instanceData.put(packedTransforms, transformOffset, floatCount);
+        instanceData.flip();
+
+        Gdx.gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, instanceBuffer);
+        Gdx.gl.glBufferData(GL20.GL_ARRAY_BUFFER, floatCount * 4, instanceData, GL20.GL_STREAM_DRAW);
+        for(int i = 0; i < worldTransLocations.length; i++) {
+            int location = worldTransLocations[i];
+            if(location < 0)
+                continue;
+            Gdx.gl.glEnableVertexAttribArray(location);
+            Gdx.gl.glVertexAttribPointer(location, 4, GL20.GL_FLOAT, false, InstanceGroups.FLOATS_PER_INSTANCE * 4, i * 16);
+            Gdx.gl30.glVertexAttribDivisor(location, 1);
+        }
+
+        if(mesh.getNumIndices() > 0)
+            Gdx.gl30.glDrawElementsInstanced(meshPart.primitiveType, meshPart.numVertices, GL20.GL_UNSIGNED_SHORT, meshPart.indexOffset * 2, instanceCount);
+        else
+            Gdx.gl30.glDrawArraysInstanced(meshPart.primitiveType, meshPart.indexOffset, meshPart.numVertices, instanceCount);
+        drawCalls++;
+
+        for(int i = 0; i < worldTransLocations.length; i++) {
+            int location = worldTransLocations[i];
+            if(location < 0)
+                continue;
+            Gdx.gl30.glVertexAttribDivisor(location, 0);
+            Gdx.gl.glDisableVertexAttribArray(location);
+        }
+
+        mesh.unbind(shader);
+    }
+
+    private void bindMaterial(Material material) {
+        ColorAttribute diffuseColor = (ColorAttribute)material.get(ColorAttribute.Diffuse);
+        Color color = diffuseColor != null ? diffuseColor.color : Color.WHITE;
+        shader.setUniformf("u_diffuseColor", color);
+
+        TextureAttribute diffuseTexture = (TextureAttribute)material.get(TextureAttribute.Diffuse);
+        if(diffuseTexture != null) {
+            diffuseTexture.textureDescription.texture.bind(0);
+            shader.setUniformf("u_hasDiffuseTexture", 1f);
+        } else {
+            shader.setUniformf("u_hasDiffuseTexture", 0f);
+        }
+    }
+
+    /**
+     * Returns the number of instanced draw calls made by the last call to render.
+     */
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    public void dispose() {
+        Gdx.gl.glDeleteBuffer(instanceBuffer);
+        if(ownsShader)
+            shader.dispose();
+    }
+}
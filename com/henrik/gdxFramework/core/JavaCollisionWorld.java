@@ -0,0 +1,949 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.LongMap;
+import com.henrik.gdxFramework.entities.GameObject;
+import com.henrik.gdxFramework.entities.components.PhysicsComponent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Collision world implemented in Java, for worlds made of boxes, spheres and capsules described by {@link CollisionShape}s. Static
+ * geometry is kept in a uniform grid, and dynamic and trigger objects are swept and pruned along the x axis each pass, so that no
+ * native calls or memory are involved and the world can run in plain JVM tests.
+ *
+ * Every shape is handled as an axis aligned core box rounded by a radius: a box has no radius, a sphere has a point core, and a
+ * capsule a vertical segment core. Contacts and overlaps are exact for these shapes; rotation and scale of objects are ignored.
+ * Static geometry is placed when registered and is assumed not to move. Contacts are only reported as buffered events.
+ */
+public class JavaCollisionWorld implements CollisionWorld {
+
+    public static final float DEFAULT_CELL_SIZE = 4f;
+
+    private static class Body {
+        PhysicsComponent component;
+        CollisionObject userData;
+        GameObject object;
+        CollisionShape shape;
+        short group;
+        short mask;
+        boolean isStatic;
+
+        // Core box and the radius rounding it
+        float coreMinX, coreMinY, coreMinZ, coreMaxX, coreMaxY, coreMaxZ;
+        float radius;
+
+        int placedVersion; // World transform version of the object when last placed
+        int stamp; // Last query that tested this body, so bodies in several cells are tested once
+    }
+
+    private final float cellSize;
+    private final LongMap<ArrayList<Body>> cells; // Static bodies by cell
+    private final HashMap<PhysicsComponent, Body> bodies;
+    private Body[] dynamics; // Sorted by the minimum x of their bounds
+    private int dynamicCount;
+    private int sortedCount; // Leading dynamics sorted as of the last pass, the rest were registered since
+    private float maxDynamicWidth; // Widest bounds along x among the sorted dynamics
+    private int stamp;
+    private int syncedObjectCount;
+
+    private final CollisionHandles handles;
+    private CollisionLayers layers;
+    private final ContactEventBuffer contactEvents;
+    private final ArrayList<ContactEventListener> contactEventListeners;
+
+    private boolean debugActive;
+    private ShapeRenderer debugRenderer;
+
+    // Result of the last penetration test or ray cast
+    private float normalX, normalY, normalZ;
+
+    // Hits of the current ray cast
+    private Body[] hitBodies = new Body[16];
+    private float[] hitFractions = new float[16];
+    private float[] hitNormals = new float[48];
+    private int hitCount;
+
+    private float sweepFraction;
+    private final Body queryBody = new Body();
+    private final float[] slabs = new float[12];
+
+    public JavaCollisionWorld() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * @param cellSize The size of the grid cells holding static geometry, about the size of a typical static object.
+     */
+    public JavaCollisionWorld(float cellSize) {
+        this.cellSize = cellSize;
+        cells = new LongMap<ArrayList<Body>>();
+        bodies = new HashMap<PhysicsComponent, Body>();
+        dynamics = new Body[64];
+        handles = new CollisionHandles();
+        layers = new CollisionLayers();
+        contactEvents = new ContactEventBuffer();
+        contactEventListeners = new ArrayList<ContactEventListener>();
+        debugActive = false;
+    }
+
+    public void update(Camera camera) {
+        performCollisionDetection();
+
+        if(debugActive)
+            debugDraw(camera);
+    }
+
+    public void performCollisionDetection() {
+        // Only objects that moved are placed again
+        int synced = 0;
+        for(int i = 0; i < dynamicCount; i++) {
+            Body body = dynamics[i];
+            if(body.object.getWorldTransformVersion() != body.placedVersion) {
+                place(body);
+                synced++;
+            }
+        }
+        syncedObjectCount = synced;
+
+        // Insertion sort, as the order changes little between passes
+        for(int i = 1; i < dynamicCount; i++) {
+            Body body = dynamics[i];
+            float minX = body.coreMinX - body.radius;
+            int j = i;
+            while(j > 0 && dynamics[j - 1].coreMinX - dynamics[j - 1].radius > minX) {
+                dynamics[j] = dynamics[j - 1];
+                j--;
+            }
+            dynamics[j] = body;
+        }
+        sortedCount = dynamicCount;
+
+        float maxWidth = 0;
+        for(int i = 0; i < dynamicCount; i++) {
+            Body body = dynamics[i];
+            maxWidth = Math.max(maxWidth, body.coreMaxX - body.coreMinX + body.radius * 2);
+        }
+        maxDynamicWidth = maxWidth;
+
+        if(layers.isPairStatistics())
+            layers.resetPairCounts();
+
+        contactEvents.begin();
+        for(int i = 0; i < dynamicCount; i++) {
+            Body a = dynamics[i];
+
+            // Against static geometry in the cells it covers
+            stamp++;
+            int minCellX = cell(a.coreMinX - a.radius), maxCellX = cell(a.coreMaxX + a.radius);
+            int minCellY = cell(a.coreMinY - a.radius), maxCellY = cell(a.coreMaxY + a.radius);
+            int minCellZ = cell(a.coreMinZ - a.radius), maxCellZ = cell(a.coreMaxZ + a.radius);
+            for(int x = minCellX; x <= maxCellX; x++) {
+                for(int y = minCellY; y <= maxCellY; y++) {
+                    for(int z = minCellZ; z <= maxCellZ; z++) {
+                        ArrayList<Body> cell = cells.get(key(x, y, z));
+                        if(cell == null)
+                            continue;
+
+                        for(int k = 0; k < cell.size(); k++) {
+                            Body b = cell.get(k);
+                            if(b.stamp != stamp) {
+                                b.stamp = stamp;
+                                collide(a, b);
+                            }
+                        }
+                    }
+                }
+            }
+
+            // Against the following dynamic objects overlapping it along x
+            float maxX = a.coreMaxX + a.radius;
+            for(int j = i + 1; j < dynamicCount && dynamics[j].coreMinX - dynamics[j].radius <= maxX; j++) {
+                collide(a, dynamics[j]);
+            }
+        }
+        contactEvents.end();
+
+        for(int i = 0; i < contactEventListeners.size(); i++) {
+            contactEventListeners.get(i).onContactEvents(contactEvents, this);
+        }
+
+        // End events have been reported, so retired handles can be reused
+        handles.recycle();
+    }
+
+    public int getSyncedObjectCount() { return syncedObjectCount; }
+
+    private void collide(Body a, Body b) {
+        if(!accepts(a, b.group, b.mask))
+            return;
+
+        if(layers.isPairStatistics() && overlapsBounds(a, b))
+            layers.countPair(a.group, b.group);
+
+        float depth = penetrate(a, b);
+        if(depth > 0) {
+            contactEvents.addContact(a.userData.getHandle(), b.userData.getHandle(),
+                    a.userData.getCollisionTag().getID(), b.userData.getCollisionTag().getID(), normalX, normalY, normalZ, depth);
+        }
+    }
+
+    /**
+     * Returns whether or not a body and a filter group and mask collide: the group of each must be in the mask of the other.
+     */
+    private static boolean accepts(Body body, short group, short mask) {
+        return (body.group & mask) != 0 && (group & body.mask) != 0;
+    }
+
+    private static boolean overlapsBounds(Body a, Body b) {
+        float radii = a.radius + b.radius;
+        return a.coreMinX - radii <= b.coreMaxX && b.coreMinX - radii <= a.coreMaxX
+                && a.coreMinY - radii <= b.coreMaxY && b.coreMinY - radii <= a.coreMaxY
+                && a.coreMinZ - radii <= b.coreMaxZ && b.coreMinZ - radii <= a.coreMaxZ;
+    }
+
+    /**
+     * Returns how deep two bodies overlap, or zero or less if they don't, setting the normal to point from b towards a.
+     */
+    private float penetrate(Body a, Body b) {
+        float radii = a.radius + b.radius;
+
+        // Gaps between the cores along each axis, positive if a is on the positive side
+        float gapX = gap(a.coreMinX, a.coreMaxX, b.coreMinX, b.coreMaxX);
+        float gapY = gap(a.coreMinY, a.coreMaxY, b.coreMinY, b.coreMaxY);
+        float gapZ = gap(a.coreMinZ, a.coreMaxZ, b.coreMinZ, b.coreMaxZ);
+
+        if(gapX != 0 || gapY != 0 || gapZ != 0) {
+            float distance2 = gapX * gapX + gapY * gapY + gapZ * gapZ;
+            if(distance2 >= radii * radii)
+                return 0;
+
+            float distance = (float)Math.sqrt(distance2);
+            normalX = gapX / distance;
+            normalY = gapY / distance;
+            normalZ = gapZ / distance;
+            return radii - distance;
+        }
+
+        // The cores overlap, so separate along the axis they overlap least
+        float overlapX = Math.min(a.coreMaxX, b.coreMaxX) - Math.max(a.coreMinX, b.coreMinX);
+        float overlapY = Math.min(a.coreMaxY, b.coreMaxY) - Math.max(a.coreMinY, b.coreMinY);
+        float overlapZ = Math.min(a.coreMaxZ, b.coreMaxZ) - Math.max(a.coreMinZ, b.coreMinZ);
+        normalX = normalY = normalZ = 0;
+        if(overlapX <= overlapY && overlapX <= overlapZ) {
+            normalX = a.coreMinX + a.coreMaxX >= b.coreMinX + b.coreMaxX ? 1 : -1;
+            return overlapX + radii;
+        } else if(overlapY <= overlapZ) {
+            normalY = a.coreMinY + a.coreMaxY >= b.coreMinY + b.coreMaxY ? 1 : -1;
+            return overlapY + radii;
+        } else {
+            normalZ = a.coreMinZ + a.coreMaxZ >= b.coreMinZ + b.coreMaxZ ? 1 : -1;
+            return overlapZ + radii;
+        }
+    }
+
+    private static float gap(float minA, float maxA, float minB, float maxB) {
+        if(minA > maxB)
+            return minA - maxB;
+        if(minB > maxA)
+            return maxA - minB;
+        return 0;
+    }
+
+    /**
+     * Moves a body's core to its object's current position.
+     */
+    private void place(Body body) {
+        float[] transform = body.object.getWorldTransform().val;
+        Vector3 offset = body.shape.getOffset();
+        body.placedVersion = body.object.getWorldTransformVersion();
+        setCore(body, body.shape, transform[Matrix4.M03] + offset.x, transform[Matrix4.M13] + offset.y, transform[Matrix4.M23] + offset.z);
+    }
+
+    private static void setCore(Body body, CollisionShape shape, float x, float y, float z) {
+        float halfX = 0, halfY = 0, halfZ = 0;
+        switch(shape.getType()) {
+            case BOX:
+                halfX = shape.getHalfExtents().x;
+                halfY = shape.getHalfExtents().y;
+                halfZ = shape.getHalfExtents().z;
+                body.radius = 0;
+                break;
+            case SPHERE:
+                body.radius = shape.getRadius();
+                break;
+            case CAPSULE:
+                halfY = shape.getHalfHeight();
+                body.radius = shape.getRadius();
+                break;
+        }
+
+        body.coreMinX = x - halfX;
+        body.coreMinY = y - halfY;
+        body.coreMinZ = z - halfZ;
+        body.coreMaxX = x + halfX;
+        body.coreMaxY = y + halfY;
+        body.coreMaxZ = z + halfZ;
+    }
+
+    private int cell(float coordinate) {
+        return (int)Math.floor(coordinate / cellSize);
+    }
+
+    private static long key(int x, int y, int z) {
+        return ((long)(x & 0x1fffff) << 42) | ((long)(y & 0x1fffff) << 21) | (z & 0x1fffff);
+    }
+
+    /**
+     * Registers a component on its tag's layer, or the given layer if its tag has none.
+     */
+    private void register(PhysicsComponent component, GameObject object, int defaultLayer, boolean isStatic) {
+        if(component.getShapeDescription() == null)
+            throw new IllegalArgumentException("The Java collision world needs physics components created from a CollisionShape");
+
+        component.setUserData(object);
+        handles.assign(component.getUserData());
+
+        Body body = new Body();
+        body.component = component;
+        body.userData = component.getUserData();
+        body.object = object;
+        body.shape = component.getShapeDescription();
+        int layer = layers.getLayer(component.getCollisionTag(), defaultLayer);
+        body.group = CollisionLayers.getGroup(layer);
+        body.mask = layers.getMask(layer);
+        body.isStatic = isStatic;
+        place(body);
+        bodies.put(component, body);
+
+        if(isStatic) {
+            for(int x = cell(body.coreMinX - body.radius); x <= cell(body.coreMaxX + body.radius); x++) {
+                for(int y = cell(body.coreMinY - body.radius); y <= cell(body.coreMaxY + body.radius); y++) {
+                    for(int z = cell(body.coreMinZ - body.radius); z <= cell(body.coreMaxZ + body.radius); z++) {
+                        long key = key(x, y, z);
+                        ArrayList<Body> cell = cells.get(key);
+                        if(cell == null) {
+                            cell = new ArrayList<Body>(4);
+                            cells.put(key, cell);
+                        }
+                        cell.add(body);
+                    }
+                }
+            }
+        } else {
+            if(dynamicCount == dynamics.length)
+                dynamics = Arrays.copyOf(dynamics, dynamicCount * 2);
+            dynamics[dynamicCount++] = body;
+        }
+    }
+
+    public void registerDynamicEntity(PhysicsComponent component, GameObject object) {
+        register(component, object, CollisionLayers.DYNAMIC, false);
+    }
+
+    public void registerStaticGeometry(PhysicsComponent component, GameObject object) {
+        register(component, object, CollisionLayers.STATIC, true);
+    }
+
+    public void registerTriggerEntity(PhysicsComponent component, GameObject object) {
+        register(component, object, CollisionLayers.TRIGGER, false);
+    }
+
+    /**
+     * Registers the object as static geometry, which is already kept by grid cell in this world.
+     */
+    public void registerStaticChunkGeometry(PhysicsComponent component, GameObject object) {
+        registerStaticGeometry(component, object);
+    }
+
+    /**
+     * Has no effect, as static geometry costs nothing until something comes near it in this world.
+     */
+    public void setStaticChunkStreaming(Vector3 center, float radius) { }
+
+    public void unregister(PhysicsComponent component) {
+        Body body = bodies.remove(component);
+        if(body == null)
+            return;
+
+        handles.retire(body.userData);
+
+        if(body.isStatic) {
+            for(int x = cell(body.coreMinX - body.radius); x <= cell(body.coreMaxX + body.radius); x++) {
+                for(int y = cell(body.coreMinY - body.radius); y <= cell(body.coreMaxY + body.radius); y++) {
+                    for(int z = cell(body.coreMinZ - body.radius); z <= cell(body.coreMaxZ + body.radius); z++) {
+                        ArrayList<Body> cell = cells.get(key(x, y, z));
+                        if(cell != null)
+                            cell.remove(body);
+                    }
+                }
+            }
+        } else {
+            for(int i = 0; i < dynamicCount; i++) {
+                if(dynamics[i] == body) {
+                    if(i < sortedCount)
+                        sortedCount--;
+                    System.arraycopy(dynamics, i + 1, dynamics, i, dynamicCount - i - 1);
+                    dynamics[--dynamicCount] = null;
+                    break;
+                }
+            }
+        }
+    }
+
+    public void setCollisionLayers(CollisionLayers layers) {
+        this.layers = layers;
+    }
+
+    public CollisionLayers getCollisionLayers() { return layers; }
+
+    public void clear() {
+        bodies.clear();
+        cells.clear();
+        Arrays.fill(dynamics, 0, dynamicCount, null);
+        dynamicCount = 0;
+        sortedCount = 0;
+        handles.clear();
+        contactEvents.clear();
+    }
+
+    public void dispose() {
+        if(debugRenderer != null)
+            debugRenderer.dispose();
+    }
+
+    /**
+     * Contacts are always buffered in this world, so this has no effect.
+     */
+    public void setBufferedContacts(boolean buffered) { }
+
+    public boolean isBufferedContacts() { return true; }
+
+    public void addContactEventListener(ContactEventListener listener) {
+        contactEventListeners.add(listener);
+    }
+
+    public void removeContactEventListener(ContactEventListener listener) {
+        contactEventListeners.remove(listener);
+    }
+
+    public ContactEventBuffer getContactEvents() { return contactEvents; }
+
+    public CollisionObject getCollisionObject(int handle) {
+        return handles.get(handle);
+    }
+
+    public ArrayList<CollisionObject> getRegisteredCollisionObjects() {
+        ArrayList<CollisionObject> objects = new ArrayList<CollisionObject>();
+        for(Body body : bodies.values()) {
+            objects.add(body.userData);
+        }
+        return objects;
+    }
+
+    /**
+     * Draws the bounds of every object. The debug draw mode is ignored.
+     */
+    public void debugDraw(Camera camera) {
+        if(debugRenderer == null)
+            debugRenderer = new ShapeRenderer();
+
+        debugRenderer.setProjectionMatrix(camera.combined);
+        debugRenderer.begin(ShapeRenderer.ShapeType.Line);
+        for(Body body : bodies.values()) {
+            debugRenderer.setColor(body.isStatic ? Color.GREEN : Color.RED);
+            float r = body.radius;
+            debugRenderer.box(body.coreMinX - r, body.coreMinY - r, body.coreMaxZ + r,
+                    body.coreMaxX - body.coreMinX + r * 2, body.coreMaxY - body.coreMinY + r * 2, body.coreMaxZ - body.coreMinZ + r * 2);
+        }
+        debugRenderer.end();
+    }
+
+    public void setDebugDrawMode(int mode) { }
+
+    public void enableDebug() {
+        debugActive = true;
+    }
+
+    public void disableDebug() {
+        debugActive = false;
+    }
+
+    public boolean isDebugActive() { return debugActive; }
+
+    public CollisionObject rayTestFirst(Vector3 start, Vector3 end, short group, short mask) {
+        cast(start.x, start.y, start.z, end.x, end.y, end.z, group, mask, 0, 0, 0, 0, false);
+        return hitCount > 0 ? hitBodies[0].userData : null;
+    }
+
+    public CollisionObject[] rayTestAll(Vector3 start, Vector3 end, CollisionFilter group, CollisionFilter mask) {
+        cast(start.x, start.y, start.z, end.x, end.y, end.z, group.getValue(), mask.getValue(), 0, 0, 0, 0, true);
+        if(hitCount == 0)
+            return null;
+
+        CollisionObject[] hitObjects = new CollisionObject[hitCount];
+        for(int i = 0; i < hitCount; i++) {
+            hitObjects[i] = hitBodies[i].userData;
+        }
+        return hitObjects;
+    }
+
+    public int rayTestAll(Vector3 start, Vector3 end, short group, short mask, ArrayList<CollisionObject> out) {
+        out.clear();
+        cast(start.x, start.y, start.z, end.x, end.y, end.z, group, mask, 0, 0, 0, 0, true);
+        for(int i = 0; i < hitCount; i++) {
+            out.add(hitBodies[i].userData);
+        }
+        return hitCount;
+    }
+
+    public int rayTestFirst(float[] starts, float[] ends, int rayCount, short group, short mask,
+                            int[] hitHandles, float[] hitFractions, float[] hitPoints, float[] hitNormals) {
+        int hits = 0;
+        for(int i = 0; i < rayCount; i++) {
+            int r = i * 3;
+            cast(starts[r], starts[r + 1], starts[r + 2], ends[r], ends[r + 1], ends[r + 2], group, mask, 0, 0, 0, 0, false);
+
+            boolean hit = hitCount > 0;
+            if(hit)
+                hits++;
+
+            if(hitHandles != null)
+                hitHandles[i] = hit ? hitBodies[0].userData.getHandle() : -1;
+            if(hitFractions != null)
+                hitFractions[i] = hit ? this.hitFractions[0] : 1f;
+            if(hit && hitPoints != null) {
+                float t = this.hitFractions[0];
+                hitPoints[r] = starts[r] + (ends[r] - starts[r]) * t;
+                hitPoints[r + 1] = starts[r + 1] + (ends[r + 1] - starts[r + 1]) * t;
+                hitPoints[r + 2] = starts[r + 2] + (ends[r + 2] - starts[r + 2]) * t;
+            }
+            if(hit && hitNormals != null)
+                System.arraycopy(this.hitNormals, 0, hitNormals, r, 3);
+        }
+        return hits;
+    }
+
+    public int rayTestAll(Vector3 start, Vector3 end, short group, short mask,
+                          int[] hitHandles, float[] hitFractions, float[] hitPoints, float[] hitNormals, int maxHits) {
+        cast(start.x, start.y, start.z, end.x, end.y, end.z, group, mask, 0, 0, 0, 0, true);
+
+        int count = Math.min(hitCount, maxHits);
+        for(int i = 0; i < count; i++) {
+            float t = this.hitFractions[i];
+            if(hitHandles != null)
+                hitHandles[i] = hitBodies[i].userData.getHandle();
+            if(hitFractions != null)
+                hitFractions[i] = t;
+            if(hitPoints != null) {
+                hitPoints[i * 3] = start.x + (end.x - start.x) * t;
+                hitPoints[i * 3 + 1] = start.y + (end.y - start.y) * t;
+                hitPoints[i * 3 + 2] = start.z + (end.z - start.z) * t;
+            }
+            if(hitNormals != null)
+                System.arraycopy(this.hitNormals, i * 3, hitNormals, i * 3, 3);
+        }
+        return count;
+    }
+
+    /**
+     * Sweeps a sphere, see {@link #sweepTest(CollisionShape, Vector3, Vector3, short, short, Vector3, Vector3)}.
+     */
+    public CollisionObject sweepSphere(Vector3 start, Vector3 end, float radius, short group, short mask, Vector3 hitPoint, Vector3 hitNormal) {
+        return sweep(start.x, start.y, start.z, end.x, end.y, end.z, 0, 0, 0, radius, group, mask, hitPoint, hitNormal);
+    }
+
+    /**
+     * Sweeps a shape, casting a ray against every shape grown by the swept one. Grown spheres and capsules stay exact, but a box grown
+     * by a rounded shape, or a rounded shape grown by a box, becomes a larger box, so hits near its edges and corners are slightly early.
+     */
+    public CollisionObject sweepTest(CollisionShape shape, Vector3 start, Vector3 end, short group, short mask, Vector3 hitPoint, Vector3 hitNormal) {
+        float halfX = 0, halfY = 0, halfZ = 0, radius = shape.getRadius();
+        switch(shape.getType()) {
+            case BOX:
+                halfX = shape.getHalfExtents().x;
+                halfY = shape.getHalfExtents().y;
+                halfZ = shape.getHalfExtents().z;
+                break;
+            case CAPSULE:
+                halfY = shape.getHalfHeight();
+                break;
+        }
+
+        Vector3 offset = shape.getOffset();
+        return sweep(start.x + offset.x, start.y + offset.y, start.z + offset.z, end.x + offset.x, end.y + offset.y, end.z + offset.z,
+                halfX, halfY, halfZ, radius, group, mask, hitPoint, hitNormal);
+    }
+
+    /**
+     * Sweeps a core box rounded by a radius from one center position to another.
+     */
+    private CollisionObject sweep(float startX, float startY, float startZ, float endX, float endY, float endZ,
+                                  float halfX, float halfY, float halfZ, float radius, short group, short mask, Vector3 hitPoint, Vector3 hitNormal) {
+        cast(startX, startY, startZ, endX, endY, endZ, group, mask, halfX, halfY, halfZ, radius, false);
+        if(hitCount == 0) {
+            sweepFraction = 1f;
+            return null;
+        }
+
+        sweepFraction = hitFractions[0];
+        float nx = hitNormals[0], ny = hitNormals[1], nz = hitNormals[2];
+        if(hitNormal != null)
+            hitNormal.set(nx, ny, nz);
+        if(hitPoint != null) {
+            // The point on the swept shape touching the other shape, exact for normals along an axis
+            float t = sweepFraction;
+            hitPoint.set(startX + (endX - startX) * t, startY + (endY - startY) * t, startZ + (endZ - startZ) * t);
+            hitPoint.sub(nx * (halfX + radius), ny * (halfY + radius), nz * (halfZ + radius));
+        }
+        return hitBodies[0].userData;
+    }
+
+    public float getSweepFraction() { return sweepFraction; }
+
+    public int overlapSphere(Vector3 center, float radius, short group, short mask, ArrayList<CollisionObject> out) {
+        queryBody.coreMinX = queryBody.coreMaxX = center.x;
+        queryBody.coreMinY = queryBody.coreMaxY = center.y;
+        queryBody.coreMinZ = queryBody.coreMaxZ = center.z;
+        queryBody.radius = radius;
+        return overlap(group, mask, out);
+    }
+
+    public int overlapBox(Vector3 center, Vector3 halfExtents, short group, short mask, ArrayList<CollisionObject> out) {
+        queryBody.coreMinX = center.x - halfExtents.x;
+        queryBody.coreMinY = center.y - halfExtents.y;
+        queryBody.coreMinZ = center.z - halfExtents.z;
+        queryBody.coreMaxX = center.x + halfExtents.x;
+        queryBody.coreMaxY = center.y + halfExtents.y;
+        queryBody.coreMaxZ = center.z + halfExtents.z;
+        queryBody.radius = 0;
+        return overlap(group, mask, out);
+    }
+
+    /**
+     * Finds the bodies overlapping the query body.
+     */
+    private int overlap(short group, short mask, ArrayList<CollisionObject> out) {
+        out.clear();
+        Body query = queryBody;
+        stamp++;
+
+        float r = query.radius;
+        for(int x = cell(query.coreMinX - r); x <= cell(query.coreMaxX + r); x++) {
+            for(int y = cell(query.coreMinY - r); y <= cell(query.coreMaxY + r); y++) {
+                for(int z = cell(query.coreMinZ - r); z <= cell(query.coreMaxZ + r); z++) {
+                    ArrayList<Body> cell = cells.get(key(x, y, z));
+                    if(cell == null)
+                        continue;
+
+                    for(int k = 0; k < cell.size(); k++) {
+                        Body body = cell.get(k);
+                        if(body.stamp != stamp) {
+                            body.stamp = stamp;
+                            if(accepts(body, group, mask) && penetrate(query, body) > 0)
+                                out.add(body.userData);
+                        }
+                    }
+                }
+            }
+        }
+
+        float maxX = query.coreMaxX + r;
+        for(int i = firstDynamic(query.coreMinX - r); i < dynamicCount; i++) {
+            Body body = dynamics[i];
+            if(i < sortedCount && body.coreMinX - body.radius > maxX)
+                i = sortedCount - 1; // Past the query, so on to the unsorted ones
+            else if(accepts(body, group, mask) && penetrate(query, body) > 0)
+                out.add(body.userData);
+        }
+        return out.size();
+    }
+
+    /**
+     * Returns the index of the first sorted dynamic body whose bounds may reach the given minimum x. Bounds starting before it by
+     * more than the widest bounds can't.
+     */
+    private int firstDynamic(float minX) {
+        float value = minX - maxDynamicWidth;
+        int low = 0, high = sortedCount;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            Body body = dynamics[middle];
+            if(body.coreMinX - body.radius < value)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Casts a ray, or sweeps a core box with the given half extents rounded by the radius if any are positive, finding the hits
+     * sorted by fraction. Only the nearest hit is kept unless all hits are requested. As with Bullet, shapes containing the start of
+     * the ray aren't hit.
+     */
+    private void cast(float startX, float startY, float startZ, float endX, float endY, float endZ, short group, short mask,
+                      float halfX, float halfY, float halfZ, float radius, boolean all) {
+        hitCount = 0;
+        stamp++;
+
+        float dirX = endX - startX, dirY = endY - startY, dirZ = endZ - startZ;
+
+        // Only sorted dynamics whose bounds start within the reach of the ray along x
+        float reachX = halfX + radius;
+        float maxX = Math.max(startX, endX) + reachX;
+        for(int i = firstDynamic(Math.min(startX, endX) - reachX); i < dynamicCount; i++) {
+            Body body = dynamics[i];
+            if(i < sortedCount && body.coreMinX - body.radius > maxX)
+                i = sortedCount - 1; // Past the ray, so on to the unsorted ones
+            else
+                castBody(body, startX, startY, startZ, dirX, dirY, dirZ, group, mask, halfX, halfY, halfZ, radius, all);
+        }
+
+        if(halfX > 0 || halfY > 0 || halfZ > 0 || radius > 0) {
+            // Sweeps are short, so test the cells their bounds cover
+            float boundsX = halfX + radius, boundsY = halfY + radius, boundsZ = halfZ + radius;
+            for(int x = cell(Math.min(startX, endX) - boundsX); x <= cell(Math.max(startX, endX) + boundsX); x++) {
+                for(int y = cell(Math.min(startY, endY) - boundsY); y <= cell(Math.max(startY, endY) + boundsY); y++) {
+                    for(int z = cell(Math.min(startZ, endZ) - boundsZ); z <= cell(Math.max(startZ, endZ) + boundsZ); z++) {
+                        castCell(key(x, y, z), startX, startY, startZ, dirX, dirY, dirZ, group, mask, halfX, halfY, halfZ, radius, all);
+                    }
+                }
+            }
+            return;
+        }
+
+        // Walk the cells along the ray, stopping once past the nearest hit
+        int x = cell(startX), y = cell(startY), z = cell(startZ);
+        int lastX = cell(endX), lastY = cell(endY), lastZ = cell(endZ);
+        int stepX = dirX > 0 ? 1 : -1, stepY = dirY > 0 ? 1 : -1, stepZ = dirZ > 0 ? 1 : -1;
+        float deltaX = dirX != 0 ? Math.abs(cellSize / dirX) : Float.MAX_VALUE;
+        float deltaY = dirY != 0 ? Math.abs(cellSize / dirY) : Float.MAX_VALUE;
+        float deltaZ = dirZ != 0 ? Math.abs(cellSize / dirZ) : Float.MAX_VALUE;
+        float nextX = dirX != 0 ? ((x + (stepX > 0 ? 1 : 0)) * cellSize - startX) / dirX : Float.MAX_VALUE;
+        float nextY = dirY != 0 ? ((y + (stepY > 0 ? 1 : 0)) * cellSize - startY) / dirY : Float.MAX_VALUE;
+        float nextZ = dirZ != 0 ? ((z + (stepZ > 0 ? 1 : 0)) * cellSize - startZ) / dirZ : Float.MAX_VALUE;
+        float entry = 0;
+
+        while(true) {
+            if(!all && hitCount > 0 && hitFractions[0] <= entry)
+                return;
+
+            castCell(key(x, y, z), startX, startY, startZ, dirX, dirY, dirZ, group, mask, 0, 0, 0, 0, all);
+
+            if(x == lastX && y == lastY && z == lastZ)
+                return;
+
+            if(nextX <= nextY && nextX <= nextZ) {
+                x += stepX;
+                entry = nextX;
+                nextX += deltaX;
+            } else if(nextY <= nextZ) {
+                y += stepY;
+                entry = nextY;
+                nextY += deltaY;
+            } else {
+                z += stepZ;
+                entry = nextZ;
+                nextZ += deltaZ;
+            }
+
+            if(entry > 1)
+                return;
+        }
+    }
+
+    private void castCell(long key, float startX, float startY, float startZ, float dirX, float dirY, float dirZ, short group, short mask,
+                          float halfX, float halfY, float halfZ, float radius, boolean all) {
+        ArrayList<Body> cell = cells.get(key);
+        if(cell == null)
+            return;
+
+        for(int k = 0; k < cell.size(); k++) {
+            castBody(cell.get(k), startX, startY, startZ, dirX, dirY, dirZ, group, mask, halfX, halfY, halfZ, radius, all);
+        }
+    }
+
+    private void castBody(Body body, float startX, float startY, float startZ, float dirX, float dirY, float dirZ, short group, short mask,
+                          float halfX, float halfY, float halfZ, float radius, boolean all) {
+        if(body.stamp == stamp)
+            return;
+        body.stamp = stamp;
+
+        if(!accepts(body, group, mask))
+            return;
+
+        float t = castShape(body, startX, startY, startZ, dirX, dirY, dirZ, halfX, halfY, halfZ, body.radius + radius);
+        if(t < 0)
+            return;
+
+        if(!all) {
+            if(hitCount > 0 && hitFractions[0] <= t)
+                return;
+            hitCount = 0;
+        }
+
+        if(hitCount == hitBodies.length) {
+            hitBodies = Arrays.copyOf(hitBodies, hitCount * 2);
+            hitFractions = Arrays.copyOf(hitFractions, hitCount * 2);
+            hitNormals = Arrays.copyOf(hitNormals, hitCount * 6);
+        }
+
+        // Insert sorted by fraction
+        int i = hitCount++;
+        while(i > 0 && hitFractions[i - 1] > t) {
+            hitBodies[i] = hitBodies[i - 1];
+            hitFractions[i] = hitFractions[i - 1];
+            System.arraycopy(hitNormals, (i - 1) * 3, hitNormals, i * 3, 3);
+            i--;
+        }
+        hitBodies[i] = body;
+        hitFractions[i] = t;
+        hitNormals[i * 3] = normalX;
+        hitNormals[i * 3 + 1] = normalY;
+        hitNormals[i * 3 + 2] = normalZ;
+    }
+
+    /**
+     * Casts a ray against a body's core grown by the given half extents and rounded by the given radius, returning the fraction of
+     * the hit, or -1 if none, and setting the normal.
+     */
+    private float castShape(Body body, float startX, float startY, float startZ, float dirX, float dirY, float dirZ,
+                            float halfX, float halfY, float halfZ, float radius) {
+        float minX = body.coreMinX - halfX, minY = body.coreMinY - halfY, minZ = body.coreMinZ - halfZ;
+        float maxX = body.coreMaxX + halfX, maxY = body.coreMaxY + halfY, maxZ = body.coreMaxZ + halfZ;
+
+        if(radius > 0 && minX == maxX && minZ == maxZ) {
+            if(minY == maxY)
+                return castSphere(startX, startY, startZ, dirX, dirY, dirZ, minX, minY, minZ, radius);
+            return castCapsule(startX, startY, startZ, dirX, dirY, dirZ, minX, minZ, minY, maxY, radius);
+        }
+
+        return castBox(startX, startY, startZ, dirX, dirY, dirZ,
+                minX - radius, minY - radius, minZ - radius, maxX + radius, maxY + radius, maxZ + radius);
+    }
+
+    private float castBox(float startX, float startY, float startZ, float dirX, float dirY, float dirZ,
+                          float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        if(startX > minX && startX < maxX && startY > minY && startY < maxY && startZ > minZ && startZ < maxZ)
+            return -1;
+
+        float near = 0, far = 1;
+        int axis = -1;
+
+        // Slabs along each axis
+        float[] slab = slabs;
+        slab[0] = startX; slab[1] = dirX; slab[2] = minX; slab[3] = maxX;
+        slab[4] = startY; slab[5] = dirY; slab[6] = minY; slab[7] = maxY;
+        slab[8] = startZ; slab[9] = dirZ; slab[10] = minZ; slab[11] = maxZ;
+        for(int a = 0; a < 3; a++) {
+            float start = slab[a * 4], dir = slab[a * 4 + 1], min = slab[a * 4 + 2], max = slab[a * 4 + 3];
+            if(dir == 0) {
+                if(start < min || start > max)
+                    return -1;
+                continue;
+            }
+
+            float t0 = (min - start) / dir, t1 = (max - start) / dir;
+            if(t0 > t1) {
+                float t = t0; t0 = t1; t1 = t;
+            }
+            if(t0 > near) {
+                near = t0;
+                axis = a;
+            }
+            if(t1 < far)
+                far = t1;
+            if(near > far)
+                return -1;
+        }
+
+        if(axis < 0)
+            return -1;
+
+        normalX = normalY = normalZ = 0;
+        float sign = slab[axis * 4 + 1] > 0 ? -1 : 1;
+        if(axis == 0)
+            normalX = sign;
+        else if(axis == 1)
+            normalY = sign;
+        else
+            normalZ = sign;
+        return near;
+    }
+
+    private float castSphere(float startX, float startY, float startZ, float dirX, float dirY, float dirZ,
+                             float centerX, float centerY, float centerZ, float radius) {
+        float fx = startX - centerX, fy = startY - centerY, fz = startZ - centerZ;
+        float c = fx * fx + fy * fy + fz * fz - radius * radius;
+        if(c <= 0)
+            return -1;
+
+        float a = dirX * dirX + dirY * dirY + dirZ * dirZ;
+        float b = fx * dirX + fy * dirY + fz * dirZ;
+        float discriminant = b * b - a * c;
+        if(a == 0 || discriminant < 0)
+            return -1;
+
+        float t = (-b - (float)Math.sqrt(discriminant)) / a;
+        if(t < 0 || t > 1)
+            return -1;
+
+        normalX = (fx + dirX * t) / radius;
+        normalY = (fy + dirY * t) / radius;
+        normalZ = (fz + dirZ * t) / radius;
+        return t;
+    }
+
+    private float castCapsule(float startX, float startY, float startZ, float dirX, float dirY, float dirZ,
+                              float centerX, float centerZ, float bottom, float top, float radius) {
+        // Starting inside the capsule
+        float fx = startX - centerX, fz = startZ - centerZ;
+        float closestY = Math.max(bottom, Math.min(top, startY)) - startY;
+        if(fx * fx + closestY * closestY + fz * fz <= radius * radius)
+            return -1;
+
+        float best = -1;
+        float bestX = 0, bestY = 0, bestZ = 0;
+
+        // The side, an infinite vertical cylinder limited to the segment
+        float a = dirX * dirX + dirZ * dirZ;
+        if(a > 0) {
+            float b = fx * dirX + fz * dirZ;
+            float c = fx * fx + fz * fz - radius * radius;
+            float discriminant = b * b - a * c;
+            if(discriminant >= 0) {
+                float t = (-b - (float)Math.sqrt(discriminant)) / a;
+                float y = startY + dirY * t;
+                if(t >= 0 && t <= 1 && y >= bottom && y <= top) {
+                    best = t;
+                    bestX = (fx + dirX * t) / radius;
+                    bestZ = (fz + dirZ * t) / radius;
+                }
+            }
+        }
+
+        // The end spheres
+        float t = castSphere(startX, startY, startZ, dirX, dirY, dirZ, centerX, bottom, centerZ, radius);
+        if(t >= 0 && (best < 0 || t < best)) {
+            best = t;
+            bestX = normalX; bestY = normalY; bestZ = normalZ;
+        }
+        t = castSphere(startX, startY, startZ, dirX, dirY, dirZ, centerX, top, centerZ, radius);
+        if(t >= 0 && (best < 0 || t < best)) {
+            best = t;
+            bestX = normalX; bestY = normalY; bestZ = normalZ;
+        }
+
+        normalX = bestX;
+        normalY = bestY;
+        normalZ = bestZ;
+        return best;
+    }
+}
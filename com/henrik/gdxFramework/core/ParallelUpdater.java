@@ -0,0 +1,81 @@
+package com.henrik.gdxFramework.core;
+
+import com.henrik.gdxFramework.entities.GameObject;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Updates game objects in parallel on a work-stealing fork-join pool. The object list is split in halves until ranges are small
+ * enough to update on one thread. Only objects reporting {@link GameObject#isParallelSafe()} are updated here; see that method for
+ * what such objects may do.
+ */
+public class ParallelUpdater {
+
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    private final ForkJoinPool pool;
+    private int batchSize;
+
+    private class UpdateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final World world;
+        private final List<? extends GameObject> objects;
+        private final int start;
+        private final int end;
+
+        UpdateTask(World world, List<? extends GameObject> objects, int start, int end) {
+            this.world = world;
+            this.objects = objects;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if(end - start <= batchSize) {
+                for(int i = start; i < end; i++) {
+                    GameObject object = objects.get(i);
+                    if(object.isParallelSafe())
+                        object.update(world);
+                }
+                return;
+            }
+
+            int middle = (start + end) >>> 1;
+            invokeAll(new UpdateTask(world, objects, start, middle), new UpdateTask(world, objects, middle, end));
+        }
+    }
+
+    public ParallelUpdater() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelUpdater(int parallelism) {
+        pool = new ForkJoinPool(parallelism);
+        batchSize = DEFAULT_BATCH_SIZE;
+    }
+
+    /**
+     * Sets the number of objects below which a range is updated on one thread rather than split further.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Updates every parallel-safe object in the list, returning once all are done. The list must not change meanwhile.
+     */
+    public void update(World world, List<? extends GameObject> objects) {
+        if(objects.isEmpty())
+            return;
+
+        pool.invoke(new UpdateTask(world, objects, 0, objects.size()));
+    }
+
+    public void dispose() {
+        pool.shutdown();
+    }
+}
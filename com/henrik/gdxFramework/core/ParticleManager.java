@@ -0,0 +1,363 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.graphics.g3d.RenderableProvider;
+import com.badlogic.gdx.graphics.g3d.particles.ParticleController;
+import com.badlogic.gdx.graphics.g3d.particles.ParticleEffect;
+import com.badlogic.gdx.graphics.g3d.particles.batches.BufferedParticleBatch;
+import com.badlogic.gdx.graphics.g3d.particles.batches.ParticleBatch;
+import com.badlogic.gdx.graphics.g3d.particles.batches.PointSpriteParticleBatch;
+import com.badlogic.gdx.graphics.g3d.particles.emitters.RegularEmitter;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.Pool;
+
+/**
+ * Manages the particle effects of a single world. The manager owns its particle batches and pools copies of effect templates, so
+ * spawning an effect reuses a finished copy instead of allocating. A budget on live emitters and particles is enforced by stopping
+ * the lowest priority effects. Effects outside the camera's frustum are neither updated nor drawn, but their age still advances, so
+ * an effect that completes out of view is released once it would have completed.
+ */
+public class ParticleManager implements RenderableProvider, Disposable {
+
+    public static final int PRIORITY_ALWAYS = Integer.MAX_VALUE;
+
+    private static class ActiveEffect {
+        ParticleEffect effect;
+        ParticleEffect template; // Null for effects that weren't spawned from a pool
+        int priority;
+        int emitters;
+        int particles;
+        float lifetime; // Seconds until every emitter is done and its particles have died, infinite if the effect never completes
+        float age;
+        boolean visible;
+    }
+
+    private final Array<ParticleBatch<?>> batches;
+    private final PointSpriteParticleBatch pointSpriteBatch;
+
+    private final Array<ActiveEffect> activeEffects;
+    private final ObjectMap<ParticleEffect, Array<ParticleEffect>> pools;
+    private final Pool<ActiveEffect> activeEffectPool;
+
+    private int maxEmitters;
+    private int maxParticles;
+    private int emitterCount;
+    private int particleCount;
+
+    private float cullRadius;
+    private final Vector3 tmpPosition;
+
+    public ParticleManager() {
+        batches = new Array<ParticleBatch<?>>();
+        pointSpriteBatch = new PointSpriteParticleBatch();
+        batches.add(pointSpriteBatch);
+
+        activeEffects = new Array<ActiveEffect>();
+        pools = new ObjectMap<ParticleEffect, Array<ParticleEffect>>();
+        activeEffectPool = new Pool<ActiveEffect>() {
+            @Override
+            protected ActiveEffect newObject() {
+                return new ActiveEffect();
+            }
+        };
+
+        maxEmitters = Integer.MAX_VALUE;
+        maxParticles = Integer.MAX_VALUE;
+        cullRadius = 5f;
+        tmpPosition = new Vector3();
+    }
+
+    /**
+     * Returns the batches owned by this manager. Pass these to the particle effect loader when loading effect templates.
+     */
+    public Array<ParticleBatch<?>> getBatches() {
+        return batches;
+    }
+
+    public void addBatch(ParticleBatch<?> batch) {
+        batches.add(batch);
+    }
+
+    public void setCamera(Camera camera) {
+        for(int i = 0; i < batches.size; i++) {
+            if(batches.get(i) instanceof BufferedParticleBatch)
+                ((BufferedParticleBatch<?>)batches.get(i)).setCamera(camera);
+        }
+    }
+
+    /**
+     * Sets the maximum number of emitters and particles that may be live at once. Particles are counted by the maximum particle count
+     * of each emitter.
+     */
+    public void setBudget(int maxEmitters, int maxParticles) {
+        this.maxEmitters = maxEmitters;
+        this.maxParticles = maxParticles;
+    }
+
+    /**
+     * Sets the radius around an effect's position used to decide whether or not it is in view.
+     */
+    public void setCullRadius(float cullRadius) {
+        this.cullRadius = cullRadius;
+    }
+
+    /**
+     * Spawns a pooled copy of the given template. If the budget is exceeded, lower priority effects are stopped to make room.
+     * @param template The effect to copy. Not modified.
+     * @param transform The transform to start the effect with.
+     * @param priority The priority of the effect; higher priority effects are kept over lower ones.
+     * @return The spawned effect, or null if it doesn't fit in the budget. The effect returns to its pool once complete.
+     */
+    public ParticleEffect spawn(ParticleEffect template, Matrix4 transform, int priority) {
+        int emitters = template.getControllers().size;
+        int particles = countParticles(template);
+        if(!makeRoom(emitters, particles, priority))
+            return null;
+
+        Array<ParticleEffect> pool = pools.get(template);
+        if(pool == null) {
+            pool = new Array<ParticleEffect>();
+            pools.put(template, pool);
+        }
+
+        ParticleEffect effect;
+        if(pool.size > 0) {
+            effect = pool.pop();
+        } else {
+            effect = template.copy();
+            effect.setBatch(batches);
+            effect.init();
+        }
+
+        effect.setTransform(transform);
+        effect.start();
+
+        activate(effect, template, priority, emitters, particles);
+        return effect;
+    }
+
+    /**
+     * Adds an effect that isn't pooled. It is drawn by this manager's batches, and removed once complete, but never stopped to make
+     * room for other effects.
+     */
+    public void add(ParticleEffect effect) {
+        effect.setBatch(batches);
+        int emitters = effect.getControllers().size;
+        int particles = countParticles(effect);
+        makeRoom(emitters, particles, PRIORITY_ALWAYS);
+        activate(effect, null, PRIORITY_ALWAYS, emitters, particles);
+    }
+
+    private void activate(ParticleEffect effect, ParticleEffect template, int priority, int emitters, int particles) {
+        ActiveEffect active = activeEffectPool.obtain();
+        active.effect = effect;
+        active.template = template;
+        active.priority = priority;
+        active.emitters = emitters;
+        active.particles = particles;
+        active.lifetime = getLifetime(effect);
+        active.age = 0;
+        active.visible = true;
+        activeEffects.add(active);
+
+        emitterCount += emitters;
+        particleCount += particles;
+    }
+
+    /**
+     * Stops lower priority effects until the given number of emitters and particles fits in the budget.
+     * @return Whether or not there is now room.
+     */
+    private boolean makeRoom(int emitters, int particles, int priority) {
+        while(emitterCount + emitters > maxEmitters || particleCount + particles > maxParticles) {
+            int lowest = -1;
+            for(int i = 0; i < activeEffects.size; i++) {
+                ActiveEffect active = activeEffects.get(i);
+                if(active.priority < priority && (lowest == -1 || active.priority < activeEffects.get(lowest).priority))
+                    lowest = i;
+            }
+
+            if(lowest == -1)
+                return false;
+
+            release(lowest);
+        }
+        return true;
+    }
+
+    /**
+     * Stops the effect at the given index and returns it to its pool.
+     */
+    private void release(int index) {
+        ActiveEffect active = activeEffects.removeIndex(index);
+        emitterCount -= active.emitters;
+        particleCount -= active.particles;
+
+        if(active.template != null) {
+            active.effect.end();
+            pools.get(active.template).add(active.effect);
+        }
+
+        active.effect = null;
+        active.template = null;
+        activeEffectPool.free(active);
+    }
+
+    /**
+     * Removes an effect, returning it to its pool if it was spawned from one.
+     */
+    public void remove(ParticleEffect effect) {
+        for(int i = 0; i < activeEffects.size; i++) {
+            if(activeEffects.get(i).effect == effect) {
+                release(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Updates and draws every effect in view of the camera, and releases completed effects. Effects out of view are released once
+     * their lifetime has passed, as they are not updated and so never complete on their own.
+     */
+    public void update(Camera camera) {
+        for(int i = activeEffects.size - 1; i >= 0; i--) {
+            ActiveEffect active = activeEffects.get(i);
+            if(isComplete(active.effect)) {
+                release(i);
+                continue;
+            }
+
+            active.visible = camera == null || isInView(active.effect, camera);
+            active.age += getTimeStep(active.effect);
+            if(active.visible) {
+                active.effect.update();
+            } else if(active.age >= active.lifetime) {
+                release(i);
+            }
+        }
+
+        for(int i = 0; i < batches.size; i++) {
+            batches.get(i).begin();
+        }
+        for(int i = 0; i < activeEffects.size; i++) {
+            ActiveEffect active = activeEffects.get(i);
+            if(active.visible)
+                active.effect.draw();
+        }
+        for(int i = 0; i < batches.size; i++) {
+            batches.get(i).end();
+        }
+    }
+
+    private boolean isInView(ParticleEffect effect, Camera camera) {
+        Array<ParticleController> controllers = effect.getControllers();
+        if(controllers.size == 0)
+            return false;
+
+        controllers.first().transform.getTranslation(tmpPosition);
+        return camera.frustum.sphereInFrustum(tmpPosition, cullRadius);
+    }
+
+    /**
+     * Returns whether or not every emitter of an effect is done and has no particles left. Only regular emitters complete.
+     */
+    private static boolean isComplete(ParticleEffect effect) {
+        Array<ParticleController> controllers = effect.getControllers();
+        for(int i = 0; i < controllers.size; i++) {
+            ParticleController controller = controllers.get(i);
+            if(!(controller.emitter instanceof RegularEmitter) || !((RegularEmitter)controller.emitter).isComplete()
+                    || controller.particles.size > 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the time one update advances an effect by. Controllers step a fixed time per update rather than the frame time.
+     */
+    private static float getTimeStep(ParticleEffect effect) {
+        Array<ParticleController> controllers = effect.getControllers();
+        return controllers.size == 0 ? 0 : controllers.first().deltaTime;
+    }
+
+    /**
+     * Returns the longest time in seconds an effect can take to complete: the longest delay, duration and particle life of any of its
+     * emitters. Infinite if any emitter never completes.
+     */
+    private static float getLifetime(ParticleEffect effect) {
+        float lifetime = 0;
+        Array<ParticleController> controllers = effect.getControllers();
+        for(int i = 0; i < controllers.size; i++) {
+            if(!(controllers.get(i).emitter instanceof RegularEmitter))
+                return Float.POSITIVE_INFINITY;
+
+            RegularEmitter emitter = (RegularEmitter)controllers.get(i).emitter;
+            if(emitter.isContinuous())
+                return Float.POSITIVE_INFINITY;
+
+            // Emitter values are in milliseconds. Life is bounded by both of its ranges, as relative high values add to the low value
+            float delay = emitter.delayValue.active ? Math.max(emitter.delayValue.getLowMin(), emitter.delayValue.getLowMax()) : 0;
+            float duration = Math.max(emitter.durationValue.getLowMin(), emitter.durationValue.getLowMax());
+            float life = Math.max(emitter.lifeValue.getLowMin(), emitter.lifeValue.getLowMax())
+                    + Math.max(emitter.lifeValue.getHighMin(), emitter.lifeValue.getHighMax());
+            lifetime = Math.max(lifetime, (delay + duration + life) / 1000f);
+        }
+        return lifetime;
+    }
+
+    private static int countParticles(ParticleEffect effect) {
+        int particles = 0;
+        Array<ParticleController> controllers = effect.getControllers();
+        for(int i = 0; i < controllers.size; i++) {
+            particles += controllers.get(i).emitter.maxParticleCount;
+        }
+        return particles;
+    }
+
+    @Override
+    public void getRenderables(Array<Renderable> renderables, Pool<Renderable> pool) {
+        for(int i = 0; i < batches.size; i++) {
+            batches.get(i).getRenderables(renderables, pool);
+        }
+    }
+
+    /**
+     * Returns the number of emitters currently live.
+     */
+    public int getEmitterCount() {
+        return emitterCount;
+    }
+
+    /**
+     * Returns the number of particles reserved by live effects.
+     */
+    public int getParticleCount() {
+        return particleCount;
+    }
+
+    public int getEffectCount() {
+        return activeEffects.size;
+    }
+
+    /**
+     * Disposes every pooled copy. Effects added with {@link #add(ParticleEffect)} are owned by the caller and are not disposed.
+     */
+    @Override
+    public void dispose() {
+        for(int i = activeEffects.size - 1; i >= 0; i--) {
+            release(i);
+        }
+
+        for(Array<ParticleEffect> pool : pools.values()) {
+            for(int i = 0; i < pool.size; i++) {
+                pool.get(i).dispose();
+            }
+        }
+        pools.clear();
+    }
+}
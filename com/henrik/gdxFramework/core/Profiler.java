@@ -10,6 +10,9 @@ public class Profiler {
 
     private int fps, glCalls, glTextureBindings, glDrawCalls, glShaderSwitches;
     private float glVertexCount;
+    private int spriteCount, spriteTextureFlushes;
+    private int frameSpriteCount, frameSpriteTextureFlushes; // Accumulated over the current frame
+    private int physicsSyncs, framePhysicsSyncs;
     private boolean enabled;
 
     public Profiler() {
@@ -19,6 +22,9 @@ public class Profiler {
         glDrawCalls = 0;
         glShaderSwitches = 0;
         glVertexCount = 0;
+        spriteCount = 0;
+        spriteTextureFlushes = 0;
+        physicsSyncs = 0;
         enabled = false;
     }
 
@@ -68,6 +74,42 @@ public class Profiler {
         return glShaderSwitches;
     }
 
+    /**
+     * Returns the number of sprites drawn in the last frame.
+     */
+    public int getSpriteCount() {
+        return spriteCount;
+    }
+
+    /**
+     * Returns the number of texture flushes made while drawing sprites in the last frame.
+     */
+    public int getSpriteTextureFlushes() {
+        return spriteTextureFlushes;
+    }
+
+    /**
+     * Adds sprite statistics to the current frame. Called by each world after it renders.
+     */
+    public void addSpriteStats(int sprites, int textureFlushes) {
+        frameSpriteCount += sprites;
+        frameSpriteTextureFlushes += textureFlushes;
+    }
+
+    /**
+     * Returns the number of objects whose moved transforms were pushed to the collision world in the last frame.
+     */
+    public int getPhysicsSyncs() {
+        return physicsSyncs;
+    }
+
+    /**
+     * Adds physics transform syncs to the current frame. Called by each world after it updates.
+     */
+    public void addPhysicsSyncs(int syncs) {
+        framePhysicsSyncs += syncs;
+    }
+
     public int getFps() {
         return fps;
     }
@@ -80,8 +122,15 @@ public class Profiler {
             glDrawCalls = GLProfiler.drawCalls;
             glShaderSwitches = GLProfiler.shaderSwitches;
             glVertexCount = GLProfiler.vertexCount.value;
+            spriteCount = frameSpriteCount;
+            spriteTextureFlushes = frameSpriteTextureFlushes;
+            physicsSyncs = framePhysicsSyncs;
 
             GLProfiler.reset();
         }
+
+        frameSpriteCount = 0;
+        frameSpriteTextureFlushes = 0;
+        framePhysicsSyncs = 0;
     }
 }
@@ -0,0 +1,249 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.graphics.g3d.Environment;
+import com.badlogic.gdx.graphics.g3d.ModelInstance;
+import com.badlogic.gdx.graphics.g3d.decals.Decal;
+import com.badlogic.gdx.graphics.g3d.decals.DecalMaterial;
+import com.badlogic.gdx.graphics.g3d.particles.ParticleEffect;
+import com.badlogic.gdx.math.Matrix4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Everything submitted to a {@link Renderer} for one frame. Recording a command list makes no GL calls, so a list can be recorded on
+ * one thread and drawn on the GL thread.
+ *
+ * When snapshotting is enabled, the list copies everything it needs at record time (model transforms, decal state, the camera), so
+ * game objects may be changed for the next frame while this one is being drawn.
+ */
+public class RenderCommandList {
+
+    private final ArrayList<ModelInstance> models;
+    private float[] modelTransforms;
+
+    private final ArrayList<Decal> decals;
+    private final ArrayList<Decal> decalPool;
+    private int decalCopies;
+
+    private final SpriteBuffer sprites;
+    private final ArrayList<ParticleEffect> particleEffects;
+
+    // Pooled particle effects to spawn, with their transforms and priorities
+    private final ArrayList<ParticleEffect> particleSpawns;
+    private float[] particleSpawnTransforms;
+    private int[] particleSpawnPriorities;
+
+    private Camera camera;
+    private final PerspectiveCamera cameraSnapshot;
+    private Environment environment;
+
+    private boolean snapshot;
+    private boolean finished;
+
+    public RenderCommandList() {
+        models = new ArrayList<ModelInstance>();
+        modelTransforms = new float[16 * 64];
+        decals = new ArrayList<Decal>();
+        decalPool = new ArrayList<Decal>();
+        sprites = new SpriteBuffer();
+        particleEffects = new ArrayList<ParticleEffect>();
+        particleSpawns = new ArrayList<ParticleEffect>();
+        particleSpawnTransforms = new float[16 * 16];
+        particleSpawnPriorities = new int[16];
+        cameraSnapshot = new PerspectiveCamera();
+        snapshot = false;
+        finished = false;
+    }
+
+    /**
+     * Sets whether or not recorded state is copied, so that the list stays valid while the next frame is being recorded.
+     */
+    public void setSnapshot(boolean snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    public void addModel(ModelInstance model, Matrix4 transform) {
+        addModel(model, transform.val, 0);
+    }
+
+    private void addModel(ModelInstance model, float[] transform, int transformOffset) {
+        int offset = models.size() * 16;
+        if(offset + 16 > modelTransforms.length)
+            modelTransforms = Arrays.copyOf(modelTransforms, modelTransforms.length * 2);
+
+        System.arraycopy(transform, transformOffset, modelTransforms, offset, 16);
+        models.add(model);
+    }
+
+    public void addDecal(Decal decal) {
+        decals.add(snapshot ? copyDecal(decal) : decal);
+    }
+
+    public void addParticleEffect(ParticleEffect effect) {
+        particleEffects.add(effect);
+    }
+
+    public void spawnParticleEffect(ParticleEffect template, Matrix4 transform, int priority) {
+        spawnParticleEffect(template, transform.val, 0, priority);
+    }
+
+    private void spawnParticleEffect(ParticleEffect template, float[] transform, int transformOffset, int priority) {
+        int index = particleSpawns.size();
+        if(index == particleSpawnPriorities.length) {
+            particleSpawnPriorities = Arrays.copyOf(particleSpawnPriorities, index * 2);
+            particleSpawnTransforms = Arrays.copyOf(particleSpawnTransforms, index * 2 * 16);
+        }
+
+        System.arraycopy(transform, transformOffset, particleSpawnTransforms, index * 16, 16);
+        particleSpawnPriorities[index] = priority;
+        particleSpawns.add(template);
+    }
+
+    /**
+     * Appends every command recorded in another list, as if each had been added to this list in the same order. Decals are copied
+     * if this list snapshots them.
+     */
+    public void addAll(RenderCommandList commands) {
+        for(int i = 0; i < commands.models.size(); i++) {
+            addModel(commands.models.get(i), commands.modelTransforms, i * 16);
+        }
+        for(int i = 0; i < commands.decals.size(); i++) {
+            addDecal(commands.decals.get(i));
+        }
+        sprites.addAll(commands.sprites);
+        for(int i = 0; i < commands.particleEffects.size(); i++) {
+            particleEffects.add(commands.particleEffects.get(i));
+        }
+        for(int i = 0; i < commands.particleSpawns.size(); i++) {
+            spawnParticleEffect(commands.particleSpawns.get(i), commands.particleSpawnTransforms, i * 16, commands.particleSpawnPriorities[i]);
+        }
+    }
+
+    public SpriteBuffer getSprites() {
+        return sprites;
+    }
+
+    /**
+     * Marks the list as complete for the frame, capturing the camera and environment to draw it with.
+     */
+    public void finish(Camera camera, Environment environment) {
+        this.environment = environment;
+        if(snapshot && camera != null) {
+            copyCamera(camera, cameraSnapshot);
+            this.camera = cameraSnapshot;
+        } else {
+            this.camera = camera;
+        }
+        finished = true;
+    }
+
+    /**
+     * Returns whether or not the list was completed with {@link #finish(Camera, Environment)} since it was last cleared.
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public int getModelCount() {
+        return models.size();
+    }
+
+    /**
+     * Returns the model at the given index, with its transform set to the one it was recorded with.
+     */
+    public ModelInstance getModel(int index) {
+        ModelInstance model = models.get(index);
+        System.arraycopy(modelTransforms, index * 16, model.transform.val, 0, 16);
+        return model;
+    }
+
+    public ArrayList<Decal> getDecals() {
+        return decals;
+    }
+
+    public ArrayList<ParticleEffect> getParticleEffects() {
+        return particleEffects;
+    }
+
+    public int getParticleSpawnCount() {
+        return particleSpawns.size();
+    }
+
+    public ParticleEffect getParticleSpawnTemplate(int index) {
+        return particleSpawns.get(index);
+    }
+
+    /**
+     * Writes the transform the spawn at the given index was recorded with to out.
+     */
+    public Matrix4 getParticleSpawnTransform(int index, Matrix4 out) {
+        System.arraycopy(particleSpawnTransforms, index * 16, out.val, 0, 16);
+        return out;
+    }
+
+    public int getParticleSpawnPriority(int index) {
+        return particleSpawnPriorities[index];
+    }
+
+    public Camera getCamera() {
+        return camera;
+    }
+
+    public Environment getEnvironment() {
+        return environment;
+    }
+
+    public void clear() {
+        models.clear();
+        decals.clear();
+        decalCopies = 0;
+        sprites.clear();
+        particleEffects.clear();
+        particleSpawns.clear();
+        camera = null;
+        environment = null;
+        finished = false;
+    }
+
+    private Decal copyDecal(Decal decal) {
+        Decal copy;
+        if(decalCopies < decalPool.size()) {
+            copy = decalPool.get(decalCopies);
+        } else {
+            copy = new Decal();
+            decalPool.add(copy);
+        }
+        decalCopies++;
+
+        DecalMaterial material = decal.getMaterial();
+        copy.setTextureRegion(decal.getTextureRegion());
+        copy.setBlending(material.getSrcBlendFactor(), material.getDstBlendFactor());
+        copy.setDimensions(decal.getWidth(), decal.getHeight());
+        copy.setScale(decal.getScaleX(), decal.getScaleY());
+        copy.setRotation(decal.getRotation());
+        copy.setPosition(decal.getPosition());
+        copy.setColor(decal.getColor());
+        return copy;
+    }
+
+    /**
+     * Copies the matrices and frustum of a camera, so that the copy can be used for drawing without being updated.
+     */
+    private static void copyCamera(Camera source, Camera destination) {
+        destination.position.set(source.position);
+        destination.direction.set(source.direction);
+        destination.up.set(source.up);
+        destination.near = source.near;
+        destination.far = source.far;
+        destination.viewportWidth = source.viewportWidth;
+        destination.viewportHeight = source.viewportHeight;
+        destination.projection.set(source.projection);
+        destination.view.set(source.view);
+        destination.combined.set(source.combined);
+        destination.invProjectionView.set(source.invProjectionView);
+        destination.frustum.update(destination.invProjectionView);
+    }
+}
@@ -0,0 +1,193 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.g3d.Material;
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.graphics.g3d.Shader;
+import com.badlogic.gdx.graphics.g3d.attributes.BlendingAttribute;
+import com.badlogic.gdx.graphics.g3d.utils.RenderableSorter;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectIntMap;
+
+import java.util.Arrays;
+
+/**
+ * Render queue used by the renderer's model batch. Every renderable is given a 64 bit sort key made up of its pass, whether or not
+ * it is blended, its shader, its material and its depth. The keys are radix sorted each frame, so that opaque renderables are drawn
+ * front to back grouped by shader and material, and blended renderables are drawn back to front.
+ *
+ * Key layout, from the most significant bit:
+ *  opaque:  pass (2) | blended (1) | shader (10) | material (16) | depth (24)
+ *  blended: pass (2) | blended (1) | inverted depth (24) | shader (10) | material (16)
+ */
+public class RenderQueue implements RenderableSorter {
+
+    public static final int MAX_PASSES = 4;
+
+    private static final int PASS_SHIFT = 62;
+    private static final int BLENDED_SHIFT = 61;
+
+    private static final long SHADER_MASK = 0x3FFL;
+    private static final long MATERIAL_MASK = 0xFFFFL;
+    private static final long DEPTH_MASK = 0xFFFFFFL;
+
+    private long[] keys;
+    private long[] tmpKeys;
+    private int[] indices;
+    private int[] tmpIndices;
+    private Renderable[] unsorted;
+    private final int[] histogram;
+
+    // Per-frame ids, so that renderables sharing a shader or material end up with the same bits in their key
+    private final ObjectIntMap<Shader> shaderIds;
+    private final ObjectIntMap<Material> materialIds;
+
+    private final Vector3 tmpPosition;
+
+    public RenderQueue() {
+        keys = new long[0];
+        tmpKeys = new long[0];
+        indices = new int[0];
+        tmpIndices = new int[0];
+        unsorted = new Renderable[0];
+        histogram = new int[256];
+
+        shaderIds = new ObjectIntMap<Shader>();
+        materialIds = new ObjectIntMap<Material>();
+
+        tmpPosition = new Vector3();
+    }
+
+    @Override
+    public void sort(Camera camera, Array<Renderable> renderables) {
+        int count = renderables.size;
+        if(count == 0)
+            return;
+
+        ensureCapacity(count);
+        shaderIds.clear();
+        materialIds.clear();
+
+        for(int i = 0; i < count; i++) {
+            Renderable renderable = renderables.get(i);
+            keys[i] = calculateKey(camera, renderable);
+            indices[i] = i;
+            unsorted[i] = renderable;
+        }
+
+        radixSort(count);
+
+        for(int i = 0; i < count; i++) {
+            renderables.set(i, unsorted[indices[i]]);
+        }
+
+        // Don't hold on to pooled renderables between frames
+        Arrays.fill(unsorted, 0, count, null);
+    }
+
+    /**
+     * Returns the pass a renderable is drawn in, in the range [0, {@link #MAX_PASSES}). Lower passes are drawn first. Override to
+     * split renderables into custom passes, by default everything is drawn in pass 0.
+     */
+    protected int getPass(Renderable renderable) {
+        return 0;
+    }
+
+    private long calculateKey(Camera camera, Renderable renderable) {
+        long pass = getPass(renderable) & (MAX_PASSES - 1);
+        long shader = id(shaderIds, renderable.shader) & SHADER_MASK;
+        long material = id(materialIds, renderable.material) & MATERIAL_MASK;
+
+        // Quantize the view depth of the renderable into the range of the camera
+        renderable.worldTransform.getTranslation(tmpPosition).sub(camera.position);
+        float depth = tmpPosition.dot(camera.direction) / camera.far;
+        if(depth < 0)
+            depth = 0;
+        else if(depth > 1)
+            depth = 1;
+        long quantizedDepth = (long)(depth * DEPTH_MASK);
+
+        if(isBlended(renderable)) {
+            // Blended renderables must be drawn back to front, so depth takes priority over state changes
+            return (pass << PASS_SHIFT) | (1L << BLENDED_SHIFT) | ((DEPTH_MASK - quantizedDepth) << 37) | (shader << 27) | (material << 11);
+        }
+
+        return (pass << PASS_SHIFT) | (shader << 51) | (material << 35) | (quantizedDepth << 11);
+    }
+
+    private static boolean isBlended(Renderable renderable) {
+        if(renderable.material == null || !renderable.material.has(BlendingAttribute.Type))
+            return false;
+
+        return ((BlendingAttribute)renderable.material.get(BlendingAttribute.Type)).blended;
+    }
+
+    private static <T> int id(ObjectIntMap<T> ids, T object) {
+        if(object == null)
+            return 0;
+
+        int id = ids.get(object, -1);
+        if(id == -1) {
+            id = ids.size + 1;
+            ids.put(object, id);
+        }
+        return id;
+    }
+
+    /**
+     * Least significant digit radix sort of the keys, one byte at a time. Passes in which every key shares the same byte are skipped,
+     * which is most of them as the low bits of the key are unused.
+     */
+    private void radixSort(int count) {
+        long[] srcKeys = keys, dstKeys = tmpKeys;
+        int[] srcIndices = indices, dstIndices = tmpIndices;
+
+        for(int shift = 0; shift < 64; shift += 8) {
+            Arrays.fill(histogram, 0);
+            for(int i = 0; i < count; i++) {
+                histogram[(int)((srcKeys[i] >>> shift) & 0xFF)]++;
+            }
+
+            if(histogram[(int)((srcKeys[0] >>> shift) & 0xFF)] == count)
+                continue;
+
+            int total = 0;
+            for(int b = 0; b < 256; b++) {
+                int bucketSize = histogram[b];
+                histogram[b] = total;
+                total += bucketSize;
+            }
+
+            for(int i = 0; i < count; i++) {
+                int dst = histogram[(int)((srcKeys[i] >>> shift) & 0xFF)]++;
+                dstKeys[dst] = srcKeys[i];
+                dstIndices[dst] = srcIndices[i];
+            }
+
+            long[] swapKeys = srcKeys;
+            srcKeys = dstKeys;
+            dstKeys = swapKeys;
+            int[] swapIndices = srcIndices;
+            srcIndices = dstIndices;
+            dstIndices = swapIndices;
+        }
+
+        if(srcKeys != keys) {
+            System.arraycopy(srcKeys, 0, keys, 0, count);
+            System.arraycopy(srcIndices, 0, indices, 0, count);
+        }
+    }
+
+    private void ensureCapacity(int count) {
+        if(keys.length >= count)
+            return;
+
+        int capacity = Math.max(count, keys.length * 2);
+        keys = new long[capacity];
+        tmpKeys = new long[capacity];
+        indices = new int[capacity];
+        tmpIndices = new int[capacity];
+        unsorted = new Renderable[capacity];
+    }
+}
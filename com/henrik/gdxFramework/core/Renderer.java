@@ -10,25 +10,19 @@ import com.badlogic.gdx.graphics.g3d.Environment;
 import com.badlogic.gdx.graphics.g3d.Model;
 import com.badlogic.gdx.graphics.g3d.ModelBatch;
 import com.badlogic.gdx.graphics.g3d.ModelInstance;
-import com.badlogic.gdx.graphics.g3d.decals.CameraGroupStrategy;
 import com.badlogic.gdx.graphics.g3d.decals.Decal;
 import com.badlogic.gdx.graphics.g3d.decals.DecalBatch;
 import com.badlogic.gdx.graphics.g3d.decals.GroupStrategy;
 import com.badlogic.gdx.graphics.g3d.particles.ParticleEffect;
-import com.badlogic.gdx.graphics.g3d.particles.ParticleSystem;
-import com.badlogic.gdx.graphics.g3d.particles.batches.PointSpriteParticleBatch;
 import com.badlogic.gdx.graphics.g3d.shaders.DefaultShader;
-import com.badlogic.gdx.graphics.glutils.FrameBuffer;
 import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Quaternion;
-import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.BoundingBox;
-import com.badlogic.gdx.utils.ScreenUtils;
 
-import java.awt.*;
 import java.io.File;
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Created by Henri on 10/12/2014.
@@ -38,153 +32,402 @@ public class Renderer {
     private ModelBatch modelBatch;
     private DecalBatch decalBatch;
     private SpriteBatch spriteBatch;
-    private PointSpriteParticleBatch particleBatch;
 
-    private ParticleSystem particleSystem;
+    private ParticleManager particles;
+    private boolean ownsParticles;
 
-    private ArrayList<ModelInstance> models;
-    private ArrayList<SpriteRender> spriteRenders;
+    private RenderQueue renderQueue;
+
+    // Instanced drawing of models sharing the same model, null when disabled
+    private InstancedModelRenderer instancedRenderer;
+    private InstanceGroups instanceGroups;
+    private int minInstances;
+
+    // Commands being recorded for the next frame, and the commands of the frame waiting to be drawn
+    private RenderCommandList recording;
+    private RenderCommandList submitting;
+    private boolean deferred;
+
+    private DecalGroupStrategy decalStrategy;
+
+    // Commands deferred while objects update in parallel, null if never deferred
+    private DeferredCommands deferredCommands;
+
+    // Sprite statistics for the last rendered frame
+    private int spriteCount;
+    private int spriteTextureFlushes;
 
     Camera activeCamera;
 
+    // Changes whenever the active camera moves, see World#getCameraVersion()
+    private int cameraVersion;
+    private final float[] frustumPlanes = new float[FrustumPlanes.PLANE_COUNT * 4];
+    private Camera capturedCamera; // Camera and view the frustum planes were captured from
+    private final float[] capturedCombined = new float[16];
+    private boolean cameraChecked; // Whether or not the camera was compared to the captured view this frame
+
+    private final Matrix4 tmpTransform = new Matrix4();
+
+    private static ThumbnailCache thumbnails; // Shared by all renderers
+
     public Renderer(Camera camera) {
-        modelBatch = new ModelBatch();
-        decalBatch = new DecalBatch(new CameraGroupStrategy(camera));
+        this(camera, new ParticleManager());
+        ownsParticles = true;
+    }
+
+    /**
+     * Creates a renderer drawing the effects of the given particle manager. The manager is not disposed with the renderer.
+     */
+    public Renderer(Camera camera, ParticleManager particles) {
+        renderQueue = new RenderQueue();
+        modelBatch = new ModelBatch(renderQueue);
+        decalStrategy = new DecalGroupStrategy(camera);
+        decalBatch = new DecalBatch(decalStrategy);
         spriteBatch = new SpriteBatch();
 
-        // Set up particle renderer
-        particleSystem = ParticleSystem.get();
-        particleBatch = new PointSpriteParticleBatch();
-        particleBatch.setCamera(camera);
-        ParticleSystem.get().add(particleBatch);
+        this.particles = particles;
+        particles.setCamera(camera);
 
-        models = new ArrayList<ModelInstance>();
-        spriteRenders = new ArrayList<SpriteRender>();
+        recording = new RenderCommandList();
+        submitting = new RenderCommandList();
+        deferred = false;
+
+        instanceGroups = new InstanceGroups();
+        minInstances = 2;
     }
 
     public void setActiveCamera(Camera camera) {
         this.activeCamera = camera;
-        decalBatch.setGroupStrategy(new CameraGroupStrategy(camera));
+        decalStrategy.setCamera(camera);
+        particles.setCamera(camera);
+        setCameraVersion(cameraVersion + 1);
     }
 
-    public void render(Environment environment) {
-        modelBatch.begin(activeCamera);
-        for(ModelInstance model : models) {
-            if(environment != null)
-                modelBatch.render(model, environment);
-            else
-                modelBatch.render(model);
-        }
-        modelBatch.end();
+    public Camera getActiveCamera() { return activeCamera; }
 
-        spriteBatch.begin();
-        for(SpriteRender sprite : spriteRenders) {
-            spriteBatch.draw(sprite.getTexture(), sprite.getPosition().x, sprite.getPosition().y);
+    /**
+     * Sets the version of the active camera, capturing its frustum planes. Called by the world whenever the camera changes.
+     */
+    void setCameraVersion(int version) {
+        cameraVersion = version;
+        capturedCamera = activeCamera;
+        if(activeCamera != null) {
+            FrustumPlanes.copy(activeCamera.frustum, frustumPlanes);
+            System.arraycopy(activeCamera.combined.val, 0, capturedCombined, 0, 16);
         }
-        spriteBatch.end();
+    }
 
-        particleSystem.update();
-        particleSystem.begin();
-        particleSystem.draw();
-        particleSystem.end();;
-        modelBatch.render(particleSystem);
+    /**
+     * Captures the frustum planes of the active camera again if its view changed since they were captured, such as when the camera
+     * was moved after the world's update. Only compares once per frame, on the first call after the last {@link #clear()}; components
+     * culling themselves call it before testing against {@link #getFrustumPlanes()}.
+     */
+    public void checkCamera() {
+        if(cameraChecked)
+            return;
 
-        decalBatch.flush();
+        cameraChecked = true;
+        if(activeCamera != capturedCamera || !Arrays.equals(activeCamera.combined.val, capturedCombined))
+            setCameraVersion(cameraVersion + 1);
     }
 
     /**
-     * Renders the given model to a texture using the given camera.
-     * @param model The model to render.
-     * @param camera The camera to use to render the model
-     * @return The resultant texture. Calling code takes ownership of the texture object.
+     * Returns a number that changes whenever the active camera's view changes.
      */
-    public static Texture renderToTexture(Model model, Camera camera) {
+    public int getCameraVersion() { return cameraVersion; }
 
-        ModelBatch batch = new ModelBatch();
+    /**
+     * Returns the frustum planes of the active camera as of the current camera version, see {@link FrustumPlanes}.
+     */
+    public float[] getFrustumPlanes() { return frustumPlanes; }
 
-        ModelInstance instance = new ModelInstance(model);
+    /**
+     * Sets whether or not rendering is deferred. A deferred renderer only records commands in {@link #render(Environment)}, which
+     * makes no GL calls and may be called from any thread. The recorded frame is drawn on the GL thread by {@link #submit()} after
+     * {@link #swap()}, while the following frame is being recorded.
+     */
+    public void setDeferred(boolean deferred) {
+        this.deferred = deferred;
+        recording.setSnapshot(deferred);
+        submitting.setSnapshot(deferred);
+        if(!deferred)
+            submitting.clear();
+    }
 
-        camera.position.set(new Vector3(0, 5, 0));
-        camera.lookAt(0, 0, 0);
+    public boolean isDeferred() { return deferred; }
 
-        // Render model to texture
-        FrameBuffer fbo = new FrameBuffer(Pixmap.Format.RGBA8888, Gdx.graphics.getWidth(), Gdx.graphics.getHeight(), false);
-        fbo.begin();
-        Gdx.gl.glClearColor(0, 0, 0, 0);
-        Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
-        batch.begin(camera);
-        batch.render(instance);
-        batch.end();
-
-        // Get the source texture from the frame buffer
-        Pixmap source = ScreenUtils.getFrameBufferPixmap(0, 0, fbo.getWidth(), fbo.getHeight());
-
-        // End of FBO use
-        fbo.end();
-
-        // Flip the pixmap, as FBOs have inverted Y Axis
-        Pixmap pixmap = new Pixmap(source.getWidth(), source.getHeight(), Pixmap.Format.RGBA8888);
-        for(int x = 0; x < pixmap.getWidth(); x++) {
-            for(int y = 0; y < pixmap.getHeight(); y++) {
-                pixmap.drawPixel(x, y, source.getPixel(x, y));
-            }
+    /**
+     * Ends recording of the current frame. Unless the renderer is deferred, the frame is drawn immediately.
+     */
+    public void render(Environment environment) {
+        recording.finish(activeCamera, environment);
+        if(!deferred)
+            draw(recording);
+    }
+
+    /**
+     * Makes the last recorded frame the one to be submitted, and starts recording a new frame. Must not be called while a frame is
+     * being recorded.
+     */
+    public void swap() {
+        RenderCommandList recorded = recording;
+        recording = submitting;
+        submitting = recorded;
+        recording.clear();
+    }
+
+    /**
+     * Draws the frame made current by {@link #swap()}. Must be called on the GL thread.
+     */
+    public void submit() {
+        if(submitting.isFinished())
+            draw(submitting);
+    }
+
+    /**
+     * Returns the camera the last submitted frame was recorded with, or null if there is none.
+     */
+    public Camera getSubmittedCamera() { return submitting.getCamera(); }
+
+    private void draw(RenderCommandList commands) {
+        Camera camera = commands.getCamera();
+        Environment environment = commands.getEnvironment();
+
+        for(ParticleEffect effect : commands.getParticleEffects()) {
+            particles.add(effect);
+        }
+        for(int i = 0; i < commands.getParticleSpawnCount(); i++) {
+            particles.spawn(commands.getParticleSpawnTemplate(i), commands.getParticleSpawnTransform(i, tmpTransform), commands.getParticleSpawnPriority(i));
         }
+        particles.setCamera(camera);
+        particles.update(camera);
+
+        // Models are ordered by the render queue when the batch is flushed. Environments the instanced renderer can't light are
+        // drawn entirely by the model batch.
+        boolean instancing = instancedRenderer != null && InstancedModelRenderer.supports(environment);
+        modelBatch.begin(camera);
+        if(instancing) {
+            // Groups copy the recorded transforms, as an instance submitted more than once shares one transform
+            for(int i = 0; i < commands.getModelCount(); i++) {
+                ModelInstance model = commands.getModel(i);
+                instanceGroups.add(model, model.transform);
+            }
+
+            // Groups that can't be drawn instanced go through the model batch as usual, each instance at its recorded transform
+            for(int g = 0; g < instanceGroups.getGroupCount(); g++) {
+                InstanceGroups.Group group = instanceGroups.getGroup(g);
+                if(group.isInstanceable() && group.getInstances().size >= minInstances)
+                    continue;
 
-        // Decide on the width and height of the texture to pass back
-        Vector2 bottomRight = new Vector2();
-        for(int x = 0; x < pixmap.getWidth(); x++) {
-            for(int y = 0; y < pixmap.getHeight(); y++) {
-                Color c = new Color(pixmap.getPixel(x,y));
-                if(c != new Color(0, 0, 0, 0)) {
-                    bottomRight.set(x, y);
+                for(int i = 0; i < group.getInstances().size; i++) {
+                    ModelInstance model = group.getInstances().get(i);
+                    group.getInstanceTransform(i, model.transform);
+                    renderModel(model, environment);
                 }
             }
+        } else {
+            for(int i = 0; i < commands.getModelCount(); i++) {
+                renderModel(commands.getModel(i), environment);
+            }
         }
+        modelBatch.render(particles);
+        modelBatch.end();
 
-        // Copy the appropriate region into a final pixmap
-        Pixmap finalPixmap = new Pixmap((int)bottomRight.x, (int)bottomRight.y, Pixmap.Format.RGBA8888);
-        finalPixmap.setColor(new Color(0, 0, 0, 0));
-        finalPixmap.fill();
-        for(int x = 0; x < bottomRight.x; x++) {
-            for(int y = 0; y < bottomRight.y; y++) {
-                finalPixmap.drawPixel(x, y, pixmap.getPixel(x, y));
-            }
+        if(instancing) {
+            instancedRenderer.render(camera, environment, instanceGroups, minInstances);
+            instanceGroups.clear();
         }
 
-        PixmapIO.writePNG(Gdx.files.external("test.png"), finalPixmap);
+        SpriteBuffer sprites = commands.getSprites();
+        if(sprites.size() > 0) {
+            spriteBatch.begin();
+            sprites.draw(spriteBatch);
+            spriteBatch.end();
+        }
+        spriteCount = sprites.size();
+        spriteTextureFlushes = sprites.getTextureFlushes();
 
-        // Dispose of any resources
-        fbo.dispose();
-        batch.dispose();
+        decalStrategy.setCamera(camera);
+        for(Decal decal : commands.getDecals()) {
+            decalBatch.add(decal);
+        }
+        decalBatch.flush();
+    }
 
-        // Pass back the texture
-        return new Texture(pixmap);
+    private void renderModel(ModelInstance model, Environment environment) {
+        if(environment != null)
+            modelBatch.render(model, environment);
+        else
+            modelBatch.render(model);
     }
 
+    /**
+     * Enables or disables instanced drawing of models. When enabled, models with at least minInstances instances submitted in a frame
+     * are drawn with one draw call per model part, lit by the ambient and directional lights of the environment unless a shader is
+     * given through {@link #getInstancedRenderer()}. Environments with other lights, shadows or fog are drawn by the model batch.
+     * Has no effect if instancing is not supported on this device.
+     * @return Whether or not instancing is enabled.
+     */
+    public boolean setInstancingEnabled(boolean enabled, int minInstances) {
+        this.minInstances = Math.max(1, minInstances);
+
+        if(enabled && instancedRenderer == null && InstancedModelRenderer.isSupported()) {
+            instancedRenderer = new InstancedModelRenderer();
+        } else if(!enabled && instancedRenderer != null) {
+            instancedRenderer.dispose();
+            instancedRenderer = null;
+        }
 
+        return instancedRenderer != null;
+    }
+
+    public boolean isInstancingEnabled() { return instancedRenderer != null; }
+
+    /**
+     * Returns the instanced model renderer, or null if instancing is disabled.
+     */
+    public InstancedModelRenderer getInstancedRenderer() { return instancedRenderer; }
+
+    /**
+     * Renders the given model to a texture region using the given camera. The camera is placed above the model looking down at it,
+     * and the result is cropped to the visible bounds of the model. Results are cached in a shared thumbnail atlas keyed by model and
+     * camera parameters, so repeat calls return the cached region without rendering.
+     * @param model The model to render.
+     * @param camera The camera to use to render the model
+     * @return The region of the shared thumbnail atlas holding the model. Owned by the renderer, see {@link #disposeThumbnails()}.
+     */
+    public static TextureRegion renderToTexture(Model model, Camera camera) {
+        camera.position.set(0, 5, 0);
+        camera.lookAt(0, 0, 0);
+        camera.update();
+
+        if(thumbnails == null)
+            thumbnails = new ThumbnailCache();
+
+        return thumbnails.get(model, camera);
+    }
+
+    /**
+     * Disposes all thumbnails created by {@link #renderToTexture(Model, Camera)}.
+     */
+    public static void disposeThumbnails() {
+        if(thumbnails != null) {
+            thumbnails.dispose();
+            thumbnails = null;
+        }
+    }
+
+    /**
+     * Clears the commands recorded for this frame. Deferred renderers clear their commands on {@link #swap()} instead, so this does
+     * nothing for them.
+     */
     public void clear() {
-        models.clear();
-        spriteRenders.clear();
+        if(!deferred)
+            recording.clear();
+        cameraChecked = false;
+    }
+
+    /**
+     * Sets the commands additions are deferred to while they are active, so that objects updating in parallel may add to the frame.
+     * Each thread then adds to a command list of its own, which is recorded by {@link #record(RenderCommandList)} once the parallel
+     * update is done.
+     */
+    public void setDeferredCommands(DeferredCommands deferredCommands) {
+        this.deferredCommands = deferredCommands;
+    }
+
+    /**
+     * Returns the command list additions go to: the calling thread's own list while additions are deferred, otherwise the list
+     * being recorded.
+     */
+    private RenderCommandList getCommands() {
+        if(deferredCommands != null) {
+            RenderCommandList commands = deferredCommands.getRenderCommands();
+            if(commands != null)
+                return commands;
+        }
+        return recording;
+    }
+
+    /**
+     * Records commands added to another list, such as those a thread added while additions were deferred.
+     */
+    void record(RenderCommandList commands) {
+        recording.addAll(commands);
     }
 
     public void addDecal(Decal decal) {
-        decalBatch.add(decal);
+        getCommands().addDecal(decal);
     }
 
     public void addModel(ModelInstance model) {
-        models.add(model);
+        addModel(model, model.transform);
+    }
+
+    /**
+     * Adds a model to be drawn with the given transform, which is copied. The model's own transform is only written on the GL thread
+     * when the frame is drawn, so objects should prefer this to setting the transform themselves.
+     */
+    public void addModel(ModelInstance model, Matrix4 transform) {
+        getCommands().addModel(model, transform);
+    }
+
+    public void addSprite(Texture texture, float x, float y) {
+        addSprite(texture, x, y, texture.getWidth(), texture.getHeight(), 0, 1, 1, 0, SpriteBuffer.WHITE);
+    }
+
+    public void addSprite(TextureRegion region, float x, float y, float width, float height) {
+        addSprite(region.getTexture(), x, y, width, height, region.getU(), region.getV2(), region.getU2(), region.getV(), SpriteBuffer.WHITE);
+    }
+
+    /**
+     * Adds a sprite to be drawn this frame.
+     * @param color The packed color to tint the sprite with, see {@link Color#toFloatBits()}.
+     */
+    public void addSprite(Texture texture, float x, float y, float width, float height, float u, float v, float u2, float v2, float color) {
+        getCommands().getSprites().add(texture, x, y, width, height, u, v, u2, v2, color);
     }
 
-    public void addSprite(Texture texture, float x, float y) { spriteRenders.add(new SpriteRender(texture, new Vector2(x,y))); }
+    /**
+     * Adds an effect that isn't pooled. It is drawn until complete. Prefer {@link #spawnParticleEffect(ParticleEffect, Matrix4, int)}.
+     */
+    public void addParticleEffect(ParticleEffect effect) {
+        getCommands().addParticleEffect(effect);
+    }
+
+    /**
+     * Spawns a pooled copy of the given effect template when the frame is drawn, see {@link ParticleManager#spawn(ParticleEffect, Matrix4, int)}.
+     * The transform is copied.
+     */
+    public void spawnParticleEffect(ParticleEffect template, Matrix4 transform, int priority) {
+        getCommands().spawnParticleEffect(template, transform, priority);
+    }
 
-    public void addParticleEffect(ParticleEffect effect) { particleSystem.add(effect); }
+    public ParticleManager getParticles() { return particles; }
 
     public SpriteBatch getSpriteBatch() { return spriteBatch; }
 
+    /**
+     * Returns the number of sprites drawn in the last rendered frame.
+     */
+    public int getSpriteCount() { return spriteCount; }
+
+    /**
+     * Returns the number of sprite texture flushes in the last rendered frame.
+     */
+    public int getSpriteTextureFlushes() { return spriteTextureFlushes; }
+
     public void dispose() {
         modelBatch.dispose();
         decalBatch.dispose();
+        decalStrategy.dispose();
         spriteBatch.dispose();
+
+        if(instancedRenderer != null)
+            instancedRenderer.dispose();
+
+        if(ownsParticles)
+            particles.dispose();
     }
 
 }
@@ -0,0 +1,182 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectIntMap;
+
+import java.util.Arrays;
+
+/**
+ * A command buffer of sprites to be drawn. Sprites are stored in primitive arrays that only grow when needed and are reused
+ * frame to frame, so adding a sprite allocates nothing. Sprites are grouped by texture before they reach the sprite batch,
+ * keeping texture flushes to one per texture.
+ */
+public class SpriteBuffer {
+
+    // x, y, width, height, u, v, u2, v2, packed color
+    private static final int FLOATS_PER_SPRITE = 9;
+
+    static final float WHITE = Color.WHITE.toFloatBits();
+
+    private final Array<Texture> textures;
+    private final ObjectIntMap<Texture> textureIndices;
+
+    private int[] spriteTextures;
+    private float[] spriteData;
+    private int count;
+
+    private int[] order;
+    private int[] textureOffsets;
+
+    private int textureFlushes;
+
+    public SpriteBuffer() {
+        this(64);
+    }
+
+    public SpriteBuffer(int initialCapacity) {
+        textures = new Array<Texture>();
+        textureIndices = new ObjectIntMap<Texture>();
+
+        spriteTextures = new int[initialCapacity];
+        spriteData = new float[initialCapacity * FLOATS_PER_SPRITE];
+        order = new int[initialCapacity];
+        textureOffsets = new int[16];
+        count = 0;
+    }
+
+    public void add(Texture texture, float x, float y) {
+        add(texture, x, y, texture.getWidth(), texture.getHeight(), 0, 1, 1, 0, WHITE);
+    }
+
+    public void add(TextureRegion region, float x, float y, float width, float height) {
+        add(region.getTexture(), x, y, width, height, region.getU(), region.getV2(), region.getU2(), region.getV(), WHITE);
+    }
+
+    /**
+     * Adds a sprite to the buffer.
+     * @param color The packed color of the sprite, see {@link Color#toFloatBits()}.
+     */
+    public void add(Texture texture, float x, float y, float width, float height, float u, float v, float u2, float v2, float color) {
+        if(count == spriteTextures.length)
+            grow();
+
+        int textureIndex = textureIndices.get(texture, -1);
+        if(textureIndex == -1) {
+            textureIndex = textures.size;
+            textures.add(texture);
+            textureIndices.put(texture, textureIndex);
+        }
+
+        spriteTextures[count] = textureIndex;
+
+        int offset = count * FLOATS_PER_SPRITE;
+        spriteData[offset] = x;
+        spriteData[offset + 1] = y;
+        spriteData[offset + 2] = width;
+        spriteData[offset + 3] = height;
+        spriteData[offset + 4] = u;
+        spriteData[offset + 5] = v;
+        spriteData[offset + 6] = u2;
+        spriteData[offset + 7] = v2;
+        spriteData[offset + 8] = color;
+
+        count++;
+    }
+
+    /**
+     * Appends every sprite of another buffer, in the order they were added to it.
+     */
+    public void addAll(SpriteBuffer sprites) {
+        for(int i = 0; i < sprites.count; i++) {
+            int offset = i * FLOATS_PER_SPRITE;
+            float[] data = sprites.spriteData;
+            add(sprites.textures.get(sprites.spriteTextures[i]), data[offset], data[offset + 1], data[offset + 2], data[offset + 3],
+                    data[offset + 4], data[offset + 5], data[offset + 6], data[offset + 7], data[offset + 8]);
+        }
+    }
+
+    /**
+     * Draws the buffered sprites grouped by texture. Sprites sharing a texture keep the order they were added in. The batch must
+     * have been begun.
+     */
+    public void draw(SpriteBatch batch) {
+        textureFlushes = 0;
+        if(count == 0)
+            return;
+
+        groupByTexture();
+
+        float batchColor = batch.getPackedColor();
+        int currentTexture = -1;
+
+        for(int i = 0; i < count; i++) {
+            int sprite = order[i];
+            int textureIndex = spriteTextures[sprite];
+            if(textureIndex != currentTexture) {
+                currentTexture = textureIndex;
+                textureFlushes++;
+            }
+
+            int offset = sprite * FLOATS_PER_SPRITE;
+            batch.setColor(spriteData[offset + 8]);
+            batch.draw(textures.get(textureIndex), spriteData[offset], spriteData[offset + 1], spriteData[offset + 2], spriteData[offset + 3],
+                    spriteData[offset + 4], spriteData[offset + 5], spriteData[offset + 6], spriteData[offset + 7]);
+        }
+
+        batch.setColor(batchColor);
+    }
+
+    /**
+     * Stable counting sort of the sprites by texture index.
+     */
+    private void groupByTexture() {
+        int textureCount = textures.size;
+        if(textureOffsets.length < textureCount + 1)
+            textureOffsets = new int[Math.max(textureCount + 1, textureOffsets.length * 2)];
+
+        Arrays.fill(textureOffsets, 0, textureCount + 1, 0);
+        for(int i = 0; i < count; i++) {
+            textureOffsets[spriteTextures[i] + 1]++;
+        }
+        for(int i = 1; i <= textureCount; i++) {
+            textureOffsets[i] += textureOffsets[i - 1];
+        }
+        for(int i = 0; i < count; i++) {
+            order[textureOffsets[spriteTextures[i]]++] = i;
+        }
+    }
+
+    private void grow() {
+        int capacity = Math.max(8, spriteTextures.length * 2);
+        spriteTextures = Arrays.copyOf(spriteTextures, capacity);
+        spriteData = Arrays.copyOf(spriteData, capacity * FLOATS_PER_SPRITE);
+        order = new int[capacity];
+    }
+
+    /**
+     * Clears the buffer, keeping its storage for the next frame.
+     */
+    public void clear() {
+        count = 0;
+        textures.clear();
+        textureIndices.clear();
+    }
+
+    /**
+     * Returns the number of sprites in the buffer.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the number of texture switches made by the last call to {@link #draw(SpriteBatch)}.
+     */
+    public int getTextureFlushes() {
+        return textureFlushes;
+    }
+}
@@ -0,0 +1,273 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.physics.bullet.collision.Collision;
+import com.badlogic.gdx.physics.bullet.collision.btCollisionObject;
+import com.badlogic.gdx.physics.bullet.collision.btCompoundShape;
+import com.henrik.gdxFramework.entities.GameObject;
+import com.henrik.gdxFramework.entities.components.PhysicsComponent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Groups static geometry into spatial chunks for a {@link BulletCollisionWorld}. The shapes of the components in a chunk sharing a
+ * collision tag are combined into one compound shape at their objects' world transforms, so that a chunk is a single collision
+ * object, added to or removed from the world as a unit. The chunk is the collision object's user data; hits on it are resolved to
+ * the member hit, through the compound child index where Bullet reports one, or else the hit point.
+ */
+class StaticCollisionChunks {
+
+    static class ChunkKey {
+        final int tag;
+        final int x, y, z;
+
+        ChunkKey(int tag, int x, int y, int z) {
+            this.tag = tag;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if(!(other instanceof ChunkKey))
+                return false;
+            ChunkKey key = (ChunkKey)other;
+            return x == key.x && y == key.y && z == key.z && tag == key.tag;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = tag;
+            hash = 31 * hash + x;
+            hash = 31 * hash + y;
+            return 31 * hash + z;
+        }
+    }
+
+    static class Chunk {
+        final ChunkKey key;
+        final Vector3 center;
+        final int layer;
+        final ArrayList<PhysicsComponent> components = new ArrayList<PhysicsComponent>();
+        final ArrayList<GameObject> objects = new ArrayList<GameObject>();
+
+        btCompoundShape shape;
+        btCollisionObject collisionObject;
+        CollisionObject[] members; // Collision object of each member when the shape was built
+        int[] childMembers; // Index of the member each compound child belongs to
+        float[] memberBounds; // World bounds of each member, min then max corner, six floats per member
+        boolean dirty; // Members changed since the shape was built
+        boolean loaded; // Whether or not the chunk is in the collision world
+
+        Chunk(ChunkKey key, Vector3 center, int layer) {
+            this.key = key;
+            this.center = center;
+            this.layer = layer;
+        }
+
+        /**
+         * Rebuilds the chunk's compound shape and collision object from its members.
+         */
+        void build() {
+            dispose();
+            dirty = false;
+            if(components.isEmpty())
+                return;
+
+            int count = components.size();
+            int childCount = 0;
+            for(int i = 0; i < count; i++) {
+                childCount += components.get(i).getCollisionShape().getNumChildShapes();
+            }
+
+            // The children of each member's compound are added directly rather than the compound itself, as Bullet only reports
+            // the innermost child index of nested compounds
+            members = new CollisionObject[count];
+            childMembers = new int[childCount];
+            memberBounds = new float[count * 6];
+            shape = new btCompoundShape();
+            int child = 0;
+            for(int i = 0; i < count; i++) {
+                Matrix4 transform = objects.get(i).getWorldTransform();
+                btCompoundShape memberShape = components.get(i).getCollisionShape();
+                for(int c = 0; c < memberShape.getNumChildShapes(); c++) {
+                    childTransform.set(transform).mul(memberShape.getChildTransform(c));
+                    shape.addChildShape(childTransform, memberShape.getChildShape(c));
+                    childMembers[child++] = i;
+                }
+                members[i] = components.get(i).getUserData();
+
+                memberShape.getAabb(transform, boundsMin, boundsMax);
+                memberBounds[i * 6] = boundsMin.x;
+                memberBounds[i * 6 + 1] = boundsMin.y;
+                memberBounds[i * 6 + 2] = boundsMin.z;
+                memberBounds[i * 6 + 3] = boundsMax.x;
+                memberBounds[i * 6 + 4] = boundsMax.y;
+                memberBounds[i * 6 + 5] = boundsMax.z;
+            }
+
+            collisionObject = new btCollisionObject();
+            collisionObject.setCollisionShape(shape);
+            collisionObject.setCollisionFlags(btCollisionObject.CollisionFlags.CF_CUSTOM_MATERIAL_CALLBACK
+                    | btCollisionObject.CollisionFlags.CF_STATIC_OBJECT);
+            collisionObject.setWorldTransform(identity);
+            collisionObject.setActivationState(Collision.ISLAND_SLEEPING);
+
+            collisionObject.userData = this;
+        }
+
+        /**
+         * Returns the member at a compound child index, as reported by contact points, or the first member if the index is out of
+         * range.
+         */
+        CollisionObject getMember(int childIndex) {
+            return childIndex >= 0 && childIndex < childMembers.length ? members[childMembers[childIndex]] : members[0];
+        }
+
+        /**
+         * Returns the member hit at a point, for hits that don't report a child index, like rays and sweeps: the member whose bounds
+         * are nearest the point, which lies on the surface of the member hit.
+         */
+        CollisionObject getMemberAt(Vector3 point) {
+            int nearest = 0;
+            float nearestDistance = Float.MAX_VALUE;
+            for(int i = 0; i < members.length; i++) {
+                int b = i * 6;
+                float dx = Math.max(Math.max(memberBounds[b] - point.x, point.x - memberBounds[b + 3]), 0f);
+                float dy = Math.max(Math.max(memberBounds[b + 1] - point.y, point.y - memberBounds[b + 4]), 0f);
+                float dz = Math.max(Math.max(memberBounds[b + 2] - point.z, point.z - memberBounds[b + 5]), 0f);
+                float distance = dx * dx + dy * dy + dz * dz;
+                if(distance < nearestDistance) {
+                    nearestDistance = distance;
+                    nearest = i;
+                }
+            }
+            return members[nearest];
+        }
+
+        void dispose() {
+            if(collisionObject != null) {
+                collisionObject.dispose();
+                collisionObject = null;
+            }
+            if(shape != null) {
+                shape.dispose();
+                shape = null;
+            }
+        }
+    }
+
+    private static final Matrix4 identity = new Matrix4();
+    private static final Matrix4 childTransform = new Matrix4();
+    private static final Vector3 boundsMin = new Vector3();
+    private static final Vector3 boundsMax = new Vector3();
+
+    // Largest difference from a scale of one taken as unscaled
+    private static final float SCALE_TOLERANCE = 0.0001f;
+
+    private final float chunkSize;
+    private final HashMap<ChunkKey, Chunk> chunks;
+    private final HashMap<PhysicsComponent, Chunk> componentChunks;
+    private final ArrayList<Chunk> chunkList; // Iterated each pass to stream chunks in and out
+    private final Vector3 tmp = new Vector3();
+
+    StaticCollisionChunks(float chunkSize) {
+        this.chunkSize = chunkSize;
+        chunks = new HashMap<ChunkKey, Chunk>();
+        componentChunks = new HashMap<PhysicsComponent, Chunk>();
+        chunkList = new ArrayList<Chunk>();
+    }
+
+    /**
+     * Adds a component to the chunk holding its object's position, creating the chunk if needed. Compound children are placed with
+     * rigid transforms, so the object's world transform must not be scaled.
+     * @return The chunk, marked to be rebuilt.
+     * @throws IllegalArgumentException If the object's world transform is scaled.
+     */
+    Chunk add(PhysicsComponent component, GameObject object, int layer) {
+        object.getWorldTransform().getScale(tmp);
+        if(Math.abs(tmp.x - 1f) > SCALE_TOLERANCE || Math.abs(tmp.y - 1f) > SCALE_TOLERANCE || Math.abs(tmp.z - 1f) > SCALE_TOLERANCE)
+            throw new IllegalArgumentException("Chunked static geometry can't be scaled, register it as static geometry instead");
+
+        object.getWorldPosition(tmp);
+        int x = (int)Math.floor(tmp.x / chunkSize);
+        int y = (int)Math.floor(tmp.y / chunkSize);
+        int z = (int)Math.floor(tmp.z / chunkSize);
+
+        ChunkKey key = new ChunkKey(component.getCollisionTag().getID(), x, y, z);
+        Chunk chunk = chunks.get(key);
+        if(chunk == null) {
+            Vector3 center = new Vector3((x + 0.5f) * chunkSize, (y + 0.5f) * chunkSize, (z + 0.5f) * chunkSize);
+            chunk = new Chunk(key, center, layer);
+            chunks.put(key, chunk);
+            chunkList.add(chunk);
+        }
+
+        chunk.components.add(component);
+        chunk.objects.add(object);
+        chunk.dirty = true;
+        componentChunks.put(component, chunk);
+        return chunk;
+    }
+
+    /**
+     * Removes a component from its chunk.
+     * @return The chunk, marked to be rebuilt, or null if the component isn't in one.
+     */
+    Chunk remove(PhysicsComponent component) {
+        Chunk chunk = componentChunks.remove(component);
+        if(chunk == null)
+            return null;
+
+        int index = chunk.components.indexOf(component);
+        chunk.components.remove(index);
+        chunk.objects.remove(index);
+        chunk.dirty = true;
+        return chunk;
+    }
+
+    /**
+     * Returns whether or not a chunk should be in the collision world. Loaded chunks are kept until a chunk size beyond the radius,
+     * so that chunks at the edge don't come and go as the center moves back and forth.
+     */
+    boolean inRange(Chunk chunk, Vector3 center, float radius, boolean loaded) {
+        if(radius == Float.POSITIVE_INFINITY)
+            return true;
+
+        float range = loaded ? radius + chunkSize : radius;
+        return chunk.center.dst2(center) <= range * range;
+    }
+
+    int size() { return chunkList.size(); }
+
+    Chunk get(int index) { return chunkList.get(index); }
+
+    /**
+     * Drops chunks left without members. Their collision objects must have been removed from the world.
+     */
+    void removeEmpty() {
+        for(int i = chunkList.size() - 1; i >= 0; i--) {
+            Chunk chunk = chunkList.get(i);
+            if(chunk.components.isEmpty() && !chunk.loaded) {
+                chunk.dispose();
+                chunks.remove(chunk.key);
+                chunkList.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Disposes every chunk. Their collision objects must not be in a world anymore.
+     */
+    void clear() {
+        for(int i = 0; i < chunkList.size(); i++) {
+            chunkList.get(i).dispose();
+        }
+        chunks.clear();
+        componentChunks.clear();
+        chunkList.clear();
+    }
+}
@@ -0,0 +1,459 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.g3d.Material;
+import com.badlogic.gdx.graphics.g3d.Model;
+import com.badlogic.gdx.graphics.g3d.ModelInstance;
+import com.badlogic.gdx.graphics.g3d.model.MeshPart;
+import com.badlogic.gdx.graphics.g3d.model.Node;
+import com.badlogic.gdx.graphics.g3d.model.NodePart;
+import com.badlogic.gdx.graphics.g3d.utils.ModelBuilder;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.ShortArray;
+import com.henrik.gdxFramework.entities.GameObject;
+import com.henrik.gdxFramework.entities.components.ModelGraphicsComponent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Merges the models of static geometry into combined meshes. Model parts sharing a material are grouped into spatial chunks with
+ * their vertices pre-transformed into world space, and each chunk is then culled and drawn as a single model instance.
+ * Components added to the batch stop rendering themselves. Removing a model only rebuilds the chunks of its cell.
+ */
+public class StaticModelBatch {
+
+    private static final int MAX_CHUNK_VERTICES = 65535;
+
+    private static class Entry {
+        ModelGraphicsComponent component;
+        GameObject object;
+        Cell cell; // Cell the model was merged into, null until built
+
+        Entry(ModelGraphicsComponent component, GameObject object) {
+            this.component = component;
+            this.object = object;
+        }
+    }
+
+    /**
+     * A cell of the chunk grid, holding the chunks of every material.
+     */
+    private static class Cell {
+        final int x, y, z;
+
+        Cell(int x, int y, int z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if(!(other instanceof Cell))
+                return false;
+            Cell cell = (Cell)other;
+            return x == cell.x && y == cell.y && z == cell.z;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * x + y) + z;
+        }
+    }
+
+    private static class ChunkKey {
+        final Material material;
+        final String layout;
+        final int x, y, z;
+
+        ChunkKey(Material material, String layout, int x, int y, int z) {
+            this.material = material;
+            this.layout = layout;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if(!(other instanceof ChunkKey))
+                return false;
+            ChunkKey key = (ChunkKey)other;
+            return x == key.x && y == key.y && z == key.z && layout.equals(key.layout) && material.equals(key.material);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = material.hashCode();
+            hash = 31 * hash + layout.hashCode();
+            hash = 31 * hash + x;
+            hash = 31 * hash + y;
+            return 31 * hash + z;
+        }
+    }
+
+    private static class ChunkBuilder {
+        final Cell cell;
+        final Material material;
+        final VertexAttributes attributes;
+        final FloatArray vertices = new FloatArray();
+        final ShortArray indices = new ShortArray();
+        final BoundingBox bounds = new BoundingBox();
+        int vertexCount;
+
+        ChunkBuilder(Cell cell, Material material, VertexAttributes attributes) {
+            this.cell = cell;
+            this.material = material;
+            this.attributes = attributes;
+            bounds.inf();
+        }
+    }
+
+    /**
+     * A merged chunk of static geometry.
+     */
+    public static class Chunk {
+        private final Cell cell;
+        private final Model model;
+        private final ModelInstance instance;
+        private final BoundingBox bounds;
+
+        Chunk(Cell cell, Model model, BoundingBox bounds) {
+            this.cell = cell;
+            this.model = model;
+            this.instance = new ModelInstance(model);
+            this.bounds = bounds;
+        }
+
+        public ModelInstance getInstance() { return instance; }
+
+        public BoundingBox getBounds() { return bounds; }
+    }
+
+    private final ArrayList<Entry> entries;
+    private final HashMap<GameObject, ArrayList<Entry>> objectEntries;
+    private final ArrayList<Chunk> chunks;
+    private float chunkSize;
+    private boolean dirty;
+    private boolean rebuildAll; // Models were added or the chunk size changed, so every cell is rebuilt
+    private final HashSet<Cell> dirtyCells; // Cells to rebuild otherwise
+
+    // Build-time scratch data
+    private final HashMap<Mesh, float[]> meshVertices = new HashMap<Mesh, float[]>();
+    private final HashMap<Mesh, short[]> meshIndices = new HashMap<Mesh, short[]>();
+    private final Matrix4 partTransform = new Matrix4();
+    private final Matrix4 normalTransform = new Matrix4();
+    private final Vector3 tmp = new Vector3();
+    private int[] remap = new int[0];
+
+    /**
+     * @param chunkSize The size of a chunk along each axis, in world units.
+     */
+    public StaticModelBatch(float chunkSize) {
+        entries = new ArrayList<Entry>();
+        objectEntries = new HashMap<GameObject, ArrayList<Entry>>();
+        chunks = new ArrayList<Chunk>();
+        dirtyCells = new HashSet<Cell>();
+        this.chunkSize = chunkSize;
+        dirty = false;
+    }
+
+    /**
+     * Adds the model of a static object to the batch. Only unskinned triangle geometry can be merged, other models are left to render
+     * themselves.
+     * @return Whether or not the model was added to the batch.
+     */
+    public boolean add(ModelGraphicsComponent component, GameObject object) {
+        if(!canMerge(component.getModel().nodes))
+            return false;
+
+        Entry entry = new Entry(component, object);
+        entries.add(entry);
+        ArrayList<Entry> added = objectEntries.get(object);
+        if(added == null) {
+            added = new ArrayList<Entry>(1);
+            objectEntries.put(object, added);
+        }
+        added.add(entry);
+
+        component.setStaticBatched(true);
+        dirty = true;
+        rebuildAll = true;
+        return true;
+    }
+
+    /**
+     * Removes the models of an object from the batch, returning their components to rendering themselves. The chunks of the cell
+     * they were merged into are rebuilt on the next build.
+     * @return Whether or not the object had models in the batch.
+     */
+    public boolean remove(GameObject object) {
+        ArrayList<Entry> removed = objectEntries.remove(object);
+        if(removed == null)
+            return false;
+
+        for(int i = 0; i < removed.size(); i++) {
+            Entry entry = removed.get(i);
+            entries.remove(entry);
+            entry.component.setStaticBatched(false);
+            if(entry.cell != null)
+                dirtyCells.add(entry.cell);
+        }
+        dirty = true;
+        return true;
+    }
+
+    /**
+     * Returns whether or not models have been added or removed since the batch was last built.
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public void setChunkSize(float chunkSize) {
+        this.chunkSize = chunkSize;
+        dirty = true;
+        rebuildAll = true;
+    }
+
+    /**
+     * Merges the added models into chunks. After models were added, every chunk is replaced, which is done once after loading as it
+     * reads back every mesh involved. After models were only removed, just the chunks of their cells are rebuilt.
+     */
+    public void build() {
+        if(rebuildAll) {
+            disposeChunks();
+        } else {
+            for(int i = chunks.size() - 1; i >= 0; i--) {
+                Chunk chunk = chunks.get(i);
+                if(dirtyCells.contains(chunk.cell)) {
+                    chunk.model.dispose();
+                    chunks.remove(i);
+                }
+            }
+        }
+
+        HashMap<ChunkKey, ChunkBuilder> builders = new HashMap<ChunkKey, ChunkBuilder>();
+
+        for(Entry entry : entries) {
+            Matrix4 transform = entry.object.getWorldTransform();
+            if(rebuildAll) {
+                transform.getTranslation(tmp);
+                entry.cell = new Cell((int)Math.floor(tmp.x / chunkSize), (int)Math.floor(tmp.y / chunkSize), (int)Math.floor(tmp.z / chunkSize));
+            } else if(!dirtyCells.contains(entry.cell)) {
+                continue;
+            }
+
+            addNodes(builders, entry.component.getModel().nodes, transform, entry.cell);
+        }
+
+        for(ChunkBuilder builder : builders.values()) {
+            finishChunk(builder);
+        }
+
+        meshVertices.clear();
+        meshIndices.clear();
+        dirtyCells.clear();
+        rebuildAll = false;
+        dirty = false;
+    }
+
+    private void addNodes(HashMap<ChunkKey, ChunkBuilder> builders, Array<Node> nodes, Matrix4 transform, Cell cell) {
+        for(int n = 0; n < nodes.size; n++) {
+            addNode(builders, nodes.get(n), transform, cell);
+        }
+    }
+
+    private void addNode(HashMap<ChunkKey, ChunkBuilder> builders, Node node, Matrix4 transform, Cell cell) {
+        for(int p = 0; p < node.parts.size; p++) {
+            NodePart part = node.parts.get(p);
+            if(!part.enabled)
+                continue;
+
+            VertexAttributes attributes = part.meshPart.mesh.getVertexAttributes();
+            ChunkKey key = new ChunkKey(part.material, layoutOf(attributes), cell.x, cell.y, cell.z);
+            ChunkBuilder builder = builders.get(key);
+            if(builder == null || builder.vertexCount + part.meshPart.numVertices > MAX_CHUNK_VERTICES) {
+                if(builder != null)
+                    finishChunk(builder);
+                builder = new ChunkBuilder(cell, part.material, attributes);
+                builders.put(key, builder);
+            }
+
+            partTransform.set(transform).mul(node.globalTransform);
+            addPart(builder, part.meshPart);
+        }
+        for(int c = 0; c < node.getChildCount(); c++) {
+            addNode(builders, node.getChild(c), transform, cell);
+        }
+    }
+
+    /**
+     * Appends the vertices referenced by a mesh part to the builder, transformed into world space.
+     */
+    private void addPart(ChunkBuilder builder, MeshPart meshPart) {
+        Mesh mesh = meshPart.mesh;
+        int vertexSize = mesh.getVertexSize() / 4;
+
+        float[] vertices = meshVertices.get(mesh);
+        if(vertices == null) {
+            vertices = new float[mesh.getNumVertices() * vertexSize];
+            mesh.getVertices(vertices);
+            meshVertices.put(mesh, vertices);
+        }
+
+        VertexAttribute position = mesh.getVertexAttribute(VertexAttributes.Usage.Position);
+        VertexAttribute normal = mesh.getVertexAttribute(VertexAttributes.Usage.Normal);
+        int positionOffset = position.offset / 4;
+        int normalOffset = normal != null ? normal.offset / 4 : -1;
+        // Parts scaled to nothing have no inverse, and no visible normals either
+        if(partTransform.det() != 0f)
+            normalTransform.set(partTransform).inv().tra();
+        else
+            normalTransform.set(partTransform);
+
+        if(remap.length < mesh.getNumVertices())
+            remap = new int[mesh.getNumVertices()];
+        Arrays.fill(remap, 0, mesh.getNumVertices(), -1);
+
+        short[] indices = null;
+        if(mesh.getNumIndices() > 0) {
+            indices = meshIndices.get(mesh);
+            if(indices == null) {
+                indices = new short[mesh.getNumIndices()];
+                mesh.getIndices(indices);
+                meshIndices.put(mesh, indices);
+            }
+        }
+
+        for(int i = 0; i < meshPart.numVertices; i++) {
+            int vertex = indices != null ? indices[meshPart.indexOffset + i] & 0xFFFF : meshPart.indexOffset + i;
+
+            if(remap[vertex] == -1) {
+                remap[vertex] = builder.vertexCount++;
+
+                int start = builder.vertices.size;
+                builder.vertices.addAll(vertices, vertex * vertexSize, vertexSize);
+                float[] items = builder.vertices.items;
+
+                tmp.set(items[start + positionOffset], items[start + positionOffset + 1], items[start + positionOffset + 2]).mul(partTransform);
+                items[start + positionOffset] = tmp.x;
+                items[start + positionOffset + 1] = tmp.y;
+                items[start + positionOffset + 2] = tmp.z;
+                builder.bounds.ext(tmp);
+
+                if(normalOffset >= 0) {
+                    tmp.set(items[start + normalOffset], items[start + normalOffset + 1], items[start + normalOffset + 2]).rot(normalTransform).nor();
+                    items[start + normalOffset] = tmp.x;
+                    items[start + normalOffset + 1] = tmp.y;
+                    items[start + normalOffset + 2] = tmp.z;
+                }
+            }
+
+            builder.indices.add((short)remap[vertex]);
+        }
+    }
+
+    private void finishChunk(ChunkBuilder builder) {
+        if(builder.indices.size == 0)
+            return;
+
+        Mesh mesh = new Mesh(true, builder.vertexCount, builder.indices.size, builder.attributes);
+        mesh.setVertices(builder.vertices.items, 0, builder.vertices.size);
+        mesh.setIndices(builder.indices.items, 0, builder.indices.size);
+
+        ModelBuilder modelBuilder = new ModelBuilder();
+        modelBuilder.begin();
+        modelBuilder.part("static", mesh, GL20.GL_TRIANGLES, builder.material);
+        chunks.add(new Chunk(builder.cell, modelBuilder.end(), new BoundingBox(builder.bounds)));
+
+        builder.vertices.clear();
+        builder.indices.clear();
+        builder.vertexCount = 0;
+        builder.bounds.inf();
+    }
+
+    /**
+     * Submits every chunk within the camera's frustum to the renderer.
+     */
+    public void render(Camera camera, Renderer renderer) {
+        for(int i = 0; i < chunks.size(); i++) {
+            Chunk chunk = chunks.get(i);
+            if(camera.frustum.boundsInFrustum(chunk.bounds))
+                renderer.addModel(chunk.instance);
+        }
+    }
+
+    public ArrayList<Chunk> getChunks() {
+        return chunks;
+    }
+
+    /**
+     * Removes every model from the batch, returning their components to rendering themselves.
+     */
+    public void clear() {
+        for(Entry entry : entries) {
+            entry.component.setStaticBatched(false);
+        }
+        entries.clear();
+        objectEntries.clear();
+        dirtyCells.clear();
+        disposeChunks();
+        dirty = false;
+        rebuildAll = false;
+    }
+
+    private void disposeChunks() {
+        for(Chunk chunk : chunks) {
+            chunk.model.dispose();
+        }
+        chunks.clear();
+    }
+
+    public void dispose() {
+        disposeChunks();
+    }
+
+    private static boolean canMerge(Array<Node> nodes) {
+        for(int n = 0; n < nodes.size; n++) {
+            if(!canMerge(nodes.get(n)))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean canMerge(Node node) {
+        for(int p = 0; p < node.parts.size; p++) {
+            NodePart part = node.parts.get(p);
+            if(part.bones != null || part.meshPart.primitiveType != GL20.GL_TRIANGLES)
+                return false;
+            if(part.meshPart.mesh.getVertexAttribute(VertexAttributes.Usage.Position) == null)
+                return false;
+        }
+        for(int c = 0; c < node.getChildCount(); c++) {
+            if(!canMerge(node.getChild(c)))
+                return false;
+        }
+        return true;
+    }
+
+    private static String layoutOf(VertexAttributes attributes) {
+        StringBuilder layout = new StringBuilder();
+        for(int i = 0; i < attributes.size(); i++) {
+            VertexAttribute attribute = attributes.get(i);
+            layout.append(attribute.usage).append(':').append(attribute.numComponents).append(':').append(attribute.alias).append(';');
+        }
+        return layout.toString();
+    }
+}
@@ -0,0 +1,225 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.PixmapPacker;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.g3d.Model;
+import com.badlogic.gdx.graphics.g3d.ModelBatch;
+import com.badlogic.gdx.graphics.g3d.ModelInstance;
+import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Renders models to thumbnails, cropped to the visible bounds of the model, and caches them in a shared texture atlas. A single
+ * frame buffer and model batch are reused for every render, and the rendered image is flipped and cropped with bulk row copies.
+ */
+public class ThumbnailCache {
+
+    private static final int MIN_PAGE_SIZE = 1024;
+
+    /**
+     * Identifies a thumbnail by model and the camera parameters it was rendered with.
+     */
+    private static class Key {
+        Model model;
+        final float[] params = new float[16];
+
+        void set(Model model, Camera camera, int width, int height) {
+            this.model = model;
+            params[0] = camera.position.x;
+            params[1] = camera.position.y;
+            params[2] = camera.position.z;
+            params[3] = camera.direction.x;
+            params[4] = camera.direction.y;
+            params[5] = camera.direction.z;
+            params[6] = camera.up.x;
+            params[7] = camera.up.y;
+            params[8] = camera.up.z;
+            params[9] = camera.near;
+            params[10] = camera.far;
+            params[11] = camera.viewportWidth;
+            params[12] = camera.viewportHeight;
+            params[13] = camera instanceof PerspectiveCamera ? ((PerspectiveCamera)camera).fieldOfView : 0;
+            params[14] = camera instanceof OrthographicCamera ? ((OrthographicCamera)camera).zoom : 0;
+            params[15] = width * 65536f + height;
+        }
+
+        Key copy() {
+            Key key = new Key();
+            key.model = model;
+            System.arraycopy(params, 0, key.params, 0, params.length);
+            return key;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if(!(other instanceof Key))
+                return false;
+            Key key = (Key)other;
+            return model == key.model && Arrays.equals(params, key.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(model) * 31 + Arrays.hashCode(params);
+        }
+    }
+
+    private final HashMap<Key, TextureRegion> thumbnails;
+    private final Key lookupKey;
+    private int nextId;
+
+    private FrameBuffer frameBuffer;
+    private ModelBatch batch;
+    private ByteBuffer pixels;
+
+    private PixmapPacker packer;
+    private TextureAtlas atlas;
+
+    public ThumbnailCache() {
+        thumbnails = new HashMap<Key, TextureRegion>();
+        lookupKey = new Key();
+        nextId = 0;
+    }
+
+    /**
+     * Returns the thumbnail of the model as seen by the camera, rendering it only if it is not already cached. The camera must be
+     * updated. The returned region is owned by the cache.
+     */
+    public TextureRegion get(Model model, Camera camera) {
+        int width = Gdx.graphics.getWidth();
+        int height = Gdx.graphics.getHeight();
+
+        lookupKey.set(model, camera, width, height);
+        TextureRegion region = thumbnails.get(lookupKey);
+        if(region != null)
+            return region;
+
+        Pixmap thumbnail = render(model, camera, width, height);
+        region = pack(thumbnail);
+        thumbnail.dispose();
+
+        thumbnails.put(lookupKey.copy(), region);
+        return region;
+    }
+
+    private Pixmap render(Model model, Camera camera, int width, int height) {
+        ensureFrameBuffer(width, height);
+
+        frameBuffer.begin();
+        Gdx.gl.glClearColor(0, 0, 0, 0);
+        Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT | GL20.GL_DEPTH_BUFFER_BIT);
+        batch.begin(camera);
+        batch.render(new ModelInstance(model));
+        batch.end();
+
+        pixels.clear();
+        Gdx.gl.glPixelStorei(GL20.GL_PACK_ALIGNMENT, 1);
+        Gdx.gl.glReadPixels(0, 0, width, height, GL20.GL_RGBA, GL20.GL_UNSIGNED_BYTE, pixels);
+        frameBuffer.end();
+
+        // Find the bounds of every pixel that isn't fully transparent
+        int minX = width, minY = height, maxX = -1, maxY = -1;
+        for(int y = 0; y < height; y++) {
+            int row = y * width * 4;
+            for(int x = 0; x < width; x++) {
+                if(pixels.get(row + x * 4 + 3) != 0) {
+                    if(x < minX) minX = x;
+                    if(x > maxX) maxX = x;
+                    if(y < minY) minY = y;
+                    maxY = y;
+                }
+            }
+        }
+
+        if(maxX < 0) {
+            Pixmap empty = new Pixmap(1, 1, Pixmap.Format.RGBA8888);
+            empty.setColor(0, 0, 0, 0);
+            empty.fill();
+            return empty;
+        }
+
+        // Copy the cropped rows, flipping them as frame buffer rows start from the bottom
+        int cropWidth = maxX - minX + 1;
+        int cropHeight = maxY - minY + 1;
+        int rowBytes = cropWidth * 4;
+        Pixmap cropped = new Pixmap(cropWidth, cropHeight, Pixmap.Format.RGBA8888);
+        ByteBuffer destination = cropped.getPixels();
+
+        for(int row = 0; row < cropHeight; row++) {
+            int source = ((maxY - row) * width + minX) * 4;
+            pixels.limit(source + rowBytes);
+            pixels.position(source);
+            destination.position(row * rowBytes);
+            destination.put(pixels);
+        }
+
+        pixels.clear();
+        destination.position(0);
+        return cropped;
+    }
+
+    private TextureRegion pack(Pixmap thumbnail) {
+        if(packer == null) {
+            int pageSize = Math.max(MIN_PAGE_SIZE, MathUtils.nextPowerOfTwo(Math.max(frameBuffer.getWidth(), frameBuffer.getHeight())));
+            packer = new PixmapPacker(pageSize, pageSize, Pixmap.Format.RGBA8888, 2, false);
+        }
+
+        String name = "thumbnail" + nextId++;
+        packer.pack(name, thumbnail);
+
+        if(atlas == null)
+            atlas = packer.generateTextureAtlas(Texture.TextureFilter.Linear, Texture.TextureFilter.Linear, false);
+        else
+            packer.updateTextureAtlas(atlas, Texture.TextureFilter.Linear, Texture.TextureFilter.Linear, false);
+
+        return atlas.findRegion(name);
+    }
+
+    private void ensureFrameBuffer(int width, int height) {
+        if(batch == null)
+            batch = new ModelBatch();
+
+        if(frameBuffer != null && frameBuffer.getWidth() == width && frameBuffer.getHeight() == height)
+            return;
+
+        if(frameBuffer != null)
+            frameBuffer.dispose();
+
+        frameBuffer = new FrameBuffer(Pixmap.Format.RGBA8888, width, height, true);
+        pixels = BufferUtils.newByteBuffer(width * height * 4);
+    }
+
+    /**
+     * Disposes every cached thumbnail along with the frame buffer and batch used to render them.
+     */
+    public void dispose() {
+        thumbnails.clear();
+
+        if(atlas != null)
+            atlas.dispose();
+        if(packer != null)
+            packer.dispose();
+        if(frameBuffer != null)
+            frameBuffer.dispose();
+        if(batch != null)
+            batch.dispose();
+
+        atlas = null;
+        packer = null;
+        frameBuffer = null;
+        batch = null;
+    }
+}
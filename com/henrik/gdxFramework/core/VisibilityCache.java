@@ -0,0 +1,79 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.henrik.gdxFramework.entities.GameObject;
+
+/**
+ * Frustum test for a component culling itself, reusing the last result while neither the renderer's camera nor the object's
+ * transform have changed. The camera is compared to the one the planes were captured from when the frame is rendered, see
+ * {@link Renderer#checkCamera()}. Transforms are compared by version, see {@link GameObject#getWorldTransformVersion()}. When
+ * retesting, the plane that rejected the bounds last time is tested first.
+ */
+public class VisibilityCache {
+
+    private GameObject object;
+    private int transformVersion;
+    private int cameraVersion;
+    private boolean visible;
+    private int failedPlane;
+
+    private float[] planes; // Only used for cameras other than the renderer's
+
+    public VisibilityCache() {
+        cameraVersion = -1;
+        failedPlane = -1;
+    }
+
+    /**
+     * Returns whether or not the given bounds, moved to the object's position in world space, are within the camera's frustum.
+     */
+    public boolean isInView(Camera camera, Renderer renderer, GameObject object, BoundingBox localBounds) {
+        // Not the camera versions are tracked for, so test without caching
+        if(camera != renderer.getActiveCamera()) {
+            if(planes == null)
+                planes = new float[FrustumPlanes.PLANE_COUNT * 4];
+            FrustumPlanes.copy(camera.frustum, planes);
+            cameraVersion = -1;
+            return findOutsidePlane(planes, object, localBounds, -1) < 0;
+        }
+
+        renderer.checkCamera();
+        return isInView(renderer.getFrustumPlanes(), renderer.getCameraVersion(), object, localBounds);
+    }
+
+    /**
+     * Returns whether or not the given bounds, moved to the object's position in world space, are within the frustum of the given
+     * planes, see {@link FrustumPlanes}. The last result is reused while the camera version and the object's transform are unchanged.
+     */
+    public boolean isInView(float[] planes, int cameraVersion, GameObject object, BoundingBox localBounds) {
+        if(object == this.object && object.getWorldTransformVersion() == transformVersion && cameraVersion == this.cameraVersion)
+            return visible;
+
+        failedPlane = findOutsidePlane(planes, object, localBounds, failedPlane);
+        visible = failedPlane < 0;
+
+        this.object = object;
+        transformVersion = object.getWorldTransformVersion();
+        this.cameraVersion = cameraVersion;
+        return visible;
+    }
+
+    private static int findOutsidePlane(float[] planes, GameObject object, BoundingBox localBounds, int firstPlane) {
+        float[] transform = object.getWorldTransform().val;
+        float cx = (localBounds.min.x + localBounds.max.x) * 0.5f + transform[12];
+        float cy = (localBounds.min.y + localBounds.max.y) * 0.5f + transform[13];
+        float cz = (localBounds.min.z + localBounds.max.z) * 0.5f + transform[14];
+        float ex = (localBounds.max.x - localBounds.min.x) * 0.5f;
+        float ey = (localBounds.max.y - localBounds.min.y) * 0.5f;
+        float ez = (localBounds.max.z - localBounds.min.z) * 0.5f;
+        return FrustumPlanes.findOutsidePlane(planes, cx, cy, cz, ex, ey, ez, firstPlane);
+    }
+
+    /**
+     * Forces the next test to be performed, for when the bounds themselves change.
+     */
+    public void invalidate() {
+        object = null;
+    }
+}
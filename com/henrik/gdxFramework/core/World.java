@@ -5,12 +5,20 @@ import com.badlogic.gdx.graphics.Camera;
 import com.badlogic.gdx.graphics.PerspectiveCamera;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.g3d.Environment;
+import com.badlogic.gdx.graphics.g3d.particles.ParticleEffect;
 import com.badlogic.gdx.graphics.g3d.utils.FirstPersonCameraController;
+import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.physics.bullet.collision.btConvexShape;
+import com.henrik.gdxFramework.entities.EntityStore;
 import com.henrik.gdxFramework.entities.GameObject;
+import com.henrik.gdxFramework.entities.GameObjectPool;
+import com.henrik.gdxFramework.entities.components.ModelGraphicsComponent;
 import com.henrik.gdxFramework.entities.components.PhysicsComponent;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * World class. Represents an abstract world, containing a camera. Override to create custom worlds.
@@ -20,6 +28,13 @@ public abstract class World {
     // Rendering
     protected Environment environment;
     protected Renderer renderer;
+    protected StaticModelBatch staticModels;
+    protected ParticleManager particles;
+    protected CullingTree cullingTree;
+    protected DecalCuller decalCuller;
+
+    public static final float DEFAULT_STATIC_CHUNK_SIZE = 32f;
+    public static final float DEFAULT_CULLING_MARGIN = 1f;
 
     protected Camera activeCamera;
     protected CameraController mainCameraController;
@@ -33,11 +48,57 @@ public abstract class World {
     // Collision world
     private CollisionWorld collisionWorld;
 
+    // Static collision chunks are kept within this distance of the main camera
+    private float staticStreamingRadius = Float.POSITIVE_INFINITY;
+
+    // Objects whose transforms were brought up to date by the collision world in the last updated frame
+    private int lastPhysicsSyncs;
+
+    // Optional store integrating the velocities of attached objects in one pass, null if none
+    protected EntityStore entityStore;
+
+    // Despawned objects kept for reuse
+    protected GameObjectPool objectPool;
+
+    // Parallel entity updates, and the changes to the collision world and renderer deferred while they run
+    private ParallelUpdater parallelUpdater;
+    private boolean parallelUpdate;
+    private final DeferredCommands deferredCommands = new DeferredCommands();
+    private final DeferredCommands.Handler deferredHandler = new DeferredCommands.Handler() {
+        @Override
+        public void execute(int operation, Object a, Object b, Object c) { executeDeferred(operation, a, b, c); }
+
+        @Override
+        public void record(RenderCommandList commands) { renderer.record(commands); }
+    };
+
+    // Changes deferred during parallel updates
+    private static final int REGISTER_CULLABLE = 0;
+    private static final int REGISTER_DECAL = 1;
+    private static final int UNREGISTER_CULLABLE = 2;
+    private static final int DESPAWN = 3;
+    private static final int REGISTER_DYNAMIC = 4;
+    private static final int REGISTER_STATIC = 5;
+    private static final int REGISTER_STATIC_MODEL = 6;
+    private static final int REGISTER_STATIC_CHUNK = 7;
+    private static final int REGISTER_TRIGGER = 8;
+    private static final int UNREGISTER_COLLISION = 9;
+    private List<? extends GameObject> updatedObjects; // Objects of the last updateEntities, whose hierarchies update() brings up to date
+
     // Whether or not the world is in a paused state (prevents collision world from updating, use in derived class to pause game update logic)
     protected boolean paused;
 
     boolean debugCamEnabled;
 
+    // Incremented whenever the active camera's view changes
+    private int cameraVersion;
+    private Camera versionedCamera;
+    private final float[] versionedCombined = new float[16];
+
+    // Positions of Bullet shape sweeps on a collision world without Bullet
+    private final Vector3 sweepStart = new Vector3();
+    private final Vector3 sweepEnd = new Vector3();
+
     public World(GameBase game) {
 
         // Initialize the debug camera and controller
@@ -59,16 +120,32 @@ public abstract class World {
         mainCamera.update();
 
         this.game = game;
-        renderer = new Renderer(activeCamera);
+        particles = new ParticleManager();
+        renderer = new Renderer(activeCamera, particles);
+        renderer.setDeferredCommands(deferredCommands);
         environment = new Environment();
+        staticModels = new StaticModelBatch(DEFAULT_STATIC_CHUNK_SIZE);
+        cullingTree = new CullingTree(DEFAULT_CULLING_MARGIN);
+        decalCuller = new DecalCuller();
 
         // Set the active camera to the main camera
         activeCamera = mainCamera;
         renderer.setActiveCamera(activeCamera);
 
-        collisionWorld = new CollisionWorld();
+        collisionWorld = createCollisionWorld();
+        objectPool = new GameObjectPool();
 
         debugCamEnabled = false;
+
+        game.addWorld(this);
+    }
+
+    /**
+     * Creates the collision world used by this world, a {@link BulletCollisionWorld} by default. Override to use a
+     * {@link JavaCollisionWorld} instead, whose physics components must be created from {@link CollisionShape}s.
+     */
+    protected CollisionWorld createCollisionWorld() {
+        return new BulletCollisionWorld();
     }
 
     public Camera getCamera() {
@@ -83,6 +160,19 @@ public abstract class World {
 
     public Renderer getRenderer() { return  renderer; }
 
+    /**
+     * Returns the particle manager of this world. Effect templates should be loaded with its batches, see {@link ParticleManager#getBatches()}.
+     */
+    public ParticleManager getParticles() { return particles; }
+
+    /**
+     * Spawns a pooled copy of the given effect template the next time the world is drawn.
+     * @param priority Effects with a lower priority are stopped first when the particle budget is exceeded.
+     */
+    public void spawnParticleEffect(ParticleEffect template, Matrix4 transform, int priority) {
+        renderer.spawnParticleEffect(template, transform, priority);
+    }
+
     public void toggleDebugCamera() {
         debugCamEnabled = !debugCamEnabled;
         if(debugCamEnabled) {
@@ -123,23 +213,250 @@ public abstract class World {
             debugCamera.update();
         }
 
-        if(!paused)
-            collisionWorld.update(activeCamera);
+        if(!paused && entityStore != null)
+            entityStore.integrate(Gdx.graphics.getDeltaTime());
+
+        // World transforms of the updated hierarchies are recomputed from their roots down, rather than one object at a time as
+        // collision sync and culling read them
+        if(updatedObjects != null)
+            GameObject.updateWorldTransforms(updatedObjects);
+
+        if(!paused) {
+            collisionWorld.setStaticChunkStreaming(mainCamera.position, staticStreamingRadius);
+
+            // Deferred worlds may be updating off the GL thread, so debug drawing waits for the frame to be submitted
+            if(renderer.isDeferred())
+                collisionWorld.performCollisionDetection();
+            else
+                collisionWorld.update(activeCamera);
+        }
+
+        lastPhysicsSyncs = paused ? 0 : collisionWorld.getSyncedObjectCount();
+        if(!renderer.isDeferred())
+            game.getProfile().addPhysicsSyncs(lastPhysicsSyncs);
+
+        cull();
+    }
+
+    /**
+     * Refits the culling tree to registered cullables that moved, and finds those visible from the active camera. Called at the end of
+     * {@link #update()}; objects moved after that are refit the next frame, and stay visible meanwhile as long as they remain within
+     * the tree's margin.
+     */
+    protected void cull() {
+        updateCameraVersion();
+        cullingTree.update();
+        cullingTree.cull(activeCamera, cameraVersion);
+        decalCuller.cull(activeCamera, cameraVersion);
+    }
+
+    /**
+     * Increments the camera version if the active camera was switched or its view changed since the last update.
+     */
+    private void updateCameraVersion() {
+        float[] combined = activeCamera.combined.val;
+        if(activeCamera == versionedCamera && Arrays.equals(combined, versionedCombined))
+            return;
+
+        versionedCamera = activeCamera;
+        System.arraycopy(combined, 0, versionedCombined, 0, 16);
+        cameraVersion = Math.max(cameraVersion, renderer.getCameraVersion()) + 1;
+        renderer.setCameraVersion(cameraVersion);
+    }
+
+    /**
+     * Returns a number that changes whenever the active camera's view changes, as of the last update.
+     */
+    public int getCameraVersion() { return cameraVersion; }
+
+    /**
+     * Registers a cullable to be culled by this world's culling tree instead of testing itself against the camera's frustum.
+     */
+    public CullingProxy registerCullable(Cullable cullable, GameObject object) {
+        CullingProxy proxy = new CullingProxy(cullable, object);
+        cullable.setCullingProxy(proxy);
+
+        if(!deferredCommands.defer(REGISTER_CULLABLE, proxy, null, null))
+            cullingTree.add(proxy);
+
+        return proxy;
+    }
+
+    /**
+     * Registers a decal component to be culled by this world's decal culler, which suits many small moving decals better than the
+     * culling tree. The decal's bounds must not change relative to its object.
+     */
+    public CullingProxy registerDecal(Cullable decal, GameObject object) {
+        CullingProxy proxy = new CullingProxy(decal, object);
+        decal.setCullingProxy(proxy);
+
+        if(!deferredCommands.defer(REGISTER_DECAL, proxy, null, null))
+            decalCuller.add(proxy);
+
+        return proxy;
+    }
+
+    /**
+     * Stops culling a cullable registered with {@link #registerCullable} or {@link #registerDecal}.
+     */
+    public void unregisterCullable(Cullable cullable) {
+        CullingProxy proxy = cullable.getCullingProxy();
+        cullable.setCullingProxy(null);
+        if(proxy == null)
+            return;
+
+        if(!deferredCommands.defer(UNREGISTER_CULLABLE, proxy, null, null))
+            removeProxy(proxy);
+    }
+
+    private void removeProxy(CullingProxy proxy) {
+        cullingTree.remove(proxy);
+        decalCuller.remove(proxy);
+    }
+
+    /**
+     * Returns every registered cullable found visible at the end of the last update.
+     */
+    public ArrayList<CullingProxy> getVisibleSet() { return cullingTree.getVisible(); }
+
+    public CullingTree getCullingTree() { return cullingTree; }
+
+    /**
+     * Sets the entity store of this world. Velocities of objects attached to it are integrated together once per update, before
+     * collision detection. See {@link GameObject#attachToStore(EntityStore)}.
+     */
+    public void setEntityStore(EntityStore store) { entityStore = store; }
+
+    public EntityStore getEntityStore() { return entityStore; }
+
+    /**
+     * Sets whether or not {@link #updateEntities(List)} updates parallel-safe objects in parallel, see
+     * {@link GameObject#isParallelSafe()}.
+     */
+    public void setParallelUpdate(boolean parallelUpdate) {
+        this.parallelUpdate = parallelUpdate;
+        if(parallelUpdate && parallelUpdater == null)
+            parallelUpdater = new ParallelUpdater();
+    }
+
+    public boolean isParallelUpdate() { return parallelUpdate; }
+
+    /**
+     * Updates the given objects. With parallel updates enabled, parallel-safe objects are updated first on a fork-join pool, while
+     * the changes they make to the collision world and renderer through this world are deferred. The deferred changes are applied
+     * once all of them are done, and the remaining objects are then updated one at a time in list order.
+     * The world transforms of the hierarchies rooted at the given objects are recomputed before the objects are updated, so that
+     * objects updating in parallel don't recompute them as they read them, and again by {@link #update()}. Objects updated some
+     * other way have their world transforms recomputed when read, see {@link GameObject#getWorldTransform()}.
+     */
+    public void updateEntities(List<? extends GameObject> objects) {
+        updatedObjects = objects;
+        GameObject.updateWorldTransforms(objects);
+
+        if(!parallelUpdate) {
+            for(int i = 0; i < objects.size(); i++) {
+                objects.get(i).update(this);
+            }
+            return;
+        }
+
+        // Transforms held by the entity store are composed here, so that objects reading each other in parallel don't compose them
+        if(entityStore != null)
+            entityStore.composeTransforms();
+
+        deferredCommands.begin();
+        try {
+            parallelUpdater.update(this, objects);
+        } finally {
+            deferredCommands.end(deferredHandler);
+        }
+
+        for(int i = 0; i < objects.size(); i++) {
+            GameObject object = objects.get(i);
+            if(!object.isParallelSafe())
+                object.update(this);
+        }
     }
 
     public void render(boolean withEnvironment) {
+        // Static geometry registered since the last frame (normally during GameState.initialize) is merged before it is first drawn
+        if(staticModels.isDirty() && !renderer.isDeferred())
+            staticModels.build();
+        staticModels.render(activeCamera, renderer);
+
         // Render all decals and models
         if(withEnvironment)
             renderer.render(environment);
         else
             renderer.render(null);
 
+        if(!renderer.isDeferred())
+            game.getProfile().addSpriteStats(renderer.getSpriteCount(), renderer.getSpriteTextureFlushes());
+
         renderer.clear();
     }
 
+    /**
+     * Sets whether or not this world's rendering is deferred, see {@link Renderer#setDeferred(boolean)}. Used by the game when
+     * updating on a worker thread.
+     */
+    public void setDeferredRendering(boolean deferred) {
+        renderer.setDeferred(deferred);
+    }
+
+    /**
+     * Makes the frame recorded by the last {@link #render(boolean)} the one to be submitted. Called on the GL thread while the world
+     * is not being updated, so it also handles work that must happen on the GL thread between frames.
+     */
+    public void swapRenderCommands() {
+        renderer.swap();
+
+        if(staticModels.isDirty())
+            staticModels.build();
+
+        game.getProfile().addPhysicsSyncs(lastPhysicsSyncs);
+
+        Camera camera = renderer.getSubmittedCamera();
+        if(collisionWorld.isDebugActive() && camera != null)
+            collisionWorld.debugDraw(camera);
+    }
+
+    /**
+     * Draws the frame made current by {@link #swapRenderCommands()}. Called on the GL thread.
+     */
+    public void submitRenderCommands() {
+        renderer.submit();
+        game.getProfile().addSpriteStats(renderer.getSpriteCount(), renderer.getSpriteTextureFlushes());
+    }
+
     public void dispose() {
+        game.removeWorld(this);
         collisionWorld.dispose();
+        staticModels.dispose();
         renderer.dispose();
+        particles.dispose();
+        objectPool.dispose();
+
+        if(parallelUpdater != null)
+            parallelUpdater.dispose();
+    }
+
+    public GameObjectPool getObjectPool() { return objectPool; }
+
+    /**
+     * Spawns an object of a prefab, reusing a despawned one if possible. See {@link GameObjectPool}.
+     */
+    public <T extends GameObject> T spawn(GameObjectPool.Prefab<T> prefab) {
+        return objectPool.obtain(prefab, this);
+    }
+
+    /**
+     * Despawns an object spawned through {@link #spawn(GameObjectPool.Prefab)}, keeping it for reuse. During parallel updates the
+     * object is despawned once every object is updated, so that it isn't reused before then.
+     */
+    public void despawn(GameObject object) {
+        if(!deferredCommands.defer(DESPAWN, object, null, null))
+            objectPool.free(object, this);
     }
 
     public void setMainCameraController(CameraController controller) {
@@ -151,23 +468,220 @@ public abstract class World {
         collisionWorld.setDebugDrawMode(mode);
     }
 
-    public CollisionObject[] rayTestAll(Vector3 start, Vector3 end, CollisionWorld.CollisionFilter group, CollisionWorld.CollisionFilter mask) { return collisionWorld.rayTestAll(start, end, group, mask); }
+    // Queries are serialized, as they share result callbacks and may be made by objects updating in parallel
+
+    public CollisionObject[] rayTestAll(Vector3 start, Vector3 end, CollisionWorld.CollisionFilter group, CollisionWorld.CollisionFilter mask) {
+        synchronized(collisionWorld) {
+            return collisionWorld.rayTestAll(start, end, group, mask);
+        }
+    }
+
+    public CollisionObject rayTestFirst(Vector3 start, Vector3 end, short group, short mask) {
+        synchronized(collisionWorld) {
+            return collisionWorld.rayTestFirst(start, end, group, mask);
+        }
+    }
+
+    /**
+     * See {@link CollisionWorld#rayTestAll(Vector3, Vector3, short, short, ArrayList)}.
+     */
+    public int rayTestAll(Vector3 start, Vector3 end, short group, short mask, ArrayList<CollisionObject> out) {
+        synchronized(collisionWorld) {
+            return collisionWorld.rayTestAll(start, end, group, mask, out);
+        }
+    }
+
+    /**
+     * See {@link CollisionWorld#rayTestFirst(float[], float[], int, short, short, int[], float[], float[], float[])}.
+     */
+    public int rayTestFirst(float[] starts, float[] ends, int rayCount, short group, short mask,
+                            int[] hitHandles, float[] hitFractions, float[] hitPoints, float[] hitNormals) {
+        synchronized(collisionWorld) {
+            return collisionWorld.rayTestFirst(starts, ends, rayCount, group, mask, hitHandles, hitFractions, hitPoints, hitNormals);
+        }
+    }
+
+    /**
+     * See {@link CollisionWorld#rayTestAll(Vector3, Vector3, short, short, int[], float[], float[], float[], int)}.
+     */
+    public int rayTestAll(Vector3 start, Vector3 end, short group, short mask,
+                          int[] hitHandles, float[] hitFractions, float[] hitPoints, float[] hitNormals, int maxHits) {
+        synchronized(collisionWorld) {
+            return collisionWorld.rayTestAll(start, end, group, mask, hitHandles, hitFractions, hitPoints, hitNormals, maxHits);
+        }
+    }
+
+    /**
+     * See {@link BulletCollisionWorld#sweepTest(btConvexShape, Matrix4, Matrix4, short, short, Vector3, Vector3)}. On a collision
+     * world without Bullet, the shape is described with {@link CollisionShape#describe(btConvexShape)} and swept between the
+     * positions of the transforms, without their rotations.
+     */
+    public CollisionObject sweepTest(btConvexShape shape, Matrix4 from, Matrix4 to, short group, short mask, Vector3 hitPoint, Vector3 hitNormal) {
+        synchronized(collisionWorld) {
+            if(collisionWorld instanceof BulletCollisionWorld)
+                return ((BulletCollisionWorld)collisionWorld).sweepTest(shape, from, to, group, mask, hitPoint, hitNormal);
 
-    public CollisionObject rayTestFirst(Vector3 start, Vector3 end, short group, short mask) { return collisionWorld.rayTestFirst(start, end, group, mask); }
+            return collisionWorld.sweepTest(CollisionShape.describe(shape), from.getTranslation(sweepStart), to.getTranslation(sweepEnd),
+                    group, mask, hitPoint, hitNormal);
+        }
+    }
+
+    /**
+     * See {@link CollisionWorld#sweepTest(CollisionShape, Vector3, Vector3, short, short, Vector3, Vector3)}.
+     */
+    public CollisionObject sweepTest(CollisionShape shape, Vector3 start, Vector3 end, short group, short mask, Vector3 hitPoint, Vector3 hitNormal) {
+        synchronized(collisionWorld) {
+            return collisionWorld.sweepTest(shape, start, end, group, mask, hitPoint, hitNormal);
+        }
+    }
+
+    /**
+     * See {@link CollisionWorld#sweepSphere(Vector3, Vector3, float, short, short, Vector3, Vector3)}.
+     */
+    public CollisionObject sweepSphere(Vector3 start, Vector3 end, float radius, short group, short mask, Vector3 hitPoint, Vector3 hitNormal) {
+        synchronized(collisionWorld) {
+            return collisionWorld.sweepSphere(start, end, radius, group, mask, hitPoint, hitNormal);
+        }
+    }
+
+    /**
+     * See {@link CollisionWorld#overlapSphere(Vector3, float, short, short, ArrayList)}.
+     */
+    public int overlapSphere(Vector3 center, float radius, short group, short mask, ArrayList<CollisionObject> out) {
+        synchronized(collisionWorld) {
+            return collisionWorld.overlapSphere(center, radius, group, mask, out);
+        }
+    }
+
+    /**
+     * See {@link CollisionWorld#overlapBox(Vector3, Vector3, short, short, ArrayList)}.
+     */
+    public int overlapBox(Vector3 center, Vector3 halfExtents, short group, short mask, ArrayList<CollisionObject> out) {
+        synchronized(collisionWorld) {
+            return collisionWorld.overlapBox(center, halfExtents, group, mask, out);
+        }
+    }
+
+    /**
+     * Returns the collision object registered with a handle, as reported by ray tests and contact events.
+     */
+    public CollisionObject getCollisionObject(int handle) { return collisionWorld.getCollisionObject(handle); }
 
     public void registerDynamicEntity(PhysicsComponent component, GameObject object) {
-        collisionWorld.registerDynamicEntity(component, object);
+        if(!deferredCommands.defer(REGISTER_DYNAMIC, component, object, null))
+            collisionWorld.registerDynamicEntity(component, object);
     }
 
     public void registerStaticGeometry(PhysicsComponent component, GameObject object) {
-        collisionWorld.registerStaticGeometry(component, object);
+        if(!deferredCommands.defer(REGISTER_STATIC, component, object, null))
+            collisionWorld.registerStaticGeometry(component, object);
+    }
+
+    /**
+     * Register static geometry along with its model. The model is merged into the world's static batch the next time the world renders,
+     * and is culled and drawn per chunk from then on.
+     */
+    public void registerStaticGeometry(PhysicsComponent component, ModelGraphicsComponent graphics, GameObject object) {
+        if(!deferredCommands.defer(REGISTER_STATIC_MODEL, component, graphics, object)) {
+            collisionWorld.registerStaticGeometry(component, object);
+            staticModels.add(graphics, object);
+        }
+    }
+
+    public StaticModelBatch getStaticModels() { return staticModels; }
+
+    /**
+     * Register static geometry merged with the other static geometry of its chunk, see
+     * {@link CollisionWorld#registerStaticChunkGeometry(PhysicsComponent, GameObject)}.
+     */
+    public void registerStaticChunkGeometry(PhysicsComponent component, GameObject object) {
+        if(!deferredCommands.defer(REGISTER_STATIC_CHUNK, component, object, null))
+            collisionWorld.registerStaticChunkGeometry(component, object);
+    }
+
+    /**
+     * Sets the distance from the main camera within which static collision chunks are kept in the collision world. Infinite by
+     * default, keeping every chunk.
+     */
+    public void setStaticStreamingRadius(float radius) {
+        staticStreamingRadius = radius;
     }
 
     public void registerTriggerEntity(PhysicsComponent component, GameObject object) {
-        collisionWorld.registerTriggerEntity(component, object);
+        if(!deferredCommands.defer(REGISTER_TRIGGER, component, object, null))
+            collisionWorld.registerTriggerEntity(component, object);
+    }
+
+    /**
+     * Unregisters a collision object. If it was registered as static geometry along with its model, the model is removed from the
+     * static batch too.
+     */
+    public void unregisterCollisionObject(PhysicsComponent component) {
+        if(!deferredCommands.defer(UNREGISTER_COLLISION, component, null, null))
+            unregister(component);
+    }
+
+    private void unregister(PhysicsComponent component) {
+        collisionWorld.unregister(component);
+        if(component.getUserData() != null)
+            staticModels.remove(component.getUserData().getObject());
+    }
+
+    /**
+     * Makes a change deferred during a parallel update, once every object is updated.
+     */
+    private void executeDeferred(int operation, Object a, Object b, Object c) {
+        switch(operation) {
+            case REGISTER_CULLABLE:
+                cullingTree.add((CullingProxy)a);
+                break;
+            case REGISTER_DECAL:
+                decalCuller.add((CullingProxy)a);
+                break;
+            case UNREGISTER_CULLABLE:
+                removeProxy((CullingProxy)a);
+                break;
+            case DESPAWN:
+                objectPool.free((GameObject)a, this);
+                break;
+            case REGISTER_DYNAMIC:
+                collisionWorld.registerDynamicEntity((PhysicsComponent)a, (GameObject)b);
+                break;
+            case REGISTER_STATIC:
+                collisionWorld.registerStaticGeometry((PhysicsComponent)a, (GameObject)b);
+                break;
+            case REGISTER_STATIC_MODEL:
+                collisionWorld.registerStaticGeometry((PhysicsComponent)a, (GameObject)c);
+                staticModels.add((ModelGraphicsComponent)b, (GameObject)c);
+                break;
+            case REGISTER_STATIC_CHUNK:
+                collisionWorld.registerStaticChunkGeometry((PhysicsComponent)a, (GameObject)b);
+                break;
+            case REGISTER_TRIGGER:
+                collisionWorld.registerTriggerEntity((PhysicsComponent)a, (GameObject)b);
+                break;
+            case UNREGISTER_COLLISION:
+                unregister((PhysicsComponent)a);
+                break;
+        }
     }
 
-    public void unregisterCollisionObject(PhysicsComponent component) { collisionWorld.unregister(component); }
+    /**
+     * Sets whether or not contacts are reported through buffered events instead of the contact listener, see
+     * {@link CollisionWorld#setBufferedContacts(boolean)}.
+     */
+    public void setBufferedContacts(boolean buffered) { collisionWorld.setBufferedContacts(buffered); }
+
+    /**
+     * See {@link CollisionWorld#setCollisionLayers(CollisionLayers)}. Set layers before registering objects.
+     */
+    public void setCollisionLayers(CollisionLayers layers) { collisionWorld.setCollisionLayers(layers); }
+
+    public CollisionLayers getCollisionLayers() { return collisionWorld.getCollisionLayers(); }
+
+    public void addContactEventListener(ContactEventListener listener) { collisionWorld.addContactEventListener(listener); }
+
+    public void removeContactEventListener(ContactEventListener listener) { collisionWorld.removeContactEventListener(listener); }
 
     public ArrayList<CollisionObject> getCollisionRegisteredObjects() {
         return collisionWorld.getRegisteredCollisionObjects();
@@ -175,6 +689,7 @@ public abstract class World {
 
     public void clearCollisionWorld() {
         collisionWorld.clear();
+        staticModels.clear();
     }
 
     public boolean isPaused() {
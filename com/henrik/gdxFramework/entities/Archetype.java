@@ -0,0 +1,116 @@
+package com.henrik.gdxFramework.entities;
+
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector3;
+import com.henrik.gdxFramework.core.World;
+
+import java.util.List;
+
+/**
+ * A template for a kind of entity, compiled once into the parts every instance shares and the initial state each copies. The shared
+ * parts, such as collision shapes, animations, textures and bounding boxes, are built in {@link #compile()} and handed to the
+ * components of each instance through their sharing constructors, for instance
+ * {@link com.henrik.gdxFramework.entities.components.PhysicsComponent#PhysicsComponent(com.badlogic.gdx.physics.bullet.collision.btCompoundShape, com.henrik.gdxFramework.core.CollisionTag, boolean)}
+ * or {@link com.henrik.gdxFramework.entities.components.DecalGraphicsComponent#DecalGraphicsComponent(com.henrik.gdxFramework.entities.components.DecalGraphicsComponent)}.
+ * Instantiating then only allocates per-entity state, and the initial transform and velocity are copied in with a single array copy.
+ *
+ * Archetypes are prefabs, so instances are normally spawned through {@link World#spawn(GameObjectPool.Prefab)} and reused once
+ * despawned.
+ */
+public abstract class Archetype<T extends GameObject> implements GameObjectPool.Prefab<T> {
+
+    private static final int VELOCITY_OFFSET = 16;
+
+    // Initial transform followed by the initial velocity
+    private final float[] initialState;
+    private boolean compiled;
+
+    public Archetype() {
+        initialState = new float[VELOCITY_OFFSET + 3];
+        System.arraycopy(new Matrix4().val, 0, initialState, 0, 16);
+        compiled = false;
+    }
+
+    /**
+     * Builds the parts shared by every instance. Called once, before the first instance is created.
+     */
+    protected abstract void compile();
+
+    /**
+     * Creates an instance and its components from the shared parts. Its transform and velocity are set afterwards.
+     */
+    protected abstract T instantiate(World world);
+
+    /**
+     * Registers a spawned instance with the world, for instance its physics component with
+     * {@link World#registerDynamicEntity}. Its components should be reset here if they keep state between spawns.
+     */
+    protected abstract void register(T object, World world);
+
+    /**
+     * Unregisters a despawned instance from the world, without disposing it.
+     */
+    protected abstract void unregister(T object, World world);
+
+    /**
+     * Compiles the archetype if it hasn't been yet. Call during loading to avoid compiling on the first spawn.
+     */
+    public void ensureCompiled() {
+        if(!compiled) {
+            compile();
+            compiled = true;
+        }
+    }
+
+    public boolean isCompiled() { return compiled; }
+
+    public void setInitialTransform(Matrix4 transform) {
+        System.arraycopy(transform.val, 0, initialState, 0, 16);
+    }
+
+    public void setInitialVelocity(Vector3 velocity) {
+        initialState[VELOCITY_OFFSET] = velocity.x;
+        initialState[VELOCITY_OFFSET + 1] = velocity.y;
+        initialState[VELOCITY_OFFSET + 2] = velocity.z;
+    }
+
+    @Override
+    public final T create(World world) {
+        ensureCompiled();
+        return instantiate(world);
+    }
+
+    @Override
+    public void activate(T object, World world) {
+        System.arraycopy(initialState, 0, object.getTransform().val, 0, 16);
+        object.markTransformChanged();
+        object.setVelocity(initialState[VELOCITY_OFFSET], initialState[VELOCITY_OFFSET + 1], initialState[VELOCITY_OFFSET + 2]);
+        register(object, world);
+    }
+
+    @Override
+    public void deactivate(T object, World world) {
+        unregister(object, world);
+    }
+
+    /**
+     * Creates instances ahead of time into the world's pool, so that spawning them later only copies their initial state.
+     */
+    public void preallocate(World world, int count) {
+        world.getObjectPool().preallocate(this, world, count);
+    }
+
+    /**
+     * Spawns several instances, for instance a wave of enemies, adding them to out.
+     */
+    public void spawn(World world, int count, List<? super T> out) {
+        for(int i = 0; i < count; i++) {
+            out.add(world.spawn(this));
+        }
+    }
+
+    /**
+     * Disposes the shared parts. Only call once every instance is disposed, including those kept by the world's pool.
+     */
+    public void dispose() { }
+}
@@ -0,0 +1,246 @@
+package com.henrik.gdxFramework.entities;
+
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector3;
+
+import java.util.Arrays;
+
+/**
+ * Stores the positions, rotations, scales and velocities of many game objects in contiguous arrays, so that velocities can be
+ * integrated for every entity in one loop. Entities are identified by handles that stay valid until destroyed; their data is kept
+ * packed, with the last entity moved into the place of a destroyed one.
+ *
+ * Game objects use a store through {@link GameObject#attachToStore(EntityStore)}.
+ */
+public class EntityStore {
+
+    private float[] positions;  // x, y, z
+    private float[] rotations;  // x, y, z, w
+    private float[] scales;     // x, y, z
+    private float[] velocities; // x, y, z
+    private int[] versions;     // Incremented whenever an entity's transform changes
+    private GameObject[] objects; // Game object attached as each entity, if any
+
+    private int[] handleToIndex;
+    private int[] indexToHandle;
+    private int[] freeHandles;
+    private int freeHandleCount;
+    private int handleCount;
+
+    private int count;
+
+    public EntityStore() {
+        this(256);
+    }
+
+    public EntityStore(int capacity) {
+        positions = new float[capacity * 3];
+        rotations = new float[capacity * 4];
+        scales = new float[capacity * 3];
+        velocities = new float[capacity * 3];
+        versions = new int[capacity];
+        objects = new GameObject[capacity];
+        indexToHandle = new int[capacity];
+        handleToIndex = new int[capacity];
+        freeHandles = new int[capacity];
+        count = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if(versions.length >= capacity)
+            return;
+
+        capacity = Math.max(capacity, versions.length * 2);
+        positions = Arrays.copyOf(positions, capacity * 3);
+        rotations = Arrays.copyOf(rotations, capacity * 4);
+        scales = Arrays.copyOf(scales, capacity * 3);
+        velocities = Arrays.copyOf(velocities, capacity * 3);
+        versions = Arrays.copyOf(versions, capacity);
+        objects = Arrays.copyOf(objects, capacity);
+        indexToHandle = Arrays.copyOf(indexToHandle, capacity);
+        handleToIndex = Arrays.copyOf(handleToIndex, capacity);
+        freeHandles = Arrays.copyOf(freeHandles, capacity);
+    }
+
+    /**
+     * Creates an entity at the origin with no rotation, a scale of one and no velocity.
+     * @return The handle of the entity.
+     */
+    public int create() {
+        return create(null);
+    }
+
+    /**
+     * Creates an entity for a game object attaching itself, whose transform {@link #composeTransforms()} then composes.
+     */
+    int create(GameObject object) {
+        ensureCapacity(count + 1);
+
+        int handle = freeHandleCount > 0 ? freeHandles[--freeHandleCount] : handleCount++;
+        int i = count++;
+        handleToIndex[handle] = i;
+        indexToHandle[i] = handle;
+
+        positions[i * 3] = 0;
+        positions[i * 3 + 1] = 0;
+        positions[i * 3 + 2] = 0;
+        rotations[i * 4] = 0;
+        rotations[i * 4 + 1] = 0;
+        rotations[i * 4 + 2] = 0;
+        rotations[i * 4 + 3] = 1;
+        scales[i * 3] = 1;
+        scales[i * 3 + 1] = 1;
+        scales[i * 3 + 2] = 1;
+        velocities[i * 3] = 0;
+        velocities[i * 3 + 1] = 0;
+        velocities[i * 3 + 2] = 0;
+        versions[i] = 0;
+        objects[i] = object;
+
+        return handle;
+    }
+
+    /**
+     * Destroys an entity. Its handle may be reused by a later entity.
+     */
+    public void destroy(int handle) {
+        int i = handleToIndex[handle];
+        int last = --count;
+
+        if(i != last) {
+            System.arraycopy(positions, last * 3, positions, i * 3, 3);
+            System.arraycopy(rotations, last * 4, rotations, i * 4, 4);
+            System.arraycopy(scales, last * 3, scales, i * 3, 3);
+            System.arraycopy(velocities, last * 3, velocities, i * 3, 3);
+            versions[i] = versions[last];
+            objects[i] = objects[last];
+
+            int movedHandle = indexToHandle[last];
+            indexToHandle[i] = movedHandle;
+            handleToIndex[movedHandle] = i;
+        }
+
+        objects[last] = null;
+        handleToIndex[handle] = -1;
+        freeHandles[freeHandleCount++] = handle;
+    }
+
+    /**
+     * Moves every entity by its velocity over the given time.
+     */
+    public void integrate(float delta) {
+        for(int i = 0; i < count; i++) {
+            int v = i * 3;
+            float vx = velocities[v], vy = velocities[v + 1], vz = velocities[v + 2];
+            if(vx == 0 && vy == 0 && vz == 0)
+                continue;
+
+            positions[v] += vx * delta;
+            positions[v + 1] += vy * delta;
+            positions[v + 2] += vz * delta;
+            versions[i]++;
+        }
+    }
+
+    /**
+     * Composes the transform matrices of the game objects attached to this store that moved since they were last composed, see
+     * {@link GameObject#getTransform()}. Called before objects are updated in parallel, so that objects reading each other then
+     * don't compose them.
+     */
+    public void composeTransforms() {
+        for(int i = 0; i < count; i++) {
+            if(objects[i] != null)
+                objects[i].getComposedTransform();
+        }
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns a number that changes whenever the entity's transform changes.
+     */
+    public int getVersion(int handle) {
+        return versions[handleToIndex[handle]];
+    }
+
+    public Vector3 getPosition(int handle, Vector3 out) {
+        int i = handleToIndex[handle] * 3;
+        return out.set(positions[i], positions[i + 1], positions[i + 2]);
+    }
+
+    public void setPosition(int handle, float x, float y, float z) {
+        int index = handleToIndex[handle];
+        int i = index * 3;
+        positions[i] = x;
+        positions[i + 1] = y;
+        positions[i + 2] = z;
+        versions[index]++;
+    }
+
+    public Quaternion getRotation(int handle, Quaternion out) {
+        int i = handleToIndex[handle] * 4;
+        return out.set(rotations[i], rotations[i + 1], rotations[i + 2], rotations[i + 3]);
+    }
+
+    public void setRotation(int handle, float x, float y, float z, float w) {
+        int index = handleToIndex[handle];
+        int i = index * 4;
+        rotations[i] = x;
+        rotations[i + 1] = y;
+        rotations[i + 2] = z;
+        rotations[i + 3] = w;
+        versions[index]++;
+    }
+
+    public Vector3 getScale(int handle, Vector3 out) {
+        int i = handleToIndex[handle] * 3;
+        return out.set(scales[i], scales[i + 1], scales[i + 2]);
+    }
+
+    public void setScale(int handle, float x, float y, float z) {
+        int index = handleToIndex[handle];
+        int i = index * 3;
+        scales[i] = x;
+        scales[i + 1] = y;
+        scales[i + 2] = z;
+        versions[index]++;
+    }
+
+    public Vector3 getVelocity(int handle, Vector3 out) {
+        int i = handleToIndex[handle] * 3;
+        return out.set(velocities[i], velocities[i + 1], velocities[i + 2]);
+    }
+
+    public void setVelocity(int handle, float x, float y, float z) {
+        int i = handleToIndex[handle] * 3;
+        velocities[i] = x;
+        velocities[i + 1] = y;
+        velocities[i + 2] = z;
+    }
+
+    /**
+     * Composes the transform of an entity from its position, rotation and scale.
+     */
+    public Matrix4 getTransform(int handle, Matrix4 out) {
+        int index = handleToIndex[handle];
+        int p = index * 3, r = index * 4;
+        return out.set(positions[p], positions[p + 1], positions[p + 2],
+                rotations[r], rotations[r + 1], rotations[r + 2], rotations[r + 3],
+                scales[p], scales[p + 1], scales[p + 2]);
+    }
+
+    /**
+     * Sets the position, rotation and scale of an entity by decomposing a transform.
+     */
+    public void setTransform(int handle, Matrix4 transform, Vector3 tmp, Quaternion tmpRotation) {
+        transform.getTranslation(tmp);
+        setPosition(handle, tmp.x, tmp.y, tmp.z);
+        transform.getRotation(tmpRotation, true);
+        setRotation(handle, tmpRotation.x, tmpRotation.y, tmpRotation.z, tmpRotation.w);
+        transform.getScale(tmp);
+        setScale(handle, tmp.x, tmp.y, tmp.z);
+    }
+}
@@ -7,6 +7,7 @@ import com.badlogic.gdx.math.Vector3;
 import com.henrik.gdxFramework.core.World;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by Henri on 04/11/2014.
@@ -15,8 +16,32 @@ public abstract class GameObject {
 
     private Matrix4 transform;
     private Vector3 velocity;
+    private int transformVersion; // Incremented whenever the transform changes
 
-    static private Vector3 temp = new Vector3();
+    // Store holding the transform and velocity instead, null if the object holds them itself
+    private EntityStore store;
+    private int handle;
+    private int composedVersion; // Version of the store entity the transform matrix was last composed for
+    private Quaternion storeRotation;
+
+    // Hierarchy. The transform is local to the parent; the world transform is cached, and recomputed when read after this object or
+    // an ancestor changed. Worlds also recompute it from the root down before updating objects in parallel, so that reading it
+    // from several threads then doesn't write.
+    private GameObject parent;
+    private ArrayList<GameObject> children;
+    private Matrix4 worldTransform;
+    private boolean worldDirty; // Set on every descendant when a transform changes through this object
+    private int worldVersion; // Incremented whenever the cached world transform is recomputed
+    private int worldLocalVersion; // Local transform version the world transform was computed for
+    private int worldParentVersion; // Parent world transform version the world transform was computed for
+
+    // Prefab this object was obtained from while spawned through a GameObjectPool, null otherwise
+    GameObjectPool.Prefab<?> pooledPrefab;
+
+    // Returned by the accessors without an out parameter, so results are only valid until the next call on this object
+    private final Vector3 position = new Vector3();
+    private final Vector3 scale = new Vector3();
+    private final Vector3 temp = new Vector3();
     
     public GameObject() {
         transform = new Matrix4();
@@ -24,56 +49,454 @@ public abstract class GameObject {
         transform.idt(); // Set transform to identity
     }
 
+    /**
+     * Moves the transform and velocity of this object into an entity store, which then integrates the velocity instead of
+     * {@link #update(World)}. While attached, the accessors of this object read and write the store:
+     * <ul>
+     * <li>{@link #getTransform()} is composed from the stored position, rotation and scale. Call {@link #markTransformChanged()}
+     * after modifying it directly to write it back; until then the change is only seen until the store next moves the object.</li>
+     * <li>{@link #setRotation(Vector3, float)} and {@link #setScale(Vector3)} only replace the rotation or scale.</li>
+     * <li>{@link #getVelocity()} returns a copy; use {@link #setVelocity(Vector3)} to change it.</li>
+     * </ul>
+     */
+    public void attachToStore(EntityStore store) {
+        if(this.store != null)
+            detachFromStore();
+
+        if(storeRotation == null)
+            storeRotation = new Quaternion();
+
+        this.store = store;
+        handle = store.create(this);
+        store.setTransform(handle, transform, temp, storeRotation);
+        store.setVelocity(handle, velocity.x, velocity.y, velocity.z);
+
+        // Versions reported while attached continue from the current one
+        transformVersion++;
+        composedVersion = store.getVersion(handle);
+    }
+
+    /**
+     * Moves the transform and velocity of this object back out of its entity store.
+     */
+    public void detachFromStore() {
+        if(store == null)
+            return;
+
+        transformVersion = getTransformVersion() + 1;
+        store.getTransform(handle, transform);
+        store.getVelocity(handle, velocity);
+        store.destroy(handle);
+        store = null;
+    }
+
+    public EntityStore getStore() { return store; }
+
+    /**
+     * Returns the handle of this object in its entity store. Only valid while attached to one.
+     */
+    public int getStoreHandle() { return handle; }
+
+    /**
+     * Returns the transform of this object, relative to its parent if it has one, to be modified. Every call counts as a change to
+     * the transform, so that anything derived from it, such as world transforms, cached visibility and collision objects, picks up
+     * what is done to the returned matrix. A matrix kept from an earlier call and modified later needs
+     * {@link #markTransformChanged()}. Use {@link #getTransform(Matrix4)} or {@link #getWorldTransform()} to only read it.
+     */
     public Matrix4 getTransform() {
+        Matrix4 transform = getComposedTransform();
+        transformVersion++;
+        markChildrenDirty();
+        return transform;
+    }
+
+    /**
+     * Copies the transform of this object, relative to its parent if it has one, to out. Doesn't count as a change.
+     * @return out, for chaining.
+     */
+    public Matrix4 getTransform(Matrix4 out) {
+        if(store != null)
+            return store.getTransform(handle, out);
+        return out.set(transform);
+    }
+
+    /**
+     * Returns the transform matrix without counting as a change, composing it from the entity store first if the store changed it.
+     */
+    Matrix4 getComposedTransform() {
+        if(store != null && store.getVersion(handle) != composedVersion) {
+            composedVersion = store.getVersion(handle);
+            store.getTransform(handle, transform);
+        }
         return transform;
     }
 
+    /**
+     * Returns the position of this object. The returned vector is reused by every call; use {@link #getPosition(Vector3)} when
+     * the result must be kept, or when the object may be read from several threads.
+     */
     public Vector3 getPosition() {
-        return transform.getTranslation(temp);
+        return getPosition(position);
+    }
+    public Vector3 getPosition(Vector3 out) {
+        if(store != null)
+            return store.getPosition(handle, out);
+        return transform.getTranslation(out);
     }
     public void setPosition(float x, float y, float z) {
+        if(store != null) {
+            store.setPosition(handle, x, y, z);
+            markChildrenDirty();
+            return;
+        }
         transform.setTranslation(x,y,z);
+        transformVersion++;
+        markChildrenDirty();
     }
-    public void setPosition(Vector3 position) { transform.setTranslation(position); }
+    public void setPosition(Vector3 position) { setPosition(position.x, position.y, position.z); }
 
-    public void translate(Vector3 translation) {
-        transform.translate(translation);
-    }
+    public void translate(Vector3 translation) { translate(translation.x, translation.y, translation.z); }
     public void translate(float x, float y, float z) {
+        if(store != null) {
+            float[] val = getComposedTransform().translate(x,y,z).val;
+            store.setPosition(handle, val[Matrix4.M03], val[Matrix4.M13], val[Matrix4.M23]);
+            markChildrenDirty();
+            return;
+        }
         transform.translate(x,y,z);
+        transformVersion++;
+        markChildrenDirty();
     }
 
     public Quaternion getRotation() {
-        return transform.getRotation(new Quaternion(0,0,0,0));
+        return getRotation(new Quaternion(0,0,0,0));
+    }
+    public Quaternion getRotation(Quaternion out) {
+        if(store != null)
+            return store.getRotation(handle, out);
+        return transform.getRotation(out);
     }
     public void setRotation(Vector3 axis, float degrees) {
+        if(store != null) {
+            storeRotation.set(axis, degrees);
+            store.setRotation(handle, storeRotation.x, storeRotation.y, storeRotation.z, storeRotation.w);
+            markChildrenDirty();
+            return;
+        }
         transform.setToRotation(axis, degrees);
+        transformVersion++;
+        markChildrenDirty();
     }
 
     public void rotate(Quaternion rotation) {
+        if(store != null) {
+            store.getRotation(handle, storeRotation).mul(rotation);
+            store.setRotation(handle, storeRotation.x, storeRotation.y, storeRotation.z, storeRotation.w);
+            markChildrenDirty();
+            return;
+        }
         transform.rotate(rotation);
+        transformVersion++;
+        markChildrenDirty();
     }
 
+    /**
+     * Returns the scale of this object. The returned vector is reused by every call, see {@link #getScale(Vector3)}.
+     */
     public Vector3 getScale() {
-        return transform.getScale(Vector3.Zero);
+        return getScale(scale);
+    }
+    public Vector3 getScale(Vector3 out) {
+        if(store != null)
+            return store.getScale(handle, out);
+        return transform.getScale(out);
     }
     public void setScale(Vector3 scale) {
+        if(store != null) {
+            store.setScale(handle, scale.x, scale.y, scale.z);
+            markChildrenDirty();
+            return;
+        }
         transform.setToScaling(scale);
+        transformVersion++;
+        markChildrenDirty();
     }
     public void scale(Vector3 scale) {
+        if(store != null) {
+            Vector3 current = store.getScale(handle, temp);
+            store.setScale(handle, current.x * scale.x, current.y * scale.y, current.z * scale.z);
+            markChildrenDirty();
+            return;
+        }
         transform.scale(scale.x, scale.y, scale.z);
+        transformVersion++;
+        markChildrenDirty();
+    }
+
+    /**
+     * Returns a number that changes whenever the transform of this object changes, to tell whether or not anything derived from the
+     * transform is still valid.
+     */
+    public int getTransformVersion() {
+        if(store != null)
+            return transformVersion + store.getVersion(handle);
+        return transformVersion;
+    }
+
+    /**
+     * Marks the transform as changed. Call after modifying a matrix returned by an earlier {@link #getTransform()}, and after
+     * modifying the transform of an object attached to an entity store, to write it back to the store.
+     */
+    public void markTransformChanged() {
+        markChildrenDirty();
+        if(store != null) {
+            store.setTransform(handle, transform, temp, storeRotation);
+            composedVersion = store.getVersion(handle);
+            return;
+        }
+        transformVersion++;
+    }
+
+    /**
+     * Marks the world transforms of every descendant as needing to be recomputed. Stops at descendants already marked, as their
+     * own descendants are marked too.
+     */
+    private void markChildrenDirty() {
+        if(children == null)
+            return;
+
+        for(int i = 0; i < children.size(); i++) {
+            GameObject child = children.get(i);
+            if(!child.worldDirty) {
+                child.worldDirty = true;
+                child.markChildrenDirty();
+            }
+        }
+    }
+
+    public Vector3 getVelocity() {
+        if(store != null)
+            return store.getVelocity(handle, velocity);
+        return velocity;
+    }
+    public void setVelocity(Vector3 velocity) { setVelocity(velocity.x, velocity.y, velocity.z); }
+    public void setVelocity(float x, float y, float z) {
+        if(store != null)
+            store.setVelocity(handle, x, y, z);
+        else
+            this.velocity.set(x,y,z);
+    }
+
+    /**
+     * Resets the transform of this object to the identity and its velocity to zero, and detaches it from its parent. Used when a
+     * pooled object is spawned again.
+     */
+    public void resetTransform() {
+        setParent(null);
+
+        if(store != null) {
+            store.setPosition(handle, 0, 0, 0);
+            store.setRotation(handle, 0, 0, 0, 1);
+            store.setScale(handle, 1, 1, 1);
+            store.setVelocity(handle, 0, 0, 0);
+            return;
+        }
+
+        transform.idt();
+        velocity.set(0,0,0);
+        transformVersion++;
+        markChildrenDirty();
     }
 
-    public Vector3 getVelocity() { return velocity; }
-    public void setVelocity(Vector3 velocity) { this.velocity.set(velocity); }
-    public void setVelocity(float x, float y, float z) { this.velocity.set(x,y,z); }
+    /**
+     * Returns whether or not this object is currently spawned through a {@link GameObjectPool}.
+     */
+    public boolean isPooled() { return pooledPrefab != null; }
 
+    /**
+     * Moves this object by its velocity. Objects attached to an entity store are moved by the store instead, see
+     * {@link EntityStore#integrate(float)}.
+     */
     public void update(World world) {
-        transform.trn(this.velocity.x * Gdx.graphics.getDeltaTime(),
-                        this.velocity.y * Gdx.graphics.getDeltaTime(),
-                        this.velocity.z * Gdx.graphics.getDeltaTime());
+        if(store != null || velocity.isZero())
+            return;
+
+        float delta = Gdx.graphics.getDeltaTime();
+        transform.trn(velocity.x * delta, velocity.y * delta, velocity.z * delta);
+        transformVersion++;
+        markChildrenDirty();
+    }
+
+    /**
+     * Attaches this object to a parent, after which its transform is relative to the parent's world transform. Passing null
+     * detaches it, keeping its local transform as its transform in world space.
+     */
+    public void setParent(GameObject parent) {
+        if(parent == this.parent)
+            return;
+
+        for(GameObject ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+            if(ancestor == this)
+                throw new IllegalArgumentException("An object can't be its own ancestor");
+        }
+
+        if(this.parent != null)
+            this.parent.children.remove(this);
+
+        // Keep every version reported after this change greater than those reported before it
+        if(parent != null) {
+            if(worldTransform == null)
+                worldTransform = new Matrix4();
+            worldVersion = Math.max(worldVersion, getTransformVersion()) + 1;
+            worldDirty = true;
+
+            if(parent.children == null)
+                parent.children = new ArrayList<GameObject>();
+            parent.children.add(this);
+        } else {
+            transformVersion += worldVersion + 1;
+        }
+
+        this.parent = parent;
+        markChildrenDirty();
+
+        // The moved objects have valid world transforms right away, from the current transforms of their ancestors
+        GameObject root = this;
+        while(root.parent != null)
+            root = root.parent;
+        root.updateWorldTransforms();
+    }
+
+    public GameObject getParent() { return parent; }
+
+    public void addChild(GameObject child) { child.setParent(this); }
+
+    public void removeChild(GameObject child) {
+        if(child.parent == this)
+            child.setParent(null);
     }
 
+    /**
+     * Returns the children of this object, or null if it never had any.
+     */
+    public ArrayList<GameObject> getChildren() { return children; }
+
+    /**
+     * Returns the transform of this object in world space, which must not be modified. For objects without a parent this is the
+     * matrix returned by {@link #getTransform()}, read without counting as a change. Otherwise it is the parent's world transform
+     * multiplied by this object's local transform, cached and recomputed first if this object or an ancestor changed since. Worlds
+     * bring the hierarchies of the objects they update up to date beforehand, see {@link World#updateEntities(List)}, so that
+     * objects updating in parallel only read it.
+     */
+    public Matrix4 getWorldTransform() {
+        if(parent == null)
+            return getComposedTransform();
+        refreshWorldTransform();
+        return worldTransform;
+    }
+
+    /**
+     * Returns a number that changes whenever the world transform of this object changes, including through its ancestors.
+     */
+    public int getWorldTransformVersion() {
+        if(parent == null)
+            return getTransformVersion();
+        refreshWorldTransform();
+        return worldVersion;
+    }
+
+    /**
+     * Recomputes the cached world transform of this object if it or an ancestor changed, bringing the ancestors up to date first.
+     * Only called on objects with a parent.
+     */
+    private void refreshWorldTransform() {
+        if(parent.parent == null) {
+            refreshWorldTransform(parent.getComposedTransform(), parent.getTransformVersion());
+        } else {
+            parent.refreshWorldTransform();
+            refreshWorldTransform(parent.worldTransform, parent.worldVersion);
+        }
+    }
+
+    private void refreshWorldTransform(Matrix4 parentWorld, int parentVersion) {
+        int localVersion = getTransformVersion();
+        if(worldDirty || localVersion != worldLocalVersion || parentVersion != worldParentVersion) {
+            worldTransform.set(parentWorld).mul(getComposedTransform());
+            worldLocalVersion = localVersion;
+            worldParentVersion = parentVersion;
+            worldDirty = false;
+            worldVersion++;
+        }
+    }
+
+    /**
+     * Recomputes the cached world transforms of the descendants of this object that changed, from this object down, rather than
+     * each when it is next read. Changes are detected through the dirty marks set by the transform setters, and through transform
+     * versions, so objects moved by an entity store are caught too. Must not run while objects of the hierarchy are being updated or
+     * read on other threads.
+     */
+    public void updateWorldTransforms() {
+        if(children == null)
+            return;
+
+        Matrix4 world = getWorldTransform();
+        int version = getWorldTransformVersion();
+        for(int i = 0; i < children.size(); i++) {
+            children.get(i).updateWorldTransform(world, version);
+        }
+    }
+
+    private void updateWorldTransform(Matrix4 parentWorld, int parentVersion) {
+        refreshWorldTransform(parentWorld, parentVersion);
+        if(children == null)
+            return;
+
+        for(int i = 0; i < children.size(); i++) {
+            children.get(i).updateWorldTransform(worldTransform, worldVersion);
+        }
+    }
+
+    /**
+     * Recomputes the world transforms of the hierarchies rooted at the given objects, see {@link #updateWorldTransforms()}. Objects
+     * with a parent are skipped, as their root updates them.
+     */
+    public static void updateWorldTransforms(List<? extends GameObject> objects) {
+        for(int i = 0; i < objects.size(); i++) {
+            GameObject object = objects.get(i);
+            if(object.parent == null && object.children != null)
+                object.updateWorldTransforms();
+        }
+    }
+
+    /**
+     * Returns the position of this object in world space. The returned vector is shared with {@link #getPosition()}.
+     */
+    public Vector3 getWorldPosition() {
+        return getWorldPosition(position);
+    }
+    public Vector3 getWorldPosition(Vector3 out) {
+        if(parent == null)
+            return getPosition(out);
+        return getWorldTransform().getTranslation(out);
+    }
+
+    /**
+     * Returns whether or not this object may be updated in parallel with other objects, see {@link World#setParallelUpdate(boolean)}.
+     * A parallel-safe object's {@link #update(World)} may only:
+     * <ul>
+     * <li>change its own state, including its transform and velocity, and read other objects without changing them;</li>
+     * <li>read the world transforms of other objects only while no ancestor of theirs moves during the update, as reading a world
+     * transform recomputes it once an ancestor moved;</li>
+     * <li>use the accessors taking an out parameter, such as {@link #getPosition(Vector3)}, when reading other objects;</li>
+     * <li>change the world only through its methods, which defer collision world and renderer changes until every object is
+     * updated.</li>
+     * </ul>
+     * Objects attached to an entity store must not be attached or detached during the update, and should be attached to the world's
+     * store, see {@link World#setEntityStore(EntityStore)}, whose transforms are composed before the update. Returns false by
+     * default; such objects are updated one at a time after the parallel ones.
+     */
+    public boolean isParallelSafe() { return false; }
+
     public void render(World world) { }
 
     public abstract void dispose();
@@ -0,0 +1,172 @@
+package com.henrik.gdxFramework.entities;
+
+import com.henrik.gdxFramework.core.World;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Keeps despawned game objects for reuse, so that frequently spawned objects such as projectiles and pickups don't create new
+ * objects, components and native collision objects every time. Objects are kept per prefab, which creates them and adds them to and
+ * removes them from the world. Freed objects keep their components; their physics components are only unregistered from the
+ * collision world, keeping the native Bullet objects alive until the pool is cleared.
+ *
+ * The pool is synchronized, but objects are normally spawned and despawned through {@link World#spawn(Prefab)} and
+ * {@link World#despawn(GameObject)}, which also handle parallel updates.
+ */
+public class GameObjectPool {
+
+    public static final int DEFAULT_MAX_FREE = 64;
+
+    /**
+     * Creates the objects of one kind, and moves them in and out of the world.
+     */
+    public interface Prefab<T extends GameObject> {
+        /**
+         * Creates a new object, including its components.
+         */
+        T create(World world);
+
+        /**
+         * Called when an object is spawned, after its transform and velocity are reset. Reset its components, for instance with
+         * {@link com.henrik.gdxFramework.entities.components.PhysicsComponent#reset()}, and register it with the world here, for instance
+         * through {@link World#registerDynamicEntity}.
+         */
+        void activate(T object, World world);
+
+        /**
+         * Called when an object is despawned. Unregister it from the world here, without disposing it.
+         */
+        void deactivate(T object, World world);
+    }
+
+    private final HashMap<Prefab<?>, ArrayList<GameObject>> free;
+    private final HashMap<Prefab<?>, Integer> maxFree;
+
+    private int hits;
+    private int misses;
+    private int discarded;
+
+    public GameObjectPool() {
+        free = new HashMap<Prefab<?>, ArrayList<GameObject>>();
+        maxFree = new HashMap<Prefab<?>, Integer>();
+    }
+
+    /**
+     * Sets the most objects of a prefab kept for reuse. Objects freed beyond that are disposed.
+     */
+    public synchronized void setMaxFree(Prefab<?> prefab, int max) {
+        maxFree.put(prefab, max);
+
+        ArrayList<GameObject> objects = free.get(prefab);
+        while(objects != null && objects.size() > max) {
+            objects.remove(objects.size() - 1).dispose();
+        }
+    }
+
+    /**
+     * Spawns an object of a prefab into the world, reusing a freed one if there is any.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T extends GameObject> T obtain(Prefab<T> prefab, World world) {
+        ArrayList<GameObject> objects = free.get(prefab);
+
+        T object;
+        if(objects != null && !objects.isEmpty()) {
+            object = (T)objects.remove(objects.size() - 1);
+            hits++;
+        } else {
+            object = prefab.create(world);
+            misses++;
+        }
+
+        object.resetTransform();
+        object.pooledPrefab = prefab;
+        prefab.activate(object, world);
+        return object;
+    }
+
+    /**
+     * Despawns an object obtained from this pool, keeping it for reuse.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T extends GameObject> void free(T object, World world) {
+        Prefab<T> prefab = (Prefab<T>)object.pooledPrefab;
+        if(prefab == null)
+            throw new IllegalArgumentException("Object wasn't obtained from a pool, or was already freed");
+
+        object.pooledPrefab = null;
+        prefab.deactivate(object, world);
+
+        ArrayList<GameObject> objects = free.get(prefab);
+        if(objects == null) {
+            objects = new ArrayList<GameObject>();
+            free.put(prefab, objects);
+        }
+
+        Integer max = maxFree.get(prefab);
+        if(objects.size() < (max != null ? max : DEFAULT_MAX_FREE)) {
+            objects.add(object);
+        } else {
+            object.dispose();
+            discarded++;
+        }
+    }
+
+    /**
+     * Creates objects of a prefab ahead of time, so that spawning them later doesn't allocate.
+     */
+    public synchronized void preallocate(Prefab<?> prefab, World world, int count) {
+        ArrayList<GameObject> objects = free.get(prefab);
+        if(objects == null) {
+            objects = new ArrayList<GameObject>();
+            free.put(prefab, objects);
+        }
+
+        for(int i = objects.size(); i < count; i++) {
+            objects.add(prefab.create(world));
+        }
+    }
+
+    public synchronized int getFreeCount(Prefab<?> prefab) {
+        ArrayList<GameObject> objects = free.get(prefab);
+        return objects != null ? objects.size() : 0;
+    }
+
+    /**
+     * Returns the number of objects obtained by reusing a freed one.
+     */
+    public int getHits() { return hits; }
+
+    /**
+     * Returns the number of objects obtained by creating a new one.
+     */
+    public int getMisses() { return misses; }
+
+    /**
+     * Returns the number of freed objects disposed because their prefab's pool was full.
+     */
+    public int getDiscarded() { return discarded; }
+
+    public synchronized void resetStatistics() {
+        hits = 0;
+        misses = 0;
+        discarded = 0;
+    }
+
+    /**
+     * Disposes every freed object. Objects still spawned are left to their owners.
+     */
+    public synchronized void clear() {
+        for(ArrayList<GameObject> objects : free.values()) {
+            for(int i = 0; i < objects.size(); i++) {
+                objects.get(i).dispose();
+            }
+            objects.clear();
+        }
+    }
+
+    public void dispose() {
+        clear();
+    }
+}
@@ -11,20 +11,22 @@ import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.BoundingBox;
+import com.henrik.gdxFramework.core.Cullable;
+import com.henrik.gdxFramework.core.CullingProxy;
 import com.henrik.gdxFramework.core.Renderer;
+import com.henrik.gdxFramework.core.VisibilityCache;
 import com.henrik.gdxFramework.entities.GameObject;
 
 /**
  * Created by Henri on 21/11/2014.
  */
-public class DecalGraphicsComponent {
+public class DecalGraphicsComponent implements Cullable {
 
     protected boolean billboard;
 
     protected Decal decal;
 
     protected BoundingBox boundingBox;
-    protected BoundingBox trnBoundingBox;
 
     protected Vector3 renderOffset;
 
@@ -34,6 +36,11 @@ public class DecalGraphicsComponent {
     
     protected boolean inView; // Whether or not this entity is within view
 
+    protected CullingProxy cullingProxy; // Visibility from the world's culling tree or decal culler, null if culling itself
+
+    private final VisibilityCache visibility = new VisibilityCache();
+    private final Vector3 tmpPosition = new Vector3();
+
     public DecalGraphicsComponent() {
         decal = new Decal();
         boundingBox = null;
@@ -63,6 +70,26 @@ public class DecalGraphicsComponent {
         this.xRotation = xRotation;
     }
 
+    /**
+     * Creates a component drawing a decal like the template's, sharing its texture region and bounding box. Used to instantiate archetypes,
+     * see {@link com.henrik.gdxFramework.entities.Archetype}.
+     */
+    public DecalGraphicsComponent(DecalGraphicsComponent template) {
+        Decal source = template.decal;
+        decal = Decal.newDecal(source.getWidth(), source.getHeight(), source.getTextureRegion(),
+                source.getMaterial().getSrcBlendFactor(), source.getMaterial().getDstBlendFactor());
+        decal.setColor(source.getColor());
+
+        if(template.boundingBox == null)
+            template.boundingBox = template.calculateBoundingBox();
+        boundingBox = template.boundingBox;
+
+        renderOffset = new Vector3(template.renderOffset);
+        xRotation = template.xRotation;
+        billboard = template.billboard;
+        textureRegion = new TextureRegion();
+    }
+
     private BoundingBox calculateBoundingBox() {
         Vector3 position = decal.getPosition();
         Vector2 dimensions = new Vector2(decal.getWidth(), decal.getHeight());
@@ -80,15 +107,8 @@ public class DecalGraphicsComponent {
         if(boundingBox == null)
             boundingBox = calculateBoundingBox();
 
-        // Calculate the current bound box from original and the object position
-        trnBoundingBox = new BoundingBox();
-        Vector3 min = new Vector3(), max = new Vector3();
-        boundingBox.getMin(min);
-        boundingBox.getMax(max);
-        trnBoundingBox.set(min.add(object.getPosition()), max.add(object.getPosition()));
-
         // Only render if in view
-        if(camera.frustum.boundsInFrustum(trnBoundingBox)) {
+        if(isInView(camera, renderer, object)) {
 
             if(billboard) {
                 decal.lookAt(camera.position, camera.up);
@@ -96,9 +116,7 @@ public class DecalGraphicsComponent {
                 decal.setRotationX(xRotation);
             }
 
-            Vector3 position = new Vector3(object.getPosition());
-            position.add(renderOffset);
-            decal.setPosition(position);
+            decal.setPosition(object.getWorldPosition(tmpPosition).add(renderOffset));
 
             renderer.addDecal(decal);
             inView = true;
@@ -117,4 +135,31 @@ public class DecalGraphicsComponent {
     }
 
     public boolean isInView() { return inView; }
+
+    private boolean isInView(Camera camera, Renderer renderer, GameObject object) {
+        if(cullingProxy != null)
+            return cullingProxy.isVisible();
+
+        return visibility.isInView(camera, renderer, object, boundingBox);
+    }
+
+    @Override
+    public void getWorldBounds(GameObject object, BoundingBox out) {
+        if(boundingBox == null)
+            boundingBox = calculateBoundingBox();
+
+        Vector3 position = object.getWorldPosition();
+        out.set(boundingBox.min, boundingBox.max);
+        out.set(out.min.add(position), out.max.add(position));
+    }
+
+    @Override
+    public void setCullingProxy(CullingProxy proxy) {
+        cullingProxy = proxy;
+    }
+
+    @Override
+    public CullingProxy getCullingProxy() {
+        return cullingProxy;
+    }
 }
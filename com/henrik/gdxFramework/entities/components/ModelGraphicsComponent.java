@@ -2,55 +2,258 @@ package com.henrik.gdxFramework.entities.components;
 
 import com.badlogic.gdx.graphics.Camera;
 import com.badlogic.gdx.graphics.g3d.ModelInstance;
+import com.badlogic.gdx.graphics.g3d.decals.Decal;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.BoundingBox;
+import com.henrik.gdxFramework.core.Cullable;
+import com.henrik.gdxFramework.core.CullingProxy;
 import com.henrik.gdxFramework.core.Renderer;
+import com.henrik.gdxFramework.core.VisibilityCache;
 import com.henrik.gdxFramework.entities.GameObject;
 
+import java.util.Arrays;
+
 /**
  * Created by Henri on 21/11/2014.
  */
-public class ModelGraphicsComponent {
+public class ModelGraphicsComponent implements Cullable {
     private ModelInstance model;
     private BoundingBox boundingBox;
-    private BoundingBox transBoundingBox;
 
-    private Vector3 min;
-    private Vector3 max;
+    private boolean staticBatched; // Whether or not this model is drawn as part of a static batch instead
+
+    private CullingProxy cullingProxy; // Visibility from the world's culling tree, null if culling itself
+    private VisibilityCache visibility;
+    private Vector3 worldMin;
+    private Vector3 worldMax;
+
+    // Levels of detail, level 0 being the full detail model. Switch distances are squared, with hysteresis applied.
+    private ModelInstance[] lodModels;
+    private float[] lodDistances;
+    private float[] lodOutDistances2; // Switch to the level when farther than this
+    private float[] lodInDistances2; // Switch back to the previous level when nearer than this
+    private int lodCount;
+    private int lod;
+    private float lodHysteresis;
+
+    // Billboard drawn instead of the model beyond the last level, null if none
+    private Decal impostor;
+    private float impostorDistance;
+    private Vector3 impostorOffset;
 
     public ModelGraphicsComponent(ModelInstance model) {
         this.model = model;
 
-        min = new Vector3();
-        max = new Vector3();
+        lodModels = new ModelInstance[] { model };
+        lodDistances = new float[] { 0 };
+        lodOutDistances2 = new float[] { 0 };
+        lodInDistances2 = new float[] { 0 };
+        lodCount = 1;
+        lod = 0;
+        lodHysteresis = 0.1f;
+
+        worldMin = new Vector3();
+        worldMax = new Vector3();
+        visibility = new VisibilityCache();
 
         // Use bounding box for frustum culling
         boundingBox = new BoundingBox();
         model.calculateBoundingBox(boundingBox);
-        transBoundingBox = new BoundingBox(boundingBox);
+    }
+
+    /**
+     * Creates a component drawing copies of the template's models and impostor, sharing its bounding box. Used to instantiate
+     * archetypes, see {@link com.henrik.gdxFramework.entities.Archetype}.
+     */
+    public ModelGraphicsComponent(ModelGraphicsComponent template) {
+        model = new ModelInstance(template.model);
+        boundingBox = template.boundingBox;
+
+        lodModels = new ModelInstance[template.lodModels.length];
+        lodModels[0] = model;
+        for(int i = 1; i < template.lodCount; i++) {
+            lodModels[i] = new ModelInstance(template.lodModels[i]);
+        }
+        lodDistances = Arrays.copyOf(template.lodDistances, template.lodDistances.length);
+        lodOutDistances2 = Arrays.copyOf(template.lodOutDistances2, template.lodOutDistances2.length);
+        lodInDistances2 = Arrays.copyOf(template.lodInDistances2, template.lodInDistances2.length);
+        lodCount = template.lodCount;
+        lod = 0;
+        lodHysteresis = template.lodHysteresis;
+
+        if(template.impostor != null) {
+            Decal source = template.impostor;
+            impostor = Decal.newDecal(source.getWidth(), source.getHeight(), source.getTextureRegion(),
+                    source.getMaterial().getSrcBlendFactor(), source.getMaterial().getDstBlendFactor());
+            impostorDistance = template.impostorDistance;
+            impostorOffset = new Vector3(template.impostorOffset);
+        }
+
+        staticBatched = false;
+        worldMin = new Vector3();
+        worldMax = new Vector3();
+        visibility = new VisibilityCache();
     }
 
     public void render(Camera camera, Renderer renderer, GameObject object) {
-        model.transform.set(object.getTransform());
+        if(staticBatched)
+            return;
+
+        if(!isInView(camera, renderer, object))
+            return;
+
+        if(lodCount > 1 || impostor != null)
+            lod = selectLod(camera.position.dst2(object.getWorldPosition()));
+        else
+            lod = 0;
+
+        if(lod < lodCount) {
+            renderer.addModel(lodModels[lod], object.getWorldTransform());
+        } else {
+            impostor.setPosition(object.getWorldPosition().add(impostorOffset));
+            impostor.lookAt(camera.position, camera.up);
+            renderer.addDecal(impostor);
+        }
+    }
+
+    private boolean isInView(Camera camera, Renderer renderer, GameObject object) {
+        if(cullingProxy != null)
+            return cullingProxy.isVisible();
+
+        return visibility.isInView(camera, renderer, object, boundingBox);
+    }
+
+    @Override
+    public void getWorldBounds(GameObject object, BoundingBox out) {
+        Vector3 position = object.getWorldPosition();
+        out.set(worldMin.set(boundingBox.min).add(position), worldMax.set(boundingBox.max).add(position));
+    }
+
+    @Override
+    public void setCullingProxy(CullingProxy proxy) {
+        cullingProxy = proxy;
+    }
+
+    @Override
+    public CullingProxy getCullingProxy() {
+        return cullingProxy;
+    }
+
+    /**
+     * Returns the level to draw at the given squared camera distance, moving at most as far as needed from the current level. The
+     * impostor, if any, is level lodCount.
+     */
+    private int selectLod(float distance2) {
+        int levels = impostor != null ? lodCount + 1 : lodCount;
+        int level = Math.min(lod, levels - 1);
 
-        boundingBox.getMin(min);
-        boundingBox.getMax(max);
-        transBoundingBox.set(min, max);
+        while(level + 1 < levels && distance2 > lodOutDistances2[level + 1])
+            level++;
+        while(level > 0 && distance2 < lodInDistances2[level])
+            level--;
+
+        return level;
+    }
 
-        // Move bounding box
-        min.set(boundingBox.min);
-        min.add(object.getPosition());
-        max.set(boundingBox.max);
-        max.add(object.getPosition());
+    /**
+     * Adds a level of detail, drawn instead of the previous level when the camera is farther than the given distance. Levels must be
+     * added in order of increasing distance.
+     * @param model The model to draw, usually an instance of a lower detail model.
+     * @param distance The distance from the camera at which this level is used.
+     */
+    public void addLod(ModelInstance model, float distance) {
+        if(distance <= lodDistances[lodCount - 1])
+            throw new IllegalArgumentException("LOD distances must be increasing");
 
-        transBoundingBox.set(min, max);
+        if(impostor != null && distance >= impostorDistance)
+            throw new IllegalArgumentException("LOD distances must be less than the impostor distance");
 
-        if(camera.frustum.boundsInFrustum(transBoundingBox)) {
-            renderer.addModel(model);
+        ensureLodCapacity(lodCount + 1);
+
+        // The impostor, if any, moves up a level
+        if(impostor != null)
+            lodDistances[lodCount + 1] = impostorDistance;
+
+        lodModels[lodCount] = model;
+        lodDistances[lodCount] = distance;
+        lodCount++;
+        updateLodDistances();
+    }
+
+    /**
+     * Sets a billboard drawn instead of the model when the camera is farther than the given distance.
+     * @param impostor The decal to draw, or null to always draw the model.
+     * @param distance The distance from the camera at which the impostor is used. Must be greater than that of the last level.
+     * @param offset The offset of the impostor from the object's position, usually half the height of the model.
+     */
+    public void setImpostor(Decal impostor, float distance, Vector3 offset) {
+        if(impostor != null && distance <= lodDistances[lodCount - 1])
+            throw new IllegalArgumentException("Impostor distance must be greater than the last LOD distance");
+
+        this.impostor = impostor;
+        this.impostorDistance = distance;
+        this.impostorOffset = offset != null ? new Vector3(offset) : new Vector3();
+
+        ensureLodCapacity(lodCount);
+        lodDistances[lodCount] = distance;
+        updateLodDistances();
+    }
+
+    /**
+     * Sets the hysteresis of level switches, as a fraction of the switch distance. A level is entered a fraction farther than its
+     * distance and left a fraction nearer, so that objects near a switch distance don't flicker between levels.
+     */
+    public void setLodHysteresis(float hysteresis) {
+        lodHysteresis = hysteresis;
+        updateLodDistances();
+    }
+
+    /**
+     * Makes room for the given number of levels, plus the impostor's distance.
+     */
+    private void ensureLodCapacity(int levels) {
+        if(lodModels.length < levels)
+            lodModels = Arrays.copyOf(lodModels, levels);
+        if(lodDistances.length < levels + 1) {
+            lodDistances = Arrays.copyOf(lodDistances, levels + 1);
+            lodOutDistances2 = Arrays.copyOf(lodOutDistances2, levels + 1);
+            lodInDistances2 = Arrays.copyOf(lodInDistances2, levels + 1);
+        }
+    }
+
+    private void updateLodDistances() {
+        int levels = impostor != null ? lodCount + 1 : lodCount;
+        for(int i = 1; i < levels; i++) {
+            float out = lodDistances[i] * (1 + lodHysteresis);
+            float in = lodDistances[i] * (1 - lodHysteresis);
+            lodOutDistances2[i] = out * out;
+            lodInDistances2[i] = in * in;
         }
     }
 
+    /**
+     * Returns the level drawn last frame. Equal to the number of levels when the impostor was drawn.
+     */
+    public int getLod() {
+        return lod;
+    }
+
+    public int getLodCount() {
+        return lodCount;
+    }
+
     public ModelInstance getModel() {
         return model;
     }
+
+    public boolean isStaticBatched() {
+        return staticBatched;
+    }
+
+    /**
+     * Sets whether or not this model is drawn by a static batch. Batched components submit nothing in {@link #render}.
+     */
+    public void setStaticBatched(boolean staticBatched) {
+        this.staticBatched = staticBatched;
+    }
 }
\ No newline at end of file
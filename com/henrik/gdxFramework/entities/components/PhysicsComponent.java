@@ -3,12 +3,14 @@ package com.henrik.gdxFramework.entities.components;
 import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Quaternion;
 import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.physics.bullet.collision.Collision;
 import com.badlogic.gdx.physics.bullet.collision.btCollisionObject;
 import com.badlogic.gdx.physics.bullet.collision.btCollisionShape;
 import com.badlogic.gdx.physics.bullet.collision.btCompoundShape;
 import com.badlogic.gdx.physics.bullet.collision.btCompoundShapeChild;
 import com.henrik.advergame.utils.CollisionTags;
 import com.henrik.gdxFramework.core.CollisionObject;
+import com.henrik.gdxFramework.core.CollisionShape;
 import com.henrik.gdxFramework.core.CollisionTag;
 import com.henrik.gdxFramework.core.World;
 import com.henrik.gdxFramework.entities.GameObject;
@@ -22,10 +24,23 @@ public class PhysicsComponent {
     private CollisionTag collisionTag = CollisionTags.STATIC_SOLID;
 
     private btCompoundShape collisionShape;
+    private boolean ownsShape; // Whether or not the shape is disposed with this component, false if shared
     private btCollisionObject collisionObject;
+    private CollisionObject userData;
+
+    // Backend independent description of the shape, null if the component was created from a Bullet shape. The Bullet shape and
+    // collision object of a described shape are only created once used by a Bullet collision world.
+    private CollisionShape shapeDescription;
     
     private Vector3 objectVelocity = new Vector3();
 
+    // Transform last pushed to the Bullet collision object, so objects that didn't move aren't pushed again
+    private boolean synced;
+    private int syncedVersion;
+    private int idleFrames; // Updates since the transform last changed
+    private boolean sleeping; // Whether or not the collision object was put to sleep, so Bullet skips refreshing its bounds
+    private boolean sleepsWhenIdle; // Only static geometry sleeps, as Bullet skips pairs where both objects are asleep
+
     private boolean kinematic; // Use this to change whether or not an object is moveable at runtime
     private boolean collisionHandled; // Helper used in some cases, to ensure multiple collisions on a single frame are only handled once
 
@@ -33,6 +48,9 @@ public class PhysicsComponent {
     private int collisionPositionChangeCount = 0;
 
     private static Matrix4 idtMatrix = new Matrix4();
+
+    // Updates without moving before a static collision object is put back to sleep
+    public static final int SLEEP_FRAMES = 30;
     
     /**
      * Create a new physics component given a shape and tag.
@@ -42,6 +60,7 @@ public class PhysicsComponent {
     public PhysicsComponent(btCollisionShape collisionShape, CollisionTag collisionTag) {
         this.collisionShape = new btCompoundShape();
         this.collisionShape.addChildShape(idtMatrix, collisionShape);
+        ownsShape = true;
         initCollisionObject();
         
         this.collisionTag = collisionTag;
@@ -49,13 +68,36 @@ public class PhysicsComponent {
     }
 
     public PhysicsComponent(btCompoundShape collisionCompound, CollisionTag collisionTag) {
+        this(collisionCompound, collisionTag, true);
+    }
+
+    /**
+     * Create a new physics component given a compound shape, which may be shared between components.
+     * @param ownsShape Whether or not the shape is disposed with this component. Pass false for a shape shared by several components,
+     *                  such as the shape of an {@link com.henrik.gdxFramework.entities.Archetype}, and dispose it once none use it.
+     */
+    public PhysicsComponent(btCompoundShape collisionCompound, CollisionTag collisionTag, boolean ownsShape) {
         this.collisionShape = collisionCompound;
+        this.ownsShape = ownsShape;
         initCollisionObject();
 
         this.collisionTag = collisionTag;
         kinematic = false;
     }
 
+    /**
+     * Create a new physics component given a shape description, usable by either collision world backend.
+     * @param shape The collision shape.
+     * @param collisionTag The tag the component is given.
+     */
+    public PhysicsComponent(CollisionShape shape, CollisionTag collisionTag) {
+        this.shapeDescription = shape;
+        this.collisionTag = collisionTag;
+        ownsShape = true;
+        collisionHandled = false;
+        kinematic = false;
+    }
+
     private void initCollisionObject() {
         collisionHandled = false;
         collisionObject = new btCollisionObject();
@@ -71,16 +113,45 @@ public class PhysicsComponent {
         this.kinematic = kinematic;
     }
 
+    /**
+     * Returns the Bullet collision object of this component, creating it from the shape description if needed.
+     */
     public btCollisionObject getCollisionObject() {
+        if(collisionObject == null) {
+            collisionShape = new btCompoundShape();
+            collisionShape.addChildShape(new Matrix4().setToTranslation(shapeDescription.getOffset()), shapeDescription.createBulletShape());
+            initCollisionObject();
+            collisionObject.userData = userData;
+        }
         return collisionObject;
     }
 
+    /**
+     * Returns the shape description of this component, or null if it was created from a Bullet shape.
+     */
+    public CollisionShape getShapeDescription() {
+        return shapeDescription;
+    }
+
+    /**
+     * Returns the collision object given to the collision world's callbacks, or null if never registered.
+     */
+    public CollisionObject getUserData() {
+        return userData;
+    }
+
     public CollisionTag getCollisionTag() {
         return collisionTag;
     }
 
     public void setUserData(GameObject object) {
-        collisionObject.userData = new CollisionObject(this.collisionTag, object);
+        // Pooled components are registered repeatedly for the same object, so keep the existing user data
+        if(userData != null && userData.getObject() == object && userData.getCollisionTag() == collisionTag)
+            return;
+
+        userData = new CollisionObject(this.collisionTag, object);
+        if(collisionObject != null)
+            collisionObject.userData = userData;
     }
 
     public void update(GameObject object, World world) {
@@ -96,10 +167,66 @@ public class PhysicsComponent {
             collisionPositionChangeCount = 0;
         }
 
+        // The transform is pushed to the collision object by the collision world, before its next pass
         objectVelocity = object.getVelocity();
-        collisionObject.setWorldTransform(object.getTransform());
     }
 
+    /**
+     * Pushes the object's world transform to the Bullet collision object if it changed since last pushed, waking the collision object
+     * if it was sleeping. Static geometry that hasn't moved for {@link #SLEEP_FRAMES} calls is put back to sleep, so Bullet doesn't
+     * refresh its bounds. Dynamic and trigger objects stay awake, as Bullet skips pairs of two sleeping objects and their resting
+     * contacts would stop being reported. Called for every registered component by the Bullet collision world before each pass.
+     * @return Whether or not the transform was pushed.
+     */
+    public boolean syncTransform(GameObject object) {
+        if(collisionObject == null)
+            return false;
+
+        int version = object.getWorldTransformVersion();
+        if(synced && version == syncedVersion) {
+            if(sleepsWhenIdle && !sleeping && ++idleFrames >= SLEEP_FRAMES)
+                sleep();
+            return false;
+        }
+
+        if(sleeping)
+            wake();
+        collisionObject.setWorldTransform(object.getWorldTransform());
+        synced = true;
+        syncedVersion = version;
+        idleFrames = 0;
+        return true;
+    }
+
+    /**
+     * Puts the collision object to sleep until its transform changes, and back to sleep whenever it stays idle. Only for static
+     * geometry, which never needs testing against other static geometry; used once it is registered.
+     */
+    public void sleep() {
+        sleeping = true;
+        sleepsWhenIdle = true;
+        if(collisionObject != null)
+            collisionObject.setActivationState(Collision.ISLAND_SLEEPING);
+    }
+
+    /**
+     * Wakes the collision object and keeps it awake. Used for dynamic entities and triggers once registered.
+     */
+    public void stayAwake() {
+        sleepsWhenIdle = false;
+        if(sleeping)
+            wake();
+    }
+
+    private void wake() {
+        sleeping = false;
+        idleFrames = 0;
+        if(collisionObject != null)
+            collisionObject.setActivationState(Collision.ACTIVE_TAG);
+    }
+
+    public boolean isSleeping() { return sleeping; }
+
     public void addCollisionChange(Vector3 positionChange) {
         collisionPositionChanges.add(positionChange);
         collisionPositionChangeCount++;
@@ -113,12 +240,42 @@ public class PhysicsComponent {
 
     public void setCollisionHandled(boolean collisionHandled) { this.collisionHandled = collisionHandled; }
 
+    /**
+     * Clears the collision state gathered while the component was in the world, keeping its collision object and shape. Used when a
+     * pooled object is spawned again.
+     */
+    public void reset() {
+        collisionHandled = false;
+        collisionPositionChanges.set(0,0,0);
+        collisionPositionChangeCount = 0;
+        setTransform(idtMatrix);
+    }
+
+    /**
+     * Sets the transform of the collision object directly. It is replaced by the object's transform on the next update.
+     */
     public void setTransform(Matrix4 transform) {
-        collisionObject.setWorldTransform(transform);
+        synced = false;
+        if(sleeping)
+            wake();
+        if(collisionObject != null)
+            collisionObject.setWorldTransform(transform);
+    }
+
+    /**
+     * Returns the Bullet shape of this component, creating it from the shape description if needed.
+     */
+    public btCompoundShape getCollisionShape() {
+        getCollisionObject();
+        return collisionShape;
     }
 
     public void dispose() {
-        collisionObject.dispose();      
-        collisionShape.dispose();
+        if(collisionObject == null)
+            return;
+
+        collisionObject.dispose();
+        if(ownsShape)
+            collisionShape.dispose();
     }
 }
@@ -7,7 +7,10 @@ import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.BoundingBox;
 import com.henrik.gdxFramework.core.AnimatedDecal;
 import com.henrik.gdxFramework.core.AnimationType;
+import com.henrik.gdxFramework.core.Cullable;
+import com.henrik.gdxFramework.core.CullingProxy;
 import com.henrik.gdxFramework.core.Renderer;
+import com.henrik.gdxFramework.core.VisibilityCache;
 import com.henrik.gdxFramework.entities.GameObject;
 
 import java.util.HashMap;
@@ -15,7 +18,7 @@ import java.util.HashMap;
 /**
  * A component that renders an animated decal.
  */
-public class SpriteDecalGraphicsComponent {
+public class SpriteDecalGraphicsComponent implements Cullable {
 
     private boolean billboard;
 
@@ -23,10 +26,13 @@ public class SpriteDecalGraphicsComponent {
     protected HashMap<AnimationType, Animation> animations;
 
     protected BoundingBox boundingBox;
-    protected BoundingBox trnBoundingBox;
 
     protected boolean inView; // Whether or not this entity is within view
 
+    protected CullingProxy cullingProxy; // Visibility from the world's culling tree or decal culler, null if culling itself
+
+    private final VisibilityCache visibility = new VisibilityCache();
+
     protected float xRotation;
 
     public SpriteDecalGraphicsComponent(float width, float height, HashMap<AnimationType, Animation> animations) {
@@ -50,6 +56,24 @@ public class SpriteDecalGraphicsComponent {
         this.billboard = billboard;
     }
 
+    /**
+     * Creates a component with its own decal, sharing the template's animations and bounding box. Used to instantiate archetypes,
+     * see {@link com.henrik.gdxFramework.entities.Archetype}.
+     */
+    public SpriteDecalGraphicsComponent(SpriteDecalGraphicsComponent template) {
+        AnimatedDecal source = template.decal;
+        decal = AnimatedDecal.newAnimatedDecal(source.getWidth(), source.getHeight(),
+                source.getMaterial().getSrcBlendFactor(), source.getMaterial().getDstBlendFactor());
+        animations = template.animations;
+        decal.setCurrentAnimation(source.getCurrentAnimation());
+        decal.setColor(source.getColor());
+
+        boundingBox = template.boundingBox;
+        xRotation = template.xRotation;
+        inView = false;
+        billboard = template.billboard;
+    }
+
     public void start() {
         decal.start();
     }
@@ -90,22 +114,15 @@ public class SpriteDecalGraphicsComponent {
         // Update the animation
         decal.update();
 
-        // Calculate the current bound box from original and the object position
-        trnBoundingBox = new BoundingBox();
-        Vector3 min = new Vector3(), max = new Vector3();
-        boundingBox.getMin(min);
-        boundingBox.getMax(max);
-        trnBoundingBox.set(min.add(object.getPosition()), max.add(object.getPosition()));
-
         // Only render if in view
-        if(camera.frustum.boundsInFrustum(trnBoundingBox)) {
+        if(isInView(camera, renderer, object)) {
 
             if(billboard) {
                 decal.lookAt(camera.position, camera.up);
             }
 
             decal.rotateX(xRotation);
-            decal.setPosition(object.getPosition());
+            decal.setPosition(object.getWorldPosition());
             renderer.addDecal(decal);
             inView = true;
         } else {
@@ -114,4 +131,28 @@ public class SpriteDecalGraphicsComponent {
     }
 
     public void setxRotation(float rotation) { xRotation = rotation; }
+
+    private boolean isInView(Camera camera, Renderer renderer, GameObject object) {
+        if(cullingProxy != null)
+            return cullingProxy.isVisible();
+
+        return visibility.isInView(camera, renderer, object, boundingBox);
+    }
+
+    @Override
+    public void getWorldBounds(GameObject object, BoundingBox out) {
+        Vector3 position = object.getWorldPosition();
+        out.set(boundingBox.min, boundingBox.max);
+        out.set(out.min.add(position), out.max.add(position));
+    }
+
+    @Override
+    public void setCullingProxy(CullingProxy proxy) {
+        cullingProxy = proxy;
+    }
+
+    @Override
+    public CullingProxy getCullingProxy() {
+        return cullingProxy;
+    }
 }
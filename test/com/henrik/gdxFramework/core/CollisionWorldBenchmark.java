@@ -0,0 +1,108 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.physics.bullet.Bullet;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.henrik.gdxFramework.entities.GameObject;
+import com.henrik.gdxFramework.entities.components.PhysicsComponent;
+
+/**
+ * Compares the Java and Bullet collision worlds on the same scene of 1k and 10k objects: half static boxes on a grid, half spheres
+ * and capsules moving just above them. Times a collision detection pass with every dynamic object moved, and batches of downward
+ * rays over the scene. Run as a plain program, no GL context is needed.
+ */
+public class CollisionWorldBenchmark {
+
+    private static final int WARMUP_FRAMES = 100;
+    private static final int FRAMES = 200;
+    private static final int RAYS = 10000;
+    private static final float SPACING = 3f;
+
+    private static final short DYNAMIC = CollisionWorld.CollisionFilter.DYNAMIC.getValue();
+    private static final short ALL = CollisionWorld.CollisionFilter.ALL.getValue();
+
+    private static final CollisionTag TAG = new CollisionTag() {
+        @Override
+        public int getID() {
+            return 0;
+        }
+    };
+
+    private static class BenchmarkObject extends GameObject {
+        @Override
+        public void dispose() { }
+    }
+
+    public static void main(String[] args) {
+        GdxNativesLoader.load();
+        Bullet.init();
+
+        int[] counts = { 1000, 10000 };
+        for(int i = 0; i < counts.length; i++) {
+            run("Java", new JavaCollisionWorld(), counts[i]);
+
+            BulletCollisionWorld bullet = new BulletCollisionWorld();
+            run("Bullet", bullet, counts[i]);
+            bullet.dispose();
+        }
+    }
+
+    private static void run(String name, CollisionWorld world, int count) {
+        world.setBufferedContacts(true);
+
+        // Static boxes on a square grid, with a dynamic object above every other cell
+        int side = (int)Math.ceil(Math.sqrt(count / 2));
+        int dynamicCount = count / 2;
+        BenchmarkObject[] dynamics = new BenchmarkObject[dynamicCount];
+        for(int i = 0; i < count / 2; i++) {
+            float x = (i % side) * SPACING, z = (i / side) * SPACING;
+
+            BenchmarkObject ground = new BenchmarkObject();
+            ground.setPosition(x, 0, z);
+            world.registerStaticGeometry(new PhysicsComponent(CollisionShape.box(new Vector3(1, 1, 1)), TAG), ground);
+
+            BenchmarkObject object = new BenchmarkObject();
+            object.setPosition(x, 1.5f, z);
+            CollisionShape shape = i % 2 == 0 ? CollisionShape.sphere(0.6f) : CollisionShape.capsule(0.4f, 1);
+            world.registerDynamicEntity(new PhysicsComponent(shape, TAG), object);
+            dynamics[i] = object;
+        }
+
+        float[] starts = new float[RAYS * 3];
+        float[] ends = new float[RAYS * 3];
+        float extent = side * SPACING;
+        for(int i = 0; i < RAYS; i++) {
+            float x = (i * 0.618034f % 1f) * extent, z = (i * 0.414214f % 1f) * extent;
+            starts[i * 3] = ends[i * 3] = x;
+            starts[i * 3 + 1] = 10;
+            ends[i * 3 + 1] = -10;
+            starts[i * 3 + 2] = ends[i * 3 + 2] = z;
+        }
+        int[] hitHandles = new int[RAYS];
+
+        long collisionTime = 0, rayTime = 0;
+        int contacts = 0, hits = 0;
+        for(int frame = 0; frame < WARMUP_FRAMES + FRAMES; frame++) {
+            // Bob every dynamic object in and out of contact with the box below it
+            for(int i = 0; i < dynamicCount; i++) {
+                float x = (i % side) * SPACING, z = (i / side) * SPACING;
+                dynamics[i].setPosition(x + (float)Math.sin(frame * 0.1f + i) * 0.5f, 1.5f + (float)Math.cos(frame * 0.07f + i) * 0.5f, z);
+            }
+
+            long start = System.nanoTime();
+            world.performCollisionDetection();
+            long collided = System.nanoTime();
+            hits = world.rayTestFirst(starts, ends, RAYS, DYNAMIC, ALL, hitHandles, null, null, null);
+            long end = System.nanoTime();
+
+            if(frame >= WARMUP_FRAMES) {
+                collisionTime += collided - start;
+                rayTime += end - collided;
+                contacts += world.getContactEvents().size();
+            }
+        }
+
+        System.out.printf("%-6s %6d objects: %8.3f ms per pass, %6d events per pass, %10.0f rays per second (%d of %d hit)%n",
+                name, count, collisionTime / 1e6 / FRAMES, contacts / FRAMES, RAYS * (double)FRAMES / (rayTime / 1e9), hits, RAYS);
+    }
+}
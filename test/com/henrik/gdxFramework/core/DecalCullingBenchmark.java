@@ -0,0 +1,147 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.henrik.gdxFramework.entities.GameObject;
+
+import java.util.Random;
+
+/**
+ * Compares culling decals with a {@link DecalCuller} against each decal component culling itself through its own
+ * {@link VisibilityCache}, as decals do when not registered with a world. Decals are scattered around the camera, and each path is
+ * timed while every decal moves, while only the camera turns, and while nothing changes. Run as a plain program, no GL context is
+ * needed.
+ */
+public class DecalCullingBenchmark {
+
+    private static final int WARMUP_FRAMES = 200;
+    private static final int FRAMES = 300;
+    private static final float AREA = 200f;
+
+    private static class BenchmarkObject extends GameObject {
+        @Override
+        public void dispose() { }
+    }
+
+    private static class BenchmarkDecal implements Cullable {
+        final BoundingBox localBounds = new BoundingBox(new Vector3(-0.5f, 0, -0.5f), new Vector3(0.5f, 2, 0.5f));
+        final VisibilityCache visibility = new VisibilityCache();
+        CullingProxy proxy;
+
+        @Override
+        public void getWorldBounds(GameObject object, BoundingBox out) {
+            Vector3 position = object.getWorldPosition();
+            out.set(localBounds.min, localBounds.max);
+            out.set(out.min.add(position), out.max.add(position));
+        }
+
+        @Override
+        public void setCullingProxy(CullingProxy proxy) {
+            this.proxy = proxy;
+        }
+
+        @Override
+        public CullingProxy getCullingProxy() {
+            return proxy;
+        }
+    }
+
+    private enum Scene {
+        MOVING,
+        TURNING,
+        STILL
+    }
+
+    public static void main(String[] args) {
+        GdxNativesLoader.load();
+
+        int[] counts = { 1000, 10000, 100000 };
+        for(int c = 0; c < counts.length; c++) {
+            for(Scene scene : Scene.values()) {
+                run(counts[c], scene);
+            }
+        }
+    }
+
+    private static void run(int count, Scene scene) {
+        Random random = new Random(count);
+        BenchmarkObject[] objects = new BenchmarkObject[count];
+        BenchmarkDecal[] decals = new BenchmarkDecal[count];
+        float[] baseX = new float[count], baseZ = new float[count];
+        DecalCuller culler = new DecalCuller();
+        for(int i = 0; i < count; i++) {
+            objects[i] = new BenchmarkObject();
+            baseX[i] = (random.nextFloat() - 0.5f) * AREA;
+            baseZ[i] = (random.nextFloat() - 0.5f) * AREA;
+            objects[i].setPosition(baseX[i], 0, baseZ[i]);
+            decals[i] = new BenchmarkDecal();
+            culler.add(new CullingProxy(decals[i], objects[i]));
+        }
+
+        PerspectiveCamera camera = new PerspectiveCamera(67, 1280, 720);
+        camera.near = 0.1f;
+        camera.far = AREA;
+        camera.position.set(0, 2, 0);
+        float[] planes = new float[FrustumPlanes.PLANE_COUNT * 4];
+
+        long cullerTime = 0, componentTime = 0;
+        int cullerVisible = 0, componentVisible = 0;
+        int cameraVersion = 0;
+        for(int frame = 0; frame < WARMUP_FRAMES + FRAMES; frame++) {
+            if(frame == 0 || scene == Scene.TURNING) {
+                camera.direction.set((float)Math.sin(frame * 0.01f), 0, -(float)Math.cos(frame * 0.01f));
+                camera.update();
+                FrustumPlanes.copy(camera.frustum, planes);
+                cameraVersion++;
+            }
+            if(scene == Scene.MOVING) {
+                for(int i = 0; i < count; i++) {
+                    objects[i].setPosition(baseX[i] + (float)Math.sin(frame * 0.05f + i), 0, baseZ[i]);
+                }
+            }
+
+            // Alternate which path runs first, so neither always finds the objects in cache
+            long cullerFrameTime, componentFrameTime;
+            int visible;
+            if(frame % 2 == 0) {
+                cullerFrameTime = cullDecals(culler, camera, cameraVersion);
+                long start = System.nanoTime();
+                visible = cullComponents(decals, objects, planes, cameraVersion);
+                componentFrameTime = System.nanoTime() - start;
+            } else {
+                long start = System.nanoTime();
+                visible = cullComponents(decals, objects, planes, cameraVersion);
+                componentFrameTime = System.nanoTime() - start;
+                cullerFrameTime = cullDecals(culler, camera, cameraVersion);
+            }
+
+            if(frame >= WARMUP_FRAMES) {
+                cullerTime += cullerFrameTime;
+                componentTime += componentFrameTime;
+                cullerVisible = culler.getVisibleCount();
+                componentVisible = visible;
+            }
+        }
+
+        System.out.printf("%7d decals, %-7s: culler %8.3f ms (%5.1f ns per decal), components %8.3f ms (%5.1f ns per decal), visible %d/%d%n",
+                count, scene.name().toLowerCase(), cullerTime / 1e6 / FRAMES, cullerTime / (double)FRAMES / count,
+                componentTime / 1e6 / FRAMES, componentTime / (double)FRAMES / count, cullerVisible, componentVisible);
+    }
+
+    private static long cullDecals(DecalCuller culler, PerspectiveCamera camera, int cameraVersion) {
+        long start = System.nanoTime();
+        culler.cull(camera, cameraVersion);
+        return System.nanoTime() - start;
+    }
+
+    private static int cullComponents(BenchmarkDecal[] decals, GameObject[] objects, float[] planes, int cameraVersion) {
+        int visible = 0;
+        for(int i = 0; i < decals.length; i++) {
+            if(decals[i].visibility.isInView(planes, cameraVersion, objects[i], decals[i].localBounds))
+                visible++;
+        }
+        return visible;
+    }
+}
@@ -0,0 +1,104 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.graphics.g3d.Model;
+import com.badlogic.gdx.graphics.g3d.ModelInstance;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests deferring changes and render commands from several threads, and playing them back once they are done.
+ */
+public class DeferredCommandsTest {
+
+    private static final int THREADS = 4;
+    private static final int CHANGES = 1000;
+
+    /**
+     * Records what is played back: operations as thread * CHANGES + change, and the x translation of each model.
+     */
+    private static class RecordingHandler implements DeferredCommands.Handler {
+        final ArrayList<Integer> operations = new ArrayList<Integer>();
+        final RenderCommandList commands = new RenderCommandList();
+
+        @Override
+        public void execute(int operation, Object a, Object b, Object c) {
+            operations.add(operation);
+        }
+
+        @Override
+        public void record(RenderCommandList commands) {
+            this.commands.addAll(commands);
+        }
+    }
+
+    @BeforeClass
+    public static void loadNatives() {
+        GdxNativesLoader.load();
+    }
+
+    private static void deferFromThreads(final DeferredCommands deferred, final ModelInstance model) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        deferred.begin();
+        for(int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            new Thread() {
+                @Override
+                public void run() {
+                    Matrix4 transform = new Matrix4();
+                    for(int i = 0; i < CHANGES; i++) {
+                        deferred.defer(thread * CHANGES + i, null, null, null);
+                        deferred.getRenderCommands().addModel(model, transform.setToTranslation(thread * CHANGES + i, 0, 0));
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        done.await();
+    }
+
+    @Test
+    public void playsBackEveryThreadInOrder() throws InterruptedException {
+        DeferredCommands deferred = new DeferredCommands();
+        ModelInstance model = new ModelInstance(new Model());
+        RecordingHandler handler = new RecordingHandler();
+
+        deferFromThreads(deferred, model);
+        deferred.end(handler);
+
+        assertEquals(THREADS * CHANGES, handler.operations.size());
+        assertEquals(THREADS * CHANGES, handler.commands.getModelCount());
+
+        // Each thread's changes are played back together, in the order they were made
+        for(int i = 0; i < THREADS * CHANGES; i++) {
+            int operation = handler.operations.get(i);
+            if(i % CHANGES != 0)
+                assertEquals(handler.operations.get(i - 1) + 1, operation);
+            assertEquals(operation, handler.commands.getModel(i).transform.val[Matrix4.M03], 0);
+        }
+    }
+
+    @Test
+    public void buffersAreEmptiedOnceEnded() throws InterruptedException {
+        DeferredCommands deferred = new DeferredCommands();
+        ModelInstance model = new ModelInstance(new Model());
+
+        deferFromThreads(deferred, model);
+        deferred.end(new RecordingHandler());
+        assertFalse(deferred.isActive());
+        assertNull(deferred.getRenderCommands());
+        assertFalse(deferred.defer(0, null, null, null));
+
+        RecordingHandler handler = new RecordingHandler();
+        deferFromThreads(deferred, model);
+        deferred.end(handler);
+        assertEquals(THREADS * CHANGES, handler.operations.size());
+        assertEquals(THREADS * CHANGES, handler.commands.getModelCount());
+    }
+}
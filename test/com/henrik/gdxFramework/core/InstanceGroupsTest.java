@@ -0,0 +1,200 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.g3d.Material;
+import com.badlogic.gdx.graphics.g3d.Model;
+import com.badlogic.gdx.graphics.g3d.ModelInstance;
+import com.badlogic.gdx.graphics.g3d.attributes.BlendingAttribute;
+import com.badlogic.gdx.graphics.g3d.attributes.ColorAttribute;
+import com.badlogic.gdx.graphics.g3d.model.MeshPart;
+import com.badlogic.gdx.graphics.g3d.model.Node;
+import com.badlogic.gdx.graphics.g3d.model.NodePart;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests grouping and packing of model instances. Models are put together by hand, without meshes, so no GL context is needed.
+ */
+public class InstanceGroupsTest {
+
+    private InstanceGroups groups;
+
+    @BeforeClass
+    public static void loadNatives() {
+        // Matrix multiplication is native
+        GdxNativesLoader.load();
+    }
+
+    @Before
+    public void setUp() {
+        groups = new InstanceGroups();
+    }
+
+    /**
+     * Creates a model with a root node holding one part, and a child node holding another, offset along x.
+     */
+    private static Model createModel(Color color) {
+        Model model = new Model();
+        Material material = new Material("material", ColorAttribute.createDiffuse(color));
+        model.materials.add(material);
+
+        Node root = new Node();
+        root.id = "root";
+        root.parts.add(new NodePart(new MeshPart(), material));
+
+        Node child = new Node();
+        child.id = "child";
+        child.translation.set(1f, 0f, 0f);
+        child.parts.add(new NodePart(new MeshPart(), material));
+        root.addChild(child);
+
+        model.nodes.add(root);
+        model.calculateTransforms();
+        return model;
+    }
+
+    private static ModelInstance createInstance(Model model, float x) {
+        ModelInstance instance = new ModelInstance(model);
+        instance.transform.setToTranslation(x, 0f, 0f);
+        return instance;
+    }
+
+    @Test
+    public void groupsInstancesByModel() {
+        Model a = createModel(Color.RED);
+        Model b = createModel(Color.RED);
+        groups.add(createInstance(a, 0f));
+        groups.add(createInstance(b, 0f));
+        groups.add(createInstance(a, 1f));
+
+        assertEquals(2, groups.getGroupCount());
+        assertSame(a, groups.getGroup(0).getModel());
+        assertEquals(2, groups.getGroup(0).getInstances().size);
+        assertEquals(1, groups.getGroup(1).getInstances().size);
+        assertEquals(2, groups.getGroup(0).getParts().size);
+    }
+
+    @Test
+    public void changedMaterialsGetTheirOwnGroup() {
+        Model model = createModel(Color.RED);
+        ModelInstance plain = createInstance(model, 0f);
+        ModelInstance changed = createInstance(model, 1f);
+        changed.materials.get(0).set(ColorAttribute.createDiffuse(Color.BLUE));
+
+        groups.add(plain);
+        groups.add(changed);
+        groups.add(createInstance(model, 2f));
+
+        assertEquals(2, groups.getGroupCount());
+        assertEquals(2, groups.getGroup(0).getInstances().size);
+        assertSame(changed, groups.getGroup(1).getInstances().get(0));
+        ColorAttribute diffuse = (ColorAttribute)groups.getGroup(1).getParts().get(0).material.get(ColorAttribute.Diffuse);
+        assertEquals(Color.BLUE, diffuse.color);
+    }
+
+    @Test
+    public void materialChangedAfterGroupingMovesInstance() {
+        Model model = createModel(Color.RED);
+        ModelInstance instance = createInstance(model, 0f);
+        groups.add(instance);
+        groups.clear();
+
+        instance.materials.get(0).set(ColorAttribute.createDiffuse(Color.GREEN));
+        groups.add(instance);
+        groups.add(createInstance(model, 1f));
+
+        assertEquals(2, groups.getGroupCount());
+        ColorAttribute diffuse = (ColorAttribute)groups.getGroup(0).getParts().get(0).material.get(ColorAttribute.Diffuse);
+        assertEquals(Color.GREEN, diffuse.color);
+    }
+
+    @Test
+    public void blendedModelsAreNotInstanceable() {
+        Model opaque = createModel(Color.RED);
+        Model blended = createModel(Color.RED);
+        blended.materials.get(0).set(new BlendingAttribute(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA));
+        groups.add(createInstance(opaque, 0f));
+        groups.add(createInstance(blended, 0f));
+
+        assertTrue(groups.getGroup(0).isInstanceable());
+        assertFalse(groups.getGroup(1).isInstanceable());
+    }
+
+    @Test
+    public void packsPartMajorWorldTransforms() {
+        Model model = createModel(Color.RED);
+        groups.add(createInstance(model, 10f));
+        groups.add(createInstance(model, 20f));
+        groups.add(createInstance(model, 30f));
+
+        InstanceGroups.Group group = groups.getGroup(0);
+        float[] packed = groups.pack(group, null);
+        assertEquals(2 * 3 * InstanceGroups.FLOATS_PER_INSTANCE, packed.length);
+
+        // Part 0 is at the instance origin, part 1 one unit further along x
+        for(int part = 0; part < 2; part++) {
+            for(int instance = 0; instance < 3; instance++) {
+                int offset = (part * 3 + instance) * InstanceGroups.FLOATS_PER_INSTANCE;
+                assertEquals(10f * (instance + 1) + part, packed[offset + Matrix4.M03], 0.0001f);
+                assertEquals(0f, packed[offset + Matrix4.M13], 0.0001f);
+                assertEquals(1f, packed[offset + Matrix4.M00], 0.0001f);
+            }
+        }
+    }
+
+    @Test
+    public void sameInstanceAddedTwiceKeepsBothTransforms() {
+        Model model = createModel(Color.RED);
+        ModelInstance instance = createInstance(model, 0f);
+        groups.add(instance, new Matrix4().setToTranslation(10f, 0f, 0f));
+        groups.add(instance, new Matrix4().setToTranslation(20f, 0f, 0f));
+
+        // Changing the instance afterwards doesn't move what was added
+        instance.transform.setToTranslation(30f, 0f, 0f);
+
+        InstanceGroups.Group group = groups.getGroup(0);
+        assertEquals(2, group.getInstances().size);
+        assertEquals(10f, group.getInstanceTransform(0, new Matrix4()).val[Matrix4.M03], 0.0001f);
+        assertEquals(20f, group.getInstanceTransform(1, new Matrix4()).val[Matrix4.M03], 0.0001f);
+
+        float[] packed = groups.pack(group, null);
+        for(int part = 0; part < 2; part++) {
+            for(int added = 0; added < 2; added++) {
+                int offset = (part * 2 + added) * InstanceGroups.FLOATS_PER_INSTANCE;
+                assertEquals(10f * (added + 1) + part, packed[offset + Matrix4.M03], 0.0001f);
+            }
+        }
+    }
+
+    @Test
+    public void packReusesLargeEnoughArrays() {
+        Model model = createModel(Color.RED);
+        groups.add(createInstance(model, 0f));
+
+        float[] out = new float[256];
+        assertSame(out, groups.pack(groups.getGroup(0), out));
+
+        float[] small = new float[4];
+        assertNotSame(small, groups.pack(groups.getGroup(0), small));
+    }
+
+    @Test
+    public void clearReleasesUnusedGroups() {
+        Model model = createModel(Color.RED);
+        groups.add(createInstance(model, 0f));
+        groups.clear();
+        assertEquals(0, groups.getGroupCount());
+
+        // An empty frame releases the group, after which the model gets a new one
+        groups.clear();
+        groups.add(createInstance(model, 0f));
+        assertEquals(1, groups.getGroupCount());
+        assertEquals(1, groups.getGroup(0).getInstances().size);
+    }
+}
@@ -0,0 +1,389 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.henrik.gdxFramework.entities.GameObject;
+import com.henrik.gdxFramework.entities.components.PhysicsComponent;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the contacts and queries of the Java collision world through its public methods. Nothing here is native except the
+ * matrix code of game objects.
+ */
+public class JavaCollisionWorldTest {
+
+    private static final float EPSILON = 0.0001f;
+
+    private static final short DYNAMIC = CollisionWorld.CollisionFilter.DYNAMIC.getValue();
+    private static final short TRIGGER = CollisionWorld.CollisionFilter.TRIGGER.getValue();
+    private static final short ALL = CollisionWorld.CollisionFilter.ALL.getValue();
+
+    private enum Tag implements CollisionTag {
+        DEFAULT,
+        CUSTOM;
+
+        @Override
+        public int getID() {
+            return ordinal();
+        }
+    }
+
+    private static class TestObject extends GameObject {
+        @Override
+        public void dispose() { }
+    }
+
+    private JavaCollisionWorld world;
+    private final int[] hitHandles = new int[8];
+    private final float[] hitFractions = new float[8];
+    private final float[] hitNormals = new float[24];
+
+    @BeforeClass
+    public static void loadNatives() {
+        GdxNativesLoader.load();
+    }
+
+    @Before
+    public void setUp() {
+        world = new JavaCollisionWorld();
+    }
+
+    /**
+     * Registers a new object with the given shape at a position.
+     * @return The collision object of the new object.
+     */
+    private CollisionObject add(CollisionShape shape, Tag tag, float x, float y, float z, boolean isStatic) {
+        TestObject object = new TestObject();
+        object.setPosition(x, y, z);
+        PhysicsComponent component = new PhysicsComponent(shape, tag);
+        if(isStatic)
+            world.registerStaticGeometry(component, object);
+        else
+            world.registerDynamicEntity(component, object);
+        return component.getUserData();
+    }
+
+    private int rayTest(float startX, float startY, float startZ, float endX, float endY, float endZ, short group, short mask) {
+        return world.rayTestAll(new Vector3(startX, startY, startZ), new Vector3(endX, endY, endZ), group, mask,
+                hitHandles, hitFractions, null, hitNormals, hitHandles.length);
+    }
+
+    private static void assertVector(float x, float y, float z, Vector3 actual) {
+        assertEquals(x, actual.x, EPSILON);
+        assertEquals(y, actual.y, EPSILON);
+        assertEquals(z, actual.z, EPSILON);
+    }
+
+    private void assertHitNormal(int hit, float x, float y, float z) {
+        assertVector(x, y, z, new Vector3(hitNormals[hit * 3], hitNormals[hit * 3 + 1], hitNormals[hit * 3 + 2]));
+    }
+
+    @Test
+    public void overlapUsesDistanceBetweenRoundedShapes() {
+        add(CollisionShape.box(new Vector3(1, 1, 1)), Tag.DEFAULT, 0, 0, 0, true);
+        ArrayList<CollisionObject> out = new ArrayList<CollisionObject>();
+
+        // 0.5 from the face of the box
+        assertEquals(1, world.overlapSphere(new Vector3(1.5f, 0, 0), 0.6f, DYNAMIC, ALL, out));
+        assertEquals(0, world.overlapSphere(new Vector3(1.5f, 0, 0), 0.4f, DYNAMIC, ALL, out));
+
+        // Past the corner the distance is diagonal, so the bounds overlapping isn't enough
+        assertEquals(0, world.overlapSphere(new Vector3(1.5f, 1.5f, 1.5f), 0.8f, DYNAMIC, ALL, out));
+        assertEquals(1, world.overlapSphere(new Vector3(1.5f, 1.5f, 1.5f), 0.9f, DYNAMIC, ALL, out));
+
+        assertEquals(1, world.overlapBox(new Vector3(0, 1.9f, 0), new Vector3(1, 1, 1), DYNAMIC, ALL, out));
+        assertEquals(0, world.overlapBox(new Vector3(0, 2.1f, 0), new Vector3(1, 1, 1), DYNAMIC, ALL, out));
+    }
+
+    @Test
+    public void contactSeparatesAlongAxisOfLeastOverlap() {
+        CollisionObject ground = add(CollisionShape.box(new Vector3(1, 1, 1)), Tag.DEFAULT, 0, 0, 0, true);
+        CollisionObject box = add(CollisionShape.box(new Vector3(1, 1, 1)), Tag.DEFAULT, 1.5f, 0.2f, 0, false);
+        world.performCollisionDetection();
+
+        ContactEventBuffer events = world.getContactEvents();
+        assertEquals(1, events.size());
+        assertEquals(0.5f, events.getDepth(0), EPSILON);
+
+        // The normal points from B towards A
+        float sign = events.getHandleA(0) == box.getHandle() ? 1 : -1;
+        assertTrue(events.getHandleA(0) == ground.getHandle() || events.getHandleB(0) == ground.getHandle());
+        assertVector(sign, 0, 0, events.getNormal(0, new Vector3()));
+    }
+
+    @Test
+    public void contactBetweenSpheresUsesCenterDistance() {
+        CollisionObject a = add(CollisionShape.sphere(1), Tag.DEFAULT, 0, 0, 0, false);
+        CollisionObject b = add(CollisionShape.sphere(1), Tag.DEFAULT, 0.9f, 1.2f, 0, false);
+        world.performCollisionDetection();
+
+        // Centers 1.5 apart along a diagonal
+        ContactEventBuffer events = world.getContactEvents();
+        assertEquals(1, events.size());
+        assertEquals(0.5f, events.getDepth(0), EPSILON);
+        float sign = events.getHandleA(0) == b.getHandle() ? 1 : -1;
+        assertVector(0.6f * sign, 0.8f * sign, 0, events.getNormal(0, new Vector3()));
+
+        // Exactly touching isn't a contact
+        b.getObject().setPosition(1.2f, 1.6f, 0);
+        world.performCollisionDetection();
+        assertEquals(1, events.size());
+        assertEquals(ContactEventBuffer.END, events.getType(0));
+        assertTrue(events.getHandleA(0) == a.getHandle() || events.getHandleB(0) == a.getHandle());
+    }
+
+    @Test
+    public void contactEventsBeginStayAndEnd() {
+        add(CollisionShape.box(new Vector3(1, 1, 1)), Tag.DEFAULT, 0, 0, 0, true);
+        CollisionObject sphere = add(CollisionShape.sphere(0.5f), Tag.DEFAULT, 0, 1.25f, 0, false);
+        ContactEventBuffer events = world.getContactEvents();
+
+        world.performCollisionDetection();
+        assertEquals(1, events.size());
+        assertEquals(ContactEventBuffer.BEGIN, events.getType(0));
+        assertEquals(0.25f, events.getDepth(0), EPSILON);
+
+        world.performCollisionDetection();
+        assertEquals(1, events.size());
+        assertEquals(ContactEventBuffer.STAY, events.getType(0));
+
+        sphere.getObject().setPosition(0, 3, 0);
+        world.performCollisionDetection();
+        assertEquals(1, events.size());
+        assertEquals(ContactEventBuffer.END, events.getType(0));
+        assertTrue(events.getHandleA(0) == sphere.getHandle() || events.getHandleB(0) == sphere.getHandle());
+
+        world.performCollisionDetection();
+        assertEquals(0, events.size());
+    }
+
+    @Test
+    public void rayHitsBoxFace() {
+        CollisionObject box = add(CollisionShape.box(new Vector3(1, 1, 1)), Tag.DEFAULT, 0, 0, 0, true);
+
+        assertEquals(1, rayTest(-5, 0.5f, 0, 5, 0.5f, 0, DYNAMIC, ALL));
+        assertEquals(box.getHandle(), hitHandles[0]);
+        assertEquals(0.4f, hitFractions[0], EPSILON);
+        assertHitNormal(0, -1, 0, 0);
+
+        assertEquals(1, rayTest(0.5f, 0, 5, 0.5f, 0, -5, DYNAMIC, ALL));
+        assertEquals(0.4f, hitFractions[0], EPSILON);
+        assertHitNormal(0, 0, 0, 1);
+
+        // Passing by, stopping short, and starting inside
+        assertEquals(0, rayTest(-5, 1.5f, 0, 5, 1.5f, 0, DYNAMIC, ALL));
+        assertEquals(0, rayTest(-5, 0, 0, -2, 0, 0, DYNAMIC, ALL));
+        assertEquals(0, rayTest(0, 0, 0, 5, 0, 0, DYNAMIC, ALL));
+    }
+
+    @Test
+    public void rayHitsSphere() {
+        add(CollisionShape.sphere(1), Tag.DEFAULT, 0, 0, 0, true);
+
+        assertEquals(1, rayTest(0, 5, 0, 0, -5, 0, DYNAMIC, ALL));
+        assertEquals(0.4f, hitFractions[0], EPSILON);
+        assertHitNormal(0, 0, 1, 0);
+
+        // Within the bounds of the sphere but past its surface
+        assertEquals(0, rayTest(-5, 0.9f, 0.9f, 5, 0.9f, 0.9f, DYNAMIC, ALL));
+        assertEquals(0, rayTest(0, 0, 0, 0, 5, 0, DYNAMIC, ALL));
+    }
+
+    @Test
+    public void rayHitsCapsuleSideAndCaps() {
+        add(CollisionShape.capsule(0.5f, 2), Tag.DEFAULT, 0, 0, 0, true);
+
+        assertEquals(1, rayTest(-5, 0.5f, 0, 5, 0.5f, 0, DYNAMIC, ALL));
+        assertEquals(0.45f, hitFractions[0], EPSILON);
+        assertHitNormal(0, -1, 0, 0);
+
+        assertEquals(1, rayTest(0, 5, 0, 0, -5, 0, DYNAMIC, ALL));
+        assertEquals(0.35f, hitFractions[0], EPSILON);
+        assertHitNormal(0, 0, 1, 0);
+
+        assertEquals(1, rayTest(0, -5, 0, 0, 5, 0, DYNAMIC, ALL));
+        assertEquals(0.35f, hitFractions[0], EPSILON);
+        assertHitNormal(0, 0, -1, 0);
+
+        // Beside the rounded end, inside the bounds of the capsule
+        assertEquals(0, rayTest(-5, 1.45f, 0.45f, 5, 1.45f, 0.45f, DYNAMIC, ALL));
+    }
+
+    @Test
+    public void rayWalksCellsInOrder() {
+        world = new JavaCollisionWorld(4);
+        CollisionObject near = add(CollisionShape.box(new Vector3(0.5f, 0.5f, 0.5f)), Tag.DEFAULT, 10, 0, 0, true);
+        CollisionObject far = add(CollisionShape.box(new Vector3(0.5f, 0.5f, 0.5f)), Tag.DEFAULT, 30, 0, 0, true);
+        CollisionObject behind = add(CollisionShape.box(new Vector3(0.5f, 0.5f, 0.5f)), Tag.DEFAULT, -22, 0, 0, true);
+        CollisionObject diagonal = add(CollisionShape.box(new Vector3(0.5f, 0.5f, 0.5f)), Tag.DEFAULT, 20, 20, 20, true);
+
+        CollisionObject first = world.rayTestFirst(new Vector3(0, 0, 0), new Vector3(50, 0, 0), DYNAMIC, ALL);
+        assertSame(near, first);
+
+        assertEquals(2, rayTest(0, 0, 0, 50, 0, 0, DYNAMIC, ALL));
+        assertEquals(near.getHandle(), hitHandles[0]);
+        assertEquals(far.getHandle(), hitHandles[1]);
+        assertEquals(0.19f, hitFractions[0], EPSILON);
+        assertEquals(0.59f, hitFractions[1], EPSILON);
+
+        // Into negative cells, and through cells changing along every axis
+        first = world.rayTestFirst(new Vector3(0, 0, 0), new Vector3(-50, 0, 0), DYNAMIC, ALL);
+        assertSame(behind, first);
+        first = world.rayTestFirst(new Vector3(-1, -1, -1), new Vector3(41, 41, 41), DYNAMIC, ALL);
+        assertSame(diagonal, first);
+
+        // Ending before the far box
+        assertEquals(1, rayTest(0, 0, 0, 29, 0, 0, DYNAMIC, ALL));
+    }
+
+    @Test
+    public void rayHitsStaticGeometrySpanningSeveralCells() {
+        world = new JavaCollisionWorld(1);
+        CollisionObject wall = add(CollisionShape.box(new Vector3(0.5f, 10, 10)), Tag.DEFAULT, 5, 0, 0, true);
+
+        assertEquals(1, rayTest(0, 7.5f, -7.5f, 10, 7.5f, -7.5f, DYNAMIC, ALL));
+        assertEquals(wall.getHandle(), hitHandles[0]);
+        assertEquals(0.45f, hitFractions[0], EPSILON);
+    }
+
+    @Test
+    public void queriesFindDynamicsBeforeAndAfterTheyAreSorted() {
+        CollisionObject[] spheres = new CollisionObject[10];
+        for(int i = 0; i < spheres.length; i++) {
+            spheres[i] = add(CollisionShape.sphere(0.5f), Tag.DEFAULT, (i * 7) % 10 * 3, 0, 0, false);
+        }
+        CollisionObject wide = add(CollisionShape.box(new Vector3(20, 0.5f, 0.5f)), Tag.DEFAULT, 0, 0, 5, false);
+
+        for(int pass = 0; pass < 2; pass++) {
+            for(int i = 0; i < spheres.length; i++) {
+                float x = (i * 7) % 10 * 3;
+                assertSame(spheres[i], world.rayTestFirst(new Vector3(x, 5, 0), new Vector3(x, -5, 0), DYNAMIC, ALL));
+            }
+
+            // Starting far left of where the ray passes
+            assertSame(wide, world.rayTestFirst(new Vector3(15, 5, 5), new Vector3(15, -5, 5), DYNAMIC, ALL));
+            ArrayList<CollisionObject> out = new ArrayList<CollisionObject>();
+            assertEquals(1, world.overlapSphere(new Vector3(15, 0, 5), 0.5f, DYNAMIC, ALL, out));
+            assertSame(wide, out.get(0));
+
+            world.performCollisionDetection();
+        }
+
+        assertNull(world.rayTestFirst(new Vector3(100, 5, 0), new Vector3(100, -5, 0), DYNAMIC, ALL));
+        CollisionObject late = add(CollisionShape.sphere(0.5f), Tag.DEFAULT, 100, 0, 0, false);
+        assertSame(late, world.rayTestFirst(new Vector3(100, 5, 0), new Vector3(100, -5, 0), DYNAMIC, ALL));
+    }
+
+    @Test
+    public void queriesFilterByGroupAndMask() {
+        CollisionLayers layers = new CollisionLayers();
+        layers.setLayer(Tag.CUSTOM, 3);
+        layers.setCollides(3, CollisionLayers.DYNAMIC, true);
+        world.setCollisionLayers(layers);
+        add(CollisionShape.box(new Vector3(1, 1, 1)), Tag.CUSTOM, 0, 0, 0, true);
+        short custom = CollisionLayers.getGroup(3);
+
+        // The object's group must be in the query mask
+        assertEquals(1, rayTest(-5, 0, 0, 5, 0, 0, DYNAMIC, custom));
+        assertEquals(0, rayTest(-5, 0, 0, 5, 0, 0, DYNAMIC, (short)(ALL & ~custom)));
+
+        // And the query group in the object's mask
+        assertEquals(0, rayTest(-5, 0, 0, 5, 0, 0, TRIGGER, ALL));
+
+        ArrayList<CollisionObject> out = new ArrayList<CollisionObject>();
+        assertEquals(1, world.overlapSphere(new Vector3(), 1, DYNAMIC, ALL, out));
+        assertEquals(0, world.overlapSphere(new Vector3(), 1, TRIGGER, ALL, out));
+        assertNull(world.sweepSphere(new Vector3(-5, 0, 0), new Vector3(5, 0, 0), 0.5f, TRIGGER, ALL, null, null));
+    }
+
+    @Test
+    public void contactsFilterByLayer() {
+        CollisionLayers layers = new CollisionLayers();
+        layers.setLayer(Tag.CUSTOM, 3);
+        world.setCollisionLayers(layers);
+        add(CollisionShape.sphere(1), Tag.CUSTOM, 0, 0, 0, false);
+        add(CollisionShape.sphere(1), Tag.DEFAULT, 0.5f, 0, 0, false);
+
+        world.performCollisionDetection();
+        assertEquals(0, world.getContactEvents().size());
+
+        layers.setCollides(3, CollisionLayers.DYNAMIC, true);
+        world.clear();
+        add(CollisionShape.sphere(1), Tag.CUSTOM, 0, 0, 0, false);
+        add(CollisionShape.sphere(1), Tag.DEFAULT, 0.5f, 0, 0, false);
+        world.performCollisionDetection();
+        assertEquals(1, world.getContactEvents().size());
+    }
+
+    @Test
+    public void sweepsSphereAgainstBox() {
+        add(CollisionShape.box(new Vector3(1, 1, 1)), Tag.DEFAULT, 0, 0, 0, true);
+        Vector3 hitPoint = new Vector3(), hitNormal = new Vector3();
+
+        assertNotNull(world.sweepSphere(new Vector3(-5, 0, 0), new Vector3(5, 0, 0), 0.5f, DYNAMIC, ALL, hitPoint, hitNormal));
+        assertEquals(0.35f, world.getSweepFraction(), EPSILON);
+        assertVector(-1, 0, 0, hitPoint);
+        assertVector(-1, 0, 0, hitNormal);
+
+        assertNull(world.sweepSphere(new Vector3(-5, 1.6f, 0), new Vector3(5, 1.6f, 0), 0.5f, DYNAMIC, ALL, null, null));
+        assertEquals(1f, world.getSweepFraction(), EPSILON);
+    }
+
+    @Test
+    public void sweepsBoxAgainstBox() {
+        add(CollisionShape.box(new Vector3(1, 1, 1)), Tag.DEFAULT, 0, 0, 0, true);
+        CollisionShape box = CollisionShape.box(new Vector3(0.5f, 0.5f, 0.5f));
+        Vector3 hitPoint = new Vector3(), hitNormal = new Vector3();
+
+        assertNotNull(world.sweepTest(box, new Vector3(-5, 1.4f, 0), new Vector3(5, 1.4f, 0), DYNAMIC, ALL, hitPoint, hitNormal));
+        assertEquals(0.35f, world.getSweepFraction(), EPSILON);
+        assertVector(-1, 1.4f, 0, hitPoint);
+        assertVector(-1, 0, 0, hitNormal);
+
+        assertNull(world.sweepTest(box, new Vector3(-5, 1.6f, 0), new Vector3(5, 1.6f, 0), DYNAMIC, ALL, null, null));
+    }
+
+    @Test
+    public void sweepsCapsuleOntoBox() {
+        add(CollisionShape.box(new Vector3(1, 1, 1)), Tag.DEFAULT, 0, 0, 0, true);
+        CollisionShape capsule = CollisionShape.capsule(0.5f, 2);
+        Vector3 hitPoint = new Vector3(), hitNormal = new Vector3();
+
+        // The bottom of the capsule is 1.5 below its center
+        assertNotNull(world.sweepTest(capsule, new Vector3(0, 5, 0), new Vector3(0, -5, 0), DYNAMIC, ALL, hitPoint, hitNormal));
+        assertEquals(0.25f, world.getSweepFraction(), EPSILON);
+        assertVector(0, 1, 0, hitPoint);
+        assertVector(0, 1, 0, hitNormal);
+    }
+
+    @Test
+    public void sweepsCapsuleAgainstSphere() {
+        add(CollisionShape.sphere(1), Tag.DEFAULT, 0, 0, 0, true);
+        CollisionShape capsule = CollisionShape.capsule(0.5f, 2);
+        Vector3 hitNormal = new Vector3();
+
+        // Level with the sphere, the side of the capsule hits first
+        assertNotNull(world.sweepTest(capsule, new Vector3(-5, 0.8f, 0), new Vector3(5, 0.8f, 0), DYNAMIC, ALL, null, hitNormal));
+        assertEquals(0.35f, world.getSweepFraction(), EPSILON);
+        assertVector(-1, 0, 0, hitNormal);
+
+        // Above it, the rounded bottom passes over the sphere where a box of the same bounds wouldn't
+        assertNull(world.sweepTest(capsule, new Vector3(-5, 2.45f, 0.45f), new Vector3(5, 2.45f, 0.45f), DYNAMIC, ALL, null, null));
+    }
+
+    @Test
+    public void sweepAppliesShapeOffset() {
+        add(CollisionShape.box(new Vector3(1, 1, 1)), Tag.DEFAULT, 0, 0, 0, true);
+        CollisionShape sphere = CollisionShape.sphere(0.5f).setOffset(0, 3, 0);
+
+        assertNull(world.sweepTest(sphere, new Vector3(-5, 0, 0), new Vector3(5, 0, 0), DYNAMIC, ALL, null, null));
+        assertNotNull(world.sweepTest(sphere, new Vector3(-5, -3, 0), new Vector3(5, -3, 0), DYNAMIC, ALL, null, null));
+        assertEquals(0.35f, world.getSweepFraction(), EPSILON);
+    }
+}
@@ -0,0 +1,174 @@
+package com.henrik.gdxFramework.core;
+
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.physics.bullet.Bullet;
+import com.badlogic.gdx.physics.bullet.collision.AllHitsRayResultCallback;
+import com.badlogic.gdx.physics.bullet.collision.ClosestRayResultCallback;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.henrik.gdxFramework.entities.GameObject;
+import com.henrik.gdxFramework.entities.components.PhysicsComponent;
+
+import java.util.ArrayList;
+
+/**
+ * Measures ray tests per second against a headless Bullet collision world, before and after ray callbacks were reused: a new
+ * callback per ray as rayTestFirst and rayTestAll used to make, against the reused callbacks and the batched query. Run as a plain
+ * program, no GL context is needed.
+ */
+public class RayTestBenchmark {
+
+    private static final int OBJECTS = 2000;
+    private static final int RAYS = 20000;
+    private static final int ROUNDS = 10;
+    private static final float SPACING = 3f;
+
+    private static final short DYNAMIC = CollisionWorld.CollisionFilter.DYNAMIC.getValue();
+    private static final short ALL = CollisionWorld.CollisionFilter.ALL.getValue();
+
+    private static final CollisionTag TAG = new CollisionTag() {
+        @Override
+        public int getID() {
+            return 0;
+        }
+    };
+
+    private static class BenchmarkObject extends GameObject {
+        @Override
+        public void dispose() { }
+    }
+
+    private interface RayPass {
+        /**
+         * Casts every ray once, returning the number of hits.
+         */
+        int run();
+    }
+
+    private static BulletCollisionWorld world;
+    private static float[] starts, ends;
+    private static final Vector3 start = new Vector3(), end = new Vector3();
+
+    public static void main(String[] args) {
+        GdxNativesLoader.load();
+        Bullet.init();
+
+        world = new BulletCollisionWorld();
+        int side = (int)Math.ceil(Math.sqrt(OBJECTS));
+        for(int i = 0; i < OBJECTS; i++) {
+            BenchmarkObject object = new BenchmarkObject();
+            object.setPosition((i % side) * SPACING, 0, (i / side) * SPACING);
+            CollisionShape shape = i % 2 == 0 ? CollisionShape.box(new Vector3(1, 1, 1)) : CollisionShape.sphere(1);
+            world.registerStaticGeometry(new PhysicsComponent(shape, TAG), object);
+        }
+        world.performCollisionDetection();
+
+        // Slanted rays over the scene, about half of them hitting
+        starts = new float[RAYS * 3];
+        ends = new float[RAYS * 3];
+        float extent = side * SPACING;
+        for(int i = 0; i < RAYS; i++) {
+            float x = (i * 0.618034f % 1f) * extent, z = (i * 0.414214f % 1f) * extent;
+            starts[i * 3] = x;
+            starts[i * 3 + 1] = 10;
+            starts[i * 3 + 2] = z;
+            ends[i * 3] = x + 2;
+            ends[i * 3 + 1] = -10;
+            ends[i * 3 + 2] = z + 1;
+        }
+
+        measure("closest, new callback per ray", new RayPass() {
+            @Override
+            public int run() {
+                int hits = 0;
+                for(int i = 0; i < RAYS; i++) {
+                    setRay(i);
+                    // As rayTestFirst was before, the callback is left to the garbage collector
+                    ClosestRayResultCallback callback = new ClosestRayResultCallback(start, end);
+                    callback.setCollisionFilterGroup(DYNAMIC);
+                    callback.setCollisionFilterMask(ALL);
+                    world.collisionWorld.rayTest(start, end, callback);
+                    if(callback.hasHit() && callback.getCollisionObject().userData != null)
+                        hits++;
+                }
+                return hits;
+            }
+        });
+
+        measure("closest, reused callback", new RayPass() {
+            @Override
+            public int run() {
+                int hits = 0;
+                for(int i = 0; i < RAYS; i++) {
+                    setRay(i);
+                    if(world.rayTestFirst(start, end, DYNAMIC, ALL) != null)
+                        hits++;
+                }
+                return hits;
+            }
+        });
+
+        final int[] hitHandles = new int[RAYS];
+        final float[] hitFractions = new float[RAYS];
+        measure("closest, batched", new RayPass() {
+            @Override
+            public int run() {
+                return world.rayTestFirst(starts, ends, RAYS, DYNAMIC, ALL, hitHandles, hitFractions, null, null);
+            }
+        });
+
+        measure("all hits, new callback per ray", new RayPass() {
+            @Override
+            public int run() {
+                int hits = 0;
+                for(int i = 0; i < RAYS; i++) {
+                    setRay(i);
+                    AllHitsRayResultCallback callback = new AllHitsRayResultCallback(start, end);
+                    callback.setCollisionFilterGroup(DYNAMIC);
+                    callback.setCollisionFilterMask(ALL);
+                    world.collisionWorld.rayTest(start, end, callback);
+                    if(callback.hasHit()) {
+                        CollisionObject[] hitObjects = new CollisionObject[callback.getCollisionObjects().size()];
+                        for(int h = 0; h < hitObjects.length; h++) {
+                            hitObjects[h] = (CollisionObject)callback.getCollisionObjects().at(h).userData;
+                        }
+                        hits += hitObjects.length;
+                    }
+                }
+                return hits;
+            }
+        });
+
+        final ArrayList<CollisionObject> out = new ArrayList<CollisionObject>();
+        measure("all hits, reused callback", new RayPass() {
+            @Override
+            public int run() {
+                int hits = 0;
+                for(int i = 0; i < RAYS; i++) {
+                    setRay(i);
+                    hits += world.rayTestAll(start, end, DYNAMIC, ALL, out);
+                }
+                return hits;
+            }
+        });
+
+        world.dispose();
+    }
+
+    private static void setRay(int ray) {
+        start.set(starts[ray * 3], starts[ray * 3 + 1], starts[ray * 3 + 2]);
+        end.set(ends[ray * 3], ends[ray * 3 + 1], ends[ray * 3 + 2]);
+    }
+
+    private static void measure(String name, RayPass pass) {
+        // A warm up round, then the best of the timed rounds
+        int hits = pass.run();
+        long best = Long.MAX_VALUE;
+        for(int round = 0; round < ROUNDS; round++) {
+            long time = System.nanoTime();
+            hits = pass.run();
+            best = Math.min(best, System.nanoTime() - time);
+        }
+
+        System.out.printf("%-32s %10.0f rays per second (%d hits per %d rays)%n", name, RAYS / (best / 1e9), hits, RAYS);
+    }
+}
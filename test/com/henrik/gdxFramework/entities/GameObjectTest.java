@@ -0,0 +1,123 @@
+package com.henrik.gdxFramework.entities;
+
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the transforms of game objects, and how changes to them are reported through versions.
+ */
+public class GameObjectTest {
+
+    private static final float EPSILON = 0.0001f;
+
+    private static class TestObject extends GameObject {
+        @Override
+        public void dispose() { }
+    }
+
+    @BeforeClass
+    public static void loadNatives() {
+        // Matrix multiplication is native
+        GdxNativesLoader.load();
+    }
+
+    private static void assertVector(float x, float y, float z, Vector3 actual) {
+        assertEquals(x, actual.x, EPSILON);
+        assertEquals(y, actual.y, EPSILON);
+        assertEquals(z, actual.z, EPSILON);
+    }
+
+    @Test
+    public void modifyingTheTransformChangesTheVersion() {
+        TestObject object = new TestObject();
+        int version = object.getWorldTransformVersion();
+
+        object.getTransform().translate(1, 2, 3);
+        assertNotEquals(version, object.getWorldTransformVersion());
+        assertEquals(1, object.getWorldTransform().val[Matrix4.M03], EPSILON);
+
+        // Reading doesn't count as a change
+        version = object.getWorldTransformVersion();
+        object.getWorldTransform();
+        object.getTransform(new Matrix4());
+        object.getWorldPosition(new Vector3());
+        assertEquals(version, object.getWorldTransformVersion());
+    }
+
+    @Test
+    public void modifyingTheTransformOfAParentMovesItsChildren() {
+        TestObject parent = new TestObject();
+        TestObject child = new TestObject();
+        child.setPosition(1, 0, 0);
+        child.setParent(parent);
+        int version = child.getWorldTransformVersion();
+
+        parent.getTransform().translate(0, 5, 0);
+        parent.updateWorldTransforms();
+        assertNotEquals(version, child.getWorldTransformVersion());
+        assertEquals(5, child.getWorldPosition(new Vector3()).y, EPSILON);
+    }
+
+    @Test
+    public void childFollowsParentMovedWithoutUpdatingHierarchy() {
+        TestObject parent = new TestObject();
+        TestObject child = new TestObject();
+        TestObject grandchild = new TestObject();
+        child.setPosition(1, 0, 0);
+        grandchild.setPosition(0, 0, 1);
+        child.setParent(parent);
+        grandchild.setParent(child);
+        int childVersion = child.getWorldTransformVersion();
+        int grandchildVersion = grandchild.getWorldTransformVersion();
+
+        // As a game updating its objects itself would, without World.updateEntities
+        parent.setPosition(0, 5, 0);
+        assertVector(1, 5, 0, child.getWorldPosition(new Vector3()));
+        assertVector(1, 5, 1, grandchild.getWorldPosition(new Vector3()));
+        assertNotEquals(childVersion, child.getWorldTransformVersion());
+        assertNotEquals(grandchildVersion, grandchild.getWorldTransformVersion());
+
+        // Versions only change when the world transform does
+        childVersion = child.getWorldTransformVersion();
+        assertEquals(childVersion, child.getWorldTransformVersion());
+
+        parent.getTransform().translate(2, 0, 0);
+        assertVector(3, 5, 1, grandchild.getWorldPosition(new Vector3()));
+        assertNotEquals(childVersion, child.getWorldTransformVersion());
+    }
+
+    @Test
+    public void childFollowsParentMovedByStore() {
+        EntityStore store = new EntityStore();
+        TestObject parent = new TestObject();
+        TestObject child = new TestObject();
+        parent.attachToStore(store);
+        parent.setVelocity(1, 0, 0);
+        child.setPosition(0, 1, 0);
+        child.setParent(parent);
+
+        store.integrate(2);
+        assertVector(2, 1, 0, child.getWorldPosition(new Vector3()));
+    }
+
+    @Test
+    public void storeTransformIsReadWithoutWritingItBack() {
+        EntityStore store = new EntityStore();
+        TestObject object = new TestObject();
+        object.attachToStore(store);
+        object.setPosition(1, 2, 3);
+
+        assertEquals(2, object.getWorldTransform().val[Matrix4.M13], EPSILON);
+        assertEquals(3, object.getTransform(new Matrix4()).val[Matrix4.M23], EPSILON);
+
+        // Changes to the matrix are written back to the store when marked
+        object.getTransform().setTranslation(4, 5, 6);
+        object.markTransformChanged();
+        assertEquals(4, store.getPosition(object.getStoreHandle(), new Vector3()).x, EPSILON);
+    }
+}